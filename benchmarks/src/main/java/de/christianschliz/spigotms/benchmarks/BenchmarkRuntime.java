@@ -0,0 +1,236 @@
+package de.christianschliz.spigotms.benchmarks;
+
+import de.christianschliz.spigotms.api.SpigotService;
+import de.christianschliz.spigotms.api.event.AsyncEventDispatcher;
+import de.christianschliz.spigotms.api.event.OverflowPolicy;
+import de.christianschliz.spigotms.api.executor.ExecutorRegistry;
+import de.christianschliz.spigotms.api.metrics.LatencyHistogram;
+import de.christianschliz.spigotms.api.metrics.MetricsRegistry;
+import de.christianschliz.spigotms.api.playerdata.PlayerDataCache;
+import de.christianschliz.spigotms.plugin.SpigotMS;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Logger;
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.description.modifier.Visibility;
+import net.bytebuddy.dynamic.loading.ClassLoadingStrategy;
+import net.bytebuddy.implementation.InvocationHandlerAdapter;
+import net.bytebuddy.matcher.ElementMatchers;
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.Warning;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.SimpleCommandMap;
+import org.bukkit.event.Event;
+import org.bukkit.event.Listener;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.plugin.SimplePluginManager;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.plugin.java.JavaPluginLoader;
+import org.objenesis.ObjenesisStd;
+
+/**
+ * A minimal stand-in for CraftBukkit: a generated {@link Server} with a
+ * <code>commandMap</code> field like the real one, the real
+ * {@link SimpleCommandMap} and {@link SimplePluginManager}, and a
+ * {@link SpigotMS} instance that was never loaded by a plugin classloader.
+ * Bukkit only accepts one server per JVM, so the runtime is a singleton.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public final class BenchmarkRuntime {
+
+    private static BenchmarkRuntime instance;
+
+    private final Logger logger = Logger.getLogger("SpigotMS-Benchmarks");
+    private final Server server;
+    private final SimpleCommandMap commandMap;
+    private final PluginManager pluginManager;
+    private final SpigotMS plugin;
+
+    private BenchmarkRuntime() throws ReflectiveOperationException {
+        Class<? extends Server> serverClass = new ByteBuddy()
+                .subclass(Server.class)
+                .defineField("commandMap", SimpleCommandMap.class, Visibility.PRIVATE)
+                .method(ElementMatchers.isAbstract())
+                .intercept(InvocationHandlerAdapter.of(new ServerHandler()))
+                .make()
+                .load(BenchmarkRuntime.class.getClassLoader(), ClassLoadingStrategy.Default.INJECTION)
+                .getLoaded();
+
+        server = serverClass.getConstructor().newInstance();
+        commandMap = new SimpleCommandMap(server);
+        pluginManager = new SimplePluginManager(server, commandMap);
+        setField(serverClass, server, "commandMap", commandMap);
+        Bukkit.setServer(server);
+
+        // SpigotMS refuses to be constructed outside of a plugin classloader
+        plugin = new ObjenesisStd().newInstance(SpigotMS.class);
+        setField(JavaPlugin.class, plugin, "server", server);
+        setField(JavaPlugin.class, plugin, "loader", new JavaPluginLoader(server));
+        setField(JavaPlugin.class, plugin, "description",
+                new PluginDescriptionFile("SpigotMS", "benchmark", SpigotMS.class.getName()));
+        setField(JavaPlugin.class, plugin, "isEnabled", true);
+        MetricsRegistry metricsRegistry = new MetricsRegistry();
+        setField(SpigotMS.class, plugin, "metricsRegistry", metricsRegistry);
+        setField(SpigotMS.class, plugin, "eventDispatcher",
+                new AsyncEventDispatcher(metricsRegistry, 4096, OverflowPolicy.DROP_NEWEST));
+        // no player data is registered, but unloading a service goes through the cache
+        setField(SpigotMS.class, plugin, "playerDataCache",
+                new PlayerDataCache(Executors.newSingleThreadExecutor(ExecutorRegistry.threadFactory("playerdata")),
+                        Executors.newSingleThreadScheduledExecutor(ExecutorRegistry.threadFactory("playerdata-writer")),
+                        60_000, 100, 0, 1000, new LatencyHistogram(), new LatencyHistogram()));
+    }
+
+    // -- public methods
+
+    /**
+     * @return BenchmarkRuntime the runtime of this JVM
+     * @throws ReflectiveOperationException if the stand-ins can't be created
+     * */
+    public static synchronized BenchmarkRuntime get() throws ReflectiveOperationException {
+        if (instance == null) {
+            instance = new BenchmarkRuntime();
+        }
+
+        return instance;
+    }
+
+    /**
+     * Creates a service attached to the benchmark plugin.
+     *
+     * @param name the service name
+     * @return BenchmarkService the service
+     * */
+    public BenchmarkService createService(String name) {
+        BenchmarkService service = new BenchmarkService();
+        service.setName(name);
+        service.setPluginInstance(plugin);
+        return service;
+    }
+
+    // -- private methods
+
+    private static void setField(Class<?> owner, Object target, String name, Object value)
+            throws ReflectiveOperationException {
+        Field field = owner.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    // -- getter and setter
+
+    /**
+     * @return SimpleCommandMap the command map services register to
+     * */
+    public SimpleCommandMap getCommandMap() {
+        return commandMap;
+    }
+
+    /**
+     * @return PluginManager the plugin manager events are dispatched by
+     * */
+    public PluginManager getPluginManager() {
+        return pluginManager;
+    }
+
+    /**
+     * @return SpigotMS the plugin instance
+     * */
+    public SpigotMS getPlugin() {
+        return plugin;
+    }
+
+    // -- inner classes
+
+    /**
+     * Exposes the protected registration methods to the benchmarks.
+     * */
+    public static final class BenchmarkService extends SpigotService {
+
+        /**
+         * @param label    command name
+         * @param executor executor class
+         * */
+        public void command(String label, CommandExecutor executor) {
+            registerCommand(label, executor);
+        }
+
+        /**
+         * @param commands executors by command name
+         * */
+        public void commands(Map<String, CommandExecutor> commands) {
+            registerCommands(commands);
+        }
+
+        /**
+         * @param listener listener class
+         * */
+        public void listen(Listener listener) {
+            registerEvents(listener);
+        }
+
+        /**
+         * @param eventClass event type
+         * @param snapshot   snapshot function
+         * @param handler    async handler
+         * @param <E>        event type
+         * @param <S>        snapshot type
+         * */
+        public <E extends Event, S> void listenAsync(Class<E> eventClass, Function<? super E, ? extends S> snapshot,
+                                                     Consumer<? super S> handler) {
+            registerAsyncEvent(eventClass, snapshot, handler);
+        }
+    }
+
+    private final class ServerHandler implements InvocationHandler {
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "getName":
+                    return "SpigotMS-Benchmarks";
+                case "getVersion":
+                case "getBukkitVersion":
+                    return "benchmark";
+                case "getLogger":
+                    return logger;
+                case "getPluginManager":
+                    return pluginManager;
+                case "getWarningState":
+                    return Warning.WarningState.DEFAULT;
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        }
+
+        private Object defaultValue(Class<?> type) {
+            if (type == boolean.class) {
+                return false;
+            } else if (type == int.class) {
+                return 0;
+            } else if (type == long.class) {
+                return 0L;
+            } else if (type == double.class) {
+                return 0.0;
+            } else if (type == float.class) {
+                return 0.0f;
+            } else if (type == short.class) {
+                return (short) 0;
+            } else if (type == byte.class) {
+                return (byte) 0;
+            } else if (type == char.class) {
+                return (char) 0;
+            }
+
+            return null;
+        }
+    }
+}
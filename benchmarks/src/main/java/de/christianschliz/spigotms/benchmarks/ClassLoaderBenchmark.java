@@ -0,0 +1,96 @@
+package de.christianschliz.spigotms.benchmarks;
+
+import de.christianschliz.spigotms.plugin.ServiceClassIndex;
+import de.christianschliz.spigotms.plugin.ServiceClassLoader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Class lookups through the service classloaders: classes of the
+ * own jar, of another service via the package index, parent-first
+ * classes and misses.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ClassLoaderBenchmark {
+
+    @Param({"10", "100"})
+    public int services;
+
+    private File directory;
+    private ServiceClassLoader[] classLoaders;
+    private String ownClass;
+    private String otherServiceClass;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, ClassNotFoundException {
+        directory = Files.createTempDirectory("spigotms-classloader").toFile();
+        List<File> jars = SyntheticJars.createServiceJars(directory, services, 20);
+
+        ServiceClassIndex classIndex = new ServiceClassIndex();
+        classLoaders = new ServiceClassLoader[services];
+
+        for (int i = 0; i < services; i++) {
+            classLoaders[i] = new ServiceClassLoader("service-" + i, jars.get(i),
+                    ClassLoaderBenchmark.class.getClassLoader(), classIndex);
+            classIndex.register(classLoaders[i]);
+        }
+
+        ownClass = SyntheticJars.packageOf(0) + ".Class0";
+        otherServiceClass = SyntheticJars.packageOf(services - 1) + ".Class0";
+
+        // measure lookups of defined classes, not the first definition
+        classLoaders[0].loadClass(ownClass);
+        classLoaders[0].loadClass(otherServiceClass);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        for (ServiceClassLoader classLoader : classLoaders) {
+            classLoader.close();
+        }
+
+        SyntheticJars.delete(directory);
+    }
+
+    @Benchmark
+    public Class<?> ownClass() throws ClassNotFoundException {
+        return classLoaders[0].loadClass(ownClass);
+    }
+
+    @Benchmark
+    public Class<?> otherServiceClass() throws ClassNotFoundException {
+        return classLoaders[0].loadClass(otherServiceClass);
+    }
+
+    @Benchmark
+    public Class<?> parentFirstClass() throws ClassNotFoundException {
+        return classLoaders[0].loadClass("java.lang.String");
+    }
+
+    @Benchmark
+    public Class<?> missingClass() {
+        try {
+            return classLoaders[0].loadClass("bench.missing.Missing");
+        } catch (ClassNotFoundException exception) {
+            return null;
+        }
+    }
+}
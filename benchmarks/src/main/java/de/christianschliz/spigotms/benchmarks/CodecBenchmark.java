@@ -0,0 +1,117 @@
+package de.christianschliz.spigotms.benchmarks;
+
+import de.christianschliz.spigotms.api.database.RedisController;
+import de.christianschliz.spigotms.api.messaging.MessageCodec;
+import io.netty.buffer.ByteBuf;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.redisson.client.codec.Codec;
+import org.redisson.codec.MarshallingCodec;
+
+/**
+ * Encoding and decoding a player's statistics, without Redis:
+ * <code>default</code> is Redisson's default codec, <code>binary</code>
+ * a registered binary codec and <code>lz4</code> the same codec with
+ * compression.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CodecBenchmark {
+
+    private static final int COUNTERS = 64;
+
+    @Param({"default", "binary", "lz4"})
+    public String codecName;
+
+    private Codec codec;
+    private Stats stats;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        stats = new Stats(UUID.randomUUID(), "Notch", new int[COUNTERS]);
+
+        for (int i = 0; i < COUNTERS; i++) {
+            stats.counters[i] = i % 8 == 0 ? i * 100 : 0;
+        }
+
+        if (codecName.equals("default")) {
+            codec = new MarshallingCodec();
+        } else {
+            // the codec registry doesn't connect to Redis
+            RedisController controller = new RedisController(new String[]{"redis://127.0.0.1:6379"}, null);
+            controller.setCodecCompressionThreshold(codecName.equals("lz4") ? 64 : 0);
+            codec = controller.codecs().register(Stats.class, Stats.CODEC);
+        }
+    }
+
+    @Benchmark
+    public Object roundTrip() throws IOException {
+        ByteBuf buf = codec.getValueEncoder().encode(stats);
+
+        try {
+            return codec.getValueDecoder().decode(buf, null);
+        } finally {
+            buf.release();
+        }
+    }
+
+    // -- inner classes
+
+    public static final class Stats implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        static final MessageCodec<Stats> CODEC = new MessageCodec<Stats>() {
+            @Override
+            public void encode(final Stats value, final DataOutput out) throws IOException {
+                MessageCodec.UNIQUE_ID.encode(value.player, out);
+                out.writeUTF(value.name);
+                out.writeShort(value.counters.length);
+
+                for (int counter : value.counters) {
+                    out.writeInt(counter);
+                }
+            }
+
+            @Override
+            public Stats decode(final DataInput in) throws IOException {
+                UUID player = MessageCodec.UNIQUE_ID.decode(in);
+                String name = in.readUTF();
+                int[] counters = new int[in.readShort()];
+
+                for (int i = 0; i < counters.length; i++) {
+                    counters[i] = in.readInt();
+                }
+
+                return new Stats(player, name, counters);
+            }
+        };
+
+        private final UUID player;
+        private final String name;
+        private final int[] counters;
+
+        Stats(final UUID player, final String name, final int[] counters) {
+            this.player = player;
+            this.name = name;
+            this.counters = counters;
+        }
+    }
+}
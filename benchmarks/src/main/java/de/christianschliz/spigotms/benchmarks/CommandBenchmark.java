@@ -0,0 +1,85 @@
+package de.christianschliz.spigotms.benchmarks;
+
+import de.christianschliz.spigotms.benchmarks.BenchmarkRuntime.BenchmarkService;
+import java.lang.reflect.Proxy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cost of registering and unregistering service commands,
+ * and of dispatching a registered command.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CommandBenchmark {
+
+    private static final int COMMANDS = 100;
+
+    private final CommandExecutor executor = (sender, command, label, args) -> true;
+    private final String[] labels = new String[COMMANDS];
+    private final Map<String, CommandExecutor> commands = new LinkedHashMap<>();
+
+    private BenchmarkRuntime runtime;
+    private BenchmarkService registeringService;
+    private CommandSender sender;
+
+    @Setup(Level.Trial)
+    public void setup() throws ReflectiveOperationException {
+        runtime = BenchmarkRuntime.get();
+        registeringService = runtime.createService("bench-register");
+
+        for (int i = 0; i < COMMANDS; i++) {
+            labels[i] = "bench" + i;
+            commands.put(labels[i], executor);
+        }
+
+        runtime.createService("bench-dispatch").command("dispatched", executor);
+        sender = (CommandSender) Proxy.newProxyInstance(CommandBenchmark.class.getClassLoader(),
+                new Class<?>[]{CommandSender.class}, (proxy, method, args) -> null);
+    }
+
+    /**
+     * Registers {@value #COMMANDS} commands and unregisters them again,
+     * like a service being enabled and reloaded.
+     * */
+    @Benchmark
+    @OperationsPerInvocation(COMMANDS)
+    public void registerAndUnregister() {
+        for (String label : labels) {
+            registeringService.command(label, executor);
+        }
+
+        registeringService.doUnregister();
+    }
+
+    /**
+     * Same as {@link #registerAndUnregister()}, but with a single bulk registration.
+     * */
+    @Benchmark
+    @OperationsPerInvocation(COMMANDS)
+    public void registerAllAndUnregister() {
+        registeringService.commands(commands);
+        registeringService.doUnregister();
+    }
+
+    @Benchmark
+    public boolean dispatch() {
+        return runtime.getCommandMap().dispatch(sender, "dispatched arg");
+    }
+}
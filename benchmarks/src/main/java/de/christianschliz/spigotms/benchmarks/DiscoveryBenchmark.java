@@ -0,0 +1,92 @@
+package de.christianschliz.spigotms.benchmarks;
+
+import de.christianschliz.spigotms.plugin.ServiceDescription;
+import de.christianschliz.spigotms.plugin.ServiceDiscovery;
+import de.christianschliz.spigotms.plugin.ServiceIndex;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Service discovery across N synthetic jars, with an empty
+ * index (first start), with a warm index (restart) and after
+ * the same jars were deployed again (checksum validation).
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DiscoveryBenchmark {
+
+    @Param({"10", "100"})
+    public int jars;
+
+    @Param({"4"})
+    public int threads;
+
+    private File directory;
+    private File indexFile;
+    private List<File> jarFiles;
+    private PrintStream stdout;
+    private long deployTime;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("spigotms-discovery").toFile();
+        indexFile = new File(directory, "service-index.bin");
+        jarFiles = SyntheticJars.createServiceJars(directory, jars, 20);
+        deployTime = System.currentTimeMillis();
+
+        // discovery prints a line per jar
+        stdout = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        }));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.setOut(stdout);
+        SyntheticJars.delete(directory);
+    }
+
+    @Benchmark
+    public List<ServiceDescription> coldIndex() {
+        indexFile.delete();
+        return new ServiceDiscovery(new ServiceIndex(indexFile), threads).discover(jarFiles);
+    }
+
+    @Benchmark
+    public List<ServiceDescription> warmIndex() {
+        return new ServiceDiscovery(new ServiceIndex(indexFile), threads).discover(jarFiles);
+    }
+
+    @Benchmark
+    public List<ServiceDescription> redeployedJars() {
+        deployTime += 1000;
+
+        for (File jarFile : jarFiles) {
+            jarFile.setLastModified(deployTime);
+        }
+
+        return new ServiceDiscovery(new ServiceIndex(indexFile), threads).discover(jarFiles);
+    }
+}
@@ -0,0 +1,184 @@
+package de.christianschliz.spigotms.benchmarks;
+
+import de.christianschliz.spigotms.benchmarks.BenchmarkRuntime.BenchmarkService;
+import java.util.concurrent.TimeUnit;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Event dispatch through listeners registered by a service, compared
+ * to listeners registered directly with the plugin manager, and the
+ * main-thread cost of a heavy listener compared to an async one.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EventDispatchBenchmark {
+
+    /** CPU work of a heavy listener, see {@link Blackhole#consumeCPU(long)} */
+    private static final long HEAVY_WORK = 1000;
+
+    @Param({"1", "10"})
+    public int listeners;
+
+    private BenchmarkRuntime runtime;
+    private ServiceEvent serviceEvent;
+    private PluginEvent pluginEvent;
+    private HeavyEvent heavyEvent;
+    private AsyncHeavyEvent asyncHeavyEvent;
+
+    @Setup(Level.Trial)
+    public void setup(Blackhole blackhole) throws ReflectiveOperationException {
+        runtime = BenchmarkRuntime.get();
+        BenchmarkService service = runtime.createService("bench-events");
+
+        for (int i = 0; i < listeners; i++) {
+            service.listen(new ServiceListener(blackhole));
+            runtime.getPluginManager().registerEvents(new PluginListener(blackhole), runtime.getPlugin());
+            service.listen(new HeavyListener());
+            service.listenAsync(AsyncHeavyEvent.class, event -> event.value,
+                    value -> Blackhole.consumeCPU(HEAVY_WORK));
+        }
+
+        serviceEvent = new ServiceEvent();
+        pluginEvent = new PluginEvent();
+        heavyEvent = new HeavyEvent();
+        asyncHeavyEvent = new AsyncHeavyEvent();
+    }
+
+    @Benchmark
+    public void serviceListeners() {
+        runtime.getPluginManager().callEvent(serviceEvent);
+    }
+
+    @Benchmark
+    public void pluginListeners() {
+        runtime.getPluginManager().callEvent(pluginEvent);
+    }
+
+    @Benchmark
+    public void heavyListeners() {
+        runtime.getPluginManager().callEvent(heavyEvent);
+    }
+
+    /**
+     * Main-thread cost of the same work as {@link #heavyListeners()}
+     * with async listeners. Once the queue is full, events are dropped,
+     * so this measures the snapshot and enqueue path.
+     * */
+    @Benchmark
+    public void asyncHeavyListeners() {
+        runtime.getPluginManager().callEvent(asyncHeavyEvent);
+    }
+
+    // -- inner classes
+
+    public static final class ServiceEvent extends Event {
+
+        private static final HandlerList HANDLERS = new HandlerList();
+
+        @Override
+        public HandlerList getHandlers() {
+            return HANDLERS;
+        }
+
+        public static HandlerList getHandlerList() {
+            return HANDLERS;
+        }
+    }
+
+    public static final class PluginEvent extends Event {
+
+        private static final HandlerList HANDLERS = new HandlerList();
+
+        @Override
+        public HandlerList getHandlers() {
+            return HANDLERS;
+        }
+
+        public static HandlerList getHandlerList() {
+            return HANDLERS;
+        }
+    }
+
+    public static final class HeavyEvent extends Event {
+
+        private static final HandlerList HANDLERS = new HandlerList();
+
+        @Override
+        public HandlerList getHandlers() {
+            return HANDLERS;
+        }
+
+        public static HandlerList getHandlerList() {
+            return HANDLERS;
+        }
+    }
+
+    public static final class AsyncHeavyEvent extends Event {
+
+        private static final HandlerList HANDLERS = new HandlerList();
+
+        private final Integer value = 42;
+
+        @Override
+        public HandlerList getHandlers() {
+            return HANDLERS;
+        }
+
+        public static HandlerList getHandlerList() {
+            return HANDLERS;
+        }
+    }
+
+    public static final class ServiceListener implements Listener {
+
+        private final Blackhole blackhole;
+
+        ServiceListener(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @EventHandler
+        public void onEvent(ServiceEvent event) {
+            blackhole.consume(event);
+        }
+    }
+
+    public static final class PluginListener implements Listener {
+
+        private final Blackhole blackhole;
+
+        PluginListener(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @EventHandler
+        public void onEvent(PluginEvent event) {
+            blackhole.consume(event);
+        }
+    }
+
+    public static final class HeavyListener implements Listener {
+
+        @EventHandler
+        public void onEvent(HeavyEvent event) {
+            Blackhole.consumeCPU(HEAVY_WORK);
+        }
+    }
+}
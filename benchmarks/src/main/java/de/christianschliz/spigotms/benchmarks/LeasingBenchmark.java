@@ -0,0 +1,85 @@
+package de.christianschliz.spigotms.benchmarks;
+
+import de.christianschliz.spigotms.api.database.LeasedLock;
+import de.christianschliz.spigotms.api.database.LeasedRateLimiter;
+import de.christianschliz.spigotms.api.database.RedisController;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import redis.embedded.RedisServer;
+
+/**
+ * Checks per second of the leased rate limiter and lock against an
+ * embedded Redis server. A lease size of 1 asks Redis on every check,
+ * like a plain Redis rate limiter; <code>lockUnlockRelease</code> gives
+ * the lock back every time, like a plain Redis lock.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class LeasingBenchmark {
+
+    @Param({"1", "100"})
+    public int leaseSize;
+
+    private RedisServer redisServer;
+    private RedisController controller;
+    private LeasedRateLimiter rateLimiter;
+    private LeasedLock lock;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        int port;
+
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        redisServer = new RedisServer(port);
+        redisServer.start();
+
+        controller = new RedisController(new String[]{"redis://127.0.0.1:" + port}, null);
+        // high enough to never run out, so every check is granted
+        rateLimiter = controller.rateLimiter("bench", 1_000_000_000L, 1000, leaseSize, 1000);
+        lock = controller.lock("bench", 1000);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        controller.close();
+        redisServer.stop();
+    }
+
+    @Benchmark
+    public boolean rateLimiterTryAcquire() {
+        return rateLimiter.tryAcquire();
+    }
+
+    @Benchmark
+    public void lockUnlock() throws InterruptedException {
+        if (lock.tryLock(1000)) {
+            lock.unlock();
+        }
+    }
+
+    @Benchmark
+    public void lockUnlockRelease() throws InterruptedException {
+        if (lock.tryLock(1000)) {
+            lock.unlock();
+            lock.release();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package de.christianschliz.spigotms.benchmarks;
+
+import de.christianschliz.spigotms.api.database.RedisController;
+import de.christianschliz.spigotms.api.messaging.Channel;
+import de.christianschliz.spigotms.api.messaging.MessageBus;
+import de.christianschliz.spigotms.api.messaging.MessageCodec;
+import de.christianschliz.spigotms.api.messaging.RequestChannel;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import redis.embedded.RedisServer;
+
+/**
+ * The message bus between two servers sharing an embedded Redis server.
+ * Publishing reports delivered messages per second, request/reply the
+ * round-trip latency distribution including p99, with and without
+ * batching, and with the local short-circuit.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+@State(Scope.Benchmark)
+public class MessageBusBenchmark {
+
+    private static final int BURST = 1000;
+    private static final long BURST_TIMEOUT_MILLIS = 10_000;
+
+    private static final Channel<Long> PING = Channel.of("bench:ping", MessageCodec.LONG);
+    private static final RequestChannel<Long, Long> ECHO =
+            RequestChannel.of("bench:echo", MessageCodec.LONG, MessageCodec.LONG);
+
+    @Param({"0", "1000"})
+    public long flushWindowMicros;
+
+    private RedisServer redisServer;
+    private RedisController sender;
+    private RedisController receiver;
+    private MessageBus senderBus;
+    private MessageBus receiverBus;
+    private final AtomicLong delivered = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        int port;
+
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        redisServer = new RedisServer(port);
+        redisServer.start();
+
+        sender = new RedisController(new String[]{"redis://127.0.0.1:" + port}, null);
+        receiver = new RedisController(new String[]{"redis://127.0.0.1:" + port}, null);
+        sender.setMessageBusOptions(flushWindowMicros, 65536, 5000);
+        receiver.setMessageBusOptions(flushWindowMicros, 65536, 5000);
+        senderBus = sender.messageBus();
+        receiverBus = receiver.messageBus();
+
+        receiverBus.subscribe(PING, message -> delivered.incrementAndGet());
+        receiverBus.respond(ECHO, request -> request);
+        senderBus.respond(ECHO, request -> request);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sender.close();
+        receiver.close();
+        redisServer.stop();
+    }
+
+    /**
+     * Publishes a burst of messages and waits until the other server has handled all of them.
+     * */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(BURST)
+    public void publishBurst() throws InterruptedException {
+        long target = delivered.get() + BURST;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(BURST_TIMEOUT_MILLIS);
+
+        for (long i = 0; i < BURST; i++) {
+            senderBus.publish(PING, i);
+        }
+
+        while (delivered.get() < target) {
+            if (System.nanoTime() - deadline > 0) {
+                // a lost message would otherwise hang the whole run
+                throw new IllegalStateException("Only " + (BURST - (target - delivered.get())) + " of "
+                        + BURST + " messages arrived within " + BURST_TIMEOUT_MILLIS + "ms");
+            }
+
+            Thread.sleep(0, 100_000);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Long remoteRequest() {
+        return senderBus.request(ECHO, receiverBus.getNodeId(), 42L).join();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Long localRequest() {
+        return senderBus.request(ECHO, 42L).join();
+    }
+}
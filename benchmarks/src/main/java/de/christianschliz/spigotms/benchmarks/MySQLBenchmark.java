@@ -0,0 +1,93 @@
+package de.christianschliz.spigotms.benchmarks;
+
+import de.christianschliz.spigotms.api.database.MySQLController;
+import de.christianschliz.spigotms.api.database.WriteBehindBuffer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * The MySQL helper layers against an in-memory H2 database in MySQL
+ * mode: a plain pooled query, the same query through the async executor,
+ * and a write into a write-behind buffer.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MySQLBenchmark {
+
+    private static final int ROWS = 1000;
+    private static final String SELECT = "SELECT kills FROM stats WHERE id = ?";
+
+    private MySQLController controller;
+    private WriteBehindBuffer<Integer, Integer> killBuffer;
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        controller = new MySQLController("jdbc:h2:mem:spigotms;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+
+        try (Connection connection = controller.get().getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS stats (id INT PRIMARY KEY, kills INT NOT NULL)");
+
+            for (int id = 0; id < ROWS; id++) {
+                statement.execute("MERGE INTO stats KEY (id) VALUES (" + id + ", 0)");
+            }
+        }
+
+        killBuffer = controller.writeBehind(
+                "INSERT INTO stats (id, kills) VALUES (?, ?) ON DUPLICATE KEY UPDATE kills = kills + VALUES(kills)",
+                (statement, id, kills) -> {
+                    statement.setInt(1, id);
+                    statement.setInt(2, kills);
+                }, Integer::sum, 500, 50);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        controller.close();
+    }
+
+    @Benchmark
+    public int pooledQuery() throws SQLException {
+        try (Connection connection = controller.get().getConnection();
+             PreparedStatement statement = connection.prepareStatement(SELECT)) {
+            statement.setInt(1, randomId());
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getInt(1) : -1;
+            }
+        }
+    }
+
+    @Benchmark
+    public int asyncQuery() {
+        return controller.async().query("bench", SELECT,
+                resultSet -> resultSet.next() ? resultSet.getInt(1) : -1, randomId()).join();
+    }
+
+    @Benchmark
+    public void writeBehind() {
+        killBuffer.write(randomId(), 1);
+    }
+
+    private static int randomId() {
+        return ThreadLocalRandom.current().nextInt(ROWS);
+    }
+}
@@ -0,0 +1,124 @@
+package de.christianschliz.spigotms.benchmarks;
+
+import de.christianschliz.spigotms.api.database.RedisController;
+import de.christianschliz.spigotms.api.database.RedisPipeline;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.redisson.api.RAtomicLong;
+import org.redisson.api.RFuture;
+import redis.embedded.RedisServer;
+
+/**
+ * Time a chatty service spends on the Redis calls of one tick against an
+ * embedded Redis server: every tick increments <code>commandsPerTick</code>
+ * counters and waits for all results. <code>sequential</code> blocks on
+ * every call, <code>async</code> issues all calls and then waits, and
+ * <code>pipelined</code> queues them on the pipeline, which sends them as
+ * one batch when the tick ends.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PipelineBenchmark {
+
+    @Param({"10", "100"})
+    public int commandsPerTick;
+
+    private RedisServer redisServer;
+    private RedisController controller;
+    private RAtomicLong[] counters;
+    private String[] names;
+    private RedisPipeline pipeline;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        int port;
+
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        redisServer = new RedisServer(port);
+        redisServer.start();
+
+        controller = new RedisController(new String[]{"redis://127.0.0.1:" + port}, null);
+        pipeline = controller.pipeline();
+        counters = new RAtomicLong[commandsPerTick];
+        names = new String[commandsPerTick];
+
+        for (int i = 0; i < commandsPerTick; i++) {
+            names[i] = "bench:" + i;
+            counters[i] = controller.get().getAtomicLong(names[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        controller.close();
+        redisServer.stop();
+    }
+
+    @Benchmark
+    public long sequential() {
+        long sum = 0;
+
+        for (RAtomicLong counter : counters) {
+            sum += counter.incrementAndGet();
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public long async() {
+        List<RFuture<Long>> results = new ArrayList<>(commandsPerTick);
+
+        for (RAtomicLong counter : counters) {
+            results.add(counter.incrementAndGetAsync());
+        }
+
+        long sum = 0;
+
+        for (RFuture<Long> result : results) {
+            sum += result.join();
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public long pipelined() {
+        List<CompletableFuture<Long>> results = new ArrayList<>(commandsPerTick);
+
+        for (String name : names) {
+            results.add(pipeline.queue(batch -> batch.getAtomicLong(name).incrementAndGetAsync()));
+        }
+
+        // the end of the tick, a whole tick fits into one batch of the default size
+        pipeline.flush();
+        long sum = 0;
+
+        for (CompletableFuture<Long> result : results) {
+            sum += result.join();
+        }
+
+        return sum;
+    }
+}
@@ -0,0 +1,80 @@
+package de.christianschliz.spigotms.benchmarks;
+
+import de.christianschliz.spigotms.api.database.NearCache;
+import de.christianschliz.spigotms.api.database.RedisController;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.redisson.api.RMap;
+import redis.embedded.RedisServer;
+
+/**
+ * The Redis helper layers against an embedded Redis server:
+ * a plain map read compared to a read through a near-cache.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RedisBenchmark {
+
+    private static final int KEYS = 1000;
+
+    private RedisServer redisServer;
+    private RedisController controller;
+    private RMap<Integer, String> map;
+    private NearCache<Integer, String> nearCache;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        int port;
+
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        redisServer = new RedisServer(port);
+        redisServer.start();
+
+        controller = new RedisController(new String[]{"redis://127.0.0.1:" + port}, null);
+        map = controller.get().getMap("bench");
+        nearCache = controller.nearCache("bench", KEYS, 0, NearCache.EvictionPolicy.LRU);
+
+        for (int key = 0; key < KEYS; key++) {
+            map.fastPut(key, "value-" + key);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        nearCache.destroy();
+        controller.close();
+        redisServer.stop();
+    }
+
+    @Benchmark
+    public String mapGet() {
+        return map.get(randomKey());
+    }
+
+    @Benchmark
+    public String nearCacheGet() {
+        return nearCache.get(randomKey());
+    }
+
+    private static int randomKey() {
+        return ThreadLocalRandom.current().nextInt(KEYS);
+    }
+}
@@ -0,0 +1,99 @@
+package de.christianschliz.spigotms.benchmarks;
+
+import de.christianschliz.spigotms.api.database.MySQLController;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Read throughput of many threads through the replica router, with
+ * in-memory H2 databases in MySQL mode standing in for the primary and
+ * the replicas. Every read holds its connection for a simulated network
+ * round-trip, so throughput is bound by the pool sizes like on a busy
+ * primary; with zero replicas all reads fall back to the primary.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(32)
+public class ReplicaRoutingBenchmark {
+
+    private static final int ROWS = 1000;
+    private static final long ROUND_TRIP_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final String SELECT = "SELECT kills FROM stats WHERE id = ?";
+
+    @Param({"0", "2"})
+    public int replicas;
+
+    private MySQLController controller;
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException, InterruptedException {
+        controller = new MySQLController(url("primary"), "sa", "");
+
+        for (int i = 0; i < replicas; i++) {
+            String name = "replica" + i;
+            createTable(DriverManager.getConnection(url(name), "sa", ""));
+            controller.addReplica(name, url(name));
+        }
+
+        controller.setReplicaOptions(2000, 100, "SELECT 0");
+        createTable(controller.get().getConnection());
+
+        // wait for the first lag check to mark the replicas usable
+        Thread.sleep(500);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        controller.close();
+    }
+
+    @Benchmark
+    public int read() throws SQLException {
+        return controller.replicas().read(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(SELECT)) {
+                statement.setInt(1, ThreadLocalRandom.current().nextInt(ROWS));
+                LockSupport.parkNanos(ROUND_TRIP_NANOS);
+
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    return resultSet.next() ? resultSet.getInt(1) : -1;
+                }
+            }
+        });
+    }
+
+    private static String url(final String database) {
+        return "jdbc:h2:mem:spigotms-" + database + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+    }
+
+    private static void createTable(final Connection connection) throws SQLException {
+        try (Connection closing = connection; Statement statement = closing.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS stats (id INT PRIMARY KEY, kills INT NOT NULL)");
+
+            for (int id = 0; id < ROWS; id++) {
+                statement.execute("MERGE INTO stats KEY (id) VALUES (" + id + ", 0)");
+            }
+        }
+    }
+}
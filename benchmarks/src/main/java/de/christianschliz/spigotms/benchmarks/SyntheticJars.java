@@ -0,0 +1,126 @@
+package de.christianschliz.spigotms.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+
+/**
+ * Writes service jars with a <code>service.yml</code> and a number
+ * of empty classes, so discovery and classloading can be measured
+ * without real services.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public final class SyntheticJars {
+
+    private SyntheticJars() {
+    }
+
+    // -- public methods
+
+    /**
+     * Creates <code>count</code> service jars named <code>service-0.jar</code> and so on.
+     * The service <code>i</code> has its classes in the package <code>bench.service{i}</code>.
+     *
+     * @param directory       The directory the jars are written to
+     * @param count           Number of jars
+     * @param classesPerJar   Number of empty classes per jar
+     * @return List of the written jars
+     * @throws IOException if a jar can't be written
+     * */
+    public static List<File> createServiceJars(File directory, int count, int classesPerJar) throws IOException {
+        List<File> jars = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            File jar = new File(directory, "service-" + i + ".jar");
+            String packageName = packageOf(i);
+
+            try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+                out.putNextEntry(new ZipEntry("service.yml"));
+                out.write(("name: service-" + i + "\nmain: " + packageName + ".Class0\nenable: true\n")
+                        .getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+
+                for (int c = 0; c < classesPerJar; c++) {
+                    String className = packageName.replace('.', '/') + "/Class" + c;
+                    out.putNextEntry(new ZipEntry(className + ".class"));
+                    out.write(emptyClass(className));
+                    out.closeEntry();
+                }
+            }
+
+            jars.add(jar);
+        }
+
+        return jars;
+    }
+
+    /**
+     * @param service index of a synthetic service
+     * @return String the package the service's classes are in
+     * */
+    public static String packageOf(int service) {
+        return "bench.service" + service;
+    }
+
+    /**
+     * Deletes a directory created for a benchmark.
+     *
+     * @param directory the directory
+     * @throws IOException if a file can't be deleted
+     * */
+    public static void delete(File directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory.toPath())) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toArray(Path[]::new)) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    // -- private methods
+
+    /**
+     * A minimal, valid Java 8 class file: a public class
+     * extending Object without fields or methods.
+     * */
+    private static byte[] emptyClass(String internalName) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(52);
+
+        out.writeShort(5);
+        out.writeByte(7);
+        out.writeShort(2);
+        out.writeByte(1);
+        out.writeUTF(internalName);
+        out.writeByte(7);
+        out.writeShort(4);
+        out.writeByte(1);
+        out.writeUTF("java/lang/Object");
+
+        out.writeShort(0x0021);
+        out.writeShort(1);
+        out.writeShort(3);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(0);
+
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,122 @@
+package de.christianschliz.spigotms.api;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.util.Map;
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandMap;
+import org.bukkit.command.SimpleCommandMap;
+
+/**
+ * Resolves the server's command map and its <code>knownCommands</code>
+ * once per server instead of on every command registration. The
+ * reflective lookups are turned into method handles the first time
+ * they are needed and shared by all services.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+final class CommandMapHandle {
+
+    // -- static fields
+
+    private static final MethodHandle KNOWN_COMMANDS_GETTER = resolveKnownCommandsGetter();
+
+    private static volatile CommandMapHandle current;
+
+    // -- instance fields
+
+    private final Server server;
+    private final CommandMap commandMap;
+    private final Map<String, Command> knownCommands;
+
+    // -- constructors
+
+    private CommandMapHandle(Server server, CommandMap commandMap, Map<String, Command> knownCommands) {
+        this.server = server;
+        this.commandMap = commandMap;
+        this.knownCommands = knownCommands;
+    }
+
+    // -- public methods
+
+    /**
+     * Gets the handle of the running server, resolving it on first use.
+     *
+     * @return CommandMapHandle the handle
+     * @throws ReflectiveOperationException if the command map could not be accessed
+     * */
+    static CommandMapHandle get() throws ReflectiveOperationException {
+        CommandMapHandle handle = current;
+        Server server = Bukkit.getServer();
+
+        if (handle == null || handle.server != server) {
+            synchronized (CommandMapHandle.class) {
+                handle = current;
+
+                if (handle == null || handle.server != server) {
+                    handle = resolve(server);
+                    current = handle;
+                }
+            }
+        }
+
+        return handle;
+    }
+
+    // -- private methods
+
+    @SuppressWarnings("unchecked")
+    private static CommandMapHandle resolve(Server server) throws ReflectiveOperationException {
+        Field commandMapField = server.getClass().getDeclaredField("commandMap");
+        commandMapField.setAccessible(true);
+        MethodHandle commandMapGetter = MethodHandles.lookup().unreflectGetter(commandMapField);
+
+        try {
+            CommandMap commandMap = (CommandMap) commandMapGetter.invoke(server);
+            Map<String, Command> knownCommands = null;
+
+            if (KNOWN_COMMANDS_GETTER != null && commandMap instanceof SimpleCommandMap) {
+                knownCommands = (Map<String, Command>) KNOWN_COMMANDS_GETTER.invoke((SimpleCommandMap) commandMap);
+            }
+
+            return new CommandMapHandle(server, commandMap, knownCommands);
+        } catch (ReflectiveOperationException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable throwable) {
+            throw new IllegalAccessException(throwable.toString());
+        }
+    }
+
+    private static MethodHandle resolveKnownCommandsGetter() {
+        try {
+            Field knownCommands = SimpleCommandMap.class.getDeclaredField("knownCommands");
+            knownCommands.setAccessible(true);
+            return MethodHandles.lookup().unreflectGetter(knownCommands);
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            System.err.println("[SpigotMS] SimpleCommandMap.knownCommands is not accessible,"
+                    + " commands can't be removed on unload!");
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // -- getter and setter
+
+    /**
+     * @return CommandMap the command map of the server
+     * */
+    CommandMap getCommandMap() {
+        return commandMap;
+    }
+
+    /**
+     * @return Map of all registered commands by label, or null if not accessible
+     * */
+    Map<String, Command> getKnownCommands() {
+        return knownCommands;
+    }
+}
@@ -0,0 +1,41 @@
+package de.christianschliz.spigotms.api;
+
+import de.christianschliz.spigotms.api.metrics.LatencyHistogram;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+
+/**
+ * A command registered by a service, which passes every execution
+ * on to the service's executor and records how long it took.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+final class ServiceCommand extends Command {
+
+    private final CommandExecutor executor;
+    private final LatencyHistogram histogram;
+
+    /**
+     * @param label     command name
+     * @param executor  executor class
+     * @param histogram the timer executions are recorded to
+     * */
+    ServiceCommand(String label, CommandExecutor executor, LatencyHistogram histogram) {
+        super(label);
+        this.executor = executor;
+        this.histogram = histogram;
+    }
+
+    @Override
+    public boolean execute(CommandSender commandSender, String label, String[] args) {
+        long start = System.nanoTime();
+
+        try {
+            return executor.onCommand(commandSender, this, label, args);
+        } finally {
+            histogram.recordSince(start);
+        }
+    }
+}
@@ -1,15 +1,52 @@
 package de.christianschliz.spigotms.api;
 
+import de.christianschliz.spigotms.api.database.BinaryCodec;
+import de.christianschliz.spigotms.api.database.CodecRegistry;
+import de.christianschliz.spigotms.api.database.LeasedLock;
+import de.christianschliz.spigotms.api.database.LeasedRateLimiter;
+import de.christianschliz.spigotms.api.database.MySQLController;
+import de.christianschliz.spigotms.api.database.NearCache;
+import de.christianschliz.spigotms.api.database.RedisController;
+import de.christianschliz.spigotms.api.database.WriteBehindBuffer;
+import de.christianschliz.spigotms.api.event.AsyncEventListener;
+import de.christianschliz.spigotms.api.event.OverflowPolicy;
+import de.christianschliz.spigotms.api.event.ServiceEventQueue;
+import de.christianschliz.spigotms.api.messaging.Channel;
+import de.christianschliz.spigotms.api.messaging.MessageBus;
+import de.christianschliz.spigotms.api.messaging.MessageCodec;
+import de.christianschliz.spigotms.api.messaging.RequestChannel;
+import de.christianschliz.spigotms.api.messaging.Subscription;
+import de.christianschliz.spigotms.api.metrics.LatencyHistogram;
+import de.christianschliz.spigotms.api.metrics.LatencyRecordingListener;
+import de.christianschliz.spigotms.api.metrics.ServiceMetrics;
+import de.christianschliz.spigotms.api.metrics.ServiceThreadFactory;
+import de.christianschliz.spigotms.api.playerdata.PlayerDataCache;
+import de.christianschliz.spigotms.api.playerdata.PlayerDataType;
+import de.christianschliz.spigotms.api.scheduler.ServiceScheduler;
 import de.christianschliz.spigotms.plugin.SpigotMS;
-import org.bukkit.Bukkit;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandMap;
-import org.bukkit.command.CommandSender;
 import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.HandlerList;
 import org.bukkit.event.Listener;
-import java.lang.reflect.Field;
+import org.bukkit.plugin.RegisteredListener;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Spigot microservices superclass
@@ -23,11 +60,30 @@ public abstract class SpigotService {
     // -- instance fields
 
     private SpigotMS pluginInstance;
+    private String name;
 
     private boolean enabledByDefault;
     private boolean isEnabled;
 
-    private FileConfiguration configuration;
+    private Supplier<FileConfiguration> configuration;
+
+    private final List<Listener> registeredListeners = new ArrayList<>();
+    private final List<Command> registeredCommands = new ArrayList<>();
+    private final List<Subscription> subscriptions = new ArrayList<>();
+    private final List<PlayerDataType<?>> playerDataTypes = new ArrayList<>();
+    private final List<Class<?>> codecTypes = new ArrayList<>();
+    private final List<WriteBehindBuffer<?, ?>> writeBehindBuffers = new ArrayList<>();
+    private final List<NearCache<?, ?>> nearCaches = new ArrayList<>();
+    private final List<LeasedLock> locks = new ArrayList<>();
+    private final List<LeasedRateLimiter> rateLimiters = new ArrayList<>();
+
+    // borrowed on first use and returned on unload, never shared with a reloaded instance
+    private ServiceScheduler scheduler;
+    private ServiceEventQueue eventQueue;
+    private ExecutorService cpuExecutor;
+    private ExecutorService ioExecutor;
+    private ScheduledExecutorService scheduledExecutor;
+    private boolean released;
 
     // -- constructors
 
@@ -49,14 +105,34 @@ public abstract class SpigotService {
     protected void onEnable() {
     }
 
+    /**
+     * onEnableAsync is called on a worker thread before {@link SpigotService#onEnable()},
+     * if the service.yml sets <code>async-enable: true</code>. Slow initialisation
+     * like warming caches from a database belongs here, so it doesn't block the
+     * server thread or other services. The Bukkit API must not be used here.
+     * */
+    protected void onEnableAsync() {
+    }
+
+    /**
+     * Runs the asynchronous part of the enable phase. The service must be
+     * bound to the plugin first, as its time is recorded to its metrics.
+     *
+     * @throws IllegalStateException if the service isn't bound to the plugin
+     * */
+    public void doEnableAsync() {
+        long start = System.nanoTime();
+        onEnableAsync();
+        getMetrics().setEnableAsyncNanos(System.nanoTime() - start);
+    }
+
     /**
      * Check whether the service should be enabled by default
      * and does so if required.
      * */
     public void tryEnable() {
-        if (this.configuration.contains("enable") && this.configuration.getBoolean("enable")) {
-            this.isEnabled = true;
-            onEnable();
+        if (this.enabledByDefault) {
+            doEnable();
         }
     }
 
@@ -65,7 +141,9 @@ public abstract class SpigotService {
      * */
     public void doEnable() {
         this.isEnabled = true;
+        long start = System.nanoTime();
         onEnable();
+        getMetrics().setEnableNanos(System.nanoTime() - start);
     }
 
 
@@ -77,15 +155,71 @@ public abstract class SpigotService {
     }
 
     /**
-     * Disables the service
+     * Disables the service and unregisters its commands,
+     * so they can be registered again on the next enable.
      * */
     public void doDisable() {
+        if (this.isEnabled) {
+            onDisable();
+        }
+
         this.isEnabled = false;
+        unregisterCommands();
+    }
+
+    /**
+     * Unregisters all listeners, commands, message bus handlers, player
+     * data types and codecs this service registered through
+     * {@link SpigotService#registerEvents(Listener)},
+     * {@link SpigotService#registerCommand(String, CommandExecutor)},
+     * {@link SpigotService#subscribe(Channel, Consumer)},
+     * {@link SpigotService#respond(RequestChannel, Function)},
+     * {@link SpigotService#registerPlayerData(PlayerDataType)} and
+     * {@link SpigotService#registerCodec(Class, MessageCodec)}, closes the
+     * write-behind buffers, near-caches, locks and rate limiters it created through
+     * {@link SpigotService#writeBehind(String, WriteBehindBuffer.Binder, BinaryOperator, int, long)},
+     * {@link SpigotService#nearCache(String, int, long, NearCache.EvictionPolicy)},
+     * {@link SpigotService#lock(String, long)} and
+     * {@link SpigotService#rateLimiter(String, long, long, int, long)}, and
+     * returns the scheduler, event queue and executors it borrowed.
+     * Called by the service loader before the service gets unloaded.
+     * */
+    public void doUnregister() {
+        registeredListeners.forEach(HandlerList::unregisterAll);
+        registeredListeners.clear();
+        unregisterCommands();
+        subscriptions.forEach(Subscription::close);
+        subscriptions.clear();
+
+        if (!playerDataTypes.isEmpty()) {
+            playerDataTypes.forEach(getPlayerData()::unregister);
+            playerDataTypes.clear();
+        }
+
+        if (!codecTypes.isEmpty()) {
+            codecTypes.forEach(getCodecs()::unregister);
+            codecTypes.clear();
+        }
+
+        // flushes what is pending, the buffers of a reloaded instance are its own
+        writeBehindBuffers.forEach(WriteBehindBuffer::close);
+        writeBehindBuffers.clear();
+        nearCaches.forEach(NearCache::destroy);
+        nearCaches.clear();
+        locks.forEach(LeasedLock::release);
+        locks.clear();
+        rateLimiters.forEach(LeasedRateLimiter::release);
+        rateLimiters.clear();
+
+        releaseResources();
     }
 
     /**
      * On load is called when the service got loaded but before any other
      * service was enabled. It is ideal for loading states or configurations.
+     * When a service with <code>async-enable: true</code> is deployed or
+     * reloaded at runtime, onLoad runs right before
+     * {@link SpigotService#onEnableAsync()} on the same worker thread.
      * */
     protected void onLoad() {
     }
@@ -95,7 +229,9 @@ public abstract class SpigotService {
      * loaded into the local repository.
      * */
     public void doLoad() {
+        long start = System.nanoTime();
         onLoad();
+        getMetrics().setLoadNanos(System.nanoTime() - start);
     }
 
     /**
@@ -107,44 +243,391 @@ public abstract class SpigotService {
      * @param commandExecutor executor class
      * */
     protected void registerCommand(String commandLabel, CommandExecutor commandExecutor) {
+        registerCommands(Collections.singletonMap(commandLabel, commandExecutor));
+    }
+
+    /**
+     * Registers many commands in one pass, e.g. all subcommands
+     * of a service. See {@link SpigotService#registerCommand(String, CommandExecutor)}.
+     *
+     * @param commands command executors by command name
+     * */
+    protected void registerCommands(Map<String, CommandExecutor> commands) {
+        CommandMap commandMap;
+
         try {
-            final Field bukkitCommandMap = Bukkit.getServer().getClass().getDeclaredField("commandMap");
-            bukkitCommandMap.setAccessible(true);
-            CommandMap commandMap = (CommandMap) bukkitCommandMap.get(Bukkit.getServer());
-
-            commandMap.register(commandLabel, new Command(commandLabel) {
-                @Override
-                public boolean execute(CommandSender commandSender, String label, String[] args) {
-                    return commandExecutor.onCommand(commandSender, this, label, args);
-                }
-            });
-        } catch (NoSuchFieldException | IllegalAccessException e) {
-            System.err.printf("Failed to register command %s"
-                    + " because the commandMap could not be accessed!%n", commandLabel);
+            commandMap = CommandMapHandle.get().getCommandMap();
+        } catch (ReflectiveOperationException e) {
+            System.err.printf("Failed to register commands %s"
+                    + " because the commandMap could not be accessed!%n", commands.keySet());
             e.printStackTrace();
+            return;
+        }
+
+        ServiceMetrics metrics = getMetrics();
+
+        for (Map.Entry<String, CommandExecutor> entry : commands.entrySet()) {
+            Command command = new ServiceCommand(entry.getKey(), entry.getValue(),
+                    metrics.timer("command:" + entry.getKey()));
+            commandMap.register(entry.getKey(), command);
+            registeredCommands.add(command);
         }
     }
 
     /**
-     * Passes the listener class to the plugin manager so that
+     * Registers all event handlers of a listener class, so that
      * this long ass call doesn't need to be executed every
-     * time a listener class is registered.
+     * time a listener class is registered. The handler time of
+     * every event is recorded in the service metrics.
      *
      * @param eventListener listener class
      * */
     protected void registerEvents(Listener eventListener) {
-        this.pluginInstance.getServer().getPluginManager().registerEvents(eventListener, this.pluginInstance);
+        Map<Class<? extends Event>, Set<RegisteredListener>> listeners = this.pluginInstance.getPluginLoader()
+                .createRegisteredListeners(eventListener, this.pluginInstance);
+
+        for (Map.Entry<Class<? extends Event>, Set<RegisteredListener>> entry : listeners.entrySet()) {
+            try {
+                HandlerList handlerList = getHandlerList(entry.getKey());
+                LatencyHistogram histogram = getMetrics().timer("event:" + entry.getKey().getSimpleName()
+                        + ":" + eventListener.getClass().getSimpleName());
+
+                for (RegisteredListener registeredListener : entry.getValue()) {
+                    handlerList.register(new LatencyRecordingListener(registeredListener, histogram));
+                }
+            } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+                System.err.printf("Failed to register listener for %s"
+                        + " because it has no static getHandlerList method!%n", entry.getKey().getName());
+                e.printStackTrace();
+            }
+        }
+
+        registeredListeners.add(eventListener);
+    }
+
+    /**
+     * Registers a handler that runs off the main thread, on the event queue
+     * of this service. It is called for every event that wasn't cancelled,
+     * after all other listeners ran. See
+     * {@link SpigotService#registerAsyncEvent(Class, EventPriority, boolean, OverflowPolicy, Function, Consumer)}.
+     *
+     * @param eventClass event type
+     * @param snapshot copies what the handler needs out of the event, on the main thread
+     * @param handler handles the snapshot on the event thread of this service
+     * @param <E> event type
+     * @param <S> snapshot type
+     * */
+    protected <E extends Event, S> void registerAsyncEvent(Class<E> eventClass,
+                                                           Function<? super E, ? extends S> snapshot,
+                                                           Consumer<? super S> handler) {
+        registerAsyncEvent(eventClass, EventPriority.MONITOR, true,
+                this.pluginInstance.getEventDispatcher().getDefaultPolicy(), snapshot, handler);
+    }
+
+    /**
+     * Registers a handler that runs off the main thread. The snapshot
+     * function runs on the thread firing the event and must copy everything
+     * the handler needs into an immutable value, since Bukkit objects like
+     * players or blocks must not be touched from other threads. Returning
+     * null skips the event. The handlers of a service run one after another
+     * on a single thread, in the order the events were fired. If they fall
+     * behind and the queue of the service is full, the overflow policy decides
+     * whether events are dropped or the server waits.
+     *
+     * @param eventClass event type
+     * @param priority when the snapshot is taken, relative to other listeners
+     * @param ignoreCancelled whether cancelled events are skipped
+     * @param policy what to do if the event queue of this service is full
+     * @param snapshot copies what the handler needs out of the event, on the main thread
+     * @param handler handles the snapshot on the event thread of this service
+     * @param <E> event type
+     * @param <S> snapshot type
+     * */
+    protected <E extends Event, S> void registerAsyncEvent(Class<E> eventClass, EventPriority priority,
+                                                           boolean ignoreCancelled, OverflowPolicy policy,
+                                                           Function<? super E, ? extends S> snapshot,
+                                                           Consumer<? super S> handler) {
+        String eventName = eventClass.getSimpleName();
+        AsyncEventListener<E, S> listener = new AsyncEventListener<>(eventClass, snapshot, handler,
+                getEventQueue(), policy, getMetrics().timer("async-event:" + eventName));
+
+        try {
+            getHandlerList(eventClass).register(new LatencyRecordingListener(
+                    new RegisteredListener(listener, listener, priority, this.pluginInstance, ignoreCancelled),
+                    getMetrics().timer("event:" + eventName + ":async")));
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            System.err.printf("Failed to register async listener for %s"
+                    + " because it has no static getHandlerList method!%n", eventClass.getName());
+            e.printStackTrace();
+            return;
+        }
+
+        registeredListeners.add(listener);
+    }
+
+    /**
+     * Subscribes to a message bus channel. The subscription is
+     * closed when the service is unloaded. See {@link MessageBus}.
+     *
+     * @param channel the channel
+     * @param handler handles the messages off the main thread
+     * @param <T> message type
+     * */
+    protected <T> void subscribe(Channel<T> channel, Consumer<? super T> handler) {
+        subscriptions.add(getMessageBus().subscribe(channel, handler));
+    }
+
+    /**
+     * Answers requests on a message bus channel. The responder is
+     * removed when the service is unloaded. See {@link MessageBus}.
+     *
+     * @param channel the channel
+     * @param handler creates the reply off the main thread
+     * @param <Q> request type
+     * @param <R> reply type
+     * */
+    protected <Q, R> void respond(RequestChannel<Q, R> channel, Function<? super Q, ? extends R> handler) {
+        subscriptions.add(getMessageBus().respond(channel, handler));
+    }
+
+    /**
+     * Registers a type of player data with the shared player data cache.
+     * Pending changes are written and the type is removed when the service
+     * is unloaded. See {@link PlayerDataCache}.
+     *
+     * @param type the data type
+     * */
+    protected void registerPlayerData(PlayerDataType<?> type) {
+        getPlayerData().register(type);
+        playerDataTypes.add(type);
+    }
+
+    /**
+     * Registers a binary codec to store values of a type in Redis with,
+     * instead of the default codec. The codec is removed when the service
+     * is unloaded. See {@link CodecRegistry}.
+     *
+     * @param type the value type
+     * @param codec writes the values, must not change the format of stored values
+     * @param <T> value type
+     * @return BinaryCodec the codec to pass to Redisson per map or bucket
+     * */
+    protected <T> BinaryCodec<T> registerCodec(Class<T> type, MessageCodec<T> codec) {
+        BinaryCodec<T> binaryCodec = getCodecs().register(type, codec);
+        codecTypes.add(type);
+        return binaryCodec;
+    }
+
+    /**
+     * Creates a write-behind buffer on the MySQL controller, which writes
+     * changes in batches. The buffer is flushed and closed when the service
+     * is unloaded. See {@link MySQLController#writeBehind(String, WriteBehindBuffer.Binder,
+     * BinaryOperator, int, long)}.
+     *
+     * @param sql the statement executed for every pending key
+     * @param binder binds a key and its value to the statement parameters
+     * @param mergeFunction combines a pending value with a new write to the same key
+     * @param maxBatchSize number of pending keys that triggers a flush
+     * @param flushIntervalMillis maximum time a write stays buffered
+     * @param <K> key type
+     * @param <V> value type
+     * @return WriteBehindBuffer the buffer
+     * @throws IllegalStateException if MySQL is not enabled
+     * */
+    protected <K, V> WriteBehindBuffer<K, V> writeBehind(String sql, WriteBehindBuffer.Binder<K, V> binder,
+                                                         BinaryOperator<V> mergeFunction, int maxBatchSize,
+                                                         long flushIntervalMillis) {
+        MySQLController mysql = pluginInstance.getDatabaseControllers().mysql();
+
+        if (mysql == null) {
+            throw new IllegalStateException("Write-behind buffers need MySQL, which is not enabled");
+        }
+
+        WriteBehindBuffer<K, V> buffer = mysql.writeBehind(sql, binder, mergeFunction,
+                maxBatchSize, flushIntervalMillis);
+        writeBehindBuffers.add(buffer);
+        return buffer;
+    }
+
+    /**
+     * Creates a near-cache over a Redis map. It stops listening for
+     * invalidations when the service is unloaded. See
+     * {@link RedisController#nearCache(String, int, long, NearCache.EvictionPolicy)}.
+     *
+     * @param name the name of the Redis map
+     * @param maxSize maximum number of locally cached entries
+     * @param ttlMillis time after which a local entry is reloaded, 0 for no expiry
+     * @param evictionPolicy which entry is evicted when the cache is full
+     * @param <K> key type
+     * @param <V> value type
+     * @return NearCache the near-cache
+     * @throws IllegalStateException if Redis is not enabled
+     * */
+    protected <K, V> NearCache<K, V> nearCache(String name, int maxSize, long ttlMillis,
+                                               NearCache.EvictionPolicy evictionPolicy) {
+        NearCache<K, V> nearCache = getRedis("Near-caches").nearCache(name, maxSize, ttlMillis, evictionPolicy);
+        nearCaches.add(nearCache);
+        return nearCache;
+    }
+
+    /**
+     * Creates a lock shared by all servers. Its lease is given back
+     * when the service is unloaded. See {@link RedisController#lock(String, long)}.
+     *
+     * @param name the name of the lock
+     * @param leaseMillis time the lock is held in Redis per lease
+     * @return LeasedLock the lock
+     * @throws IllegalStateException if Redis is not enabled
+     * */
+    protected LeasedLock lock(String name, long leaseMillis) {
+        LeasedLock lock = getRedis("Shared locks").lock(name, leaseMillis);
+        locks.add(lock);
+        return lock;
+    }
+
+    /**
+     * Creates a rate limiter shared by all servers. Its unused tokens are
+     * given back when the service is unloaded.
+     * See {@link RedisController#rateLimiter(String, long, long, int, long)}.
+     *
+     * @param name the name of the limiter
+     * @param permits tokens all servers together may take per period
+     * @param periodMillis the period in milliseconds
+     * @param leaseSize tokens leased from Redis at once
+     * @param leaseMillis time after which unused leased tokens are dropped
+     * @return LeasedRateLimiter the rate limiter
+     * @throws IllegalStateException if Redis is not enabled
+     * */
+    protected LeasedRateLimiter rateLimiter(String name, long permits, long periodMillis,
+                                            int leaseSize, long leaseMillis) {
+        LeasedRateLimiter rateLimiter = getRedis("Shared rate limiters")
+                .rateLimiter(name, permits, periodMillis, leaseSize, leaseMillis);
+        rateLimiters.add(rateLimiter);
+        return rateLimiter;
     }
 
     /**
      * Unregisters all events from a listener class. This needs
      * to be called manually in onDisable() because the service
      * manager on purpose doesn't unregister events automatically.
+     * Only unloading a service, e.g. on reload, unregisters them.
      *
      * @param eventListener listener class
      * */
     protected void unregisterEvents(Listener eventListener) {
         HandlerList.unregisterAll(eventListener);
+        registeredListeners.remove(eventListener);
+    }
+
+    // -- private methods
+
+    private RedisController getRedis(String feature) {
+        RedisController redis = pluginInstance.getDatabaseControllers().redis();
+
+        if (redis == null) {
+            throw new IllegalStateException(feature + " need Redis, which is not enabled");
+        }
+
+        return redis;
+    }
+
+    private synchronized ServiceEventQueue getEventQueue() {
+        checkNotReleased();
+
+        if (eventQueue == null) {
+            eventQueue = pluginInstance.getEventDispatcher().register(name);
+        }
+
+        return eventQueue;
+    }
+
+    private void releaseResources() {
+        ServiceEventQueue releasedQueue;
+        ServiceScheduler releasedScheduler;
+        List<ExecutorService> releasedExecutors = new ArrayList<>();
+
+        synchronized (this) {
+            releasedQueue = eventQueue;
+            releasedScheduler = scheduler;
+            Collections.addAll(releasedExecutors, cpuExecutor, ioExecutor, scheduledExecutor);
+            eventQueue = null;
+            scheduler = null;
+            cpuExecutor = null;
+            ioExecutor = null;
+            scheduledExecutor = null;
+            released = true;
+        }
+
+        // queued events and tasks may still use the executors, so those go last
+        if (releasedQueue != null) {
+            pluginInstance.getEventDispatcher().unregister(releasedQueue);
+        }
+
+        if (releasedScheduler != null) {
+            pluginInstance.getTickScheduler().unregister(releasedScheduler);
+        }
+
+        for (ExecutorService executor : releasedExecutors) {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private void checkNotReleased() {
+        // a new scheduler or queue would never be unregistered again
+        if (released) {
+            throw new IllegalStateException("Service " + name + " is unloaded");
+        }
+    }
+
+    private void unregisterCommands() {
+        if (registeredCommands.isEmpty()) {
+            return;
+        }
+
+        try {
+            CommandMapHandle handle = CommandMapHandle.get();
+            Set<Command> commands = Collections.newSetFromMap(new IdentityHashMap<>());
+            commands.addAll(registeredCommands);
+
+            for (Command command : commands) {
+                command.unregister(handle.getCommandMap());
+            }
+
+            if (handle.getKnownCommands() != null) {
+                handle.getKnownCommands().values().removeIf(commands::contains);
+            }
+        } catch (ReflectiveOperationException e) {
+            System.err.println("Failed to unregister commands"
+                    + " because the commandMap could not be accessed!");
+            e.printStackTrace();
+        }
+
+        registeredCommands.clear();
+    }
+
+    private static HandlerList getHandlerList(Class<? extends Event> eventClass)
+            throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+        // Like the plugin manager, look for the declaring class of getHandlerList
+        Class<?> registrationClass = eventClass;
+
+        while (true) {
+            try {
+                Method method = registrationClass.getDeclaredMethod("getHandlerList");
+                method.setAccessible(true);
+                return (HandlerList) method.invoke(null);
+            } catch (NoSuchMethodException exception) {
+                Class<?> superclass = registrationClass.getSuperclass();
+
+                if (superclass == null || superclass == Event.class
+                        || !Event.class.isAssignableFrom(superclass)) {
+                    throw exception;
+                }
+
+                registrationClass = superclass;
+            }
+        }
     }
 
     // -- getter and setter
@@ -156,6 +639,157 @@ public abstract class SpigotService {
         return pluginInstance;
     }
 
+    /**
+     * Gets the metrics of this service, e.g. to time custom
+     * operations with {@link ServiceMetrics#timer(String)}.
+     *
+     * @return ServiceMetrics metrics of this service
+     * @throws IllegalStateException if the service isn't bound to the plugin yet
+     * */
+    public ServiceMetrics getMetrics() {
+        if (pluginInstance == null) {
+            throw new IllegalStateException("Service " + name + " is not bound to the plugin");
+        }
+
+        return pluginInstance.getMetricsRegistry().forService(name);
+    }
+
+    /**
+     * Gets a thread factory for the executors and threads of this service.
+     * Its threads are named after the service and accounted to it in
+     * <code>/ms list</code>, with their allocations.
+     *
+     * @param prefix The thread name prefix, e.g. <code>worker</code>
+     * @return ServiceThreadFactory thread factory of this service
+     * */
+    public ServiceThreadFactory getThreadFactory(String prefix) {
+        return getMetrics().threadFactory(prefix);
+    }
+
+    /**
+     * Gets the main-thread scheduler of this service. Work submitted here
+     * runs within the service's time budget per tick and is deferred to
+     * the next tick when the budget is used up.
+     *
+     * @return ServiceScheduler scheduler of this service
+     * @throws IllegalStateException if the service is unloaded
+     * */
+    public synchronized ServiceScheduler getScheduler() {
+        checkNotReleased();
+
+        if (scheduler == null) {
+            scheduler = pluginInstance.getTickScheduler().register(name);
+        }
+
+        return scheduler;
+    }
+
+    /**
+     * Gets this service's view of the shared pool for computations, which
+     * has one thread per CPU core. Use it instead of creating own pools.
+     * Shutting the view down doesn't affect other services; it is shut
+     * down when the service is unloaded.
+     *
+     * @return ExecutorService cpu pool of this service
+     * @throws IllegalStateException if the service is unloaded
+     * */
+    public synchronized ExecutorService getCpuExecutor() {
+        checkNotReleased();
+
+        if (cpuExecutor == null) {
+            cpuExecutor = pluginInstance.getExecutorRegistry().cpuView(name);
+        }
+
+        return cpuExecutor;
+    }
+
+    /**
+     * Gets this service's view of the shared pool for blocking calls,
+     * e.g. files or HTTP. See {@link SpigotService#getCpuExecutor()}.
+     *
+     * @return ExecutorService io pool of this service
+     * @throws IllegalStateException if the service is unloaded
+     * */
+    public synchronized ExecutorService getIoExecutor() {
+        checkNotReleased();
+
+        if (ioExecutor == null) {
+            ioExecutor = pluginInstance.getExecutorRegistry().ioView(name);
+        }
+
+        return ioExecutor;
+    }
+
+    /**
+     * Gets this service's view of the shared pool for delayed and periodic
+     * tasks off the main thread. See {@link SpigotService#getCpuExecutor()}.
+     *
+     * @return ScheduledExecutorService scheduled pool of this service
+     * @throws IllegalStateException if the service is unloaded
+     * */
+    public synchronized ScheduledExecutorService getScheduledExecutor() {
+        checkNotReleased();
+
+        if (scheduledExecutor == null) {
+            scheduledExecutor = pluginInstance.getExecutorRegistry().scheduledView(name);
+        }
+
+        return scheduledExecutor;
+    }
+
+    /**
+     * Gets the message bus to publish messages and send requests to
+     * services on other servers.
+     *
+     * @return MessageBus the message bus
+     * @throws IllegalStateException if Redis is not enabled
+     * */
+    public MessageBus getMessageBus() {
+        if (pluginInstance.getDatabaseControllers().redis() == null) {
+            throw new IllegalStateException("The message bus needs Redis, which is not enabled");
+        }
+
+        return pluginInstance.getDatabaseControllers().redis().messageBus();
+    }
+
+    /**
+     * Gets the registry of the binary codecs Redis values are stored with.
+     *
+     * @return CodecRegistry the codec registry
+     * @throws IllegalStateException if Redis is not enabled
+     * */
+    public CodecRegistry getCodecs() {
+        if (pluginInstance.getDatabaseControllers().redis() == null) {
+            throw new IllegalStateException("Codecs need Redis, which is not enabled");
+        }
+
+        return pluginInstance.getDatabaseControllers().redis().codecs();
+    }
+
+    /**
+     * Gets the shared player data cache, which has the data of online
+     * players in memory once they joined.
+     *
+     * @return PlayerDataCache the player data cache
+     * */
+    public PlayerDataCache getPlayerData() {
+        return pluginInstance.getPlayerDataCache();
+    }
+
+    /**
+     * @return String the unique service name from the service.yml
+     * */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param name the unique service name from the service.yml
+     * */
+    public void setName(String name) {
+        this.name = name;
+    }
+
     /**
      * @param pluginInstance new plugin instance
      * */
@@ -174,9 +808,24 @@ public abstract class SpigotService {
      * @param configuration links the service.yml config to the service class
      * */
     public void setConfiguration(FileConfiguration configuration) {
+        this.configuration = () -> configuration;
+    }
+
+    /**
+     * @param configuration links the service.yml config to the service class,
+     *                      which is only parsed when the service asks for it
+     * */
+    public void setConfiguration(Supplier<FileConfiguration> configuration) {
         this.configuration = configuration;
     }
 
+    /**
+     * @return FileConfiguration the service.yml of this service
+     * */
+    public FileConfiguration getConfiguration() {
+        return configuration.get();
+    }
+
     /**
      * @return boolean whether the service should be enabled after loading
      * */
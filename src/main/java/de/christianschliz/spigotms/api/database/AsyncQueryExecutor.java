@@ -0,0 +1,378 @@
+package de.christianschliz.spigotms.api.database;
+
+import de.christianschliz.spigotms.api.metrics.LatencyHistogram;
+import de.christianschliz.spigotms.api.metrics.MetricsRegistry;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.sql.DataSource;
+
+/**
+ * Runs JDBC work on a dedicated, bounded thread pool that is sized to the
+ * connection pool, so queries never block the server thread and never wait
+ * for a connection inside a worker. Every service has its own queue limit,
+ * so a single noisy service can't starve the pool for all others.
+ *
+ * <p>Reads submitted through {@link AsyncQueryExecutor#submitRead(String, SqlFunction)}
+ * or {@link AsyncQueryExecutor#queryRead(String, String, SqlFunction, Object...)},
+ * or as a {@link SqlFunction} class annotated with {@link ReadReplica}, run on
+ * a read replica chosen by the {@link ReplicaRouter}. Everything else runs
+ * on the primary. Reads have their own workers, sized to the replica pools,
+ * so a burst of reads never holds up writes and the other way round.</p>
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public final class AsyncQueryExecutor {
+
+    // -- static fields
+
+    private static final String UNATTRIBUTED_SERVICE = "unattributed";
+
+    private static final ClassValue<Boolean> READ_ONLY = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(final Class<?> type) {
+            return type.isAnnotationPresent(ReadReplica.class);
+        }
+    };
+
+    // -- instance fields
+
+    private final DataSource dataSource;
+    private final ReplicaRouter router;
+    private final ThreadPoolExecutor executor;
+    private final ThreadPoolExecutor readExecutor;
+    private final int serviceQueueLimit;
+    private final Map<String, ServiceStats> stats;
+
+    private volatile Executor mainThreadExecutor = Runnable::run;
+    private volatile MetricsRegistry metricsRegistry;
+
+    // -- constructors
+
+    /**
+     * @param dataSource        The connection pool queries are run against
+     * @param threads           Number of worker threads, usually the connection pool size
+     * @param queueCapacity     Maximum number of queued queries over all services
+     * @param serviceQueueLimit Maximum number of queued or running queries per service
+     * */
+    public AsyncQueryExecutor(final DataSource dataSource, final int threads,
+                              final int queueCapacity, final int serviceQueueLimit) {
+        this(dataSource, null, threads, 0, queueCapacity, serviceQueueLimit);
+    }
+
+    /**
+     * @param dataSource        The primary connection pool
+     * @param router            The router reads are run through, or null to read from the primary
+     * @param threads           Number of worker threads for the primary, usually its pool size
+     * @param readThreads       Number of worker threads for reads, usually the size of all replica
+     *                          pools, or 0 to run reads on the workers of the primary
+     * @param queueCapacity     Maximum number of queued queries over all services, per group of workers
+     * @param serviceQueueLimit Maximum number of queued or running queries per service
+     * */
+    public AsyncQueryExecutor(final DataSource dataSource, final ReplicaRouter router, final int threads,
+                              final int readThreads, final int queueCapacity, final int serviceQueueLimit) {
+        this.dataSource = dataSource;
+        this.router = router;
+        this.serviceQueueLimit = serviceQueueLimit;
+        this.stats = new ConcurrentHashMap<>();
+
+        this.executor = workers("SpigotMS-MySQL-", threads, queueCapacity);
+        this.readExecutor = router != null && readThreads > 0
+                ? workers("SpigotMS-MySQL-Read-", readThreads, queueCapacity)
+                : executor;
+    }
+
+    // -- public methods
+
+    /**
+     * Runs arbitrary work with a pooled connection off the main thread, on
+     * the primary unless the class of the work is annotated with {@link ReadReplica}.
+     *
+     * @param service The name of the calling service, used for queue limits and metrics, may be null
+     * @param work    The work to run with the connection
+     * @param <T>     result type
+     * @return CompletableFuture completed with the result on a database worker thread
+     * */
+    public <T> CompletableFuture<T> submit(final String service, final SqlFunction<Connection, T> work) {
+        return submit(service, work, READ_ONLY.get(work.getClass()));
+    }
+
+    /**
+     * Runs a read with a pooled connection of a read replica off the main thread.
+     *
+     * @param service The name of the calling service, used for queue limits and metrics, may be null
+     * @param work    The read to run with the connection, must not write
+     * @param <T>     result type
+     * @return CompletableFuture completed with the result on a database worker thread
+     * @see ReplicaRouter#read(SqlFunction)
+     * */
+    public <T> CompletableFuture<T> submitRead(final String service, final SqlFunction<Connection, T> work) {
+        return submit(service, work, true);
+    }
+
+    /**
+     * Runs a query off the main thread.
+     *
+     * @param service The name of the calling service, may be null
+     * @param sql     The SQL query with <code>?</code> placeholders
+     * @param mapper  Maps the result set to the result, runs on the database worker thread
+     * @param params  The query parameters
+     * @param <T>     result type
+     * @return CompletableFuture completed with the mapped result
+     * */
+    public <T> CompletableFuture<T> query(final String service, final String sql,
+                                          final SqlFunction<ResultSet, T> mapper,
+                                          final Object... params) {
+        return submit(service, statement(sql, mapper, params), false);
+    }
+
+    /**
+     * Runs a query on a read replica off the main thread, e.g. for
+     * leaderboards that may be slightly behind the primary.
+     *
+     * @param service The name of the calling service, may be null
+     * @param sql     The SQL query with <code>?</code> placeholders
+     * @param mapper  Maps the result set to the result, runs on the database worker thread
+     * @param params  The query parameters
+     * @param <T>     result type
+     * @return CompletableFuture completed with the mapped result
+     * */
+    public <T> CompletableFuture<T> queryRead(final String service, final String sql,
+                                              final SqlFunction<ResultSet, T> mapper,
+                                              final Object... params) {
+        return submit(service, statement(sql, mapper, params), true);
+    }
+
+    /**
+     * Runs an insert, update or delete statement off the main thread.
+     *
+     * @param service The name of the calling service, may be null
+     * @param sql     The SQL statement with <code>?</code> placeholders
+     * @param params  The statement parameters
+     * @return CompletableFuture completed with the number of affected rows
+     * */
+    public CompletableFuture<Integer> update(final String service, final String sql, final Object... params) {
+        return submit(service, connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                bind(statement, params);
+                return statement.executeUpdate();
+            }
+        }, false);
+    }
+
+    /**
+     * Hands the result of a query over to the server thread, e.g.
+     * <code>executor.sync(executor.query(...)).thenAccept(result -> player.sendMessage(...))</code>.
+     *
+     * @param future A future returned by this executor
+     * @param <T>    result type
+     * @return CompletableFuture whose dependent actions run on the server thread
+     * */
+    public <T> CompletableFuture<T> sync(final CompletableFuture<T> future) {
+        CompletableFuture<T> synced = new CompletableFuture<>();
+
+        future.whenComplete((result, throwable) -> mainThreadExecutor.execute(() -> {
+            if (throwable != null) {
+                synced.completeExceptionally(throwable instanceof CompletionException
+                        ? throwable.getCause() : throwable);
+            } else {
+                synced.complete(result);
+            }
+        }));
+
+        return synced;
+    }
+
+    /**
+     * Stops accepting new work and waits for running queries to finish.
+     *
+     * @param timeoutMillis maximum time to wait
+     * */
+    public void shutdown(final long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        executor.shutdown();
+        readExecutor.shutdown();
+
+        try {
+            executor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            readExecutor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // -- private methods
+
+    private <T> CompletableFuture<T> submit(final String serviceName, final SqlFunction<Connection, T> work,
+                                            final boolean read) {
+        // work from outside a service shares one queue limit instead of failing on the map key
+        String service = serviceName != null ? serviceName : UNATTRIBUTED_SERVICE;
+        ServiceStats serviceStats = stats.computeIfAbsent(service, name -> new ServiceStats(
+                metricsRegistry != null ? metricsRegistry.forService(name).timer("mysql") : new LatencyHistogram()));
+        CompletableFuture<T> future = new CompletableFuture<>();
+
+        if (serviceStats.pending.incrementAndGet() > serviceQueueLimit) {
+            serviceStats.pending.decrementAndGet();
+            serviceStats.rejected.increment();
+            future.completeExceptionally(new RejectedExecutionException(
+                    "Query queue limit of " + serviceQueueLimit + " reached for service " + service));
+            return future;
+        }
+
+        try {
+            (read ? readExecutor : executor).execute(() -> {
+                long start = System.nanoTime();
+
+                try {
+                    future.complete(read && router != null ? router.read(work) : runOnPrimary(work));
+                } catch (SQLException | RuntimeException exception) {
+                    future.completeExceptionally(exception);
+                } finally {
+                    serviceStats.latency.recordSince(start);
+                    serviceStats.pending.decrementAndGet();
+                    serviceStats.completed.increment();
+                }
+            });
+        } catch (RejectedExecutionException exception) {
+            serviceStats.pending.decrementAndGet();
+            serviceStats.rejected.increment();
+            future.completeExceptionally(exception);
+        }
+
+        return future;
+    }
+
+    private static ThreadPoolExecutor workers(final String prefix, final int threads, final int queueCapacity) {
+        AtomicInteger counter = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    private <T> T runOnPrimary(final SqlFunction<Connection, T> work) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            return work.apply(connection);
+        }
+    }
+
+    private static <T> SqlFunction<Connection, T> statement(final String sql, final SqlFunction<ResultSet, T> mapper,
+                                                            final Object... params) {
+        return connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                bind(statement, params);
+
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    return mapper.apply(resultSet);
+                }
+            }
+        };
+    }
+
+    private static void bind(final PreparedStatement statement, final Object... params)
+            throws SQLException {
+        for (int i = 0; i < params.length; i++) {
+            statement.setObject(i + 1, params[i]);
+        }
+    }
+
+    // -- getter and setter
+
+    /**
+     * @param mainThreadExecutor Executor that runs tasks on the server thread
+     * */
+    public void setMainThreadExecutor(final Executor mainThreadExecutor) {
+        this.mainThreadExecutor = mainThreadExecutor;
+    }
+
+    /**
+     * @param metricsRegistry Registry the query latency of every service is recorded to
+     * */
+    public void setMetricsRegistry(final MetricsRegistry metricsRegistry) {
+        this.metricsRegistry = metricsRegistry;
+    }
+
+    /**
+     * @return Executor that runs tasks on the server thread, for use with <code>thenAcceptAsync</code>
+     * */
+    public Executor getMainThreadExecutor() {
+        return mainThreadExecutor;
+    }
+
+    /**
+     * @return Map of queue and rejection metrics by service name
+     * */
+    public Map<String, ServiceStats> getStats() {
+        return Collections.unmodifiableMap(new HashMap<>(stats));
+    }
+
+    /**
+     * @return int number of queries waiting for a worker thread
+     * */
+    public int getQueueSize() {
+        return readExecutor == executor ? executor.getQueue().size()
+                : executor.getQueue().size() + readExecutor.getQueue().size();
+    }
+
+    // -- inner classes
+
+    /**
+     * Queue and rejection metrics of a single service.
+     * */
+    public static final class ServiceStats {
+
+        private final AtomicInteger pending = new AtomicInteger();
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LatencyHistogram latency;
+
+        private ServiceStats(final LatencyHistogram latency) {
+            this.latency = latency;
+        }
+
+        /**
+         * @return int queries queued or running right now
+         * */
+        public int getPending() {
+            return pending.get();
+        }
+
+        /**
+         * @return long queries that have finished, successfully or not
+         * */
+        public long getCompleted() {
+            return completed.sum();
+        }
+
+        /**
+         * @return long queries rejected because a queue limit was reached
+         * */
+        public long getRejected() {
+            return rejected.sum();
+        }
+
+        /**
+         * @return LatencyHistogram time from a worker picking the query up until it finished
+         * */
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+    }
+}
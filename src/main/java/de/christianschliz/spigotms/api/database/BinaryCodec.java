@@ -0,0 +1,296 @@
+package de.christianschliz.spigotms.api.database;
+
+import de.christianschliz.spigotms.api.messaging.MessageCodec;
+import de.christianschliz.spigotms.api.metrics.LatencyHistogram;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+import org.redisson.client.codec.BaseCodec;
+import org.redisson.client.handler.State;
+import org.redisson.client.protocol.Decoder;
+import org.redisson.client.protocol.Encoder;
+
+/**
+ * A Redisson codec that stores values of one type in the compact binary
+ * form of a {@link MessageCodec}, instead of the default codec's Java
+ * serialization with class names and field descriptors.
+ *
+ * <p>Every value starts with a format byte. Values whose encoded size
+ * reaches the compression threshold are compressed with LZ4, if that
+ * makes them smaller, followed by their uncompressed length.</p>
+ *
+ * <p>Codecs are created through {@link CodecRegistry#register(Class, MessageCodec)}
+ * and passed to Redisson per map or bucket:</p>
+ * <pre>
+ * RMap&lt;UUID, Stats&gt; stats = redis.get().getMap("stats", codecs.codec(UUID.class, Stats.class));
+ * </pre>
+ *
+ * @param <T> value type
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public final class BinaryCodec<T> extends BaseCodec {
+
+    // -- static fields
+
+    private static final byte FORMAT_RAW = 0;
+    private static final byte FORMAT_LZ4 = 1;
+    private static final int LZ4_HEADER_SIZE = 1 + Integer.BYTES;
+    /** LZ4 can't expand a byte to more than this many, so a larger length is a corrupt header */
+    private static final int MAX_COMPRESSION_RATIO = 255;
+    /** the largest value Redis stores */
+    private static final int MAX_RAW_LENGTH = 512 * 1024 * 1024;
+
+    private static final LZ4Compressor COMPRESSOR = LZ4Factory.fastestInstance().fastCompressor();
+    private static final LZ4SafeDecompressor DECOMPRESSOR = LZ4Factory.fastestInstance().safeDecompressor();
+
+    // -- instance fields
+
+    private final Class<T> type;
+    private final MessageCodec<T> codec;
+    private final int compressionThreshold;
+
+    private final LatencyHistogram encodeLatency;
+    private final LatencyHistogram decodeLatency;
+    private final LongAdder rawBytes;
+    private final LongAdder storedBytes;
+    private final LongAdder compressedValues;
+
+    private final Encoder encoder;
+    private final Decoder<Object> decoder;
+
+    // -- constructors
+
+    /**
+     * @param type                 The value type
+     * @param codec                Writes the values
+     * @param compressionThreshold Encoded size from which values are compressed, 0 to never compress
+     * @param encodeLatency        The timer encoding is recorded to
+     * @param decodeLatency        The timer decoding is recorded to
+     * @param rawBytes             Counts the encoded bytes before compression
+     * @param storedBytes          Counts the bytes sent to Redis
+     * */
+    BinaryCodec(final Class<T> type, final MessageCodec<T> codec, final int compressionThreshold,
+                final LatencyHistogram encodeLatency, final LatencyHistogram decodeLatency,
+                final LongAdder rawBytes, final LongAdder storedBytes) {
+        this.type = type;
+        this.codec = codec;
+        this.compressionThreshold = compressionThreshold;
+
+        this.encodeLatency = encodeLatency;
+        this.decodeLatency = decodeLatency;
+        this.rawBytes = rawBytes;
+        this.storedBytes = storedBytes;
+        this.compressedValues = new LongAdder();
+
+        this.encoder = this::encode;
+        this.decoder = this::decode;
+    }
+
+    // -- public methods
+
+    @Override
+    public Encoder getValueEncoder() {
+        return encoder;
+    }
+
+    @Override
+    public Decoder<Object> getValueDecoder() {
+        return decoder;
+    }
+
+    @Override
+    public ClassLoader getClassLoader() {
+        return type.getClassLoader() != null ? type.getClassLoader() : super.getClassLoader();
+    }
+
+    @Override
+    public String toString() {
+        return "BinaryCodec[" + type.getName() + "]";
+    }
+
+    // -- private methods
+
+    private ByteBuf encode(final Object value) throws IOException {
+        long start = System.nanoTime();
+        ByteBuf out = ByteBufAllocator.DEFAULT.buffer();
+
+        try {
+            out.writeByte(FORMAT_RAW);
+            codec.encode(type.cast(value), new ByteBufOutputStream(out));
+            int rawLength = out.readableBytes() - 1;
+
+            if (compressionThreshold > 0 && rawLength >= compressionThreshold) {
+                ByteBuf compressed = compress(out, rawLength);
+
+                if (compressed != null) {
+                    out.release();
+                    out = compressed;
+                    compressedValues.increment();
+                }
+            }
+
+            rawBytes.add(rawLength);
+            storedBytes.add(out.readableBytes());
+            return out;
+        } catch (IOException | RuntimeException exception) {
+            out.release();
+            throw exception;
+        } finally {
+            encodeLatency.recordSince(start);
+        }
+    }
+
+    private Object decode(final ByteBuf buf, final State state) throws IOException {
+        long start = System.nanoTime();
+        byte format = buf.readByte();
+        ByteBuf decompressed = null;
+
+        try {
+            if (format == FORMAT_LZ4) {
+                decompressed = decompress(buf);
+                return codec.decode(new ByteBufInputStream(decompressed));
+            } else if (format == FORMAT_RAW) {
+                return codec.decode(new ByteBufInputStream(buf));
+            }
+
+            throw new IOException("Unknown format " + format + " of a " + type.getName() + " value");
+        } finally {
+            if (decompressed != null) {
+                decompressed.release();
+            }
+
+            decodeLatency.recordSince(start);
+        }
+    }
+
+    /**
+     * @return ByteBuf the compressed value, or null if it isn't smaller than the raw one
+     * */
+    private static ByteBuf compress(final ByteBuf raw, final int rawLength) {
+        int maxLength = COMPRESSOR.maxCompressedLength(rawLength);
+        ByteBuf compressed = ByteBufAllocator.DEFAULT.buffer(LZ4_HEADER_SIZE + maxLength);
+        compressed.writeByte(FORMAT_LZ4);
+        compressed.writeInt(rawLength);
+
+        ByteBuffer source = raw.nioBuffer(1, rawLength);
+        ByteBuffer target = compressed.nioBuffer(LZ4_HEADER_SIZE, maxLength);
+        int length = COMPRESSOR.compress(source, source.position(), rawLength,
+                target, target.position(), maxLength);
+
+        if (LZ4_HEADER_SIZE + length >= 1 + rawLength) {
+            compressed.release();
+            return null;
+        }
+
+        compressed.writerIndex(LZ4_HEADER_SIZE + length);
+        return compressed;
+    }
+
+    private static ByteBuf decompress(final ByteBuf buf) throws IOException {
+        int rawLength = buf.readInt();
+        int compressedLength = buf.readableBytes();
+
+        // checked before allocating, a corrupt header must not reserve gigabytes
+        if (rawLength < 0 || rawLength > MAX_RAW_LENGTH
+                || rawLength > (long) compressedLength * MAX_COMPRESSION_RATIO) {
+            throw new IOException("Invalid length " + rawLength + " of a compressed value of "
+                    + compressedLength + " bytes");
+        }
+
+        ByteBuf raw = ByteBufAllocator.DEFAULT.buffer(rawLength);
+
+        try {
+            ByteBuffer source = buf.nioBuffer();
+            ByteBuffer target = raw.nioBuffer(0, rawLength);
+            int written = DECOMPRESSOR.decompress(source, source.position(), compressedLength,
+                    target, target.position(), rawLength);
+
+            if (written != rawLength) {
+                throw new IOException("Compressed value has " + written + " bytes instead of " + rawLength);
+            }
+
+            buf.skipBytes(compressedLength);
+            raw.writerIndex(rawLength);
+            return raw;
+        } catch (IOException exception) {
+            raw.release();
+            throw exception;
+        } catch (RuntimeException exception) {
+            raw.release();
+            throw new IOException("Malformed compressed value", exception);
+        }
+    }
+
+    // -- getter and setter
+
+    /**
+     * @return Class the value type
+     * */
+    public Class<T> getType() {
+        return type;
+    }
+
+    /**
+     * @return int encoded size from which values are compressed, 0 if they never are
+     * */
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * @return long values encoded since the codec was registered
+     * */
+    public long getEncodedCount() {
+        return encodeLatency.getCount();
+    }
+
+    /**
+     * @return long values that were stored compressed
+     * */
+    public long getCompressedCount() {
+        return compressedValues.sum();
+    }
+
+    /**
+     * @return long encoded bytes of all values, before compression
+     * */
+    public long getRawBytes() {
+        return rawBytes.sum();
+    }
+
+    /**
+     * @return long bytes of all values sent to Redis, with format bytes
+     * */
+    public long getStoredBytes() {
+        return storedBytes.sum();
+    }
+
+    /**
+     * @return long bytes compression saved, may be negative by the format bytes of small values
+     * */
+    public long getSavedBytes() {
+        return getRawBytes() - getStoredBytes();
+    }
+
+    /**
+     * @return LatencyHistogram time spent encoding values
+     * */
+    public LatencyHistogram getEncodeLatency() {
+        return encodeLatency;
+    }
+
+    /**
+     * @return LatencyHistogram time spent decoding values
+     * */
+    public LatencyHistogram getDecodeLatency() {
+        return decodeLatency;
+    }
+}
@@ -0,0 +1,165 @@
+package de.christianschliz.spigotms.api.database;
+
+import de.christianschliz.spigotms.api.messaging.MessageCodec;
+import de.christianschliz.spigotms.api.metrics.LatencyHistogram;
+import de.christianschliz.spigotms.api.metrics.MetricsRegistry;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.redisson.client.codec.Codec;
+import org.redisson.codec.CompositeCodec;
+
+/**
+ * Holds the {@link BinaryCodec binary codecs} services store their Redis
+ * values with, one per type. Services register a codec for each of their
+ * types and pick it per map or bucket; everything else keeps using the
+ * default codec. <code>String</code>, <code>Long</code> and <code>UUID</code>
+ * are registered for keys.
+ *
+ * <p>Encoding and decoding time, the encoded and the stored bytes of the
+ * codecs services register are recorded as database metrics, so the space
+ * compression saves can be compared with the time it costs.</p>
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public final class CodecRegistry {
+
+    // -- instance fields
+
+    private final int defaultCompressionThreshold;
+    private final MetricsRegistry metricsRegistry;
+    private final Map<Class<?>, BinaryCodec<?>> codecs;
+
+    // -- constructors
+
+    /**
+     * @param defaultCompressionThreshold Encoded size from which values are compressed, 0 to never compress
+     * @param metricsRegistry             Registry the codec metrics are recorded to, may be null
+     * */
+    CodecRegistry(final int defaultCompressionThreshold, final MetricsRegistry metricsRegistry) {
+        this.defaultCompressionThreshold = defaultCompressionThreshold;
+        this.metricsRegistry = metricsRegistry;
+        this.codecs = new ConcurrentHashMap<>();
+
+        // keys are short, compression would only add the length; their metrics are
+        // only shown in /ms stats, so servers without codecs export no empty series
+        register(String.class, MessageCodec.STRING, 0, false);
+        register(Long.class, MessageCodec.LONG, 0, false);
+        register(UUID.class, MessageCodec.UNIQUE_ID, 0, false);
+    }
+
+    // -- public methods
+
+    /**
+     * Registers a codec with the default compression threshold.
+     *
+     * @param type  The value type
+     * @param codec Writes the values, must not change the format of stored values
+     * @param <T>   value type
+     * @return BinaryCodec the codec to pass to Redisson
+     * @throws IllegalStateException if a codec for the type is registered
+     * */
+    public <T> BinaryCodec<T> register(final Class<T> type, final MessageCodec<T> codec) {
+        return register(type, codec, defaultCompressionThreshold);
+    }
+
+    /**
+     * @param type                 The value type
+     * @param codec                Writes the values, must not change the format of stored values
+     * @param compressionThreshold Encoded size from which values are compressed, 0 to never compress
+     * @param <T>                  value type
+     * @return BinaryCodec the codec to pass to Redisson
+     * @throws IllegalStateException if a codec for the type is registered
+     * */
+    public <T> BinaryCodec<T> register(final Class<T> type, final MessageCodec<T> codec,
+                                       final int compressionThreshold) {
+        return register(type, codec, compressionThreshold, true);
+    }
+
+    /**
+     * Removes the codec of a type, e.g. when the service owning the
+     * type is unloaded.
+     *
+     * @param type The value type
+     * */
+    public void unregister(final Class<?> type) {
+        codecs.remove(type);
+    }
+
+    /**
+     * @param type The value type
+     * @param <T>  value type
+     * @return BinaryCodec the codec of the type
+     * @throws IllegalStateException if no codec for the type is registered
+     * */
+    @SuppressWarnings("unchecked")
+    public <T> BinaryCodec<T> codec(final Class<T> type) {
+        BinaryCodec<?> codec = codecs.get(type);
+
+        if (codec == null) {
+            throw new IllegalStateException("No codec for " + type.getName() + " is registered");
+        }
+
+        return (BinaryCodec<T>) codec;
+    }
+
+    /**
+     * Gets a codec for maps, which writes keys and values with the
+     * codecs of their types.
+     *
+     * @param keyType   The key type
+     * @param valueType The value type
+     * @return Codec the codec to pass to Redisson
+     * @throws IllegalStateException if no codec for one of the types is registered
+     * */
+    public Codec codec(final Class<?> keyType, final Class<?> valueType) {
+        return new CompositeCodec(codec(keyType), codec(valueType));
+    }
+
+    // -- private methods
+
+    private <T> BinaryCodec<T> register(final Class<T> type, final MessageCodec<T> codec,
+                                        final int compressionThreshold, final boolean exported) {
+        MetricsRegistry metrics = exported ? metricsRegistry : null;
+        String name = type.getSimpleName();
+        BinaryCodec<T> binaryCodec = new BinaryCodec<>(type, codec, compressionThreshold,
+                timer(metrics, "codec-encode:" + name), timer(metrics, "codec-decode:" + name),
+                counter(metrics, "codec-raw-bytes:" + name), counter(metrics, "codec-stored-bytes:" + name));
+
+        if (codecs.putIfAbsent(type, binaryCodec) != null) {
+            throw new IllegalStateException("A codec for " + type.getName() + " is already registered");
+        }
+
+        return binaryCodec;
+    }
+
+    private static LatencyHistogram timer(final MetricsRegistry metrics, final String name) {
+        return metrics != null ? metrics.databaseTimer(name) : new LatencyHistogram();
+    }
+
+    private static LongAdder counter(final MetricsRegistry metrics, final String name) {
+        return metrics != null ? metrics.databaseCounter(name) : new LongAdder();
+    }
+
+    // -- getter and setter
+
+    /**
+     * @return int encoded size from which values are compressed, unless registered otherwise
+     * */
+    public int getDefaultCompressionThreshold() {
+        return defaultCompressionThreshold;
+    }
+
+    /**
+     * @return Map of the codecs by type name, sorted
+     * */
+    public Map<String, BinaryCodec<?>> getCodecs() {
+        Map<String, BinaryCodec<?>> sorted = new TreeMap<>();
+        codecs.forEach((type, codec) -> sorted.put(type.getName(), codec));
+        return Collections.unmodifiableMap(sorted);
+    }
+}
@@ -1,5 +1,7 @@
 package de.christianschliz.spigotms.api.database;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * @author Christian Schliz
  * @version 1.0
@@ -82,6 +84,49 @@ public final class DatabaseControllers {
         datastaxController = new DatastaxController(address, port, username, password);
     }
 
+    /**
+     * Connects a controller on a background thread, so the first
+     * {@link DatabaseRepository#get()} doesn't wait for the handshake.
+     *
+     * @param repository A configured controller
+     * @return CompletableFuture completed once the connection is established
+     * */
+    public CompletableFuture<Void> prewarm(final DatabaseRepository<?> repository) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        Thread thread = new Thread(() -> {
+            try {
+                repository.connect();
+                future.complete(null);
+            } catch (RuntimeException exception) {
+                System.err.println("[SpigotMS] Could not pre-warm database connection, "
+                        + "retrying on first use: " + repository.getClass().getSimpleName());
+                exception.printStackTrace();
+                future.completeExceptionally(exception);
+            }
+        }, "SpigotMS-Prewarm-" + repository.getClass().getSimpleName());
+        thread.setDaemon(true);
+        thread.start();
+        return future;
+    }
+
+    /**
+     * Closes all configured database connections.
+     * Backends that were never used are not connected.
+     * */
+    public void close() {
+        if (mysqlController != null) {
+            mysqlController.close();
+        }
+
+        if (redisController != null) {
+            redisController.close();
+        }
+
+        if (datastaxController != null) {
+            datastaxController.close();
+        }
+    }
+
     /**
      * @return MySQLController Controller
      * */
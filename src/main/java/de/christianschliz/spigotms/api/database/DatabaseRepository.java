@@ -9,14 +9,16 @@ package de.christianschliz.spigotms.api.database;
 public interface DatabaseRepository<T> {
 
     /**
-     * Creates the database connection. Should be called,
-     * when the plugin is enabled, otherwise it slows down
-     * the server start.
+     * Creates the database connection if it doesn't exist yet.
+     * Implementations must be thread safe, since the connection
+     * may be pre-warmed in the background while a service
+     * already calls {@link DatabaseRepository#get()}.
      * */
     void connect();
 
     /**
-     * Gets the database connection object.
+     * Gets the database connection object and connects on first use,
+     * so backends no service touches never slow down the server start.
      *
      * @return T database connection object
      * */
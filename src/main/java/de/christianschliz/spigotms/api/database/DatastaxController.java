@@ -1,8 +1,25 @@
 package de.christianschliz.spigotms.api.database;
 
 import com.datastax.oss.driver.api.core.CqlSession;
-import com.datastax.oss.driver.api.core.cql.ResultSet;
+import com.datastax.oss.driver.api.core.CqlSessionBuilder;
+import com.datastax.oss.driver.api.core.config.DefaultDriverOption;
+import com.datastax.oss.driver.api.core.config.DriverConfigLoader;
+import com.datastax.oss.driver.api.core.context.DriverContext;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.cql.Statement;
+import com.datastax.oss.driver.api.core.session.ProgrammaticArguments;
+import com.datastax.oss.driver.internal.core.context.DefaultDriverContext;
+import com.datastax.oss.driver.internal.core.context.DefaultNettyOptions;
+import com.datastax.oss.driver.internal.core.context.NettyOptions;
+import de.christianschliz.spigotms.api.metrics.LatencyHistogram;
+import de.christianschliz.spigotms.api.metrics.MetricsRegistry;
+import io.netty.channel.EventLoopGroup;
 import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * @author Christian Schliz
@@ -10,12 +27,19 @@ import java.net.InetSocketAddress;
  * */
 public class DatastaxController implements DatabaseRepository<CqlSession> {
 
-    private CqlSession session;
+    private static final int DEFAULT_STATEMENT_CACHE_SIZE = 500;
+
+    private volatile CqlSession session;
+    private volatile PreparedStatementCache preparedStatements;
 
     private final InetSocketAddress endpoint;
     private final String username;
     private final String password;
 
+    private int statementCacheSize = DEFAULT_STATEMENT_CACHE_SIZE;
+    private EventLoopGroup eventLoopGroup;
+    private LatencyHistogram latency = new LatencyHistogram();
+
     /**
      * The CQL Controller class for access within SpigotServices.
      *
@@ -31,12 +55,31 @@ public class DatastaxController implements DatabaseRepository<CqlSession> {
     }
 
     @Override
-    public void connect() {
+    public synchronized void connect() {
+        if (session != null) {
+            return;
+        }
+
         try {
-            session = CqlSession.builder()
-                    .addContactPoint(this.endpoint)
-                    .withAuthCredentials(this.username, this.password)
-                    .build();
+            CqlSession cqlSession;
+
+            if (eventLoopGroup == null) {
+                cqlSession = build(CqlSession.builder());
+            } else {
+                try {
+                    cqlSession = build(new SharedEventLoopSessionBuilder(eventLoopGroup)
+                            // the driver still creates its own group, which stays unused
+                            .withConfigLoader(DriverConfigLoader.programmaticBuilder()
+                                    .withInt(DefaultDriverOption.NETTY_IO_SIZE, 1).build()));
+                } catch (LinkageError error) {
+                    System.err.println("[SpigotMS] This Cassandra driver version can't share the event loop group, "
+                            + "it starts its own");
+                    cqlSession = build(CqlSession.builder());
+                }
+            }
+
+            preparedStatements = new PreparedStatementCache(cqlSession, statementCacheSize);
+            session = cqlSession;
             session.executeAsync("select release_version from system.local").thenAccept(result -> {
                 if (result == null) {
                     System.err.println("Could not connect to Cassandra database.");
@@ -50,6 +93,175 @@ public class DatastaxController implements DatabaseRepository<CqlSession> {
 
     @Override
     public CqlSession get() {
-        return session;
+        CqlSession cqlSession = session;
+
+        if (cqlSession == null) {
+            connect();
+            cqlSession = session;
+        }
+
+        return cqlSession;
+    }
+
+    /**
+     * Gets the prepared statement registry shared by all services.
+     * Connects on first use.
+     *
+     * @return PreparedStatementCache registry
+     * */
+    public PreparedStatementCache statements() {
+        if (session == null) {
+            connect();
+        }
+
+        return preparedStatements;
+    }
+
+    /**
+     * Prepares a query through the shared registry, binds the values and
+     * streams the result page by page, see {@link #forEachPage(Statement, Function)}.
+     *
+     * @param cql         The CQL query with bind markers
+     * @param pageHandler Handles a single page, the next page is fetched when the returned stage completes
+     * @param values      The values bound to the markers
+     * @return CompletionStage completed with the number of rows once all pages are handled
+     * */
+    public CompletionStage<Long> forEachPage(final String cql,
+                                             final Function<Iterable<Row>, CompletionStage<?>> pageHandler,
+                                             final Object... values) {
+        return statements().prepare(cql)
+                .thenCompose(statement -> forEachPage(statement.bind(values), pageHandler));
+    }
+
+    /**
+     * Runs a statement and hands its result to the page handler one page at a time.
+     * The next page is only requested once the stage returned by the handler has
+     * completed, so a slow consumer never has more than one page on the heap.
+     * The page size is the one of the statement or the driver default.
+     *
+     * @param statement   The statement to execute
+     * @param pageHandler Handles a single page, the next page is fetched when the returned stage completes
+     * @return CompletionStage completed with the number of rows once all pages are handled
+     * */
+    public CompletionStage<Long> forEachPage(final Statement<?> statement,
+                                             final Function<Iterable<Row>, CompletionStage<?>> pageHandler) {
+        long start = System.nanoTime();
+        return get().executeAsync(statement).thenCompose(page -> {
+            latency.recordSince(start);
+            return handlePage(page, pageHandler, 0L);
+        });
+    }
+
+    /**
+     * Runs a statement and hands every row to the handler on a driver thread,
+     * fetching the next page once the current one is consumed.
+     *
+     * @param statement  The statement to execute
+     * @param rowHandler Handles a single row, must not block
+     * @return CompletionStage completed with the number of rows
+     * */
+    public CompletionStage<Long> forEachRow(final Statement<?> statement, final Consumer<Row> rowHandler) {
+        return forEachPage(statement, rows -> {
+            rows.forEach(rowHandler);
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+
+    /**
+     * Closes the session if it was ever connected.
+     * */
+    public synchronized void close() {
+        if (session != null) {
+            session.close();
+        }
+    }
+
+    // -- private methods
+
+    private CompletionStage<Long> handlePage(final AsyncResultSet page,
+                                                    final Function<Iterable<Row>, CompletionStage<?>> pageHandler,
+                                                    final long rowCount) {
+        long total = rowCount + page.remaining();
+
+        return pageHandler.apply(page.currentPage()).thenCompose(handled -> {
+            if (!page.hasMorePages()) {
+                return CompletableFuture.completedFuture(total);
+            }
+
+            long start = System.nanoTime();
+            return page.fetchNextPage().thenCompose(next -> {
+                latency.recordSince(start);
+                return handlePage(next, pageHandler, total);
+            });
+        });
+    }
+
+    // -- getter and setter
+
+    /**
+     * @param statementCacheSize Maximum number of prepared statements kept, applied on connect
+     * */
+    public void setStatementCacheSize(final int statementCacheSize) {
+        this.statementCacheSize = statementCacheSize;
+    }
+
+    /**
+     * @param registry Registry the latency of every page fetch is recorded to
+     * */
+    public void setMetricsRegistry(final MetricsRegistry registry) {
+        this.latency = registry.databaseTimer("datastax");
+    }
+
+    /**
+     * @param eventLoopGroup The Netty event loop group shared with other drivers,
+     *                       used instead of the driver's own, applied on connect
+     * */
+    public void setEventLoopGroup(final EventLoopGroup eventLoopGroup) {
+        this.eventLoopGroup = eventLoopGroup;
+    }
+
+    private CqlSession build(final CqlSessionBuilder builder) {
+        return builder
+                .addContactPoint(this.endpoint)
+                .withAuthCredentials(this.username, this.password)
+                .build();
+    }
+
+    // -- inner classes
+
+    /**
+     * Builds sessions doing their network I/O on a given event loop group.
+     * The group is not shut down when the session is closed, since the
+     * driver only shuts down the group it created itself.
+     *
+     * <p>This extends <code>DefaultDriverContext</code> and <code>DefaultNettyOptions</code>,
+     * which are internal to the driver and may change in any release. It is
+     * written against driver 4.9.0, the version pinned by <code>datastax.driver.version</code>
+     * in the pom; check both classes before upgrading. A driver they don't link
+     * against falls back to its own event loops.</p>
+     * */
+    private static final class SharedEventLoopSessionBuilder extends CqlSessionBuilder {
+
+        private final EventLoopGroup eventLoopGroup;
+
+        private SharedEventLoopSessionBuilder(final EventLoopGroup eventLoopGroup) {
+            this.eventLoopGroup = eventLoopGroup;
+        }
+
+        @Override
+        protected DriverContext buildContext(final DriverConfigLoader configLoader,
+                                             final ProgrammaticArguments programmaticArguments) {
+            return new DefaultDriverContext(configLoader, programmaticArguments) {
+                @Override
+                protected NettyOptions buildNettyOptions() {
+                    return new DefaultNettyOptions(this) {
+                        @Override
+                        public EventLoopGroup ioEventLoopGroup() {
+                            return eventLoopGroup;
+                        }
+                    };
+                }
+            };
+        }
     }
 }
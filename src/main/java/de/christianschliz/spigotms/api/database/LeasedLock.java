@@ -0,0 +1,219 @@
+package de.christianschliz.spigotms.api.database;
+
+import de.christianschliz.spigotms.api.metrics.LatencyHistogram;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+
+/**
+ * A lock shared by all servers. A server takes the lock in Redis for a
+ * lease time and keeps it after unlocking, so the threads of that server
+ * can lock it again and again without going to Redis until the lease runs
+ * low. Between the threads of one server it works like a {@link ReentrantLock}.
+ *
+ * <p>A lock is only handed out while at least half of the lease is left,
+ * so a critical section shorter than half the lease can't overlap with
+ * another server. Other servers wait until the lease expires, or until
+ * {@link LeasedLock#release()} gives the lock back. A server that held the
+ * lock for a whole lease gives it up and waits before taking it again, so
+ * others get a chance.</p>
+ *
+ * <p>Locks are created through {@link RedisController#lock(String, long)}.</p>
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public final class LeasedLock {
+
+    // -- static fields
+
+    private static final long RETRY_MILLIS = 5;
+    private static final AtomicLong INSTANCES = new AtomicLong();
+
+    /** takes or renews the lock for ARGV[1] for ARGV[2] milliseconds */
+    private static final LuaScript ACQUIRE = new LuaScript(
+            "local owner = redis.call('get', KEYS[1]) "
+            + "if owner == false or owner == ARGV[1] then "
+            + "redis.call('set', KEYS[1], ARGV[1], 'PX', ARGV[2]) return 1 end "
+            + "return 0");
+
+    /** gives the lock back if ARGV[1] still holds it */
+    private static final LuaScript RELEASE = new LuaScript(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then redis.call('del', KEYS[1]) return 1 end "
+            + "return 0");
+
+    // -- instance fields
+
+    private final RedissonClient client;
+    private final String key;
+    private final String owner;
+    private final long leaseMillis;
+    private final long leaseNanos;
+    private final LatencyHistogram latency;
+    private final ReentrantLock localLock;
+
+    /** guarded by the local lock */
+    private boolean leased;
+    private long leaseExpiresAt;
+    private long heldSince;
+
+    private final LongAdder localAcquires;
+    private final LongAdder remoteCalls;
+
+    // -- constructors
+
+    /**
+     * @param client      The Redis client
+     * @param name        The name of the lock, shared by all servers
+     * @param nodeId      Unique id of this server
+     * @param leaseMillis Time the lock is held in Redis per lease
+     * @param latency     The timer Redis round-trips are recorded to
+     * */
+    LeasedLock(final RedissonClient client, final String name, final String nodeId,
+               final long leaseMillis, final LatencyHistogram latency) {
+        this.client = client;
+        this.key = "spigotms:lock:" + name;
+        // every instance is its own owner, so two instances on one server exclude each other too
+        this.owner = nodeId + ":" + INSTANCES.incrementAndGet();
+        this.leaseMillis = leaseMillis;
+        this.leaseNanos = TimeUnit.MILLISECONDS.toNanos(leaseMillis);
+        this.latency = latency;
+        this.localLock = new ReentrantLock();
+
+        this.localAcquires = new LongAdder();
+        this.remoteCalls = new LongAdder();
+    }
+
+    // -- public methods
+
+    /**
+     * Waits for the lock for at most the given time. Blocks on
+     * Redis round-trips if this server has no valid lease.
+     *
+     * @param waitMillis time to wait for the lock
+     * @return boolean true if the lock was taken
+     * @throws InterruptedException if the thread was interrupted while waiting
+     * */
+    public boolean tryLock(final long waitMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+
+        if (!localLock.tryLock(waitMillis, TimeUnit.MILLISECONDS)) {
+            return false;
+        }
+
+        if (localLock.getHoldCount() > 1) {
+            return true;
+        }
+
+        boolean locked = false;
+
+        try {
+            locked = acquire(deadline);
+            return locked;
+        } finally {
+            if (!locked) {
+                localLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Unlocks the lock for other threads of this server.
+     * The lease in Redis is kept until it expires.
+     * */
+    public void unlock() {
+        localLock.unlock();
+    }
+
+    /**
+     * Gives the lock back in Redis, so other servers don't need to wait
+     * for the lease to expire. Waits for local holders to unlock first.
+     * */
+    public void release() {
+        localLock.lock();
+
+        try {
+            releaseRemote();
+        } finally {
+            localLock.unlock();
+        }
+    }
+
+    // -- private methods
+
+    private boolean acquire(final long deadline) throws InterruptedException {
+        long now = System.nanoTime();
+
+        if (leased && now - heldSince >= leaseNanos) {
+            // held for a whole lease, let the other servers have a go
+            releaseRemote();
+            Thread.sleep(RETRY_MILLIS);
+        } else if (leased && leaseExpiresAt - now >= leaseNanos / 2) {
+            localAcquires.increment();
+            return true;
+        }
+
+        while (true) {
+            long start = System.nanoTime();
+            Long taken = eval(ACQUIRE, String.valueOf(leaseMillis));
+
+            if (taken == 1) {
+                if (!leased) {
+                    heldSince = start;
+                }
+
+                leased = true;
+                leaseExpiresAt = start + leaseNanos;
+                return true;
+            }
+
+            leased = false;
+            long remaining = deadline - System.nanoTime();
+
+            if (remaining <= 0) {
+                return false;
+            }
+
+            Thread.sleep(Math.min(RETRY_MILLIS, TimeUnit.NANOSECONDS.toMillis(remaining) + 1));
+        }
+    }
+
+    private void releaseRemote() {
+        if (leased) {
+            eval(RELEASE);
+            leased = false;
+        }
+    }
+
+    private Long eval(final LuaScript script, final Object... args) {
+        Object[] values = new Object[args.length + 1];
+        values[0] = owner;
+        System.arraycopy(args, 0, values, 1, args.length);
+
+        long start = System.nanoTime();
+        Long result = script.eval(client, RScript.ReturnType.INTEGER, Collections.singletonList(key), values);
+        latency.recordSince(start);
+        remoteCalls.increment();
+        return result;
+    }
+
+    // -- getter and setter
+
+    /**
+     * @return long locks taken without going to Redis
+     * */
+    public long getLocalAcquireCount() {
+        return localAcquires.sum();
+    }
+
+    /**
+     * @return long round-trips to Redis
+     * */
+    public long getRemoteCallCount() {
+        return remoteCalls.sum();
+    }
+}
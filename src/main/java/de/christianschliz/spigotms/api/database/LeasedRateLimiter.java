@@ -0,0 +1,226 @@
+package de.christianschliz.spigotms.api.database;
+
+import de.christianschliz.spigotms.api.metrics.LatencyHistogram;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+
+/**
+ * A rate limiter shared by all servers, backed by a token bucket in Redis.
+ * Instead of taking a single token from Redis per check, a server leases a
+ * batch of tokens and hands them out locally until the batch is used up,
+ * so only one check in every batch goes over the network.
+ *
+ * <p>Leased tokens are taken from the shared bucket right away, so all
+ * servers together never get more tokens than the bucket refills. Tokens
+ * a server leased but didn't use are dropped when the lease expires, which
+ * keeps an idle server from saving them up for a burst. The cost is that
+ * tokens leased by one server aren't available to others until then, so
+ * keep the lease small compared to the limit.</p>
+ *
+ * <p>Limiters are created through
+ * {@link RedisController#rateLimiter(String, long, long, int, long)}.</p>
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public final class LeasedRateLimiter {
+
+    // -- static fields
+
+    /** takes up to ARGV[4] tokens from a bucket of ARGV[1] tokens refilled by ARGV[2] per millisecond */
+    private static final LuaScript TAKE_TOKENS = new LuaScript(
+            "local capacity = tonumber(ARGV[1]) "
+            + "local refill = tonumber(ARGV[2]) "
+            + "local now = tonumber(ARGV[3]) "
+            + "local state = redis.call('hmget', KEYS[1], 'tokens', 'time') "
+            + "local tokens = tonumber(state[1]) "
+            + "local time = tonumber(state[2]) "
+            + "if tokens == nil then tokens = capacity time = now end "
+            // a server with a clock behind the others doesn't turn time back
+            + "if now > time then tokens = math.min(capacity, tokens + (now - time) * refill) time = now end "
+            + "local granted = math.min(tonumber(ARGV[4]), math.floor(tokens)) "
+            + "redis.call('hmset', KEYS[1], 'tokens', tokens - granted, 'time', time) "
+            + "redis.call('pexpire', KEYS[1], ARGV[5]) "
+            + "return granted");
+
+    /** puts ARGV[2] unused tokens back into a bucket of ARGV[1] tokens, unless it expired meanwhile */
+    private static final LuaScript RETURN_TOKENS = new LuaScript(
+            "local tokens = tonumber(redis.call('hget', KEYS[1], 'tokens')) "
+            + "if tokens == nil then return 0 end "
+            + "redis.call('hset', KEYS[1], 'tokens', math.min(tonumber(ARGV[1]), tokens + tonumber(ARGV[2]))) "
+            + "return 1");
+
+    // -- instance fields
+
+    private final RedissonClient client;
+    private final String key;
+    private final long permits;
+    private final long periodMillis;
+    private final int leaseSize;
+    private final long leaseNanos;
+    private final long denialNanos;
+    private final LatencyHistogram latency;
+
+    private long leasedTokens;
+    private long leaseExpiresAt;
+    private long deniedUntil;
+
+    private final LongAdder localAcquires;
+    private final LongAdder remoteCalls;
+    private final LongAdder expiredTokens;
+
+    // -- constructors
+
+    /**
+     * @param client       The Redis client
+     * @param name         The name of the limiter, shared by all servers
+     * @param permits      Tokens the bucket holds and refills per period
+     * @param periodMillis The refill period
+     * @param leaseSize    Tokens leased from Redis at once
+     * @param leaseMillis  Time after which unused leased tokens are dropped
+     * @param latency      The timer Redis round-trips are recorded to
+     * @throws IllegalArgumentException if a number is not positive, or a lease is larger than the bucket
+     * */
+    LeasedRateLimiter(final RedissonClient client, final String name, final long permits,
+                      final long periodMillis, final int leaseSize, final long leaseMillis,
+                      final LatencyHistogram latency) {
+        if (permits < 1 || periodMillis < 1 || leaseMillis < 1) {
+            throw new IllegalArgumentException("Permits, period and lease time of " + name + " must be positive");
+        }
+
+        if (leaseSize < 1 || leaseSize > permits) {
+            throw new IllegalArgumentException("Lease size of " + name + " must be between 1 and " + permits);
+        }
+
+        this.client = client;
+        this.key = "spigotms:ratelimit:" + name;
+        this.permits = permits;
+        this.periodMillis = periodMillis;
+        this.leaseSize = leaseSize;
+        this.leaseNanos = TimeUnit.MILLISECONDS.toNanos(leaseMillis);
+        this.latency = latency;
+        // an empty bucket needs this long to refill a lease, no need to ask Redis before
+        this.denialNanos = Math.min(leaseNanos, TimeUnit.MILLISECONDS.toNanos(periodMillis) * leaseSize / permits);
+
+        this.localAcquires = new LongAdder();
+        this.remoteCalls = new LongAdder();
+        this.expiredTokens = new LongAdder();
+    }
+
+    // -- public methods
+
+    /**
+     * @return boolean true if a token was available
+     * @see LeasedRateLimiter#tryAcquire(int)
+     * */
+    public boolean tryAcquire() {
+        return tryAcquire(1);
+    }
+
+    /**
+     * Takes tokens from the local lease, or leases new ones from Redis
+     * if the lease is used up. Blocks on a Redis round-trip in that case.
+     * If Redis had no tokens left, checks are denied locally until the
+     * bucket could have refilled a lease.
+     *
+     * @param tokens the number of tokens to take
+     * @return boolean true if enough tokens were available
+     * @throws IllegalArgumentException if tokens is less than 1 or more than the permits
+     * */
+    public synchronized boolean tryAcquire(final int tokens) {
+        if (tokens < 1 || tokens > permits) {
+            throw new IllegalArgumentException("Tokens taken from " + key + " must be between 1 and " + permits);
+        }
+
+        long now = System.nanoTime();
+
+        if (leasedTokens > 0 && now - leaseExpiresAt >= 0) {
+            expiredTokens.add(leasedTokens);
+            leasedTokens = 0;
+        }
+
+        if (leasedTokens >= tokens) {
+            leasedTokens -= tokens;
+            localAcquires.increment();
+            return true;
+        }
+
+        if (now - deniedUntil < 0) {
+            localAcquires.increment();
+            return false;
+        }
+
+        long granted = lease(Math.max(leaseSize, tokens - leasedTokens));
+
+        if (granted > 0) {
+            // tokens left from the old lease now expire with the new one
+            leasedTokens += granted;
+            leaseExpiresAt = now + leaseNanos;
+        } else {
+            deniedUntil = now + denialNanos;
+        }
+
+        if (leasedTokens >= tokens) {
+            leasedTokens -= tokens;
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Puts the unused tokens of the current lease back into the shared
+     * bucket, so other servers can take them before the lease expires,
+     * e.g. when the service using the limiter is unloaded.
+     * */
+    public synchronized void release() {
+        if (leasedTokens > 0 && System.nanoTime() - leaseExpiresAt < 0) {
+            long start = System.nanoTime();
+            RETURN_TOKENS.eval(client, RScript.ReturnType.INTEGER, Collections.singletonList(key),
+                    String.valueOf(permits), String.valueOf(leasedTokens));
+            latency.recordSince(start);
+            remoteCalls.increment();
+        }
+
+        leasedTokens = 0;
+    }
+
+    // -- private methods
+
+    private long lease(final long tokens) {
+        long start = System.nanoTime();
+        Long granted = TAKE_TOKENS.eval(client, RScript.ReturnType.INTEGER, Collections.singletonList(key),
+                String.valueOf(permits), String.valueOf((double) permits / periodMillis),
+                String.valueOf(System.currentTimeMillis()), String.valueOf(tokens),
+                String.valueOf(periodMillis * 2));
+        latency.recordSince(start);
+        remoteCalls.increment();
+        return granted;
+    }
+
+    // -- getter and setter
+
+    /**
+     * @return long checks answered locally, from the lease or a recent denial
+     * */
+    public long getLocalAcquireCount() {
+        return localAcquires.sum();
+    }
+
+    /**
+     * @return long round-trips to Redis
+     * */
+    public long getRemoteCallCount() {
+        return remoteCalls.sum();
+    }
+
+    /**
+     * @return long leased tokens dropped unused
+     * */
+    public long getExpiredTokenCount() {
+        return expiredTokens.sum();
+    }
+}
@@ -0,0 +1,72 @@
+package de.christianschliz.spigotms.api.database;
+
+import java.util.List;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.RedisException;
+import org.redisson.client.codec.StringCodec;
+
+/**
+ * A Lua script that is loaded into Redis once and then called by its
+ * SHA-1 digest, so only the arguments travel over the network.
+ * It is loaded again if Redis lost it, e.g. after a restart.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+final class LuaScript {
+
+    // -- instance fields
+
+    private final String source;
+    private volatile String sha;
+
+    // -- constructors
+
+    /**
+     * @param source The Lua source
+     * */
+    LuaScript(final String source) {
+        this.source = source;
+    }
+
+    // -- package-private methods
+
+    /**
+     * Runs the script, arguments and results are strings or integers.
+     *
+     * @param client     The Redis client
+     * @param returnType The result type
+     * @param keys       The keys the script accesses
+     * @param args       The script arguments
+     * @param <R>        result type
+     * @return R the result
+     * */
+    <R> R eval(final RedissonClient client, final RScript.ReturnType returnType,
+               final List<Object> keys, final Object... args) {
+        RScript script = client.getScript(StringCodec.INSTANCE);
+        String digest = sha;
+
+        if (digest == null) {
+            digest = load(script);
+        }
+
+        try {
+            return script.evalSha(RScript.Mode.READ_WRITE, digest, returnType, keys, args);
+        } catch (RedisException exception) {
+            if (exception.getMessage() == null || !exception.getMessage().startsWith("NOSCRIPT")) {
+                throw exception;
+            }
+
+            return script.evalSha(RScript.Mode.READ_WRITE, load(script), returnType, keys, args);
+        }
+    }
+
+    // -- private methods
+
+    private String load(final RScript script) {
+        String digest = script.scriptLoad(source);
+        sha = digest;
+        return digest;
+    }
+}
@@ -2,6 +2,18 @@ package de.christianschliz.spigotms.api.database;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import de.christianschliz.spigotms.api.executor.ExecutorRegistry;
+import de.christianschliz.spigotms.api.metrics.LatencyHistogram;
+import de.christianschliz.spigotms.api.metrics.MetricsRegistry;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.BinaryOperator;
 
 /**
  * @author Christian Schliz
@@ -10,8 +22,36 @@ import com.zaxxer.hikari.HikariDataSource;
 public final class MySQLController
         implements DatabaseRepository<HikariDataSource> {
 
+    /** Maximum number of queued queries over all services, unless configured otherwise */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+    /** Maximum number of queued or running queries per service, unless configured otherwise */
+    public static final int DEFAULT_SERVICE_QUEUE_LIMIT = 250;
+    /** Lag from which a replica is skipped, unless configured otherwise */
+    public static final long DEFAULT_MAX_REPLICA_LAG_MILLIS = 2000;
+    /** Interval in which the replica lag is checked, unless configured otherwise */
+    public static final long DEFAULT_LAG_CHECK_INTERVAL_MILLIS = 1000;
+    /** Query that reports the replica lag, unless configured otherwise */
+    public static final String DEFAULT_LAG_QUERY = "SHOW SLAVE STATUS";
+
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 10000;
+    private static final long REPLICA_CONNECTION_TIMEOUT_MILLIS = 2000;
+
     private final HikariConfig hikariConfig;
-    private HikariDataSource dataSource;
+    private final Map<String, String> replicaUrls = new LinkedHashMap<>();
+    private volatile HikariDataSource dataSource;
+    private volatile ReplicaRouter replicaRouter;
+    private volatile AsyncQueryExecutor asyncExecutor;
+    private ScheduledExecutorService writeBehindScheduler;
+    private final List<WriteBehindBuffer<?, ?>> writeBehindBuffers = new CopyOnWriteArrayList<>();
+
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private int serviceQueueLimit = DEFAULT_SERVICE_QUEUE_LIMIT;
+    private Executor mainThreadExecutor = Runnable::run;
+    private MetricsRegistry metricsRegistry;
+    private ExecutorRegistry executorRegistry;
+    private long maxReplicaLagMillis = DEFAULT_MAX_REPLICA_LAG_MILLIS;
+    private long lagCheckIntervalMillis = DEFAULT_LAG_CHECK_INTERVAL_MILLIS;
+    private String lagQuery = DEFAULT_LAG_QUERY;
 
     /**
      * The MySQL Controller class for access within SpigotServices.
@@ -29,6 +69,7 @@ public final class MySQLController
         hikariConfig.addDataSourceProperty("cachePrepStmts", "true");
         hikariConfig.addDataSourceProperty("prepStmtCacheSize", "250");
         hikariConfig.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+        hikariConfig.addDataSourceProperty("rewriteBatchedStatements", "true");
     }
 
     /**
@@ -47,14 +88,245 @@ public final class MySQLController
     }
 
     @Override
-    public void connect() {
+    public synchronized void connect() {
         if (dataSource == null) {
-            dataSource = new HikariDataSource(hikariConfig);
+            HikariDataSource pool = new HikariDataSource(hikariConfig);
+            List<ReplicaRouter.Replica> replicas = new ArrayList<>();
+
+            replicaUrls.forEach((name, jdbcUrl) -> replicas.add(new ReplicaRouter.Replica(name,
+                    new HikariDataSource(replicaConfig(name, jdbcUrl)),
+                    metricsRegistry != null ? metricsRegistry.databaseTimer("mysql-replica:" + name)
+                            : new LatencyHistogram())));
+
+            replicaRouter = new ReplicaRouter(pool, replicas, maxReplicaLagMillis, lagCheckIntervalMillis, lagQuery,
+                    replicas.isEmpty() ? null : scheduledPool("mysql-lagcheck"));
+            // one worker per connection, reads on replicas have their own so they never wait for writes
+            asyncExecutor = new AsyncQueryExecutor(pool, replicaRouter, hikariConfig.getMaximumPoolSize(),
+                    hikariConfig.getMaximumPoolSize() * replicas.size(), queueCapacity, serviceQueueLimit);
+            asyncExecutor.setMainThreadExecutor(mainThreadExecutor);
+            asyncExecutor.setMetricsRegistry(metricsRegistry);
+            dataSource = pool;
         }
     }
 
     @Override
     public HikariDataSource get() {
-        return dataSource;
+        HikariDataSource pool = dataSource;
+
+        if (pool == null) {
+            connect();
+            pool = dataSource;
+        }
+
+        return pool;
+    }
+
+    /**
+     * Gets the router to run reads on the read replicas, synchronously on the
+     * calling thread. Reads go to the primary while no replica is configured.
+     * Connects on first use.
+     *
+     * @return ReplicaRouter router
+     * */
+    public ReplicaRouter replicas() {
+        if (dataSource == null) {
+            connect();
+        }
+
+        return replicaRouter;
+    }
+
+    /**
+     * Gets the executor for asynchronous queries. Its worker pool has
+     * the same size as the connection pool. Connects on first use.
+     *
+     * @return AsyncQueryExecutor executor
+     * */
+    public AsyncQueryExecutor async() {
+        if (dataSource == null) {
+            connect();
+        }
+
+        return asyncExecutor;
+    }
+
+    /**
+     * Creates a write-behind buffer whose writes to the same key replace each other.
+     *
+     * @param sql                 The statement executed for every pending key
+     * @param binder              Binds a key and its value to the statement parameters
+     * @param maxBatchSize        Number of pending keys that triggers a flush
+     * @param flushIntervalMillis Maximum time a write stays buffered
+     * @param <K>                 key type
+     * @param <V>                 value type
+     * @return WriteBehindBuffer buffer, flushed when this controller is closed
+     * */
+    public <K, V> WriteBehindBuffer<K, V> writeBehind(final String sql, final WriteBehindBuffer.Binder<K, V> binder,
+                                                      final int maxBatchSize, final long flushIntervalMillis) {
+        return writeBehind(sql, binder, (older, newer) -> newer, maxBatchSize, flushIntervalMillis);
+    }
+
+    /**
+     * Creates a write-behind buffer whose writes to the same key are
+     * combined by a merge function, e.g. <code>Integer::sum</code> for counters.
+     *
+     * @param sql                 The statement executed for every pending key
+     * @param binder              Binds a key and its value to the statement parameters
+     * @param mergeFunction       Combines a pending value with a new write
+     * @param maxBatchSize        Number of pending keys that triggers a flush
+     * @param flushIntervalMillis Maximum time a write stays buffered
+     * @param <K>                 key type
+     * @param <V>                 value type
+     * @return WriteBehindBuffer buffer, flushed when this controller is closed
+     * */
+    public synchronized <K, V> WriteBehindBuffer<K, V> writeBehind(
+            final String sql, final WriteBehindBuffer.Binder<K, V> binder,
+            final BinaryOperator<V> mergeFunction, final int maxBatchSize, final long flushIntervalMillis) {
+        if (writeBehindScheduler == null) {
+            writeBehindScheduler = scheduledPool("mysql-writebehind");
+        }
+
+        WriteBehindBuffer<K, V> buffer = new WriteBehindBuffer<>(this, get(), sql, binder, mergeFunction,
+                maxBatchSize, flushIntervalMillis, writeBehindScheduler);
+        writeBehindBuffers.add(buffer);
+        return buffer;
+    }
+
+    /**
+     * Adds a read replica with its own connection pool, using the credentials
+     * of the primary. Must be called before the first connection is made.
+     *
+     * @param name    The name of the replica, e.g. its address
+     * @param jdbcUrl The JDBC Connection URI of the replica
+     * */
+    public void addReplica(final String name, final String jdbcUrl) {
+        replicaUrls.put(name, jdbcUrl);
+    }
+
+    /**
+     * Adds a read replica of the same database on another server.
+     *
+     * @param hostname Replica server hostname
+     * @param port     Replica server port
+     * @param database Database for service
+     * @see MySQLController#addReplica(String, String)
+     * */
+    public void addReplica(final String hostname, final int port, final String database) {
+        addReplica(hostname + ":" + port, String.format("jdbc:mysql://%s:%s/%s", hostname, port, database));
+    }
+
+    /**
+     * Sets when read replicas are skipped. Must be called before the first connection is made.
+     *
+     * @param maxReplicaLagMillis    Lag behind the primary above which a replica takes no reads
+     * @param lagCheckIntervalMillis Time between two lag checks
+     * @param lagQuery               Query returning the lag of a replica in seconds
+     * */
+    public void setReplicaOptions(final long maxReplicaLagMillis, final long lagCheckIntervalMillis,
+                                  final String lagQuery) {
+        this.maxReplicaLagMillis = maxReplicaLagMillis;
+        this.lagCheckIntervalMillis = lagCheckIntervalMillis;
+        this.lagQuery = lagQuery;
+    }
+
+    /**
+     * Sets the limits of the asynchronous query executor.
+     * Must be called before the first connection is made.
+     *
+     * @param queueCapacity     Maximum number of queued queries over all services
+     * @param serviceQueueLimit Maximum number of queued or running queries per service
+     * */
+    public void setQueueLimits(final int queueCapacity, final int serviceQueueLimit) {
+        this.queueCapacity = queueCapacity;
+        this.serviceQueueLimit = serviceQueueLimit;
+    }
+
+    /**
+     * @param executor Executor that runs tasks on the server thread
+     * */
+    public synchronized void setMainThreadExecutor(final Executor executor) {
+        this.mainThreadExecutor = executor;
+
+        if (asyncExecutor != null) {
+            asyncExecutor.setMainThreadExecutor(executor);
+        }
+    }
+
+    /**
+     * @param registry Registry the query latency of every service is recorded to
+     * */
+    public synchronized void setMetricsRegistry(final MetricsRegistry registry) {
+        this.metricsRegistry = registry;
+
+        if (asyncExecutor != null) {
+            asyncExecutor.setMetricsRegistry(registry);
+        }
+    }
+
+    /**
+     * Lets the lag checks and write-behind buffers run on pools of the
+     * plugin instead of creating their own. Must be called before the
+     * first connection is made.
+     *
+     * @param registry Registry the pools are created in
+     * */
+    public synchronized void setExecutorRegistry(final ExecutorRegistry registry) {
+        this.executorRegistry = registry;
+    }
+
+    /**
+     * Flushes all write-behind buffers, waits for running
+     * asynchronous queries and closes the connection pool.
+     * Does nothing for parts that were never used.
+     * */
+    public synchronized void close() {
+        writeBehindBuffers.forEach(WriteBehindBuffer::close);
+
+        if (writeBehindScheduler != null) {
+            writeBehindScheduler.shutdown();
+        }
+
+        if (asyncExecutor != null) {
+            asyncExecutor.shutdown(SHUTDOWN_TIMEOUT_MILLIS);
+        }
+
+        if (replicaRouter != null) {
+            replicaRouter.close();
+        }
+
+        if (dataSource != null) {
+            dataSource.close();
+        }
+    }
+
+    /**
+     * Forgets a buffer that was closed, so it is not flushed again
+     * when the controller is closed.
+     *
+     * @param buffer the closed buffer
+     * */
+    void removeWriteBehind(final WriteBehindBuffer<?, ?> buffer) {
+        writeBehindBuffers.remove(buffer);
+    }
+
+    private ScheduledExecutorService scheduledPool(final String name) {
+        if (executorRegistry == null) {
+            // used on its own, without the pools of the plugin
+            return Executors.newSingleThreadScheduledExecutor(ExecutorRegistry.threadFactory(name));
+        }
+
+        return executorRegistry.dedicatedScheduledPool(name, 1);
+    }
+
+    private HikariConfig replicaConfig(final String name, final String jdbcUrl) {
+        HikariConfig config = new HikariConfig();
+        hikariConfig.copyStateTo(config);
+        config.setJdbcUrl(jdbcUrl);
+        config.setPoolName("SpigotMS-MySQL-Replica-" + name);
+        config.setReadOnly(true);
+        // a replica that is down must neither fail the start nor hold reads for long
+        config.setInitializationFailTimeout(-1);
+        config.setConnectionTimeout(REPLICA_CONNECTION_TIMEOUT_MILLIS);
+        return config;
     }
 }
@@ -0,0 +1,496 @@
+package de.christianschliz.spigotms.api.database;
+
+import de.christianschliz.spigotms.api.metrics.LatencyHistogram;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.redisson.api.RMap;
+import org.redisson.api.RTopic;
+import org.redisson.api.listener.StatusListener;
+
+/**
+ * A bounded, node-local cache in front of a Redisson {@link RMap}. Reads of
+ * hot keys are served from memory, writes go through to Redis and publish an
+ * invalidation on a Redis topic, so every other node drops its local copy.
+ * Entries expire after a TTL and are evicted by LRU or LFU when the cache is full.
+ *
+ * <p>Near-caches are created through
+ * {@link RedisController#nearCache(String, int, long, EvictionPolicy)}.</p>
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ *
+ * @param <K> key type
+ * @param <V> value type
+ * */
+public final class NearCache<K, V> {
+
+    // -- instance fields
+
+    private final String nodeId;
+    private final RMap<K, V> map;
+    private final RTopic invalidationTopic;
+    private final long ttlMillis;
+    private final Store<K, V> store;
+    private final LatencyHistogram latency;
+
+    private final int messageListenerId;
+    private final int statusListenerId;
+
+    /** incremented on every invalidation, so a read racing with one isn't cached */
+    private final AtomicLong invalidationEpoch;
+
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+    private final LongAdder invalidations;
+
+    // -- constructors
+
+    /**
+     * @param nodeId            Unique id of this server, used to skip own invalidations
+     * @param map               The backing Redis map
+     * @param invalidationTopic The topic all nodes publish invalidations to
+     * @param maxSize           Maximum number of locally cached entries
+     * @param ttlMillis         Time after which a local entry is reloaded, 0 for no expiry
+     * @param evictionPolicy    Which entry is evicted when the cache is full
+     * @param latency           The timer Redis round-trips are recorded to
+     * @throws IllegalArgumentException if maxSize is less than 1
+     * */
+    NearCache(final String nodeId, final RMap<K, V> map, final RTopic invalidationTopic,
+              final int maxSize, final long ttlMillis, final EvictionPolicy evictionPolicy,
+              final LatencyHistogram latency) {
+        if (maxSize < 1) {
+            // both stores evict after an insert, which needs room for at least one entry
+            throw new IllegalArgumentException("A near-cache needs a maxSize of at least 1, got " + maxSize);
+        }
+
+        this.nodeId = nodeId;
+        this.map = map;
+        this.invalidationTopic = invalidationTopic;
+        this.ttlMillis = ttlMillis;
+        this.store = evictionPolicy == EvictionPolicy.LFU ? new LfuStore<>(maxSize) : new LruStore<>(maxSize);
+        this.latency = latency;
+
+        this.invalidationEpoch = new AtomicLong();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+        this.invalidations = new LongAdder();
+
+        this.messageListenerId = invalidationTopic.addListener(Invalidation.class, (channel, message) -> {
+            if (!nodeId.equals(message.nodeId)) {
+                invalidateLocally(message.key);
+            }
+        });
+
+        // Invalidations published while we were disconnected are lost, so start over
+        this.statusListenerId = invalidationTopic.addListener(new StatusListener() {
+            @Override
+            public void onSubscribe(final String channel) {
+                invalidateLocally(null);
+            }
+
+            @Override
+            public void onUnsubscribe(final String channel) {
+                invalidateLocally(null);
+            }
+        });
+    }
+
+    // -- public methods
+
+    /**
+     * Gets a value, from memory if possible, otherwise from Redis.
+     * Blocks on a Redis round-trip on a miss.
+     *
+     * @param key the key
+     * @return V the value or null if Redis has none
+     * */
+    public V get(final K key) {
+        V value = getLocal(key);
+
+        if (value != null) {
+            return value;
+        }
+
+        long epoch = invalidationEpoch.get();
+        long start = System.nanoTime();
+        value = map.get(key);
+        latency.recordSince(start);
+        cacheLocally(key, value, epoch);
+        return value;
+    }
+
+    /**
+     * Gets a value, from memory if possible, otherwise from Redis
+     * without blocking the calling thread.
+     *
+     * @param key the key
+     * @return CompletableFuture completed with the value or null if Redis has none
+     * */
+    public CompletableFuture<V> getAsync(final K key) {
+        V value = getLocal(key);
+
+        if (value != null) {
+            return CompletableFuture.completedFuture(value);
+        }
+
+        long epoch = invalidationEpoch.get();
+        long start = System.nanoTime();
+        return map.getAsync(key).toCompletableFuture().thenApply(remote -> {
+            latency.recordSince(start);
+            cacheLocally(key, remote, epoch);
+            return remote;
+        });
+    }
+
+    /**
+     * Writes a value to Redis and the local cache
+     * and invalidates it on all other nodes.
+     *
+     * @param key   the key
+     * @param value the new value
+     * */
+    public void put(final K key, final V value) {
+        long start = System.nanoTime();
+        map.fastPut(key, value);
+        latency.recordSince(start);
+        invalidateLocally(key);
+        cacheLocally(key, value, invalidationEpoch.get());
+        invalidationTopic.publish(new Invalidation(nodeId, key));
+    }
+
+    /**
+     * Removes a value from Redis and from the local cache of all nodes.
+     *
+     * @param key the key
+     * */
+    @SuppressWarnings("unchecked") // fastRemove takes the keys as generic varargs
+    public void remove(final K key) {
+        map.fastRemove(key);
+        invalidateLocally(key);
+        invalidationTopic.publish(new Invalidation(nodeId, key));
+    }
+
+    /**
+     * Drops a key from the local cache of this node only.
+     *
+     * @param key the key or null to drop all entries
+     * */
+    public void invalidateLocally(final Object key) {
+        invalidationEpoch.incrementAndGet();
+        invalidations.increment();
+
+        synchronized (store) {
+            if (key == null) {
+                store.clear();
+            } else {
+                store.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Stops listening for invalidations and drops all local entries.
+     * */
+    public void destroy() {
+        invalidationTopic.removeListener(messageListenerId, statusListenerId);
+
+        synchronized (store) {
+            store.clear();
+        }
+    }
+
+    // -- private methods
+
+    private V getLocal(final K key) {
+        synchronized (store) {
+            Entry<V> entry = store.get(key);
+
+            if (entry != null && (ttlMillis <= 0 || entry.expiresAt > System.currentTimeMillis())) {
+                hits.increment();
+                return entry.value;
+            }
+
+            if (entry != null) {
+                store.remove(key);
+                evictions.increment();
+            }
+        }
+
+        misses.increment();
+        return null;
+    }
+
+    private void cacheLocally(final K key, final V value, final long epoch) {
+        if (value == null) {
+            return;
+        }
+
+        long expiresAt = ttlMillis > 0 ? System.currentTimeMillis() + ttlMillis : Long.MAX_VALUE;
+
+        synchronized (store) {
+            // Don't cache a value that was read before a concurrent invalidation
+            if (invalidationEpoch.get() == epoch && store.put(key, new Entry<>(value, expiresAt))) {
+                evictions.increment();
+            }
+        }
+    }
+
+    // -- getter and setter
+
+    /**
+     * @return long reads served from memory
+     * */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return long reads that went to Redis
+     * */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return long entries dropped because the cache was full or the TTL expired
+     * */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return long local and remote invalidations
+     * */
+    public long getInvalidationCount() {
+        return invalidations.sum();
+    }
+
+    /**
+     * @return int number of locally cached entries
+     * */
+    public int getLocalSize() {
+        synchronized (store) {
+            return store.size();
+        }
+    }
+
+    // -- inner classes
+
+    /**
+     * Decides which entry is dropped when a full near-cache stores a new one.
+     * */
+    public enum EvictionPolicy {
+        /** evict the least recently used entry */
+        LRU,
+        /** evict the least frequently used entry */
+        LFU
+    }
+
+    /**
+     * Message published on the invalidation topic.
+     * */
+    static final class Invalidation implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String nodeId;
+        private final Object key;
+
+        Invalidation(final String nodeId, final Object key) {
+            this.nodeId = nodeId;
+            this.key = key;
+        }
+    }
+
+    private static final class Entry<V> {
+
+        private final V value;
+        private final long expiresAt;
+
+        private Entry(final V value, final long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Local entry storage, guarded by the near-cache.
+     * */
+    private interface Store<K, V> {
+
+        Entry<V> get(K key);
+
+        /** @return true if another entry was evicted to make room */
+        boolean put(K key, Entry<V> entry);
+
+        void remove(Object key);
+
+        void clear();
+
+        int size();
+    }
+
+    private static final class LruStore<K, V> implements Store<K, V> {
+
+        private final int maxSize;
+        private final LinkedHashMap<K, Entry<V>> entries;
+
+        private LruStore(final int maxSize) {
+            this.maxSize = maxSize;
+            this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        }
+
+        @Override
+        public Entry<V> get(final K key) {
+            return entries.get(key);
+        }
+
+        @Override
+        public boolean put(final K key, final Entry<V> entry) {
+            entries.put(key, entry);
+
+            if (entries.size() > maxSize) {
+                Iterator<K> eldest = entries.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+                return true;
+            }
+
+            return false;
+        }
+
+        @Override
+        public void remove(final Object key) {
+            entries.remove(key);
+        }
+
+        @Override
+        public void clear() {
+            entries.clear();
+        }
+
+        @Override
+        public int size() {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Constant time LFU: keys are kept in one insertion-ordered bucket per use count,
+     * so the eviction candidate is the oldest key of the lowest non-empty bucket.
+     * */
+    private static final class LfuStore<K, V> implements Store<K, V> {
+
+        private final int maxSize;
+        private final Map<K, Entry<V>> entries;
+        private final Map<K, Integer> counts;
+        private final Map<Integer, LinkedHashSet<K>> buckets;
+        private int minCount;
+
+        private LfuStore(final int maxSize) {
+            this.maxSize = maxSize;
+            this.entries = new HashMap<>();
+            this.counts = new HashMap<>();
+            this.buckets = new HashMap<>();
+        }
+
+        @Override
+        public Entry<V> get(final K key) {
+            Entry<V> entry = entries.get(key);
+
+            if (entry != null) {
+                touch(key);
+            }
+
+            return entry;
+        }
+
+        @Override
+        public boolean put(final K key, final Entry<V> entry) {
+            if (entries.put(key, entry) != null) {
+                touch(key);
+                return false;
+            }
+
+            boolean evicted = false;
+
+            if (entries.size() > maxSize) {
+                LinkedHashSet<K> bucket = buckets.get(minCount);
+
+                if (bucket == null) {
+                    // the lowest bucket was emptied by a removal
+                    minCount = Collections.min(buckets.keySet());
+                    bucket = buckets.get(minCount);
+                }
+
+                K victim = bucket.iterator().next();
+                removeFromBucket(victim, minCount);
+                counts.remove(victim);
+                entries.remove(victim);
+                evicted = true;
+            }
+
+            counts.put(key, 1);
+            buckets.computeIfAbsent(1, count -> new LinkedHashSet<>()).add(key);
+            minCount = 1;
+            return evicted;
+        }
+
+        @Override
+        public void remove(final Object key) {
+            if (entries.remove(key) != null) {
+                Integer count = counts.remove(key);
+                LinkedHashSet<K> bucket = buckets.get(count);
+                bucket.remove(key);
+
+                if (bucket.isEmpty()) {
+                    buckets.remove(count);
+                }
+            }
+        }
+
+        @Override
+        public void clear() {
+            entries.clear();
+            counts.clear();
+            buckets.clear();
+            minCount = 0;
+        }
+
+        @Override
+        public int size() {
+            return entries.size();
+        }
+
+        private void touch(final K key) {
+            int count = counts.get(key);
+            removeFromBucket(key, count);
+
+            if (count == minCount && !buckets.containsKey(count)) {
+                minCount = count + 1;
+            }
+
+            counts.put(key, count + 1);
+            buckets.computeIfAbsent(count + 1, c -> new LinkedHashSet<>()).add(key);
+        }
+
+        private void removeFromBucket(final K key, final int count) {
+            LinkedHashSet<K> bucket = buckets.get(count);
+            bucket.remove(key);
+
+            if (bucket.isEmpty()) {
+                buckets.remove(count);
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package de.christianschliz.spigotms.api.database;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A bounded registry of prepared CQL statements shared by all services,
+ * keyed by the CQL text. Concurrent requests for the same statement share
+ * a single prepare round-trip, failed prepares are not cached. Every caller
+ * gets its own future, so completing or cancelling it doesn't affect the
+ * cached statement.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public final class PreparedStatementCache {
+
+    // -- instance fields
+
+    private final CqlSession session;
+    private final Map<String, CompletableFuture<PreparedStatement>> statements;
+
+    private final LongAdder hits;
+    private final LongAdder misses;
+
+    // -- constructors
+
+    /**
+     * @param session The session statements are prepared on
+     * @param maxSize Maximum number of cached statements, the least recently used one is dropped
+     * */
+    PreparedStatementCache(final CqlSession session, final int maxSize) {
+        this.session = session;
+        this.statements = new LinkedHashMap<String, CompletableFuture<PreparedStatement>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, CompletableFuture<PreparedStatement>> eldest) {
+                return size() > maxSize;
+            }
+        };
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+    }
+
+    // -- public methods
+
+    /**
+     * Prepares a statement, or returns the already prepared one.
+     *
+     * @param cql The CQL query with bind markers
+     * @return CompletableFuture completed with the prepared statement, owned by the caller
+     * */
+    public CompletableFuture<PreparedStatement> prepare(final String cql) {
+        CompletableFuture<PreparedStatement> statement;
+
+        synchronized (statements) {
+            statement = statements.get(cql);
+
+            if (statement != null) {
+                hits.increment();
+                return statement.thenApply(Function.identity());
+            }
+
+            misses.increment();
+            statement = session.prepareAsync(cql).toCompletableFuture();
+            statements.put(cql, statement);
+        }
+
+        CompletableFuture<PreparedStatement> prepared = statement;
+        prepared.whenComplete((result, throwable) -> {
+            if (throwable != null) {
+                synchronized (statements) {
+                    statements.remove(cql, prepared);
+                }
+            }
+        });
+
+        return prepared.thenApply(Function.identity());
+    }
+
+    // -- getter and setter
+
+    /**
+     * @return int number of cached statements
+     * */
+    public int size() {
+        synchronized (statements) {
+            return statements.size();
+        }
+    }
+
+    /**
+     * @return long prepare calls served from the cache
+     * */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return long prepare calls that went to the cluster
+     * */
+    public long getMissCount() {
+        return misses.sum();
+    }
+}
@@ -0,0 +1,22 @@
+package de.christianschliz.spigotms.api.database;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a {@link SqlFunction} class that only reads, so
+ * {@link AsyncQueryExecutor#submit(String, SqlFunction)} runs it on a read
+ * replica instead of the primary. Lambdas can't carry annotations, use
+ * {@link AsyncQueryExecutor#submitRead(String, SqlFunction)} for them.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface ReadReplica {
+}
@@ -1,5 +1,17 @@
 package de.christianschliz.spigotms.api.database;
 
+import de.christianschliz.spigotms.api.executor.ExecutorRegistry;
+import de.christianschliz.spigotms.api.messaging.MessageBus;
+import de.christianschliz.spigotms.api.metrics.LatencyHistogram;
+import de.christianschliz.spigotms.api.metrics.MetricsRegistry;
+import io.netty.channel.EventLoopGroup;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import org.redisson.Redisson;
 import org.redisson.api.RedissonClient;
 import org.redisson.config.Config;
@@ -11,8 +23,29 @@ import org.redisson.config.Config;
 public final class RedisController
         implements DatabaseRepository<RedissonClient> {
 
+    private static final long CLOSE_FLUSH_TIMEOUT_SECONDS = 5;
+    private static final int DEFAULT_BUS_HANDLER_THREADS = 4;
+
     private final Config config;
-    private RedissonClient redissonClient;
+    private final String nodeId;
+    private volatile RedissonClient redissonClient;
+    private LatencyHistogram latency = new LatencyHistogram();
+    private LatencyHistogram messageBusLatency = new LatencyHistogram();
+    private LatencyHistogram pipelineLatency = new LatencyHistogram();
+
+    private long busFlushWindowMicros = 1000;
+    private int busMaxBatchBytes = 65536;
+    private long busRequestTimeoutMillis = 5000;
+    private ScheduledExecutorService busScheduler;
+    private ExecutorService busHandlerPool;
+    private MessageBus messageBus;
+
+    private int pipelineMaxBatchSize = 256;
+    private volatile RedisPipeline pipeline;
+
+    private MetricsRegistry metricsRegistry;
+    private int codecCompressionThreshold = 512;
+    private CodecRegistry codecRegistry;
 
     /**
      * The Redis Controller class for access within SpigotServices.
@@ -22,6 +55,7 @@ public final class RedisController
      * */
     public RedisController(final String[] nodeAddresses, final String password) {
         this.config = new Config();
+        this.nodeId = UUID.randomUUID().toString();
 
         if (nodeAddresses.length == 1) {
             config.useSingleServer().setPassword(password).setAddress(nodeAddresses[0]);
@@ -32,12 +66,231 @@ public final class RedisController
     }
 
     @Override
-    public void connect() {
-        redissonClient = Redisson.create(config);
+    public synchronized void connect() {
+        if (redissonClient == null) {
+            redissonClient = Redisson.create(config);
+        }
     }
 
     @Override
     public RedissonClient get() {
-        return redissonClient;
+        RedissonClient client = redissonClient;
+
+        if (client == null) {
+            connect();
+            client = redissonClient;
+        }
+
+        return client;
+    }
+
+    /**
+     * Shuts the client down if it was ever connected.
+     * */
+    public synchronized void close() {
+        if (messageBus != null) {
+            messageBus.close();
+        }
+
+        if (pipeline != null) {
+            try {
+                pipeline.flush().get(CLOSE_FLUSH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (ExecutionException | TimeoutException exception) {
+                System.err.println("[SpigotMS] Could not send the last Redis pipeline batch");
+                exception.printStackTrace();
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (redissonClient != null) {
+            redissonClient.shutdown();
+        }
+    }
+
+    /**
+     * Creates a near-cache over a Redis map. Writes through the near-cache
+     * invalidate the entry on all servers via the topic <code>name + ":invalidate"</code>.
+     *
+     * @param name           The name of the Redis map
+     * @param maxSize        Maximum number of locally cached entries
+     * @param ttlMillis      Time after which a local entry is reloaded, 0 for no expiry
+     * @param evictionPolicy Which entry is evicted when the cache is full
+     * @param <K>            key type
+     * @param <V>            value type
+     * @return NearCache the near-cache
+     * @throws IllegalArgumentException if maxSize is less than 1
+     * */
+    public <K, V> NearCache<K, V> nearCache(final String name, final int maxSize, final long ttlMillis,
+                                            final NearCache.EvictionPolicy evictionPolicy) {
+        return new NearCache<>(nodeId, get().getMap(name), get().getTopic(name + ":invalidate"),
+                maxSize, ttlMillis, evictionPolicy, latency);
+    }
+
+    /**
+     * Creates a rate limiter shared by all servers, which leases
+     * tokens in batches instead of asking Redis on every check.
+     *
+     * @param name         The name of the limiter, e.g. <code>rewards:claim</code>
+     * @param permits      Tokens all servers together may take per period
+     * @param periodMillis The period in milliseconds
+     * @param leaseSize    Tokens leased from Redis at once, 1 to ask Redis on every check
+     * @param leaseMillis  Time after which unused leased tokens are dropped
+     * @return LeasedRateLimiter the rate limiter
+     * @throws IllegalArgumentException if a number is not positive, or <code>leaseSize</code> exceeds the permits
+     * */
+    public LeasedRateLimiter rateLimiter(final String name, final long permits, final long periodMillis,
+                                         final int leaseSize, final long leaseMillis) {
+        return new LeasedRateLimiter(get(), name, permits, periodMillis, leaseSize, leaseMillis, latency);
+    }
+
+    /**
+     * Creates a lock shared by all servers, which is kept by a server for
+     * a lease time, so it can be locked again without asking Redis.
+     *
+     * @param name        The name of the lock, e.g. <code>trade:</code> followed by the player id
+     * @param leaseMillis Time the lock is held in Redis per lease
+     * @return LeasedLock the lock
+     * */
+    public LeasedLock lock(final String name, final long leaseMillis) {
+        return new LeasedLock(get(), name, nodeId, leaseMillis, latency);
+    }
+
+    /**
+     * Gets the message bus of this server, created on first use.
+     *
+     * @return MessageBus the message bus
+     * */
+    public synchronized MessageBus messageBus() {
+        if (messageBus == null) {
+            if (busScheduler == null) {
+                // used on its own, without the pools of the plugin
+                busScheduler = Executors.newSingleThreadScheduledExecutor(
+                        ExecutorRegistry.threadFactory("messaging-timer"));
+                busHandlerPool = Executors.newFixedThreadPool(DEFAULT_BUS_HANDLER_THREADS,
+                        ExecutorRegistry.threadFactory("messaging"));
+            }
+
+            messageBus = new MessageBus(nodeId, get(), busFlushWindowMicros, busMaxBatchBytes,
+                    busRequestTimeoutMillis, messageBusLatency, busScheduler, busHandlerPool);
+        }
+
+        return messageBus;
+    }
+
+    /**
+     * Gets the pipeline of this server, created on first use. Commands
+     * queued on it are sent as one batch when the next tick starts.
+     *
+     * @return RedisPipeline the pipeline
+     * */
+    public synchronized RedisPipeline pipeline() {
+        if (pipeline == null) {
+            pipeline = new RedisPipeline(get(), pipelineMaxBatchSize, pipelineLatency);
+        }
+
+        return pipeline;
+    }
+
+    /**
+     * Gets the codec registry of this server, created on first use.
+     * Doesn't connect the client.
+     *
+     * @return CodecRegistry the codec registry
+     * */
+    public synchronized CodecRegistry codecs() {
+        if (codecRegistry == null) {
+            codecRegistry = new CodecRegistry(codecCompressionThreshold, metricsRegistry);
+        }
+
+        return codecRegistry;
+    }
+
+    /**
+     * Sends the commands queued on the pipeline, if it was ever used.
+     * Called by the plugin from a Bukkit task, which runs at the start of
+     * every tick, before the worlds and the players' packets are processed.
+     * */
+    public void flushPipeline() {
+        RedisPipeline current = pipeline;
+
+        if (current != null) {
+            current.flush();
+        }
+    }
+
+    /**
+     * Must be set before the pipeline is first used.
+     *
+     * @param maxBatchSize Number of commands at which a batch is sent before the tick ends
+     * */
+    public synchronized void setPipelineMaxBatchSize(final int maxBatchSize) {
+        this.pipelineMaxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Must be set before the codec registry is first used.
+     *
+     * @param compressionThreshold Encoded size from which values are compressed by default, 0 to never compress
+     * */
+    public synchronized void setCodecCompressionThreshold(final int compressionThreshold) {
+        this.codecCompressionThreshold = compressionThreshold;
+    }
+
+    /**
+     * Must be set before the message bus is first used.
+     *
+     * @param flushWindowMicros    Time outgoing messages are collected before they are published, 0 to publish at once
+     * @param maxBatchBytes        Size at which a batch is published before the flush window ends
+     * @param requestTimeoutMillis Time after which a request without reply fails
+     * */
+    public synchronized void setMessageBusOptions(final long flushWindowMicros, final int maxBatchBytes,
+                                                  final long requestTimeoutMillis) {
+        this.busFlushWindowMicros = flushWindowMicros;
+        this.busMaxBatchBytes = maxBatchBytes;
+        this.busRequestTimeoutMillis = requestTimeoutMillis;
+    }
+
+    /**
+     * Lets the message bus run on pools of the plugin instead of creating its
+     * own. Must be set before the message bus is first used.
+     *
+     * @param scheduler   Runs the flushes and request timeouts of the bus
+     * @param handlerPool Runs the handlers of the bus
+     * */
+    public synchronized void setMessageBusExecutors(final ScheduledExecutorService scheduler,
+                                                    final ExecutorService handlerPool) {
+        this.busScheduler = scheduler;
+        this.busHandlerPool = handlerPool;
+    }
+
+    /**
+     * Lets the client run on shared threads instead of starting its own
+     * event loops and listener pool. Must be set before the client connects.
+     *
+     * @param eventLoopGroup The Netty event loop group shared with other drivers
+     * @param executor       The pool listeners and callbacks of the client run on
+     * */
+    public synchronized void setExecutors(final EventLoopGroup eventLoopGroup, final ExecutorService executor) {
+        config.setEventLoopGroup(eventLoopGroup);
+        config.setExecutor(executor);
+    }
+
+    /**
+     * @param registry Registry the latency of near-cache, message bus and pipeline round-trips
+     *                 and the codec metrics are recorded to, must be set before they are created
+     * */
+    public synchronized void setMetricsRegistry(final MetricsRegistry registry) {
+        this.metricsRegistry = registry;
+        this.latency = registry.databaseTimer("redis");
+        this.messageBusLatency = registry.databaseTimer("redis-bus");
+        this.pipelineLatency = registry.databaseTimer("redis-pipeline");
+    }
+
+    /**
+     * @return String id of this server, unique per controller instance
+     * */
+    public String getNodeId() {
+        return nodeId;
     }
 }
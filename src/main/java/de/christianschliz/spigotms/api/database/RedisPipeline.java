@@ -0,0 +1,209 @@
+package de.christianschliz.spigotms.api.database;
+
+import de.christianschliz.spigotms.api.metrics.LatencyHistogram;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import org.redisson.api.BatchOptions;
+import org.redisson.api.RBatch;
+import org.redisson.api.RFuture;
+import org.redisson.api.RedissonClient;
+
+/**
+ * Collects Redis commands and sends them as one {@link RBatch}, so the
+ * many small calls a service makes in an event handler or a tick cost a
+ * single round-trip. The collected commands are sent once per tick, or as
+ * soon as a batch has the maximum number of commands. The plugin sends
+ * them from a Bukkit task, and those run at the start of a tick, so commands
+ * queued by listeners wait for the rest of their tick and the pause before
+ * the next one, at most one tick (50 ms) in total.
+ * Bukkit has no hook at the end of a tick to send them earlier.
+ *
+ * <p>Commands are queued as functions on the current batch:</p>
+ * <pre>
+ * pipeline.queue(batch -&gt; batch.&lt;UUID, Integer&gt;getMap("kills").addAndGetAsync(player, 1))
+ *         .thenAccept(kills -&gt; ...);
+ * </pre>
+ *
+ * <p>Every command gets its own future, completed on a Redis thread once
+ * the batch was executed. If the batch can't be sent, all of its futures
+ * fail; a command Redis rejects only fails its own future.
+ * The pipeline is created through {@link RedisController#pipeline()}.</p>
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public final class RedisPipeline {
+
+    // -- instance fields
+
+    private final RedissonClient client;
+    private final int maxBatchSize;
+    private final LatencyHistogram latency;
+
+    private final LongAdder commands;
+    private final LongAdder batches;
+    private final LongAdder failedBatches;
+
+    private RBatch batch;
+    private List<CompletableFuture<?>> futures;
+
+    // -- constructors
+
+    /**
+     * @param client       The Redis client
+     * @param maxBatchSize Number of commands at which a batch is sent without waiting for the next tick
+     * @param latency      The timer batch round-trips are recorded to
+     * */
+    RedisPipeline(final RedissonClient client, final int maxBatchSize, final LatencyHistogram latency) {
+        this.client = client;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.latency = latency;
+
+        this.commands = new LongAdder();
+        this.batches = new LongAdder();
+        this.failedBatches = new LongAdder();
+    }
+
+    // -- public methods
+
+    /**
+     * Queues a command for the next batch. The function is called right
+     * away with the current batch and must issue exactly one async command.
+     *
+     * @param command Issues the command on the batch, e.g. <code>batch -&gt; batch.getBucket(key).getAsync()</code>
+     * @param <V>     result type
+     * @return CompletableFuture completed with the result once the batch was executed
+     * */
+    public <V> CompletableFuture<V> queue(final Function<RBatch, RFuture<V>> command) {
+        CompletableFuture<V> result = new CompletableFuture<>();
+        RBatch full = null;
+        List<CompletableFuture<?>> fullFutures = null;
+
+        synchronized (this) {
+            if (batch == null) {
+                batch = client.createBatch(BatchOptions.defaults());
+                futures = new ArrayList<>();
+            }
+
+            command.apply(batch).onComplete((value, exception) -> {
+                if (exception != null) {
+                    result.completeExceptionally(exception);
+                } else {
+                    result.complete(value);
+                }
+            });
+            futures.add(result);
+
+            if (futures.size() >= maxBatchSize) {
+                full = batch;
+                fullFutures = futures;
+                batch = null;
+                futures = null;
+            }
+        }
+
+        commands.increment();
+
+        if (full != null) {
+            execute(full, fullFutures);
+        }
+
+        return result;
+    }
+
+    /**
+     * Sends the queued commands. Called at the start of every tick; services
+     * only need to call it when they want the results earlier.
+     *
+     * @return CompletableFuture completed once the batch was executed, at once if nothing was queued
+     * */
+    public CompletableFuture<Void> flush() {
+        RBatch queued;
+        List<CompletableFuture<?>> queuedFutures;
+
+        synchronized (this) {
+            if (batch == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+
+            queued = batch;
+            queuedFutures = futures;
+            batch = null;
+            futures = null;
+        }
+
+        return execute(queued, queuedFutures);
+    }
+
+    // -- private methods
+
+    private CompletableFuture<Void> execute(final RBatch queued, final List<CompletableFuture<?>> queuedFutures) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        long start = System.nanoTime();
+        batches.increment();
+
+        RFuture<?> executed;
+
+        try {
+            executed = queued.executeAsync();
+        } catch (RuntimeException exception) {
+            // e.g. the client was shut down, nothing was sent
+            failed(queuedFutures, done, exception);
+            return done;
+        }
+
+        executed.onComplete((result, exception) -> {
+            latency.recordSince(start);
+
+            if (exception != null) {
+                failed(queuedFutures, done, exception);
+            } else {
+                done.complete(null);
+            }
+        });
+
+        return done;
+    }
+
+    private void failed(final List<CompletableFuture<?>> queuedFutures, final CompletableFuture<Void> done,
+                        final Throwable exception) {
+        failedBatches.increment();
+        // the commands' own futures never complete if the batch wasn't sent,
+        // commands that ran before the failure keep their result
+        queuedFutures.forEach(future -> future.completeExceptionally(exception));
+        done.completeExceptionally(exception);
+    }
+
+    // -- getter and setter
+
+    /**
+     * @return long commands queued since the pipeline was created
+     * */
+    public long getCommandCount() {
+        return commands.sum();
+    }
+
+    /**
+     * @return long batches sent since the pipeline was created
+     * */
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    /**
+     * @return long batches that failed, failing all of their commands
+     * */
+    public long getFailedBatchCount() {
+        return failedBatches.sum();
+    }
+
+    /**
+     * @return int commands waiting for the next batch
+     * */
+    public synchronized int getPendingCount() {
+        return futures == null ? 0 : futures.size();
+    }
+}
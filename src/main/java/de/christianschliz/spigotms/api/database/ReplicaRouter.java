@@ -0,0 +1,283 @@
+package de.christianschliz.spigotms.api.database;
+
+import com.zaxxer.hikari.HikariDataSource;
+import de.christianschliz.spigotms.api.metrics.LatencyHistogram;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.sql.DataSource;
+
+/**
+ * Sends reads to the read replica with the least queries in flight. A
+ * replica is skipped while it lags behind the primary by more than the
+ * allowed time, while its lag is unknown or after it refused a connection,
+ * until the next lag check succeeds. Without a usable replica, reads go to
+ * the primary.
+ *
+ * <p>The lag of every replica is checked on a background thread with a
+ * query returning the lag in seconds, by default <code>SHOW SLAVE STATUS</code>
+ * (its <code>Seconds_Behind_Master</code> column).</p>
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public final class ReplicaRouter {
+
+    // -- static fields
+
+    private static final String[] LAG_COLUMNS = {"Seconds_Behind_Master", "Seconds_Behind_Source"};
+
+    // -- instance fields
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final long maxLagMillis;
+    private final String lagQuery;
+    private final ScheduledExecutorService lagChecker;
+    private final AtomicInteger rotation;
+    private final LongAdder primaryReads;
+
+    // -- constructors
+
+    /**
+     * @param primary                The primary, which takes reads no replica can
+     * @param replicas               The read replicas
+     * @param maxLagMillis           Lag above which a replica is skipped
+     * @param lagCheckIntervalMillis Time between two lag checks
+     * @param lagQuery               Query returning the lag of a replica in seconds
+     * @param lagChecker             Runs the lag checks, shut down when the router is closed; null without replicas
+     * */
+    ReplicaRouter(final DataSource primary, final List<Replica> replicas, final long maxLagMillis,
+                  final long lagCheckIntervalMillis, final String lagQuery,
+                  final ScheduledExecutorService lagChecker) {
+        this.primary = primary;
+        this.replicas = Collections.unmodifiableList(replicas);
+        this.maxLagMillis = maxLagMillis;
+        this.lagQuery = lagQuery;
+        this.rotation = new AtomicInteger();
+        this.primaryReads = new LongAdder();
+        this.lagChecker = lagChecker;
+
+        if (!replicas.isEmpty()) {
+            lagChecker.scheduleWithFixedDelay(this::checkLag, 0, lagCheckIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // -- public methods
+
+    /**
+     * Runs a read on the least busy usable replica, or on the primary if
+     * there is none. A replica that refuses the connection is skipped until
+     * its next lag check and the read runs somewhere else.
+     *
+     * @param work The read to run with the connection
+     * @param <T>  result type
+     * @return T the result
+     * @throws SQLException if the read fails
+     * */
+    public <T> T read(final SqlFunction<Connection, T> work) throws SQLException {
+        Replica replica = choose();
+
+        while (replica != null) {
+            replica.outstanding.incrementAndGet();
+            long start = System.nanoTime();
+            Connection connection;
+
+            try {
+                connection = replica.dataSource.getConnection();
+            } catch (SQLException exception) {
+                replica.outstanding.decrementAndGet();
+                replica.usable = false;
+                System.err.println("[SpigotMS] Read replica " + replica.name + " refused a connection, skipping it");
+                replica = choose();
+                continue;
+            }
+
+            try (Connection replicaConnection = connection) {
+                return work.apply(replicaConnection);
+            } finally {
+                replica.outstanding.decrementAndGet();
+                replica.reads.increment();
+                replica.latency.recordSince(start);
+            }
+        }
+
+        primaryReads.increment();
+
+        try (Connection connection = primary.getConnection()) {
+            return work.apply(connection);
+        }
+    }
+
+    // -- package-private methods
+
+    /**
+     * Stops the lag checks and closes the replica pools.
+     * */
+    void close() {
+        if (lagChecker != null) {
+            lagChecker.shutdownNow();
+        }
+
+        for (Replica replica : replicas) {
+            replica.dataSource.close();
+        }
+    }
+
+    // -- private methods
+
+    private Replica choose() {
+        int size = replicas.size();
+
+        if (size == 0) {
+            return null;
+        }
+
+        // start at a rotating offset, so replicas with the same load take turns
+        int offset = Math.floorMod(rotation.getAndIncrement(), size);
+        Replica chosen = null;
+        int least = Integer.MAX_VALUE;
+
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((offset + i) % size);
+
+            if (!replica.usable || replica.lagMillis > maxLagMillis) {
+                continue;
+            }
+
+            int outstanding = replica.outstanding.get();
+
+            if (outstanding < least) {
+                chosen = replica;
+                least = outstanding;
+            }
+        }
+
+        return chosen;
+    }
+
+    private void checkLag() {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.dataSource.getConnection();
+                 Statement statement = connection.createStatement();
+                 ResultSet resultSet = statement.executeQuery(lagQuery)) {
+                double seconds = resultSet.next() ? lagSeconds(resultSet) : Double.NaN;
+
+                // no row or a null lag means replication isn't running
+                if (Double.isNaN(seconds)) {
+                    replica.usable = false;
+                } else {
+                    replica.lagMillis = (long) (seconds * 1000);
+                    replica.usable = true;
+                }
+            } catch (SQLException | RuntimeException exception) {
+                replica.usable = false;
+            }
+        }
+    }
+
+    private static double lagSeconds(final ResultSet resultSet) throws SQLException {
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        int column = 1;
+
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            for (String lagColumn : LAG_COLUMNS) {
+                if (lagColumn.equalsIgnoreCase(metaData.getColumnLabel(i))) {
+                    column = i;
+                }
+            }
+        }
+
+        double seconds = resultSet.getDouble(column);
+        return resultSet.wasNull() ? Double.NaN : seconds;
+    }
+
+    // -- getter and setter
+
+    /**
+     * @return List of the read replicas
+     * */
+    public List<Replica> getReplicas() {
+        return replicas;
+    }
+
+    /**
+     * @return long reads that went to the primary, because no replica was usable
+     * */
+    public long getPrimaryReadCount() {
+        return primaryReads.sum();
+    }
+
+    // -- inner classes
+
+    /**
+     * A single read replica and its pool.
+     * */
+    public static final class Replica {
+
+        private final String name;
+        private final HikariDataSource dataSource;
+        private final LatencyHistogram latency;
+        private final AtomicInteger outstanding;
+        private final LongAdder reads;
+
+        private volatile boolean usable;
+        private volatile long lagMillis;
+
+        /**
+         * @param name       The name of the replica, e.g. its address
+         * @param dataSource The pool of the replica
+         * @param latency    The timer reads are recorded to
+         * */
+        Replica(final String name, final HikariDataSource dataSource, final LatencyHistogram latency) {
+            this.name = name;
+            this.dataSource = dataSource;
+            this.latency = latency;
+            this.outstanding = new AtomicInteger();
+            this.reads = new LongAdder();
+        }
+
+        /**
+         * @return String the name of the replica
+         * */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return boolean whether the last lag check succeeded
+         * */
+        public boolean isUsable() {
+            return usable;
+        }
+
+        /**
+         * @return long the lag behind the primary at the last check
+         * */
+        public long getLagMillis() {
+            return lagMillis;
+        }
+
+        /**
+         * @return int reads running on this replica right now
+         * */
+        public int getOutstanding() {
+            return outstanding.get();
+        }
+
+        /**
+         * @return long reads that ran on this replica
+         * */
+        public long getReadCount() {
+            return reads.sum();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package de.christianschliz.spigotms.api.database;
+
+import java.sql.SQLException;
+
+/**
+ * A function that may throw an {@link SQLException},
+ * e.g. a query against a JDBC connection.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ *
+ * @param <T> input type, e.g. a connection or result set
+ * @param <R> result type
+ * */
+@FunctionalInterface
+public interface SqlFunction<T, R> {
+
+    /**
+     * @param input the function input
+     * @return R the function result
+     * @throws SQLException if the database access fails
+     * */
+    R apply(T input) throws SQLException;
+}
@@ -0,0 +1,256 @@
+package de.christianschliz.spigotms.api.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BinaryOperator;
+import javax.sql.DataSource;
+
+/**
+ * Buffers writes in memory and flushes them as a single JDBC batch,
+ * either when {@code maxBatchSize} distinct keys are pending or when the
+ * flush interval has passed. Writes to the same key are coalesced before
+ * they reach the database, e.g. a thousand kills of one player between two
+ * flushes become a single row update.
+ *
+ * <p>Buffers are created through
+ * {@link MySQLController#writeBehind(String, Binder, int, long)} and are
+ * flushed synchronously when they or the controller are closed.</p>
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ *
+ * @param <K> key type, e.g. a player UUID
+ * @param <V> value type, e.g. the player stats
+ * */
+public final class WriteBehindBuffer<K, V> {
+
+    // -- instance fields
+
+    private final MySQLController controller;
+    private final DataSource dataSource;
+    private final String sql;
+    private final Binder<K, V> binder;
+    private final BinaryOperator<V> mergeFunction;
+    private final int maxBatchSize;
+
+    private final ScheduledExecutorService scheduler;
+    private final ScheduledFuture<?> flushTask;
+
+    private final Map<K, V> pending;
+    private final ReentrantLock flushLock;
+    private final AtomicBoolean flushScheduled;
+    private final AtomicBoolean closed;
+
+    private final LongAdder writes;
+    private final LongAdder flushedRows;
+    private final LongAdder batches;
+
+    // -- constructors
+
+    /**
+     * @param controller          The controller the buffer is removed from when closed
+     * @param dataSource          The connection pool batches are written to
+     * @param sql                 The statement executed for every pending key,
+     *                            e.g. an <code>INSERT ... ON DUPLICATE KEY UPDATE</code>
+     * @param binder              Binds a key and its value to the statement parameters
+     * @param mergeFunction       Combines a pending value with a new write to the same key
+     * @param maxBatchSize        Number of pending keys that triggers a flush
+     * @param flushIntervalMillis Maximum time a write stays buffered
+     * @param scheduler           Scheduler running the flushes
+     * */
+    WriteBehindBuffer(final MySQLController controller, final DataSource dataSource, final String sql,
+                      final Binder<K, V> binder, final BinaryOperator<V> mergeFunction, final int maxBatchSize,
+                      final long flushIntervalMillis, final ScheduledExecutorService scheduler) {
+        this.controller = controller;
+        this.dataSource = dataSource;
+        this.sql = sql;
+        this.binder = binder;
+        this.mergeFunction = mergeFunction;
+        this.maxBatchSize = maxBatchSize;
+        this.scheduler = scheduler;
+
+        this.pending = new ConcurrentHashMap<>();
+        this.flushLock = new ReentrantLock();
+        this.flushScheduled = new AtomicBoolean();
+        this.closed = new AtomicBoolean();
+
+        this.writes = new LongAdder();
+        this.flushedRows = new LongAdder();
+        this.batches = new LongAdder();
+
+        this.flushTask = scheduler.scheduleWithFixedDelay(this::flushQuietly,
+                flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // -- public methods
+
+    /**
+     * Buffers a write. A pending value for the same key
+     * is combined with the new one by the merge function.
+     *
+     * @param key   row key
+     * @param value new value
+     * */
+    public void write(final K key, final V value) {
+        pending.merge(key, value, mergeFunction);
+        writes.increment();
+
+        if (pending.size() >= maxBatchSize && flushScheduled.compareAndSet(false, true)) {
+            scheduler.execute(() -> {
+                flushScheduled.set(false);
+                flushQuietly();
+            });
+        }
+    }
+
+    /**
+     * Writes all pending values on the calling thread. Values that
+     * could not be written stay buffered for the next flush.
+     *
+     * @throws SQLException if the batch could not be written
+     * */
+    public void flush() throws SQLException {
+        flushLock.lock();
+
+        try {
+            List<K> keys = new ArrayList<>(pending.keySet());
+
+            for (int offset = 0; offset < keys.size(); offset += maxBatchSize) {
+                writeBatch(keys.subList(offset, Math.min(offset + maxBatchSize, keys.size())));
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Stops the periodic flush, writes all pending values and removes
+     * the buffer from its controller. Closing it again does nothing.
+     * */
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+
+        flushTask.cancel(false);
+        flushQuietly();
+        controller.removeWriteBehind(this);
+    }
+
+    // -- private methods
+
+    private void writeBatch(final List<K> keys) throws SQLException {
+        Map<K, V> batch = new LinkedHashMap<>();
+
+        for (K key : keys) {
+            V value = pending.remove(key);
+
+            if (value != null) {
+                batch.put(key, value);
+            }
+        }
+
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                for (Map.Entry<K, V> entry : batch.entrySet()) {
+                    binder.bind(statement, entry.getKey(), entry.getValue());
+                    statement.addBatch();
+                }
+
+                statement.executeBatch();
+                connection.commit();
+            } catch (SQLException exception) {
+                connection.rollback();
+                throw exception;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+
+            flushedRows.add(batch.size());
+            batches.increment();
+        } catch (SQLException exception) {
+            // Put the values back, newer writes to the same key are merged on top
+            batch.forEach((key, value) -> pending.merge(key, value,
+                    (newer, older) -> mergeFunction.apply(older, newer)));
+            throw exception;
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (SQLException exception) {
+            System.err.println("[SpigotMS] Write-behind flush failed, retrying with the next flush: " + sql);
+            exception.printStackTrace();
+        }
+    }
+
+    // -- getter and setter
+
+    /**
+     * @return int number of keys waiting to be written
+     * */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * @return long number of {@link WriteBehindBuffer#write(Object, Object)} calls
+     * */
+    public long getWriteCount() {
+        return writes.sum();
+    }
+
+    /**
+     * @return long number of rows written to the database
+     * */
+    public long getFlushedRowCount() {
+        return flushedRows.sum();
+    }
+
+    /**
+     * @return long number of executed JDBC batches
+     * */
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    // -- inner classes
+
+    /**
+     * Binds a buffered key and value to the parameters of the batch statement.
+     *
+     * @param <K> key type
+     * @param <V> value type
+     * */
+    @FunctionalInterface
+    public interface Binder<K, V> {
+
+        /**
+         * @param statement the batch statement
+         * @param key       row key
+         * @param value     coalesced value
+         * @throws SQLException if a parameter can't be set
+         * */
+        void bind(PreparedStatement statement, K key, V value) throws SQLException;
+    }
+}
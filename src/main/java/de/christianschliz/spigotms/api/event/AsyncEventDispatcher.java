@@ -0,0 +1,110 @@
+package de.christianschliz.spigotms.api.event;
+
+import de.christianschliz.spigotms.api.metrics.MetricsRegistry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Holds the async event queues of all services. Services opt in per
+ * event type, so listeners that only read, e.g. for analytics, can
+ * run off the main thread and stop costing tick time.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public final class AsyncEventDispatcher {
+
+    // -- static fields
+
+    private static final long STOP_TIMEOUT_MILLIS = 1000;
+
+    // -- instance fields
+
+    private final MetricsRegistry metricsRegistry;
+    private final int queueCapacity;
+    private final OverflowPolicy defaultPolicy;
+    private final List<ServiceEventQueue> queues;
+
+    // -- constructors
+
+    /**
+     * @param metricsRegistry Registry the queue lag and dropped events are recorded to
+     * @param queueCapacity   Events that may wait in the queue of a service
+     * @param defaultPolicy   What to do with events if a queue is full, unless a registration says otherwise
+     * */
+    public AsyncEventDispatcher(final MetricsRegistry metricsRegistry, final int queueCapacity,
+                                final OverflowPolicy defaultPolicy) {
+        this.metricsRegistry = metricsRegistry;
+        this.queueCapacity = queueCapacity;
+        this.defaultPolicy = defaultPolicy;
+        this.queues = new CopyOnWriteArrayList<>();
+    }
+
+    // -- public methods
+
+    /**
+     * Creates the event queue of a service instance and starts its worker.
+     * A reloaded service gets a queue of its own, while the instance it
+     * replaces keeps handling events until it is unloaded.
+     *
+     * @param serviceName The service name
+     * @return ServiceEventQueue the new queue of the service
+     * */
+    public ServiceEventQueue register(final String serviceName) {
+        ServiceEventQueue queue = new ServiceEventQueue(serviceName, queueCapacity,
+                metricsRegistry.forService(serviceName));
+        queue.start();
+        queues.add(queue);
+        return queue;
+    }
+
+    /**
+     * Handles the queued events of an unloaded service instance and stops
+     * its worker, so the old service classes can be garbage collected.
+     *
+     * @param queue The queue returned by {@link AsyncEventDispatcher#register(String)}
+     * */
+    public void unregister(final ServiceEventQueue queue) {
+        if (queues.remove(queue)) {
+            queue.stop(STOP_TIMEOUT_MILLIS);
+        }
+    }
+
+    /**
+     * Stops the workers of all services. They handle their
+     * queued events in parallel, within one shared timeout.
+     * */
+    public void stop() {
+        List<ServiceEventQueue> stopped = new ArrayList<>(queues);
+        queues.removeAll(stopped);
+        stopped.forEach(ServiceEventQueue::close);
+
+        long deadline = System.currentTimeMillis() + STOP_TIMEOUT_MILLIS;
+
+        for (ServiceEventQueue queue : stopped) {
+            queue.stop(deadline - System.currentTimeMillis());
+        }
+    }
+
+    // -- getter and setter
+
+    /**
+     * @return OverflowPolicy what to do with events if a queue is full
+     * */
+    public OverflowPolicy getDefaultPolicy() {
+        return defaultPolicy;
+    }
+
+    /**
+     * @return Map of the event queues of all services, sorted by name, with the newest instance of a reloaded service
+     * */
+    public Map<String, ServiceEventQueue> getServices() {
+        Map<String, ServiceEventQueue> services = new TreeMap<>();
+        queues.forEach(queue -> services.put(queue.getServiceName(), queue));
+        return Collections.unmodifiableMap(services);
+    }
+}
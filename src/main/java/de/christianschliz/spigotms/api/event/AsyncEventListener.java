@@ -0,0 +1,74 @@
+package de.christianschliz.spigotms.api.event;
+
+import de.christianschliz.spigotms.api.metrics.LatencyHistogram;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventException;
+import org.bukkit.event.Listener;
+import org.bukkit.plugin.EventExecutor;
+
+/**
+ * Takes an immutable snapshot of an event on the thread firing it
+ * and hands the snapshot to a handler on the service's event queue.
+ * The event itself never leaves the firing thread, since Bukkit
+ * objects must not be touched from other threads.
+ *
+ * @param <E> the event type
+ * @param <S> the snapshot type
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public final class AsyncEventListener<E extends Event, S> implements Listener, EventExecutor {
+
+    // -- instance fields
+
+    private final Class<E> eventClass;
+    private final Function<? super E, ? extends S> snapshot;
+    private final Consumer<? super S> handler;
+    private final ServiceEventQueue queue;
+    private final OverflowPolicy policy;
+    private final LatencyHistogram handlerTimer;
+
+    // -- constructors
+
+    /**
+     * @param eventClass   The handled event type
+     * @param snapshot     Copies what the handler needs out of the event, or returns null to skip it
+     * @param handler      Handles the snapshot on the service's event thread
+     * @param queue        The event queue of the service
+     * @param policy       What to do if the queue is full
+     * @param handlerTimer The timer the handler time is recorded to
+     * */
+    public AsyncEventListener(final Class<E> eventClass, final Function<? super E, ? extends S> snapshot,
+                              final Consumer<? super S> handler, final ServiceEventQueue queue,
+                              final OverflowPolicy policy, final LatencyHistogram handlerTimer) {
+        this.eventClass = eventClass;
+        this.snapshot = snapshot;
+        this.handler = handler;
+        this.queue = queue;
+        this.policy = policy;
+        this.handlerTimer = handlerTimer;
+    }
+
+    // -- public methods
+
+    @Override
+    public void execute(final Listener listener, final Event event) throws EventException {
+        if (!eventClass.isInstance(event)) {
+            return;
+        }
+
+        S value;
+
+        try {
+            value = snapshot.apply(eventClass.cast(event));
+        } catch (RuntimeException exception) {
+            throw new EventException(exception);
+        }
+
+        if (value != null) {
+            queue.offer(() -> handler.accept(value), handlerTimer, policy);
+        }
+    }
+}
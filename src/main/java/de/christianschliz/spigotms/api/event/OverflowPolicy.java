@@ -0,0 +1,18 @@
+package de.christianschliz.spigotms.api.event;
+
+/**
+ * What happens to an event when the async event queue
+ * of a service is full because its handlers fall behind.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public enum OverflowPolicy {
+    /** the new event is dropped, queued events are kept */
+    DROP_NEWEST,
+    /** the oldest queued event is dropped to make room for the new one */
+    DROP_OLDEST,
+    /** the thread firing the event waits for room, which slows down the tick
+     * but never loses an event */
+    BLOCK
+}
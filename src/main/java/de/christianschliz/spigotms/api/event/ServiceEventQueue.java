@@ -0,0 +1,233 @@
+package de.christianschliz.spigotms.api.event;
+
+import de.christianschliz.spigotms.api.metrics.LatencyHistogram;
+import de.christianschliz.spigotms.api.metrics.ServiceMetrics;
+import de.christianschliz.spigotms.api.metrics.ServiceThreadFactory;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The async event queue of a single service. Event snapshots are queued
+ * by the thread firing the event and handled by one worker thread per
+ * service, in the order they were fired. Since there is only one worker,
+ * handlers of a service never run concurrently and can keep state
+ * without locking. The worker is created by the service's thread factory,
+ * so it is accounted to the service like its own threads.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public final class ServiceEventQueue {
+
+    // -- static fields
+
+    private static final long POLL_MILLIS = 100;
+
+    // -- instance fields
+
+    private final String serviceName;
+    private final ServiceThreadFactory threadFactory;
+    private final int capacity;
+    private final BlockingQueue<QueuedEvent> queue;
+    private final LatencyHistogram lag;
+    private final LongAdder dropped;
+    private final LongAdder dispatched;
+
+    private volatile boolean running;
+    private Thread worker;
+
+    // -- constructors
+
+    /**
+     * @param serviceName The service the handlers belong to
+     * @param capacity    Events that may wait in the queue
+     * @param metrics     Metrics the queue lag and dropped events are recorded to, and the worker is accounted to
+     * */
+    ServiceEventQueue(final String serviceName, final int capacity, final ServiceMetrics metrics) {
+        this.serviceName = serviceName;
+        this.threadFactory = metrics.threadFactory("events");
+        this.capacity = capacity;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.lag = metrics.timer("async-event:lag");
+        this.dropped = metrics.counter("async-event:dropped");
+        this.dispatched = new LongAdder();
+    }
+
+    // -- package-private methods
+
+    /**
+     * Starts the worker thread.
+     * */
+    synchronized void start() {
+        if (worker == null) {
+            running = true;
+            worker = threadFactory.newThread(this::work);
+            worker.start();
+        }
+    }
+
+    /**
+     * Queues a handler call.
+     *
+     * @param task    calls the handler with the event snapshot
+     * @param timer   the timer the handler time is recorded to
+     * @param policy  what to do if the queue is full
+     * */
+    void offer(final Runnable task, final LatencyHistogram timer, final OverflowPolicy policy) {
+        if (!running) {
+            dropped.increment();
+            return;
+        }
+
+        QueuedEvent event = new QueuedEvent(System.nanoTime(), task, timer);
+
+        switch (policy) {
+            case DROP_OLDEST:
+                while (!queue.offer(event)) {
+                    if (queue.poll() != null) {
+                        dropped.increment();
+                    }
+                }
+                break;
+            case BLOCK:
+                try {
+                    // wake up now and then, so a stopped queue doesn't block the server forever
+                    while (!queue.offer(event, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                        if (!running) {
+                            dropped.increment();
+                            return;
+                        }
+                    }
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                    dropped.increment();
+                }
+                break;
+            default:
+                if (!queue.offer(event)) {
+                    dropped.increment();
+                }
+        }
+    }
+
+    /**
+     * Stops accepting events. The worker keeps handling the queued ones.
+     * */
+    void close() {
+        running = false;
+    }
+
+    /**
+     * Stops accepting events and lets the worker handle the queued ones
+     * for at most the given time. Events left after that are dropped.
+     *
+     * @param timeoutMillis time the queued events may take
+     * */
+    void stop(final long timeoutMillis) {
+        Thread thread;
+
+        synchronized (this) {
+            close();
+            thread = worker;
+        }
+
+        if (thread != null) {
+            try {
+                thread.join(Math.max(1, timeoutMillis));
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+
+            thread.interrupt();
+        }
+
+        int left = queue.size();
+        queue.clear();
+        dropped.add(left);
+    }
+
+    // -- private methods
+
+    private void work() {
+        while (running || !queue.isEmpty()) {
+            QueuedEvent event;
+
+            try {
+                event = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException exception) {
+                return;
+            }
+
+            if (event == null) {
+                continue;
+            }
+
+            long start = System.nanoTime();
+            lag.record(start - event.enqueuedNanos);
+
+            try {
+                event.task.run();
+            } catch (RuntimeException exception) {
+                System.err.println("[SpigotMS] Async event handler of service " + serviceName + " failed");
+                exception.printStackTrace();
+            }
+
+            event.timer.recordSince(start);
+            dispatched.increment();
+        }
+    }
+
+    // -- getter and setter
+
+    /**
+     * @return String the service the handlers belong to
+     * */
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    /**
+     * @return int events that may wait in the queue
+     * */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return int events waiting to be handled
+     * */
+    public int getPendingCount() {
+        return queue.size();
+    }
+
+    /**
+     * @return long events that were handled
+     * */
+    public long getDispatchedCount() {
+        return dispatched.sum();
+    }
+
+    /**
+     * @return long events that were dropped, counted across reloads of the service
+     * */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    // -- inner classes
+
+    private static final class QueuedEvent {
+
+        private final long enqueuedNanos;
+        private final Runnable task;
+        private final LatencyHistogram timer;
+
+        private QueuedEvent(final long enqueuedNanos, final Runnable task, final LatencyHistogram timer) {
+            this.enqueuedNanos = enqueuedNanos;
+            this.task = task;
+            this.timer = timer;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package de.christianschliz.spigotms.api.executor;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A named, bounded thread pool of the {@link ExecutorRegistry} and its
+ * metrics. Utilization is the share of the pool's threads running a task,
+ * averaged over the samples of the last second.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public final class ExecutorPool {
+
+    // -- static fields
+
+    private static final int SAMPLES = 10;
+
+    // -- instance fields
+
+    private final String name;
+    private final ThreadPoolExecutor executor;
+    private final int queueCapacity;
+    private final LongAdder rejected;
+    private final int[] activeSamples;
+
+    private int sampleIndex;
+    private volatile double utilization;
+
+    // -- constructors
+
+    /**
+     * @param name          The name of the pool, e.g. <code>io</code>
+     * @param executor      The pool, with as many core threads as maximum threads
+     * @param queueCapacity Number of tasks that may wait, {@link Integer#MAX_VALUE} if unbounded
+     * */
+    ExecutorPool(final String name, final ThreadPoolExecutor executor, final int queueCapacity) {
+        this.name = name;
+        this.executor = executor;
+        this.queueCapacity = queueCapacity;
+        this.rejected = new LongAdder();
+        this.activeSamples = new int[SAMPLES];
+
+        executor.setRejectedExecutionHandler((task, pool) -> {
+            rejected.increment();
+            throw new RejectedExecutionException("The " + name + " pool is "
+                    + (pool.isShutdown() ? "shut down" : "full"));
+        });
+    }
+
+    // -- package-private methods
+
+    /**
+     * Takes one sample of the busy threads. Called ten times a second by the registry.
+     * */
+    void sample() {
+        activeSamples[sampleIndex] = executor.getActiveCount();
+        sampleIndex = (sampleIndex + 1) % SAMPLES;
+
+        int active = 0;
+
+        for (int sample : activeSamples) {
+            active += sample;
+        }
+
+        utilization = active / (double) (SAMPLES * Math.max(1, executor.getCorePoolSize()));
+    }
+
+    /**
+     * @return ThreadPoolExecutor the pool
+     * */
+    ThreadPoolExecutor getExecutor() {
+        return executor;
+    }
+
+    // -- getter and setter
+
+    /**
+     * @return String the name of the pool
+     * */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return int threads the pool may start
+     * */
+    public int getMaxThreads() {
+        return executor.getCorePoolSize();
+    }
+
+    /**
+     * @return int threads currently started, idle threads time out
+     * */
+    public int getThreadCount() {
+        return executor.getPoolSize();
+    }
+
+    /**
+     * @return int threads running a task right now
+     * */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @return int tasks waiting for a thread, including delayed tasks of the scheduled pool
+     * */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return int tasks that may wait before new ones are rejected
+     * */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * @return double share of the threads that were busy during the last second, from 0 to 1
+     * */
+    public double getUtilization() {
+        return utilization;
+    }
+
+    /**
+     * @return long tasks that ran on this pool
+     * */
+    public long getCompletedCount() {
+        return executor.getCompletedTaskCount();
+    }
+
+    /**
+     * @return long tasks rejected because the queue was full or the pool shut down
+     * */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+}
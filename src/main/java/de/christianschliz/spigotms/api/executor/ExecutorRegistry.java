@@ -0,0 +1,249 @@
+package de.christianschliz.spigotms.api.executor;
+
+import de.christianschliz.spigotms.api.metrics.MetricsRegistry;
+import de.christianschliz.spigotms.api.metrics.ServiceMetrics;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The thread pools shared by all services, so a server runs a fixed number
+ * of threads however many services it has: a <code>cpu</code> pool for
+ * computations, an <code>io</code> pool for blocking calls and a
+ * <code>scheduled</code> pool for delayed and periodic tasks. The cpu and io
+ * pools have bounded queues and reject tasks once they are full.
+ *
+ * <p>Every service instance borrows its own view of each pool, which it may
+ * shut down without affecting anybody else; the views of an instance are
+ * shut down when it is unloaded, even if a reloaded instance of the same
+ * service already runs. The bytes a task allocates are counted to the service that
+ * submitted it, since the pool's threads aren't accounted to any service.</p>
+ *
+ * <p>Subsystems of the runtime, like the database drivers, the message bus
+ * and the player data cache, get small pools of their own, so their work
+ * never waits behind service tasks that wait for them. The Netty event loop
+ * group shared by the Redis and Cassandra drivers is kept here as well.</p>
+ *
+ * <p>A few threads are not kept here: the discovery and enable pools, which
+ * end once the services are enabled, the stall detector, which must not
+ * wait for any pool, and the MySQL query workers, which are sized to the
+ * connection pool and limit the queries of every service on their own.</p>
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public final class ExecutorRegistry {
+
+    // -- static fields
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+    private static final long SAMPLE_INTERVAL_MILLIS = 100;
+
+    // -- instance fields
+
+    private final ExecutorPool cpu;
+    private final ExecutorPool io;
+    private final ExecutorPool scheduled;
+    private final List<ExecutorPool> dedicatedPools;
+    private final int nettyThreads;
+    private final MetricsRegistry metricsRegistry;
+
+    private volatile EventLoopGroup eventLoopGroup;
+
+    // -- constructors
+
+    /**
+     * @param cpuThreads       Threads of the cpu pool
+     * @param ioThreads        Threads of the io pool
+     * @param scheduledThreads Threads of the scheduled pool
+     * @param queueCapacity    Tasks that may wait in the cpu and the io pool each
+     * @param nettyThreads     Threads of the shared Netty event loop group
+     * @param metricsRegistry  Registry the allocations of the services' tasks are counted to
+     * */
+    public ExecutorRegistry(final int cpuThreads, final int ioThreads, final int scheduledThreads,
+                            final int queueCapacity, final int nettyThreads, final MetricsRegistry metricsRegistry) {
+        this.cpu = boundedPool("cpu", cpuThreads, queueCapacity);
+        this.io = boundedPool("io", ioThreads, queueCapacity);
+        this.dedicatedPools = new CopyOnWriteArrayList<>();
+        this.nettyThreads = nettyThreads;
+        this.metricsRegistry = metricsRegistry;
+
+        ScheduledThreadPoolExecutor scheduledExecutor = new ScheduledThreadPoolExecutor(
+                Math.max(1, scheduledThreads), threadFactory("scheduled"));
+        scheduledExecutor.setRemoveOnCancelPolicy(true);
+        this.scheduled = new ExecutorPool("scheduled", scheduledExecutor, Integer.MAX_VALUE);
+
+        scheduledExecutor.scheduleAtFixedRate(() -> {
+            cpu.sample();
+            io.sample();
+            scheduled.sample();
+            dedicatedPools.forEach(ExecutorPool::sample);
+        }, SAMPLE_INTERVAL_MILLIS, SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    // -- public methods
+
+    /**
+     * Creates a view of the cpu pool. The caller shuts it down
+     * when the service instance it was created for is unloaded.
+     *
+     * @param serviceName The service name
+     * @return ExecutorService a new view of the cpu pool for the service
+     * */
+    public ExecutorService cpuView(final String serviceName) {
+        return new ServiceExecutor(serviceName, cpu.getExecutor(), allocatedBytes(serviceName));
+    }
+
+    /**
+     * Creates a view of the io pool, see {@link ExecutorRegistry#cpuView(String)}.
+     *
+     * @param serviceName The service name
+     * @return ExecutorService a new view of the io pool for the service
+     * */
+    public ExecutorService ioView(final String serviceName) {
+        return new ServiceExecutor(serviceName, io.getExecutor(), allocatedBytes(serviceName));
+    }
+
+    /**
+     * Creates a view of the scheduled pool, see {@link ExecutorRegistry#cpuView(String)}.
+     *
+     * @param serviceName The service name
+     * @return ScheduledExecutorService a new view of the scheduled pool for the service
+     * */
+    public ScheduledExecutorService scheduledView(final String serviceName) {
+        return new ServiceScheduledExecutor(serviceName,
+                (ScheduledExecutorService) scheduled.getExecutor(), allocatedBytes(serviceName));
+    }
+
+    /**
+     * Creates a small pool for a subsystem of the runtime, e.g. for the
+     * callbacks of a database driver. It is shown with the shared pools
+     * and stopped with them.
+     *
+     * @param name    The name of the subsystem, e.g. <code>redis</code>
+     * @param threads Threads of the pool
+     * @return ExecutorService the pool
+     * */
+    public ExecutorService dedicatedPool(final String name, final int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(Math.max(1, threads), Math.max(1, threads),
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), threadFactory(name));
+        executor.allowCoreThreadTimeOut(true);
+        // tasks are never rejected, they complete futures or write data somebody waits for
+        dedicatedPools.add(new ExecutorPool(name, executor, Integer.MAX_VALUE));
+        return executor;
+    }
+
+    /**
+     * Creates a small pool for the delayed and periodic tasks of a subsystem
+     * of the runtime, see {@link ExecutorRegistry#dedicatedPool(String, int)}.
+     *
+     * @param name    The name of the subsystem, e.g. <code>playerdata-writer</code>
+     * @param threads Threads of the pool
+     * @return ScheduledExecutorService the pool
+     * */
+    public ScheduledExecutorService dedicatedScheduledPool(final String name, final int threads) {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(Math.max(1, threads),
+                threadFactory(name));
+        executor.setRemoveOnCancelPolicy(true);
+        dedicatedPools.add(new ExecutorPool(name, executor, Integer.MAX_VALUE));
+        return executor;
+    }
+
+    /**
+     * Gets the event loop group shared by the Netty based database drivers,
+     * created on first use.
+     *
+     * @return EventLoopGroup the shared event loop group
+     * */
+    public EventLoopGroup eventLoopGroup() {
+        EventLoopGroup group = eventLoopGroup;
+
+        if (group == null) {
+            synchronized (this) {
+                if (eventLoopGroup == null) {
+                    eventLoopGroup = new NioEventLoopGroup(Math.max(1, nettyThreads),
+                            new DefaultThreadFactory("SpigotMS-netty", true));
+                }
+
+                group = eventLoopGroup;
+            }
+        }
+
+        return group;
+    }
+
+    /**
+     * Stops all pools and the event loop group. Must be called after the
+     * database drivers were closed.
+     * */
+    public void close() {
+        cpu.getExecutor().shutdownNow();
+        io.getExecutor().shutdownNow();
+        scheduled.getExecutor().shutdownNow();
+        dedicatedPools.forEach(pool -> pool.getExecutor().shutdownNow());
+
+        synchronized (this) {
+            if (eventLoopGroup != null) {
+                eventLoopGroup.shutdownGracefully(0, 2, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    /**
+     * Creates a thread factory for daemon threads named like the threads of
+     * the pools here, for subsystems that run without a registry, e.g. in tests.
+     *
+     * @param name The name of the pool, e.g. <code>messaging</code>
+     * @return ThreadFactory the thread factory
+     * */
+    public static ThreadFactory threadFactory(final String name) {
+        AtomicInteger counter = new AtomicInteger();
+
+        return runnable -> {
+            Thread thread = new Thread(runnable, "SpigotMS-" + name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    // -- private methods
+
+    private LongAdder allocatedBytes(final String serviceName) {
+        return metricsRegistry.forService(serviceName).counter(ServiceMetrics.POOLED_ALLOCATED_BYTES);
+    }
+
+    private static ExecutorPool boundedPool(final String name, final int threads, final int queueCapacity) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(Math.max(1, threads), Math.max(1, threads),
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(queueCapacity), threadFactory(name));
+        executor.allowCoreThreadTimeOut(true);
+        return new ExecutorPool(name, executor, queueCapacity);
+    }
+
+    // -- getter and setter
+
+    /**
+     * @return Map of the pools by name, in the order cpu, io, scheduled, then the dedicated pools
+     * */
+    public Map<String, ExecutorPool> getPools() {
+        Map<String, ExecutorPool> pools = new LinkedHashMap<>();
+        pools.put(cpu.getName(), cpu);
+        pools.put(io.getName(), io);
+        pools.put(scheduled.getName(), scheduled);
+        dedicatedPools.forEach(pool -> pools.put(pool.getName(), pool));
+        return Collections.unmodifiableMap(pools);
+    }
+}
@@ -0,0 +1,284 @@
+package de.christianschliz.spigotms.api.executor;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The view a single owner, usually a service, has of a shared pool.
+ * Shutting it down only affects the tasks submitted through it: pending
+ * tasks are removed from the pool, tasks that already run are not
+ * interrupted, since their thread belongs to the pool. The bytes its
+ * tasks allocate are counted to the owner.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+class ServiceExecutor extends AbstractExecutorService {
+
+    // -- static fields
+
+    private static final long TERMINATION_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final com.sun.management.ThreadMXBean ALLOCATIONS = allocationBean();
+
+    // -- instance fields
+
+    private final String owner;
+    private final ExecutorService pool;
+    private final LongAdder allocatedBytes;
+    private final Set<TrackedTask<?>> tasks;
+
+    private volatile boolean shutdown;
+
+    // -- constructors
+
+    /**
+     * @param owner          The name of the owner, used in error messages
+     * @param pool           The shared pool the tasks run on
+     * @param allocatedBytes The counter the allocations of the tasks are added to
+     * */
+    ServiceExecutor(final String owner, final ExecutorService pool, final LongAdder allocatedBytes) {
+        this.owner = owner;
+        this.pool = pool;
+        this.allocatedBytes = allocatedBytes;
+        this.tasks = ConcurrentHashMap.newKeySet();
+    }
+
+    // -- public methods
+
+    @Override
+    public void execute(final Runnable command) {
+        TrackedTask<?> task = command instanceof TrackedTask && ((TrackedTask<?>) command).isOwnedBy(this)
+                ? (TrackedTask<?>) command
+                : new TrackedTask<>(command, null, true);
+
+        checkNotShutdown();
+        tasks.add(task);
+
+        // shutdownNow may have missed the task while it was added
+        if (shutdown) {
+            tasks.remove(task);
+            checkNotShutdown();
+        }
+
+        try {
+            pool.execute(task);
+        } catch (RejectedExecutionException exception) {
+            tasks.remove(task);
+            throw exception;
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown = true;
+        List<Runnable> pending = new ArrayList<>();
+
+        for (TrackedTask<?> task : tasks) {
+            if (!task.started && task.cancel(false)) {
+                pending.add(task);
+
+                if (pool instanceof ThreadPoolExecutor) {
+                    ((ThreadPoolExecutor) pool).remove(task);
+                }
+            }
+        }
+
+        return pending;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return shutdown && tasks.isEmpty();
+    }
+
+    @Override
+    public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        while (!isTerminated()) {
+            long remaining = deadline - System.nanoTime();
+
+            if (remaining <= 0) {
+                return false;
+            }
+
+            TimeUnit.NANOSECONDS.sleep(Math.min(remaining, TERMINATION_POLL_NANOS));
+        }
+
+        return true;
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(final Runnable runnable, final T value) {
+        return new TrackedTask<>(runnable, value, false);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(final Callable<T> callable) {
+        return new TrackedTask<>(callable);
+    }
+
+    // -- package-private methods
+
+    /**
+     * @throws RejectedExecutionException if this view is shut down
+     * */
+    void checkNotShutdown() {
+        if (shutdown) {
+            throw new RejectedExecutionException("The executor of " + owner + " is shut down");
+        }
+    }
+
+    /**
+     * Wraps a task, so an exception it throws is logged instead of lost
+     * and its allocations are counted to the owner.
+     *
+     * @param command The task
+     * @return Runnable the wrapped task
+     * */
+    Runnable reporting(final Runnable command) {
+        return () -> {
+            long start = allocatedBytes();
+
+            try {
+                command.run();
+            } catch (RuntimeException | Error exception) {
+                report(exception);
+                throw exception;
+            } finally {
+                countAllocations(start);
+            }
+        };
+    }
+
+    /**
+     * Wraps a task, so its allocations are counted to the owner.
+     *
+     * @param callable The task
+     * @param <T>      result type
+     * @return Callable the wrapped task
+     * */
+    <T> Callable<T> counting(final Callable<T> callable) {
+        return () -> {
+            long start = allocatedBytes();
+
+            try {
+                return callable.call();
+            } finally {
+                countAllocations(start);
+            }
+        };
+    }
+
+    // -- private methods
+
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+        if (threadBean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported()) {
+            return (com.sun.management.ThreadMXBean) threadBean;
+        }
+
+        return null;
+    }
+
+    /**
+     * @return long bytes the current thread allocated so far, or -1 if unknown
+     * */
+    private static long allocatedBytes() {
+        return ALLOCATIONS == null ? -1 : ALLOCATIONS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private void countAllocations(final long start) {
+        if (start >= 0) {
+            long end = allocatedBytes();
+
+            if (end > start) {
+                allocatedBytes.add(end - start);
+            }
+        }
+    }
+
+    private void report(final Throwable exception) {
+        System.err.println("[SpigotMS] A task of " + owner + " failed");
+        exception.printStackTrace();
+    }
+
+    // -- inner classes
+
+    /**
+     * A task that forgets itself once it is done, and logs its exception if
+     * it was passed to {@link #execute(Runnable)}, where nobody else sees it.
+     * */
+    private final class TrackedTask<T> extends FutureTask<T> {
+
+        private final boolean reportFailure;
+        private volatile boolean started;
+
+        private TrackedTask(final Runnable runnable, final T value, final boolean reportFailure) {
+            super(runnable, value);
+            this.reportFailure = reportFailure;
+        }
+
+        private TrackedTask(final Callable<T> callable) {
+            super(callable);
+            this.reportFailure = false;
+        }
+
+        @Override
+        public void run() {
+            started = true;
+            long start = allocatedBytes();
+
+            try {
+                super.run();
+            } finally {
+                countAllocations(start);
+            }
+        }
+
+        @Override
+        protected void done() {
+            tasks.remove(this);
+
+            if (reportFailure && !isCancelled()) {
+                try {
+                    get();
+                } catch (ExecutionException exception) {
+                    report(exception.getCause());
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        private boolean isOwnedBy(final ServiceExecutor executor) {
+            return ServiceExecutor.this == executor;
+        }
+    }
+}
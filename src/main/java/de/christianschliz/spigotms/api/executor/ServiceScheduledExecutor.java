@@ -0,0 +1,134 @@
+package de.christianschliz.spigotms.api.executor;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The view a single owner has of the shared scheduled pool. Like the
+ * pool itself, shutting it down cancels its periodic tasks and lets its
+ * delayed tasks run; shutting it down now cancels both.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+final class ServiceScheduledExecutor extends ServiceExecutor implements ScheduledExecutorService {
+
+    // -- static fields
+
+    private static final int MIN_PURGE_SIZE = 64;
+
+    // -- instance fields
+
+    private final ScheduledExecutorService pool;
+    private final Set<ScheduledFuture<?>> delayed;
+    private final Set<ScheduledFuture<?>> periodic;
+
+    private volatile boolean cancelDelayed;
+    private int purgeSize;
+
+    // -- constructors
+
+    /**
+     * @param owner          The name of the owner, used in error messages
+     * @param pool           The shared scheduled pool
+     * @param allocatedBytes The counter the allocations of the tasks are added to
+     * */
+    ServiceScheduledExecutor(final String owner, final ScheduledExecutorService pool,
+                             final LongAdder allocatedBytes) {
+        super(owner, pool, allocatedBytes);
+        this.pool = pool;
+        this.delayed = ConcurrentHashMap.newKeySet();
+        this.periodic = ConcurrentHashMap.newKeySet();
+        this.purgeSize = MIN_PURGE_SIZE;
+    }
+
+    // -- public methods
+
+    @Override
+    public ScheduledFuture<?> schedule(final Runnable command, final long delay, final TimeUnit unit) {
+        checkNotShutdown();
+        return track(delayed, pool.schedule(reporting(command), delay, unit));
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(final Callable<V> callable, final long delay, final TimeUnit unit) {
+        checkNotShutdown();
+        return track(delayed, pool.schedule(counting(callable), delay, unit));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(final Runnable command, final long initialDelay,
+                                                  final long period, final TimeUnit unit) {
+        checkNotShutdown();
+        return track(periodic, pool.scheduleAtFixedRate(reporting(command), initialDelay, period, unit));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(final Runnable command, final long initialDelay,
+                                                     final long delay, final TimeUnit unit) {
+        checkNotShutdown();
+        return track(periodic, pool.scheduleWithFixedDelay(reporting(command), initialDelay, delay, unit));
+    }
+
+    @Override
+    public void shutdown() {
+        super.shutdown();
+        cancel(periodic);
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        cancelDelayed = true;
+        List<Runnable> pending = super.shutdownNow();
+
+        for (ScheduledFuture<?> future : delayed) {
+            if (future.cancel(false) && future instanceof Runnable) {
+                pending.add((Runnable) future);
+            }
+        }
+
+        cancel(periodic);
+        return pending;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        delayed.removeIf(Future::isDone);
+        periodic.removeIf(Future::isDone);
+        return super.isTerminated() && delayed.isEmpty() && periodic.isEmpty();
+    }
+
+    // -- private methods
+
+    private <V> ScheduledFuture<V> track(final Set<ScheduledFuture<?>> futures, final ScheduledFuture<V> future) {
+        futures.add(future);
+
+        // shutdown may have missed the task while it was added
+        if (isShutdown() && (futures == periodic || cancelDelayed)) {
+            future.cancel(false);
+        }
+
+        // done tasks are dropped lazily, so tracking costs no extra work per run
+        synchronized (this) {
+            if (delayed.size() + periodic.size() >= purgeSize) {
+                delayed.removeIf(Future::isDone);
+                periodic.removeIf(Future::isDone);
+                purgeSize = Math.max(MIN_PURGE_SIZE, (delayed.size() + periodic.size()) * 2);
+            }
+        }
+
+        return future;
+    }
+
+    private static void cancel(final Set<ScheduledFuture<?>> futures) {
+        futures.forEach(future -> future.cancel(false));
+        futures.clear();
+    }
+}
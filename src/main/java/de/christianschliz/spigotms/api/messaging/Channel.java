@@ -0,0 +1,53 @@
+package de.christianschliz.spigotms.api.messaging;
+
+/**
+ * A named pub/sub channel of the {@link MessageBus} with the codec of its messages.
+ * Declare channels once, e.g. as constants shared by the publishing and the
+ * subscribing service.
+ *
+ * @param <T> message type
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public final class Channel<T> {
+
+    // -- instance fields
+
+    private final String name;
+    private final MessageCodec<T> codec;
+
+    // -- constructors
+
+    private Channel(final String name, final MessageCodec<T> codec) {
+        this.name = name;
+        this.codec = codec;
+    }
+
+    // -- public methods
+
+    /**
+     * @param name  The channel name, e.g. <code>economy:balance</code>
+     * @param codec The codec of the messages
+     * @param <T>   message type
+     * @return Channel the channel
+     * */
+    public static <T> Channel<T> of(final String name, final MessageCodec<T> codec) {
+        return new Channel<>(name, codec);
+    }
+
+    // -- getter and setter
+
+    /**
+     * @return String the channel name
+     * */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return MessageCodec the codec of the messages
+     * */
+    public MessageCodec<T> getCodec() {
+        return codec;
+    }
+}
@@ -0,0 +1,646 @@
+package de.christianschliz.spigotms.api.messaging;
+
+import de.christianschliz.spigotms.api.metrics.LatencyHistogram;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.ByteArrayCodec;
+
+/**
+ * Typed messaging between the services of all servers over Redis pub/sub.
+ *
+ * <p>Outgoing messages are written in a compact binary form and collected
+ * for one flush window, then published as a single frame, so a burst of
+ * messages costs one Redis round-trip instead of one per message. Messages
+ * to services on the same server are handed over directly, without Redis
+ * or serialization, so they must not be changed after publishing.</p>
+ *
+ * <p>Handlers run on their own executor. By default every subscription
+ * gets a serial executor on the handler pool of the bus, so it sees messages
+ * in order while different channels are handled in parallel. Replies are
+ * completed on the handler pool as well, so a handler waiting for a reply
+ * holds one of its threads until the reply comes or the request times out.</p>
+ *
+ * <p>The bus is created through {@link de.christianschliz.spigotms.api.database.RedisController#messageBus()}.</p>
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public final class MessageBus {
+
+    // -- static fields
+
+    private static final String TOPIC_PREFIX = "spigotms:bus";
+    private static final byte FRAME_VERSION = 1;
+
+    private static final byte PUBLISH = 0;
+    private static final byte REQUEST = 1;
+    private static final byte REPLY = 2;
+    private static final byte ERROR = 3;
+
+    // -- instance fields
+
+    private final String nodeId;
+    private final RedissonClient client;
+    private final long flushWindowNanos;
+    private final int maxBatchBytes;
+    private final long requestTimeoutMillis;
+    private final LatencyHistogram requestLatency;
+
+    private final String broadcastTopicName;
+    private final RTopic broadcastTopic;
+    private final RTopic inboxTopic;
+    private final int broadcastListenerId;
+    private final int inboxListenerId;
+
+    private final Map<String, Outbox> outboxes;
+    private final Map<String, List<ChannelSubscription<?>>> subscriptions;
+    private final Map<String, Responder<?, ?>> responders;
+    private final Map<Long, PendingRequest<?>> pendingRequests;
+    private final AtomicLong nextCorrelationId;
+
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService handlerPool;
+    private volatile boolean closed;
+
+    private final LongAdder published;
+    private final LongAdder received;
+    private final LongAdder framesSent;
+    private final LongAdder framesReceived;
+
+    // -- constructors
+
+    /**
+     * @param nodeId               Unique id of this server
+     * @param client               The Redis client
+     * @param flushWindowMicros    Time outgoing messages are collected before they are published, 0 to publish at once
+     * @param maxBatchBytes        Size at which a batch is published before the flush window ends
+     * @param requestTimeoutMillis Time after which a request without reply fails
+     * @param requestLatency       The timer request round-trips are recorded to
+     * @param scheduler            Runs the flushes and request timeouts, shut down when the bus is closed
+     * @param handlerPool          Runs the handlers and completes replies, shut down when the bus is closed
+     * */
+    public MessageBus(final String nodeId, final RedissonClient client, final long flushWindowMicros,
+                      final int maxBatchBytes, final long requestTimeoutMillis,
+                      final LatencyHistogram requestLatency, final ScheduledExecutorService scheduler,
+                      final ExecutorService handlerPool) {
+        this.nodeId = nodeId;
+        this.client = client;
+        this.flushWindowNanos = TimeUnit.MICROSECONDS.toNanos(flushWindowMicros);
+        this.maxBatchBytes = maxBatchBytes;
+        this.requestTimeoutMillis = requestTimeoutMillis;
+        this.requestLatency = requestLatency;
+
+        this.outboxes = new ConcurrentHashMap<>();
+        this.subscriptions = new ConcurrentHashMap<>();
+        this.responders = new ConcurrentHashMap<>();
+        this.pendingRequests = new ConcurrentHashMap<>();
+        this.nextCorrelationId = new AtomicLong();
+
+        this.published = new LongAdder();
+        this.received = new LongAdder();
+        this.framesSent = new LongAdder();
+        this.framesReceived = new LongAdder();
+
+        this.scheduler = scheduler;
+        this.handlerPool = handlerPool;
+
+        this.broadcastTopicName = TOPIC_PREFIX;
+        this.broadcastTopic = client.getTopic(broadcastTopicName, ByteArrayCodec.INSTANCE);
+        this.inboxTopic = client.getTopic(inboxTopicName(nodeId), ByteArrayCodec.INSTANCE);
+        this.broadcastListenerId = broadcastTopic.addListener(byte[].class,
+                (channel, frame) -> receive(frame, true));
+        this.inboxListenerId = inboxTopic.addListener(byte[].class,
+                (channel, frame) -> receive(frame, false));
+    }
+
+    // -- public methods
+
+    /**
+     * Publishes a message to the subscribers of a channel on all servers.
+     *
+     * @param channel the channel
+     * @param message the message, must not be changed afterwards
+     * @param <T>     message type
+     * */
+    public <T> void publish(final Channel<T> channel, final T message) {
+        List<ChannelSubscription<?>> local = subscriptions.get(channel.getName());
+
+        if (local != null) {
+            for (ChannelSubscription<?> subscription : local) {
+                subscription.deliverLocally(message);
+            }
+        }
+
+        send(broadcastTopicName, PUBLISH, channel.getName(), 0, encode(channel.getCodec(), message));
+        published.increment();
+    }
+
+    /**
+     * Subscribes to a channel. The handler runs on its own serial executor.
+     *
+     * @param channel the channel
+     * @param handler handles the messages
+     * @param <T>     message type
+     * @return Subscription closes the subscription
+     * */
+    public <T> Subscription subscribe(final Channel<T> channel, final Consumer<? super T> handler) {
+        return subscribe(channel, new SerialExecutor(handlerPool), handler);
+    }
+
+    /**
+     * Subscribes to a channel, e.g. with the scheduler of a service
+     * as executor to handle the messages on the main thread.
+     *
+     * @param channel  the channel
+     * @param executor runs the handler
+     * @param handler  handles the messages
+     * @param <T>      message type
+     * @return Subscription closes the subscription
+     * */
+    public <T> Subscription subscribe(final Channel<T> channel, final Executor executor,
+                                      final Consumer<? super T> handler) {
+        ChannelSubscription<T> subscription = new ChannelSubscription<>(channel.getCodec(), executor, handler);
+        subscriptions.computeIfAbsent(channel.getName(), name -> new CopyOnWriteArrayList<>()).add(subscription);
+        return () -> subscriptions.computeIfPresent(channel.getName(), (name, list) -> {
+            list.remove(subscription);
+            return list.isEmpty() ? null : list;
+        });
+    }
+
+    /**
+     * Sends a request to any server that responds to the channel, this server
+     * first. If several servers respond, the first reply wins.
+     *
+     * @param channel the channel
+     * @param request the request, must not be changed afterwards
+     * @param <Q>     request type
+     * @param <R>     reply type
+     * @return CompletableFuture completed with the reply, or exceptionally
+     *         if the responder failed or no reply came in time
+     * */
+    public <Q, R> CompletableFuture<R> request(final RequestChannel<Q, R> channel, final Q request) {
+        return request(channel, null, request);
+    }
+
+    /**
+     * Sends a request to the responder of a single server.
+     *
+     * @param channel      the channel
+     * @param targetNodeId the node id of the server, see {@link MessageBus#getNodeId()}
+     * @param request      the request, must not be changed afterwards
+     * @param <Q>          request type
+     * @param <R>          reply type
+     * @return CompletableFuture completed with the reply, or exceptionally
+     *         if the responder failed or no reply came in time
+     * */
+    @SuppressWarnings("unchecked")
+    public <Q, R> CompletableFuture<R> request(final RequestChannel<Q, R> channel, final String targetNodeId,
+                                               final Q request) {
+        Responder<Q, R> local = (Responder<Q, R>) responders.get(channel.getName());
+
+        if (local != null && (targetNodeId == null || targetNodeId.equals(nodeId))) {
+            return local.handleLocally(request);
+        }
+
+        byte[] payload = encode(channel.getRequestCodec(), request);
+        long correlationId = nextCorrelationId.incrementAndGet();
+        PendingRequest<R> pending = new PendingRequest<>(channel.getReplyCodec());
+        pendingRequests.put(correlationId, pending);
+        pending.timeout = scheduler.schedule(() -> {
+            if (pendingRequests.remove(correlationId) != null) {
+                pending.future.completeExceptionally(new TimeoutException("No reply on "
+                        + channel.getName() + " within " + requestTimeoutMillis + "ms"));
+            }
+        }, requestTimeoutMillis, TimeUnit.MILLISECONDS);
+
+        send(targetNodeId == null ? broadcastTopicName : inboxTopicName(targetNodeId),
+                REQUEST, channel.getName(), correlationId, payload);
+        return pending.future;
+    }
+
+    /**
+     * Answers requests on a channel. Only one responder per channel
+     * may be registered on a server. It runs on its own serial executor.
+     *
+     * @param channel the channel
+     * @param handler creates the reply
+     * @param <Q>     request type
+     * @param <R>     reply type
+     * @return Subscription removes the responder
+     * */
+    public <Q, R> Subscription respond(final RequestChannel<Q, R> channel,
+                                       final Function<? super Q, ? extends R> handler) {
+        return respond(channel, new SerialExecutor(handlerPool), handler);
+    }
+
+    /**
+     * Answers requests on a channel. Only one responder per channel
+     * may be registered on a server.
+     *
+     * @param channel  the channel
+     * @param executor runs the handler
+     * @param handler  creates the reply
+     * @param <Q>      request type
+     * @param <R>      reply type
+     * @return Subscription removes the responder
+     * */
+    public <Q, R> Subscription respond(final RequestChannel<Q, R> channel, final Executor executor,
+                                       final Function<? super Q, ? extends R> handler) {
+        Responder<Q, R> responder = new Responder<>(channel, executor, handler);
+
+        if (responders.putIfAbsent(channel.getName(), responder) != null) {
+            throw new IllegalStateException("A responder for " + channel.getName()
+                    + " is already registered on this server");
+        }
+
+        return () -> responders.remove(channel.getName(), responder);
+    }
+
+    /**
+     * Publishes all collected messages at once instead of
+     * waiting for the end of the flush window.
+     * */
+    public void flush() {
+        outboxes.values().forEach(this::flush);
+    }
+
+    /**
+     * Publishes the collected messages, stops listening and fails all
+     * requests still waiting for a reply.
+     * */
+    public void close() {
+        if (closed) {
+            return;
+        }
+
+        flush();
+        closed = true;
+
+        broadcastTopic.removeListener(broadcastListenerId);
+        inboxTopic.removeListener(inboxListenerId);
+        scheduler.shutdownNow();
+        handlerPool.shutdown();
+
+        pendingRequests.values().forEach(pending ->
+                pending.future.completeExceptionally(new IllegalStateException("Message bus closed")));
+        pendingRequests.clear();
+    }
+
+    // -- private methods
+
+    private void send(final String topicName, final byte kind, final String channel,
+                      final long correlationId, final byte[] payload) {
+        if (closed) {
+            throw new IllegalStateException("Message bus closed");
+        }
+
+        Outbox outbox = outboxes.computeIfAbsent(topicName,
+                name -> new Outbox(client.getTopic(name, ByteArrayCodec.INSTANCE)));
+        boolean first;
+        int size;
+
+        synchronized (outbox) {
+            first = outbox.count == 0;
+            outbox.append(kind, channel, correlationId, payload);
+            size = outbox.body.size();
+        }
+
+        if (flushWindowNanos == 0 || size >= maxBatchBytes) {
+            flush(outbox);
+        } else if (first) {
+            scheduler.schedule(() -> flush(outbox), flushWindowNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void flush(final Outbox outbox) {
+        synchronized (outbox) {
+            byte[] frame = outbox.drain(nodeId);
+
+            if (frame != null) {
+                // published under the lock, so frames of one outbox leave in order
+                outbox.topic.publishAsync(frame);
+                framesSent.increment();
+            }
+        }
+    }
+
+    private void receive(final byte[] frame, final boolean broadcast) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame));
+
+            if (in.readByte() != FRAME_VERSION) {
+                return;
+            }
+
+            String sender = in.readUTF();
+
+            if (broadcast && nodeId.equals(sender)) {
+                // already delivered by the local short-circuit
+                return;
+            }
+
+            framesReceived.increment();
+            int count = in.readInt();
+
+            for (int i = 0; i < count; i++) {
+                byte kind = in.readByte();
+                String channel = in.readUTF();
+                long correlationId = kind == PUBLISH ? 0 : in.readLong();
+                byte[] payload = new byte[in.readInt()];
+                in.readFully(payload);
+
+                received.increment();
+                dispatch(sender, broadcast, kind, channel, correlationId, payload);
+            }
+        } catch (IOException exception) {
+            System.err.println("[SpigotMS] Dropped a malformed message bus frame");
+            exception.printStackTrace();
+        }
+    }
+
+    private void dispatch(final String sender, final boolean broadcast, final byte kind, final String channel,
+                          final long correlationId, final byte[] payload) {
+        switch (kind) {
+            case PUBLISH:
+                List<ChannelSubscription<?>> list = subscriptions.get(channel);
+
+                if (list != null) {
+                    for (ChannelSubscription<?> subscription : list) {
+                        subscription.deliver(payload);
+                    }
+                }
+                break;
+            case REQUEST:
+                Responder<?, ?> responder = responders.get(channel);
+
+                if (responder != null) {
+                    responder.handleRemote(sender, correlationId, payload);
+                } else if (!broadcast) {
+                    send(inboxTopicName(sender), ERROR, channel, correlationId,
+                            encode(MessageCodec.STRING, "No responder on " + channel));
+                }
+                break;
+            case REPLY:
+            case ERROR:
+                PendingRequest<?> pending = pendingRequests.remove(correlationId);
+
+                if (pending != null) {
+                    pending.timeout.cancel(false);
+                    requestLatency.recordSince(pending.startNanos);
+                    // never complete on the Redis threads, callbacks may block
+                    handlerPool.execute(() -> pending.complete(kind == ERROR, channel, sender, payload));
+                }
+                break;
+            default:
+        }
+    }
+
+    private static String inboxTopicName(final String nodeId) {
+        return TOPIC_PREFIX + ":node:" + nodeId;
+    }
+
+    private static <T> byte[] encode(final MessageCodec<T> codec, final T value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+
+        try {
+            codec.encode(value, new DataOutputStream(bytes));
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private static <T> T decode(final MessageCodec<T> codec, final byte[] payload) throws IOException {
+        return codec.decode(new DataInputStream(new ByteArrayInputStream(payload)));
+    }
+
+    // -- getter and setter
+
+    /**
+     * @return String id of this server, target of single-server requests
+     * */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * @return long messages published by this server
+     * */
+    public long getPublishedCount() {
+        return published.sum();
+    }
+
+    /**
+     * @return long messages, requests and replies received from Redis
+     * */
+    public long getReceivedCount() {
+        return received.sum();
+    }
+
+    /**
+     * @return long frames published to Redis, each holding a batch of messages
+     * */
+    public long getFramesSentCount() {
+        return framesSent.sum();
+    }
+
+    /**
+     * @return long frames received from other servers
+     * */
+    public long getFramesReceivedCount() {
+        return framesReceived.sum();
+    }
+
+    /**
+     * @return int requests waiting for a reply
+     * */
+    public int getPendingRequestCount() {
+        return pendingRequests.size();
+    }
+
+    // -- inner classes
+
+    /**
+     * The messages collected for one topic during a flush window.
+     * */
+    private static final class Outbox {
+
+        private final RTopic topic;
+        private final ByteArrayOutputStream body;
+        private final DataOutputStream out;
+        private int count;
+
+        private Outbox(final RTopic topic) {
+            this.topic = topic;
+            this.body = new ByteArrayOutputStream(1024);
+            this.out = new DataOutputStream(body);
+        }
+
+        private void append(final byte kind, final String channel, final long correlationId,
+                            final byte[] payload) {
+            try {
+                out.writeByte(kind);
+                out.writeUTF(channel);
+
+                if (kind != PUBLISH) {
+                    out.writeLong(correlationId);
+                }
+
+                out.writeInt(payload.length);
+                out.write(payload);
+            } catch (IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+
+            count++;
+        }
+
+        private byte[] drain(final String nodeId) {
+            if (count == 0) {
+                return null;
+            }
+
+            ByteArrayOutputStream frame = new ByteArrayOutputStream(body.size() + 64);
+
+            try {
+                DataOutputStream header = new DataOutputStream(frame);
+                header.writeByte(FRAME_VERSION);
+                header.writeUTF(nodeId);
+                header.writeInt(count);
+                body.writeTo(frame);
+            } catch (IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+
+            body.reset();
+            count = 0;
+            return frame.toByteArray();
+        }
+    }
+
+    private static final class ChannelSubscription<T> {
+
+        private final MessageCodec<T> codec;
+        private final Executor executor;
+        private final Consumer<? super T> handler;
+
+        private ChannelSubscription(final MessageCodec<T> codec, final Executor executor,
+                                    final Consumer<? super T> handler) {
+            this.codec = codec;
+            this.executor = executor;
+            this.handler = handler;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void deliverLocally(final Object message) {
+            executor.execute(() -> handle((T) message));
+        }
+
+        private void deliver(final byte[] payload) {
+            executor.execute(() -> {
+                try {
+                    handle(decode(codec, payload));
+                } catch (IOException exception) {
+                    System.err.println("[SpigotMS] Dropped a malformed message");
+                    exception.printStackTrace();
+                }
+            });
+        }
+
+        private void handle(final T message) {
+            try {
+                handler.accept(message);
+            } catch (RuntimeException exception) {
+                System.err.println("[SpigotMS] Message handler failed");
+                exception.printStackTrace();
+            }
+        }
+    }
+
+    private final class Responder<Q, R> {
+
+        private final RequestChannel<Q, R> channel;
+        private final Executor executor;
+        private final Function<? super Q, ? extends R> handler;
+
+        private Responder(final RequestChannel<Q, R> channel, final Executor executor,
+                          final Function<? super Q, ? extends R> handler) {
+            this.channel = channel;
+            this.executor = executor;
+            this.handler = handler;
+        }
+
+        private CompletableFuture<R> handleLocally(final Q request) {
+            return CompletableFuture.supplyAsync(() -> handler.apply(request), executor);
+        }
+
+        private void handleRemote(final String sender, final long correlationId, final byte[] payload) {
+            executor.execute(() -> {
+                byte kind;
+                byte[] reply;
+
+                try {
+                    reply = encode(channel.getReplyCodec(), handler.apply(decode(channel.getRequestCodec(), payload)));
+                    kind = REPLY;
+                } catch (IOException | RuntimeException exception) {
+                    reply = encode(MessageCodec.STRING, String.valueOf(exception));
+                    kind = ERROR;
+                }
+
+                if (!closed) {
+                    send(inboxTopicName(sender), kind, channel.getName(), correlationId, reply);
+                }
+            });
+        }
+    }
+
+    private static final class PendingRequest<R> {
+
+        private final MessageCodec<R> codec;
+        private final CompletableFuture<R> future;
+        private final long startNanos;
+        private volatile ScheduledFuture<?> timeout;
+
+        private PendingRequest(final MessageCodec<R> codec) {
+            this.codec = codec;
+            this.future = new CompletableFuture<>();
+            this.startNanos = System.nanoTime();
+        }
+
+        private void complete(final boolean failed, final String channel, final String sender,
+                              final byte[] payload) {
+            try {
+                if (failed) {
+                    future.completeExceptionally(new IllegalStateException("Request on " + channel
+                            + " failed on server " + sender + ": " + decode(MessageCodec.STRING, payload)));
+                } else {
+                    future.complete(decode(codec, payload));
+                }
+            } catch (IOException exception) {
+                future.completeExceptionally(exception);
+            }
+        }
+    }
+}
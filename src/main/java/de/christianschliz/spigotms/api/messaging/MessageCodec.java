@@ -0,0 +1,71 @@
+package de.christianschliz.spigotms.api.messaging;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * Writes messages of one type in a compact binary form.
+ * Codecs are shared between threads and must not keep state.
+ *
+ * @param <T> message type
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public interface MessageCodec<T> {
+
+    /** UTF-8 strings of up to 65535 bytes */
+    MessageCodec<String> STRING = new MessageCodec<String>() {
+        @Override
+        public void encode(final String value, final DataOutput out) throws IOException {
+            out.writeUTF(value);
+        }
+
+        @Override
+        public String decode(final DataInput in) throws IOException {
+            return in.readUTF();
+        }
+    };
+
+    /** 64 bit integers, e.g. for pings or ids */
+    MessageCodec<Long> LONG = new MessageCodec<Long>() {
+        @Override
+        public void encode(final Long value, final DataOutput out) throws IOException {
+            out.writeLong(value);
+        }
+
+        @Override
+        public Long decode(final DataInput in) throws IOException {
+            return in.readLong();
+        }
+    };
+
+    /** 128 bit ids, e.g. of players */
+    MessageCodec<UUID> UNIQUE_ID = new MessageCodec<UUID>() {
+        @Override
+        public void encode(final UUID value, final DataOutput out) throws IOException {
+            out.writeLong(value.getMostSignificantBits());
+            out.writeLong(value.getLeastSignificantBits());
+        }
+
+        @Override
+        public UUID decode(final DataInput in) throws IOException {
+            return new UUID(in.readLong(), in.readLong());
+        }
+    };
+
+    /**
+     * @param value the message
+     * @param out   the stream the message is written to
+     * @throws IOException if the message can't be written
+     * */
+    void encode(T value, DataOutput out) throws IOException;
+
+    /**
+     * @param in the stream the message is read from
+     * @return T the message
+     * @throws IOException if the message is malformed
+     * */
+    T decode(DataInput in) throws IOException;
+}
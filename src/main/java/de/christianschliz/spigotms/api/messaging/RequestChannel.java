@@ -0,0 +1,66 @@
+package de.christianschliz.spigotms.api.messaging;
+
+/**
+ * A named request/reply channel of the {@link MessageBus}
+ * with the codecs of its requests and replies.
+ *
+ * @param <Q> request type
+ * @param <R> reply type
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public final class RequestChannel<Q, R> {
+
+    // -- instance fields
+
+    private final String name;
+    private final MessageCodec<Q> requestCodec;
+    private final MessageCodec<R> replyCodec;
+
+    // -- constructors
+
+    private RequestChannel(final String name, final MessageCodec<Q> requestCodec,
+                           final MessageCodec<R> replyCodec) {
+        this.name = name;
+        this.requestCodec = requestCodec;
+        this.replyCodec = replyCodec;
+    }
+
+    // -- public methods
+
+    /**
+     * @param name         The channel name, e.g. <code>economy:balance-of</code>
+     * @param requestCodec The codec of the requests
+     * @param replyCodec   The codec of the replies
+     * @param <Q>          request type
+     * @param <R>          reply type
+     * @return RequestChannel the channel
+     * */
+    public static <Q, R> RequestChannel<Q, R> of(final String name, final MessageCodec<Q> requestCodec,
+                                                 final MessageCodec<R> replyCodec) {
+        return new RequestChannel<>(name, requestCodec, replyCodec);
+    }
+
+    // -- getter and setter
+
+    /**
+     * @return String the channel name
+     * */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return MessageCodec the codec of the requests
+     * */
+    public MessageCodec<Q> getRequestCodec() {
+        return requestCodec;
+    }
+
+    /**
+     * @return MessageCodec the codec of the replies
+     * */
+    public MessageCodec<R> getReplyCodec() {
+        return replyCodec;
+    }
+}
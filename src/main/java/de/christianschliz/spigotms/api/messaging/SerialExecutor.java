@@ -0,0 +1,58 @@
+package de.christianschliz.spigotms.api.messaging;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs tasks one after another on a shared pool, so the handlers of
+ * one channel see messages in order while channels run in parallel.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+final class SerialExecutor implements Executor {
+
+    // -- instance fields
+
+    private final Executor pool;
+    private final Queue<Runnable> tasks;
+    private Runnable active;
+
+    // -- constructors
+
+    /**
+     * @param pool The pool the tasks run on
+     * */
+    SerialExecutor(final Executor pool) {
+        this.pool = pool;
+        this.tasks = new ArrayDeque<>();
+    }
+
+    // -- public methods
+
+    @Override
+    public synchronized void execute(final Runnable task) {
+        tasks.add(() -> {
+            try {
+                task.run();
+            } finally {
+                scheduleNext();
+            }
+        });
+
+        if (active == null) {
+            scheduleNext();
+        }
+    }
+
+    // -- private methods
+
+    private synchronized void scheduleNext() {
+        active = tasks.poll();
+
+        if (active != null) {
+            pool.execute(active);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package de.christianschliz.spigotms.api.messaging;
+
+/**
+ * A handler registered with the {@link MessageBus}.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public interface Subscription extends AutoCloseable {
+
+    /**
+     * Removes the handler. Messages already handed
+     * to its executor are still handled.
+     * */
+    @Override
+    void close();
+}
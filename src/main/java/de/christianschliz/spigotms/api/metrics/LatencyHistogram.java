@@ -0,0 +1,187 @@
+package de.christianschliz.spigotms.api.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free latency histogram with log-linear buckets in the style of
+ * HdrHistogram. Every power of two is split into {@value #SUB_BUCKETS}
+ * linear sub-buckets, so recorded values keep a relative precision of about
+ * three percent from one nanosecond up to {@value #MAX_VALUE_NANOS} ns
+ * (about 68 seconds). Recording never allocates.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public final class LatencyHistogram {
+
+    // -- static fields
+
+    /** linear buckets per power of two */
+    private static final int SUB_BUCKETS = 16;
+    private static final int SUB_BUCKET_BITS = 4;
+    /** values below this are counted exactly */
+    private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+    private static final long MAX_VALUE_NANOS = (1L << 36) - 1;
+    private static final int BUCKET_COUNT = indexOf(MAX_VALUE_NANOS) + 1;
+
+    // -- instance fields
+
+    private final AtomicLongArray counts;
+    private final AtomicLong totalCount;
+    private final AtomicLong totalNanos;
+    private final AtomicLong maxNanos;
+
+    // -- constructors
+
+    /**
+     * Creates an empty histogram.
+     * */
+    public LatencyHistogram() {
+        this.counts = new AtomicLongArray(BUCKET_COUNT);
+        this.totalCount = new AtomicLong();
+        this.totalNanos = new AtomicLong();
+        this.maxNanos = new AtomicLong();
+    }
+
+    // -- public methods
+
+    /**
+     * Records a latency, values above the trackable range are clamped.
+     *
+     * @param nanos the latency in nanoseconds
+     * */
+    public void record(final long nanos) {
+        long value = Math.min(Math.max(nanos, 0L), MAX_VALUE_NANOS);
+
+        counts.incrementAndGet(indexOf(value));
+        totalCount.incrementAndGet();
+        totalNanos.addAndGet(value);
+
+        long max = maxNanos.get();
+        while (value > max && !maxNanos.compareAndSet(max, value)) {
+            max = maxNanos.get();
+        }
+    }
+
+    /**
+     * Records the time passed since a {@link System#nanoTime()} timestamp.
+     *
+     * @param startNanos the timestamp taken when the operation started
+     * */
+    public void recordSince(final long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Gets an approximate percentile. Concurrent recordings may or may not be included.
+     *
+     * @param percentile between 0 and 100
+     * @return long latency in nanoseconds, 0 if nothing was recorded
+     * */
+    public long getPercentile(final double percentile) {
+        long count = totalCount.get();
+
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+
+        for (int index = 0; index < BUCKET_COUNT; index++) {
+            seen += counts.get(index);
+
+            if (seen >= rank) {
+                return Math.min(midpointOf(index), maxNanos.get());
+            }
+        }
+
+        return maxNanos.get();
+    }
+
+    /**
+     * Resets all counters.
+     * */
+    public void reset() {
+        for (int index = 0; index < BUCKET_COUNT; index++) {
+            counts.set(index, 0);
+        }
+
+        totalCount.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    /**
+     * Formats a latency for chat and log output, e.g. <code>1.25ms</code>.
+     *
+     * @param nanos the latency in nanoseconds
+     * @return String formatted latency
+     * */
+    public static String format(final long nanos) {
+        if (nanos < TimeUnit.MICROSECONDS.toNanos(1)) {
+            return nanos + "ns";
+        } else if (nanos < TimeUnit.MILLISECONDS.toNanos(1)) {
+            return String.format("%.1fus", nanos / 1e3);
+        } else if (nanos < TimeUnit.SECONDS.toNanos(1)) {
+            return String.format("%.2fms", nanos / 1e6);
+        }
+
+        return String.format("%.2fs", nanos / 1e9);
+    }
+
+    // -- private methods
+
+    private static int indexOf(final long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+
+        // shift the value so that it lands in [SUB_BUCKETS, 2 * SUB_BUCKETS)
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return LINEAR_LIMIT + (shift - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    private static long midpointOf(final int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+
+        int shift = (index - LINEAR_LIMIT) / SUB_BUCKETS + 1;
+        long lowerBound = (long) ((index - LINEAR_LIMIT) % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return lowerBound + (1L << shift) / 2;
+    }
+
+    // -- getter and setter
+
+    /**
+     * @return long number of recorded values
+     * */
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    /**
+     * @return long sum of all recorded values in nanoseconds
+     * */
+    public long getTotalNanos() {
+        return totalNanos.get();
+    }
+
+    /**
+     * @return long mean latency in nanoseconds
+     * */
+    public long getMean() {
+        long count = totalCount.get();
+        return count == 0 ? 0 : totalNanos.get() / count;
+    }
+
+    /**
+     * @return long highest recorded latency in nanoseconds
+     * */
+    public long getMax() {
+        return maxNanos.get();
+    }
+}
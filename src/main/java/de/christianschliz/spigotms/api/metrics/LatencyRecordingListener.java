@@ -0,0 +1,48 @@
+package de.christianschliz.spigotms.api.metrics;
+
+import org.bukkit.event.Event;
+import org.bukkit.event.EventException;
+import org.bukkit.plugin.RegisteredListener;
+
+/**
+ * Wraps a listener registration and records how long
+ * the handler takes for every dispatched event. Not to be
+ * confused with Bukkit's <code>TimedRegisteredListener</code>,
+ * which feeds the server's own timings.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public final class LatencyRecordingListener extends RegisteredListener {
+
+    // -- instance fields
+
+    private final RegisteredListener delegate;
+    private final LatencyHistogram histogram;
+
+    // -- constructors
+
+    /**
+     * @param delegate  The registration created by the plugin loader
+     * @param histogram The timer handler latencies are recorded to
+     * */
+    public LatencyRecordingListener(final RegisteredListener delegate, final LatencyHistogram histogram) {
+        super(delegate.getListener(), (listener, event) -> delegate.callEvent(event), delegate.getPriority(),
+                delegate.getPlugin(), delegate.isIgnoringCancelled());
+        this.delegate = delegate;
+        this.histogram = histogram;
+    }
+
+    // -- public methods
+
+    @Override
+    public void callEvent(final Event event) throws EventException {
+        long start = System.nanoTime();
+
+        try {
+            delegate.callEvent(event);
+        } finally {
+            histogram.recordSince(start);
+        }
+    }
+}
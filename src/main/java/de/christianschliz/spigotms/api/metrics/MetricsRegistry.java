@@ -0,0 +1,220 @@
+package de.christianschliz.spigotms.api.metrics;
+
+import de.christianschliz.spigotms.api.executor.ExecutorRegistry;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Holds the metrics of all loaded services and the shared database
+ * controllers and renders them in the Prometheus text format.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public final class MetricsRegistry {
+
+    // -- static fields
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    // -- instance fields
+
+    private final Map<String, ServiceMetrics> services;
+    private final Map<String, LatencyHistogram> databaseTimers;
+    private final Map<String, LongAdder> databaseCounters;
+    private volatile ExecutorRegistry executorRegistry;
+
+    // -- constructors
+
+    /**
+     * Creates an empty registry.
+     * */
+    public MetricsRegistry() {
+        this.services = new ConcurrentHashMap<>();
+        this.databaseTimers = new ConcurrentHashMap<>();
+        this.databaseCounters = new ConcurrentHashMap<>();
+    }
+
+    // -- public methods
+
+    /**
+     * Gets the metrics of a service. They are kept when the service is
+     * reloaded, so counters keep increasing across hot swaps.
+     *
+     * @param serviceName The service name
+     * @return ServiceMetrics metrics of the service, created on first access
+     * */
+    public ServiceMetrics forService(final String serviceName) {
+        return services.computeIfAbsent(serviceName, ServiceMetrics::new);
+    }
+
+    /**
+     * Gets the latency timer of a database backend, for operations
+     * that can't be attributed to a single service.
+     *
+     * @param backend e.g. <code>redis</code> or <code>datastax</code>
+     * @return LatencyHistogram the timer
+     * */
+    public LatencyHistogram databaseTimer(final String backend) {
+        return databaseTimers.computeIfAbsent(backend, key -> new LatencyHistogram());
+    }
+
+    /**
+     * Gets a counter of the shared database controllers, e.g. of the
+     * bytes a codec stored.
+     *
+     * @param name The counter name
+     * @return LongAdder the counter
+     * */
+    public LongAdder databaseCounter(final String name) {
+        return databaseCounters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    /**
+     * Renders all metrics in the Prometheus text exposition format.
+     *
+     * @param out the builder the metrics are appended to
+     * */
+    public void writePrometheus(final StringBuilder out) {
+        Map<String, ServiceMetrics> sorted = getServices();
+
+        out.append("# HELP spigotms_service_lifecycle_seconds Duration of the service lifecycle methods\n");
+        out.append("# TYPE spigotms_service_lifecycle_seconds gauge\n");
+        sorted.forEach((name, metrics) -> {
+            writeLifecycle(out, name, "load", metrics.getLoadNanos());
+            writeLifecycle(out, name, "enable_async", metrics.getEnableAsyncNanos());
+            writeLifecycle(out, name, "enable", metrics.getEnableNanos());
+        });
+
+        out.append("# HELP spigotms_service_latency_seconds Latency of service listeners, commands and queries\n");
+        out.append("# TYPE spigotms_service_latency_seconds summary\n");
+        sorted.forEach((name, metrics) -> metrics.getTimers().forEach((timer, histogram) ->
+                writeSummary(out, "spigotms_service_latency_seconds",
+                        "service=\"" + escape(name) + "\",timer=\"" + escape(timer) + "\"", histogram)));
+
+        out.append("# HELP spigotms_service_events_total Counted events of services, e.g. dropped async events\n");
+        out.append("# TYPE spigotms_service_events_total counter\n");
+        sorted.forEach((name, metrics) -> metrics.getCounters().forEach((counter, value) -> {
+            if (!counter.equals(ServiceMetrics.POOLED_ALLOCATED_BYTES)) {
+                out.append("spigotms_service_events_total{service=\"").append(escape(name))
+                        .append("\",counter=\"").append(escape(counter)).append("\"} ")
+                        .append(value.sum()).append('\n');
+            }
+        }));
+
+        out.append("# HELP spigotms_service_allocated_bytes_total Bytes allocated by tasks of services"
+                + " on the shared pools\n");
+        out.append("# TYPE spigotms_service_allocated_bytes_total counter\n");
+        sorted.forEach((name, metrics) -> {
+            LongAdder allocated = metrics.getCounters().get(ServiceMetrics.POOLED_ALLOCATED_BYTES);
+
+            if (allocated != null) {
+                out.append("spigotms_service_allocated_bytes_total{service=\"").append(escape(name)).append("\"} ")
+                        .append(allocated.sum()).append('\n');
+            }
+        });
+
+        out.append("# HELP spigotms_database_latency_seconds Latency of shared database operations\n");
+        out.append("# TYPE spigotms_database_latency_seconds summary\n");
+        new TreeMap<>(databaseTimers).forEach((backend, histogram) ->
+                writeSummary(out, "spigotms_database_latency_seconds",
+                        "backend=\"" + escape(backend) + "\"", histogram));
+
+        out.append("# HELP spigotms_database_counter_total Counters of shared database operations\n");
+        out.append("# TYPE spigotms_database_counter_total counter\n");
+        new TreeMap<>(databaseCounters).forEach((counter, value) ->
+                out.append("spigotms_database_counter_total{counter=\"").append(escape(counter)).append("\"} ")
+                        .append(value.sum()).append('\n'));
+
+        if (executorRegistry != null) {
+            writeExecutors(out, executorRegistry);
+        }
+    }
+
+    // -- private methods
+
+    private static void writeExecutors(final StringBuilder out, final ExecutorRegistry registry) {
+        out.append("# HELP spigotms_executor_threads Started threads of the shared pools\n");
+        out.append("# TYPE spigotms_executor_threads gauge\n");
+        registry.getPools().forEach((pool, metrics) -> writePool(out, "threads", pool, metrics.getThreadCount()));
+
+        out.append("# HELP spigotms_executor_queue_depth Tasks waiting in the shared pools\n");
+        out.append("# TYPE spigotms_executor_queue_depth gauge\n");
+        registry.getPools().forEach((pool, metrics) -> writePool(out, "queue_depth", pool, metrics.getQueueDepth()));
+
+        out.append("# HELP spigotms_executor_utilization Busy share of the shared pools in the last second\n");
+        out.append("# TYPE spigotms_executor_utilization gauge\n");
+        registry.getPools().forEach((pool, metrics) -> writePool(out, "utilization", pool,
+                String.format(Locale.ROOT, "%.3f", metrics.getUtilization())));
+
+        out.append("# HELP spigotms_executor_completed_total Tasks completed by the shared pools\n");
+        out.append("# TYPE spigotms_executor_completed_total counter\n");
+        registry.getPools().forEach((pool, metrics) -> writePool(out, "completed_total", pool,
+                metrics.getCompletedCount()));
+
+        out.append("# HELP spigotms_executor_rejected_total Tasks rejected by the shared pools\n");
+        out.append("# TYPE spigotms_executor_rejected_total counter\n");
+        registry.getPools().forEach((pool, metrics) -> writePool(out, "rejected_total", pool,
+                metrics.getRejectedCount()));
+    }
+
+    private static void writePool(final StringBuilder out, final String metric, final String pool,
+                                  final Object value) {
+        out.append("spigotms_executor_").append(metric).append("{pool=\"").append(pool).append("\"} ")
+                .append(value).append('\n');
+    }
+
+    private static void writeLifecycle(final StringBuilder out, final String service,
+                                       final String phase, final long nanos) {
+        out.append("spigotms_service_lifecycle_seconds{service=\"").append(escape(service))
+                .append("\",phase=\"").append(phase).append("\"} ").append(seconds(nanos)).append('\n');
+    }
+
+    private static void writeSummary(final StringBuilder out, final String metric,
+                                     final String labels, final LatencyHistogram histogram) {
+        for (double quantile : QUANTILES) {
+            out.append(metric).append('{').append(labels).append(",quantile=\"").append(quantile).append("\"} ")
+                    .append(seconds(histogram.getPercentile(quantile * 100))).append('\n');
+        }
+
+        out.append(metric).append("_sum{").append(labels).append("} ")
+                .append(seconds(histogram.getTotalNanos())).append('\n');
+        out.append(metric).append("_count{").append(labels).append("} ")
+                .append(histogram.getCount()).append('\n');
+    }
+
+    private static String seconds(final long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+
+    private static String escape(final String label) {
+        return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    // -- getter and setter
+
+    /**
+     * @param executorRegistry Registry whose pools are rendered with the other metrics
+     * */
+    public void setExecutorRegistry(final ExecutorRegistry executorRegistry) {
+        this.executorRegistry = executorRegistry;
+    }
+
+    /**
+     * @return Map of the metrics of all services, sorted by name
+     * */
+    public Map<String, ServiceMetrics> getServices() {
+        return Collections.unmodifiableMap(new TreeMap<>(services));
+    }
+
+    /**
+     * @return Map of the database timers, sorted by backend
+     * */
+    public Map<String, LatencyHistogram> getDatabaseTimers() {
+        return Collections.unmodifiableMap(new TreeMap<>(databaseTimers));
+    }
+}
@@ -0,0 +1,173 @@
+package de.christianschliz.spigotms.api.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timings of a single service: how long its lifecycle methods took
+ * and latency histograms of its listeners, commands and queries.
+ * Timer names are prefixed by their kind, e.g. <code>event:PlayerJoinEvent:JoinListener</code>,
+ * <code>command:spawn</code> or <code>mysql</code>.
+ *
+ * <p>It also keeps the threads created through the service's
+ * {@link ServiceThreadFactory}, so they can be accounted to it.</p>
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public final class ServiceMetrics {
+
+    // -- static fields
+
+    /** counter of the bytes the service's tasks allocated on the shared pools */
+    public static final String POOLED_ALLOCATED_BYTES = "executor:allocated-bytes";
+
+    // -- instance fields
+
+    private final String serviceName;
+    private final Map<String, LatencyHistogram> timers;
+    private final Map<String, LongAdder> counters;
+    private final Set<Thread> threads;
+
+    private volatile long loadNanos;
+    private volatile long enableAsyncNanos;
+    private volatile long enableNanos;
+
+    // -- constructors
+
+    /**
+     * @param serviceName The name of the measured service
+     * */
+    public ServiceMetrics(final String serviceName) {
+        this.serviceName = serviceName;
+        this.timers = new ConcurrentHashMap<>();
+        this.counters = new ConcurrentHashMap<>();
+        this.threads = ConcurrentHashMap.newKeySet();
+    }
+
+    // -- public methods
+
+    /**
+     * Gets or creates a timer. Look the timer up once and keep it,
+     * instead of calling this on every measured operation.
+     *
+     * @param name The timer name
+     * @return LatencyHistogram the timer
+     * */
+    public LatencyHistogram timer(final String name) {
+        return timers.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    /**
+     * Gets or creates a counter, e.g. of dropped events.
+     * Like timers, look it up once and keep it.
+     *
+     * @param name The counter name
+     * @return LongAdder the counter
+     * */
+    public LongAdder counter(final String name) {
+        return counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    /**
+     * Creates a thread factory whose threads are named after and accounted
+     * to this service. Pass it to the executors the service creates.
+     *
+     * @param prefix The thread name prefix, e.g. <code>worker</code>
+     * @return ServiceThreadFactory the thread factory
+     * */
+    public ServiceThreadFactory threadFactory(final String prefix) {
+        return new ServiceThreadFactory(this, prefix);
+    }
+
+    // -- package-private methods
+
+    /**
+     * @param thread A thread created for this service
+     * */
+    void track(final Thread thread) {
+        threads.add(thread);
+    }
+
+    // -- getter and setter
+
+    /**
+     * @return String the name of the measured service
+     * */
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    /**
+     * @return Map of all timers, sorted by name
+     * */
+    public Map<String, LatencyHistogram> getTimers() {
+        return Collections.unmodifiableMap(new TreeMap<>(timers));
+    }
+
+    /**
+     * @return Map of all counters, sorted by name
+     * */
+    public Map<String, LongAdder> getCounters() {
+        return Collections.unmodifiableMap(new TreeMap<>(counters));
+    }
+
+    /**
+     * Gets the threads created through this service's thread factories
+     * that have not terminated yet. Terminated threads are forgotten.
+     *
+     * @return List of the threads of this service
+     * */
+    public List<Thread> getThreads() {
+        threads.removeIf(thread -> thread.getState() == Thread.State.TERMINATED);
+        return new ArrayList<>(threads);
+    }
+
+    /**
+     * @return long duration of onLoad in nanoseconds
+     * */
+    public long getLoadNanos() {
+        return loadNanos;
+    }
+
+    /**
+     * @param loadNanos duration of onLoad in nanoseconds
+     * */
+    public void setLoadNanos(final long loadNanos) {
+        this.loadNanos = loadNanos;
+    }
+
+    /**
+     * @return long duration of onEnableAsync in nanoseconds
+     * */
+    public long getEnableAsyncNanos() {
+        return enableAsyncNanos;
+    }
+
+    /**
+     * @param enableAsyncNanos duration of onEnableAsync in nanoseconds
+     * */
+    public void setEnableAsyncNanos(final long enableAsyncNanos) {
+        this.enableAsyncNanos = enableAsyncNanos;
+    }
+
+    /**
+     * @return long duration of onEnable in nanoseconds
+     * */
+    public long getEnableNanos() {
+        return enableNanos;
+    }
+
+    /**
+     * @param enableNanos duration of onEnable in nanoseconds
+     * */
+    public void setEnableNanos(final long enableNanos) {
+        this.enableNanos = enableNanos;
+    }
+}
@@ -0,0 +1,44 @@
+package de.christianschliz.spigotms.api.metrics;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates daemon threads named <code>&lt;service&gt;-&lt;prefix&gt;-&lt;n&gt;</code>
+ * and registers them with the service's {@link ServiceMetrics}, so their
+ * number and allocations show up in <code>/ms list</code>. Threads a service
+ * starts without such a factory are not accounted to it.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public final class ServiceThreadFactory implements ThreadFactory {
+
+    // -- instance fields
+
+    private final ServiceMetrics metrics;
+    private final String prefix;
+    private final AtomicInteger counter;
+
+    // -- constructors
+
+    /**
+     * @param metrics The metrics of the service the threads belong to
+     * @param prefix  The thread name prefix
+     * */
+    ServiceThreadFactory(final ServiceMetrics metrics, final String prefix) {
+        this.metrics = metrics;
+        this.prefix = metrics.getServiceName() + "-" + prefix + "-";
+        this.counter = new AtomicInteger();
+    }
+
+    // -- public methods
+
+    @Override
+    public Thread newThread(final Runnable runnable) {
+        Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+        thread.setDaemon(true);
+        metrics.track(thread);
+        return thread;
+    }
+}
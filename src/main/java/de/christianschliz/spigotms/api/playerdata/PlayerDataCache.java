@@ -0,0 +1,714 @@
+package de.christianschliz.spigotms.api.playerdata;
+
+import de.christianschliz.spigotms.api.metrics.LatencyHistogram;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.UnaryOperator;
+
+/**
+ * Keeps the data of online players in memory, shared by all services.
+ * The data of a joining player is loaded during the async pre-login, so
+ * services read it from memory in <code>PlayerJoinEvent</code> and later,
+ * instead of querying the database on the main thread.
+ *
+ * <p>Changes are written back by the codec of each type, in batches of all
+ * players whose data changed, when a player quits and periodically. The
+ * data of players who left stays cached for a quick rejoin, up to a maximum
+ * number of entries; the entries of players who left first are evicted
+ * first, once their changes are written.</p>
+ *
+ * <p>Data values should be immutable and are replaced through
+ * {@link PlayerDataCache#put(UUID, PlayerDataType, Object)} or
+ * {@link PlayerDataCache#update(UUID, PlayerDataType, UnaryOperator)}, since
+ * they are written back from another thread.</p>
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public final class PlayerDataCache {
+
+    // -- instance fields
+
+    private final int maxOfflineEntries;
+    private final int maxBatchSize;
+    private final long preloadTimeoutMillis;
+    private final LatencyHistogram loadLatency;
+    private final LatencyHistogram storeLatency;
+
+    private final Map<String, RegisteredType<?>> types;
+    /** players whose changes of an unregistered type could not be written, by type name */
+    private final Map<String, Set<UUID>> unwritten;
+    private final Map<UUID, PlayerEntry> players;
+    /** players who are not online, the one who left first is first; guards eviction */
+    private final LinkedHashMap<UUID, Boolean> offline;
+
+    private final ExecutorService loaders;
+    private final ScheduledExecutorService writer;
+    private final ScheduledFuture<?> flushTask;
+    private final ReentrantLock flushLock;
+    private final AtomicBoolean flushScheduled;
+
+    private final LongAdder hits;
+    private final LongAdder loads;
+    private final LongAdder storedValues;
+    private final LongAdder batches;
+    private final LongAdder evictions;
+
+    // -- constructors
+
+    /**
+     * @param loaders              Loads player data, shut down when the cache is closed
+     * @param writer               Writes changes back on a single thread, shut down when the cache is closed
+     * @param flushIntervalMillis  Time between two periodic write-backs
+     * @param maxBatchSize         Values of one type written in one batch at most
+     * @param maxOfflineEntries    Players who left that stay cached
+     * @param preloadTimeoutMillis Time a login waits for the player's data
+     * @param loadLatency          The timer loads are recorded to
+     * @param storeLatency         The timer batch writes are recorded to
+     * */
+    public PlayerDataCache(final ExecutorService loaders, final ScheduledExecutorService writer,
+                           final long flushIntervalMillis, final int maxBatchSize,
+                           final int maxOfflineEntries, final long preloadTimeoutMillis,
+                           final LatencyHistogram loadLatency, final LatencyHistogram storeLatency) {
+        this.maxOfflineEntries = maxOfflineEntries;
+        this.maxBatchSize = maxBatchSize;
+        this.preloadTimeoutMillis = preloadTimeoutMillis;
+        this.loadLatency = loadLatency;
+        this.storeLatency = storeLatency;
+
+        this.types = new ConcurrentHashMap<>();
+        this.unwritten = new ConcurrentHashMap<>();
+        this.players = new ConcurrentHashMap<>();
+        this.offline = new LinkedHashMap<>();
+
+        this.loaders = loaders;
+        this.writer = writer;
+        this.flushLock = new ReentrantLock();
+        this.flushScheduled = new AtomicBoolean();
+
+        this.hits = new LongAdder();
+        this.loads = new LongAdder();
+        this.storedValues = new LongAdder();
+        this.batches = new LongAdder();
+        this.evictions = new LongAdder();
+
+        this.flushTask = writer.scheduleWithFixedDelay(this::flushQuietly,
+                flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // -- public methods
+
+    /**
+     * Registers a type of player data. It is loaded for all players who
+     * log in from now on and, in the background, for the online players.
+     * Changes a previous type of the same name failed to write when it was
+     * unregistered are written by this one.
+     *
+     * @param type the data type
+     * @param <T>  data type
+     * @throws IllegalStateException if a type with the same name is registered
+     * */
+    public <T> void register(final PlayerDataType<T> type) {
+        RegisteredType<T> registered = new RegisteredType<>(type);
+
+        if (types.putIfAbsent(type.getName(), registered) != null) {
+            throw new IllegalStateException("Player data type " + type.getName() + " is already registered");
+        }
+
+        Set<UUID> pending = unwritten.remove(type.getName());
+
+        if (pending != null) {
+            registered.dirty.addAll(pending);
+        }
+
+        for (PlayerEntry entry : players.values()) {
+            if (entry.online) {
+                load(entry, registered);
+            }
+        }
+    }
+
+    /**
+     * Writes the changes of a type on the calling thread and drops its
+     * cached values, e.g. when the service owning it is unloaded. Changes
+     * that could not be written stay cached until a type of the same name
+     * is registered again, e.g. by the reloaded service, and are lost if
+     * the cache is closed before.
+     *
+     * @param type the data type
+     * */
+    public void unregister(final PlayerDataType<?> type) {
+        flushLock.lock();
+
+        try {
+            RegisteredType<?> registered = types.get(type.getName());
+
+            if (registered == null || registered.type != type) {
+                return;
+            }
+
+            flushType(registered);
+            types.remove(type.getName());
+
+            if (!registered.dirty.isEmpty()) {
+                System.err.println("[SpigotMS] Could not write " + registered.dirty.size() + " changes of player data "
+                        + type.getName() + ", keeping them until it is registered again");
+                unwritten.put(type.getName(), registered.dirty);
+            }
+
+            for (PlayerEntry entry : players.values()) {
+                if (!registered.dirty.contains(entry.playerId)) {
+                    entry.values.remove(type.getName());
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Gets the data of a player. Blocks only if the data isn't loaded
+     * yet, which pre-loading on login avoids for online players.
+     *
+     * @param playerId the player
+     * @param type     the data type
+     * @param <T>      data type
+     * @return T the data
+     * @throws IllegalStateException if the data can't be loaded
+     * */
+    public <T> T get(final UUID playerId, final PlayerDataType<T> type) {
+        return join(playerId, type, getAsync(playerId, type));
+    }
+
+    /**
+     * Gets the data of a player, from memory or by loading it
+     * on a loader thread, e.g. for players who are offline.
+     *
+     * @param playerId the player
+     * @param type     the data type
+     * @param <T>      data type
+     * @return CompletableFuture completed with the data
+     * */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> getAsync(final UUID playerId, final PlayerDataType<T> type) {
+        CompletableFuture<Object> value = load(entry(playerId), registered(type));
+
+        if (value.isDone()) {
+            hits.increment();
+        }
+
+        return (CompletableFuture<T>) value;
+    }
+
+    /**
+     * Replaces the data of a player. It is written back with the next flush.
+     *
+     * @param playerId the player
+     * @param type     the data type
+     * @param value    the new data
+     * @param <T>      data type
+     * */
+    public <T> void put(final UUID playerId, final PlayerDataType<T> type, final T value) {
+        RegisteredType<T> registered = registered(type);
+
+        while (true) {
+            PlayerEntry entry = entry(playerId);
+
+            synchronized (entry) {
+                if (!entry.evicted) {
+                    entry.values.put(type.getName(), CompletableFuture.completedFuture(value));
+                    registered.dirty.add(playerId);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Changes the data of a player atomically, e.g. adds to a balance.
+     * Blocks if the data isn't loaded yet, without keeping other threads
+     * from reading or changing the player's data meanwhile.
+     *
+     * @param playerId the player
+     * @param type     the data type
+     * @param update   creates the new data from the current data
+     * @param <T>      data type
+     * @return T the new data
+     * */
+    public <T> T update(final UUID playerId, final PlayerDataType<T> type, final UnaryOperator<T> update) {
+        RegisteredType<T> registered = registered(type);
+
+        while (true) {
+            PlayerEntry entry = entry(playerId);
+            join(playerId, type, load(entry, registered));
+
+            synchronized (entry) {
+                CompletableFuture<Object> current = entry.values.get(type.getName());
+
+                // loaded, unless the entry was evicted or the value dropped meanwhile
+                if (!entry.evicted && current != null && current.isDone()) {
+                    T value = update.apply(join(playerId, type, current));
+                    entry.values.put(type.getName(), CompletableFuture.completedFuture(value));
+                    registered.dirty.add(playerId);
+                    return value;
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads all registered data of a logging in player and waits for it,
+     * called from the async pre-login.
+     *
+     * @param playerId the player
+     * @return boolean true if all data was loaded in time
+     * */
+    public boolean preload(final UUID playerId) {
+        PlayerEntry entry = entry(playerId);
+        List<CompletableFuture<Object>> futures = new ArrayList<>();
+
+        for (RegisteredType<?> registered : types.values()) {
+            futures.add(load(entry, registered));
+        }
+
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                    .get(preloadTimeoutMillis, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException exception) {
+            System.err.println("[SpigotMS] Could not pre-load the player data of " + playerId
+                    + ", loading it on first access");
+        }
+
+        return false;
+    }
+
+    /**
+     * Keeps the data of a player cached while they are online.
+     *
+     * @param playerId the player
+     * */
+    public void playerJoined(final UUID playerId) {
+        PlayerEntry entry;
+
+        while (true) {
+            entry = entry(playerId);
+
+            synchronized (offline) {
+                entry.online = true;
+                offline.remove(playerId);
+            }
+
+            // eviction checks the flag with the entry held, so it either saw it or evicted first
+            synchronized (entry) {
+                if (!entry.evicted) {
+                    break;
+                }
+            }
+        }
+
+        // in case the pre-login timed out or a type was registered since
+        for (RegisteredType<?> registered : types.values()) {
+            load(entry, registered);
+        }
+    }
+
+    /**
+     * Writes the changes of a player who left, in a batch with everyone
+     * else who left meanwhile, and makes the entry evictable.
+     *
+     * @param playerId the player
+     * */
+    public void playerQuit(final UUID playerId) {
+        PlayerEntry entry = players.get(playerId);
+
+        if (entry != null) {
+            synchronized (offline) {
+                entry.online = false;
+                offline.put(playerId, Boolean.TRUE);
+            }
+        }
+
+        if (flushScheduled.compareAndSet(false, true)) {
+            writer.execute(() -> {
+                flushScheduled.set(false);
+                flushQuietly();
+            });
+        }
+    }
+
+    /**
+     * Writes all changes on the calling thread and evicts
+     * the entries of players who left above the limit.
+     * */
+    public void flush() {
+        flushLock.lock();
+
+        try {
+            types.values().forEach(this::flushType);
+        } finally {
+            flushLock.unlock();
+        }
+
+        evictOffline();
+    }
+
+    /**
+     * Stops the periodic write-back and writes all changes.
+     * */
+    public void close() {
+        flushTask.cancel(false);
+        writer.shutdown();
+
+        try {
+            writer.awaitTermination(preloadTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+
+        flushQuietly();
+        loaders.shutdown();
+
+        unwritten.forEach((name, playerIds) -> System.err.println("[SpigotMS] Lost " + playerIds.size()
+                + " changes of player data " + name + ", it was unregistered before they could be written"));
+    }
+
+    // -- private methods
+
+    @SuppressWarnings("unchecked")
+    private <T> RegisteredType<T> registered(final PlayerDataType<T> type) {
+        RegisteredType<?> registered = types.get(type.getName());
+
+        if (registered == null || registered.type != type) {
+            throw new IllegalStateException("Player data type " + type.getName() + " is not registered");
+        }
+
+        return (RegisteredType<T>) registered;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T join(final UUID playerId, final PlayerDataType<T> type, final CompletableFuture<?> value) {
+        try {
+            return (T) value.get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading " + type.getName(), exception);
+        } catch (ExecutionException exception) {
+            throw new IllegalStateException("Could not load " + type.getName()
+                    + " of " + playerId, exception.getCause());
+        }
+    }
+
+    private PlayerEntry entry(final UUID playerId) {
+        PlayerEntry entry = players.get(playerId);
+
+        if (entry != null && entry.online) {
+            return entry;
+        }
+
+        synchronized (offline) {
+            entry = players.computeIfAbsent(playerId, PlayerEntry::new);
+
+            if (!entry.online) {
+                // accessed last, evicted last
+                offline.remove(playerId);
+                offline.put(playerId, Boolean.TRUE);
+            }
+
+            return entry;
+        }
+    }
+
+    private CompletableFuture<Object> load(final PlayerEntry entry, final RegisteredType<?> registered) {
+        String name = registered.type.getName();
+        CompletableFuture<Object> value = entry.values.get(name);
+
+        if (value != null) {
+            return value;
+        }
+
+        CompletableFuture<Object> loading = new CompletableFuture<>();
+        value = entry.values.putIfAbsent(name, loading);
+
+        if (value != null) {
+            return value;
+        }
+
+        loads.increment();
+        loaders.execute(() -> {
+            long start = System.nanoTime();
+
+            try {
+                loading.complete(registered.type.getCodec().load(entry.playerId));
+            } catch (Exception exception) {
+                // drop the failed load, so the next access tries again
+                entry.values.remove(name, loading);
+                loading.completeExceptionally(exception);
+            } finally {
+                loadLatency.recordSince(start);
+            }
+        });
+
+        return loading;
+    }
+
+    private void flushType(final RegisteredType<?> registered) {
+        String name = registered.type.getName();
+        Map<UUID, CompletableFuture<Object>> batch = new LinkedHashMap<>();
+
+        // a copy, so values that fail to write aren't picked up again in this flush
+        for (UUID playerId : new ArrayList<>(registered.dirty)) {
+            PlayerEntry entry = players.get(playerId);
+            CompletableFuture<Object> value = entry != null ? entry.values.get(name) : null;
+
+            if (value == null || !value.isDone() || value.isCompletedExceptionally()) {
+                // nothing to write, e.g. the type was unregistered
+                written(registered, playerId, value);
+                continue;
+            }
+
+            batch.put(playerId, value);
+
+            if (batch.size() >= maxBatchSize) {
+                store(registered, batch);
+                batch = new LinkedHashMap<>();
+            }
+        }
+
+        store(registered, batch);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> void store(final RegisteredType<T> registered, final Map<UUID, CompletableFuture<Object>> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        Map<UUID, T> values = new LinkedHashMap<>();
+        batch.forEach((playerId, value) -> values.put(playerId, (T) value.join()));
+        long start = System.nanoTime();
+
+        try {
+            registered.type.getCodec().store(values);
+            storedValues.add(values.size());
+            batches.increment();
+        } catch (Exception exception) {
+            // the players stay dirty, so they are neither evicted nor lost
+            System.err.println("[SpigotMS] Could not write player data " + registered.type.getName()
+                    + ", retrying with the next flush");
+            exception.printStackTrace();
+            return;
+        } finally {
+            storeLatency.recordSince(start);
+        }
+
+        batch.forEach((playerId, value) -> written(registered, playerId, value));
+    }
+
+    /**
+     * Clears the dirty flag of a player, unless the value was
+     * changed again since it was written.
+     * */
+    private void written(final RegisteredType<?> registered, final UUID playerId,
+                         final CompletableFuture<Object> value) {
+        PlayerEntry entry = players.get(playerId);
+
+        if (entry == null) {
+            registered.dirty.remove(playerId);
+            return;
+        }
+
+        synchronized (entry) {
+            if (entry.values.get(registered.type.getName()) == value) {
+                registered.dirty.remove(playerId);
+            }
+        }
+    }
+
+    private void evictOffline() {
+        List<UUID> candidates;
+        int excess;
+
+        synchronized (offline) {
+            excess = offline.size() - maxOfflineEntries;
+
+            if (excess <= 0) {
+                return;
+            }
+
+            candidates = new ArrayList<>(offline.keySet());
+        }
+
+        // one entry at a time, so a thread holding an entry never blocks logins
+        for (UUID playerId : candidates) {
+            if (excess <= 0) {
+                break;
+            }
+
+            PlayerEntry entry = players.get(playerId);
+
+            if (entry == null) {
+                continue;
+            }
+
+            // holding the entry keeps a concurrent put from changing it after the check
+            synchronized (entry) {
+                if (entry.online || isDirty(playerId)) {
+                    continue;
+                }
+
+                entry.evicted = true;
+                players.remove(playerId, entry);
+            }
+
+            synchronized (offline) {
+                // a new entry of the player keeps its place
+                if (!players.containsKey(playerId)) {
+                    offline.remove(playerId);
+                }
+            }
+
+            evictions.increment();
+            excess--;
+        }
+    }
+
+    private boolean isDirty(final UUID playerId) {
+        for (RegisteredType<?> registered : types.values()) {
+            if (registered.dirty.contains(playerId)) {
+                return true;
+            }
+        }
+
+        for (Set<UUID> playerIds : unwritten.values()) {
+            if (playerIds.contains(playerId)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException exception) {
+            System.err.println("[SpigotMS] Player data flush failed");
+            exception.printStackTrace();
+        }
+    }
+
+    // -- getter and setter
+
+    /**
+     * @return int players whose data is cached, online or not
+     * */
+    public int getCachedCount() {
+        return players.size();
+    }
+
+    /**
+     * @return int players whose data is cached, who left the server
+     * */
+    public int getOfflineCount() {
+        synchronized (offline) {
+            return offline.size();
+        }
+    }
+
+    /**
+     * @return int changed values waiting to be written
+     * */
+    public int getDirtyCount() {
+        int dirty = 0;
+
+        for (RegisteredType<?> registered : types.values()) {
+            dirty += registered.dirty.size();
+        }
+
+        for (Set<UUID> playerIds : unwritten.values()) {
+            dirty += playerIds.size();
+        }
+
+        return dirty;
+    }
+
+    /**
+     * @return long reads served from memory
+     * */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return long values loaded by a codec
+     * */
+    public long getLoadCount() {
+        return loads.sum();
+    }
+
+    /**
+     * @return long values written by a codec
+     * */
+    public long getStoredCount() {
+        return storedValues.sum();
+    }
+
+    /**
+     * @return long batches written by a codec
+     * */
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    /**
+     * @return long entries of players who left that were evicted
+     * */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    // -- inner classes
+
+    private static final class RegisteredType<T> {
+
+        private final PlayerDataType<T> type;
+        private final Set<UUID> dirty;
+
+        private RegisteredType(final PlayerDataType<T> type) {
+            this.type = type;
+            this.dirty = ConcurrentHashMap.newKeySet();
+        }
+    }
+
+    private static final class PlayerEntry {
+
+        private final UUID playerId;
+        private final Map<String, CompletableFuture<Object>> values;
+        private volatile boolean online;
+        /** guarded by the entry */
+        private boolean evicted;
+
+        private PlayerEntry(final UUID playerId) {
+            this.playerId = playerId;
+            this.values = new ConcurrentHashMap<>();
+        }
+    }
+}
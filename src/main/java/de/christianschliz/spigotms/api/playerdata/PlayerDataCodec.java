@@ -0,0 +1,35 @@
+package de.christianschliz.spigotms.api.playerdata;
+
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Loads and stores one type of player data, e.g. against
+ * MySQL or Cassandra. Codecs are called from the loader and
+ * writer threads of the {@link PlayerDataCache}, never from
+ * the main thread.
+ *
+ * @param <T> data type, should be immutable
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public interface PlayerDataCodec<T> {
+
+    /**
+     * Loads the data of a player.
+     *
+     * @param playerId the player
+     * @return T the data, or the defaults of a new player, never null
+     * @throws Exception if the data can't be loaded
+     * */
+    T load(UUID playerId) throws Exception;
+
+    /**
+     * Writes the changed data of several players in one batch,
+     * e.g. as a JDBC batch or a Cassandra batch statement.
+     *
+     * @param values the data by player
+     * @throws Exception if the batch can't be written, it is retried with the next flush
+     * */
+    void store(Map<UUID, T> values) throws Exception;
+}
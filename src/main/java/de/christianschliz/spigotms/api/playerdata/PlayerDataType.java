@@ -0,0 +1,52 @@
+package de.christianschliz.spigotms.api.playerdata;
+
+/**
+ * A named type of player data with the codec that loads and stores it.
+ * Declare types once, e.g. as constants of the service that owns them.
+ *
+ * @param <T> data type, should be immutable
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public final class PlayerDataType<T> {
+
+    // -- instance fields
+
+    private final String name;
+    private final PlayerDataCodec<T> codec;
+
+    // -- constructors
+
+    private PlayerDataType(final String name, final PlayerDataCodec<T> codec) {
+        this.name = name;
+        this.codec = codec;
+    }
+
+    // -- public methods
+
+    /**
+     * @param name  The type name, unique on the server, e.g. <code>economy:balance</code>
+     * @param codec Loads and stores the data
+     * @param <T>   data type
+     * @return PlayerDataType the type
+     * */
+    public static <T> PlayerDataType<T> of(final String name, final PlayerDataCodec<T> codec) {
+        return new PlayerDataType<>(name, codec);
+    }
+
+    // -- getter and setter
+
+    /**
+     * @return String the type name
+     * */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return PlayerDataCodec loads and stores the data
+     * */
+    public PlayerDataCodec<T> getCodec() {
+        return codec;
+    }
+}
@@ -0,0 +1,244 @@
+package de.christianschliz.spigotms.api.scheduler;
+
+import de.christianschliz.spigotms.api.metrics.LatencyHistogram;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * The main-thread task queue of a single service. Tasks can be submitted
+ * from any thread and run on the server thread within the service's
+ * per-tick budget, see {@link TickScheduler}.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public final class ServiceScheduler {
+
+    // -- instance fields
+
+    private final String serviceName;
+    private final long budgetNanos;
+    private final LatencyHistogram taskTimer;
+    private final Queue<Runnable>[] queues;
+    private final AtomicInteger pending;
+
+    /** time the last ticks ran over budget, paid back by skipping work in the next ticks */
+    private long debtNanos;
+
+    private final LongAdder executed;
+    private final LongAdder deferredTicks;
+    private final LongAdder overruns;
+
+    // -- constructors
+
+    /**
+     * @param serviceName The service the tasks belong to
+     * @param budgetNanos Time the tasks may run per tick
+     * @param taskTimer   The timer task durations are recorded to
+     * */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    ServiceScheduler(final String serviceName, final long budgetNanos, final LatencyHistogram taskTimer) {
+        this.serviceName = serviceName;
+        this.budgetNanos = budgetNanos;
+        this.taskTimer = taskTimer;
+        this.queues = new Queue[TaskPriority.values().length];
+        this.pending = new AtomicInteger();
+
+        for (int i = 0; i < queues.length; i++) {
+            queues[i] = new ConcurrentLinkedQueue<>();
+        }
+
+        this.executed = new LongAdder();
+        this.deferredTicks = new LongAdder();
+        this.overruns = new LongAdder();
+    }
+
+    // -- public methods
+
+    /**
+     * Queues a task with {@link TaskPriority#NORMAL} priority.
+     *
+     * @param task runs on the server thread
+     * */
+    public void submit(final Runnable task) {
+        submit(TaskPriority.NORMAL, task);
+    }
+
+    /**
+     * Queues a task. It runs in the next tick if the budget allows,
+     * otherwise in one of the following ticks.
+     *
+     * @param priority the task priority
+     * @param task     runs on the server thread
+     * */
+    public void submit(final TaskPriority priority, final Runnable task) {
+        pending.incrementAndGet();
+        queues[priority.ordinal()].add(task);
+    }
+
+    /**
+     * Queues a task and hands its result back, e.g. to an async query.
+     *
+     * @param priority the task priority
+     * @param task     runs on the server thread
+     * @param <T>      result type
+     * @return CompletableFuture completed on the server thread
+     * */
+    public <T> CompletableFuture<T> call(final TaskPriority priority, final Supplier<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        submit(priority, () -> {
+            try {
+                future.complete(task.get());
+            } catch (Throwable exception) {
+                future.completeExceptionally(exception);
+            }
+        });
+        return future;
+    }
+
+    // -- package-private methods
+
+    /**
+     * Runs queued tasks until the budget of this tick is used up.
+     *
+     * @param tickRemainingNanos time left in the global tick budget
+     * */
+    void runTick(final long tickRemainingNanos) {
+        long available = budgetNanos - debtNanos;
+
+        if (available <= 0) {
+            // skipping a tick pays back one tick of budget
+            debtNanos = Math.max(0, debtNanos - budgetNanos);
+            markDeferred();
+            return;
+        }
+
+        long slice = Math.min(available, tickRemainingNanos);
+
+        if (slice <= 0) {
+            // other services used up the tick
+            markDeferred();
+            return;
+        }
+
+        long start = System.nanoTime();
+        long used = 0;
+
+        while (used < slice) {
+            Runnable task = poll();
+
+            if (task == null) {
+                break;
+            }
+
+            long taskStart = System.nanoTime();
+            run(task);
+            long end = System.nanoTime();
+
+            taskTimer.record(end - taskStart);
+            used = end - start;
+        }
+
+        if (used > available) {
+            overruns.increment();
+            debtNanos = used - available;
+        } else {
+            debtNanos = 0;
+        }
+
+        markDeferred();
+    }
+
+    /**
+     * Runs all queued tasks regardless of the budget,
+     * when the service is unloaded or the server stops.
+     * */
+    void drain() {
+        Runnable task;
+
+        while ((task = poll()) != null) {
+            run(task);
+        }
+    }
+
+    // -- private methods
+
+    private Runnable poll() {
+        for (Queue<Runnable> queue : queues) {
+            Runnable task = queue.poll();
+
+            if (task != null) {
+                pending.decrementAndGet();
+                return task;
+            }
+        }
+
+        return null;
+    }
+
+    private void run(final Runnable task) {
+        try {
+            task.run();
+        } catch (Throwable exception) {
+            // an error must not end the tick and take the tasks of other services with it
+            System.err.println("[SpigotMS] Scheduled task of service " + serviceName + " failed");
+            exception.printStackTrace();
+        }
+
+        executed.increment();
+    }
+
+    private void markDeferred() {
+        if (pending.get() > 0) {
+            deferredTicks.increment();
+        }
+    }
+
+    // -- getter and setter
+
+    /**
+     * @return String the service the tasks belong to
+     * */
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    /**
+     * @return long time the tasks may run per tick in nanoseconds
+     * */
+    public long getBudgetNanos() {
+        return budgetNanos;
+    }
+
+    /**
+     * @return int tasks waiting to run
+     * */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * @return long tasks that have run
+     * */
+    public long getExecutedCount() {
+        return executed.sum();
+    }
+
+    /**
+     * @return long ticks that ended with tasks left in the queue
+     * */
+    public long getDeferredTickCount() {
+        return deferredTicks.sum();
+    }
+
+    /**
+     * @return long ticks in which a task pushed the service over its budget
+     * */
+    public long getOverrunCount() {
+        return overruns.sum();
+    }
+}
@@ -0,0 +1,18 @@
+package de.christianschliz.spigotms.api.scheduler;
+
+/**
+ * The order in which the queued main-thread tasks of a service run
+ * within its tick budget. Lower priorities only run when every task
+ * of a higher priority has run and budget is left.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public enum TaskPriority {
+    /** player facing work, e.g. replies to commands */
+    HIGH,
+    /** the default */
+    NORMAL,
+    /** work that may lag behind, e.g. hologram or scoreboard refreshes */
+    LOW
+}
@@ -0,0 +1,157 @@
+package de.christianschliz.spigotms.api.scheduler;
+
+import de.christianschliz.spigotms.api.metrics.MetricsRegistry;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+/**
+ * Runs the main-thread work of all services within a time budget per tick.
+ * Every service has its own budget in microseconds, and all services together
+ * share a global budget, so a burst of work from many services is spread over
+ * the next ticks instead of stretching a single tick. Services are visited in
+ * a rotating order, so no service is always last in line.
+ *
+ * <p>A task that runs over the budget can't be interrupted. The overrun is
+ * recorded and taken from the service's budget of the following ticks.</p>
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public final class TickScheduler {
+
+    // -- instance fields
+
+    private final Plugin plugin;
+    private final MetricsRegistry metricsRegistry;
+    private final long tickBudgetNanos;
+    private final long defaultServiceBudgetNanos;
+    private final Map<String, Long> serviceBudgetMicros;
+
+    private final List<ServiceScheduler> order;
+    private int nextService;
+    private BukkitTask tickTask;
+
+    private final LongAdder exhaustedTicks;
+
+    // -- constructors
+
+    /**
+     * @param plugin                    The plugin the tick task is registered for
+     * @param metricsRegistry           Registry task durations are recorded to
+     * @param tickBudgetMicros          Time all services together may use per tick
+     * @param defaultServiceBudgetMicros Time a single service may use per tick
+     * @param serviceBudgetMicros       Budgets of single services that differ from the default
+     * */
+    public TickScheduler(final Plugin plugin, final MetricsRegistry metricsRegistry,
+                         final long tickBudgetMicros, final long defaultServiceBudgetMicros,
+                         final Map<String, Long> serviceBudgetMicros) {
+        this.plugin = plugin;
+        this.metricsRegistry = metricsRegistry;
+        this.tickBudgetNanos = TimeUnit.MICROSECONDS.toNanos(tickBudgetMicros);
+        this.defaultServiceBudgetNanos = TimeUnit.MICROSECONDS.toNanos(defaultServiceBudgetMicros);
+        this.serviceBudgetMicros = serviceBudgetMicros;
+
+        this.order = new CopyOnWriteArrayList<>();
+        this.exhaustedTicks = new LongAdder();
+    }
+
+    // -- public methods
+
+    /**
+     * Starts running queued tasks every tick.
+     * */
+    public void start() {
+        if (tickTask == null) {
+            tickTask = plugin.getServer().getScheduler().runTaskTimer(plugin, this::tick, 1L, 1L);
+        }
+    }
+
+    /**
+     * Stops the tick task and runs all tasks that are still queued.
+     * */
+    public void stop() {
+        if (tickTask != null) {
+            tickTask.cancel();
+            tickTask = null;
+        }
+
+        order.forEach(ServiceScheduler::drain);
+    }
+
+    /**
+     * Creates the task queue of a service instance. A reloaded service gets
+     * a queue of its own, while the instance it replaces keeps its queue
+     * until it is unloaded.
+     *
+     * @param serviceName The service name
+     * @return ServiceScheduler the new queue of the service
+     * */
+    public ServiceScheduler register(final String serviceName) {
+        Long budgetMicros = serviceBudgetMicros.get(serviceName);
+        ServiceScheduler scheduler = new ServiceScheduler(serviceName,
+                budgetMicros != null ? TimeUnit.MICROSECONDS.toNanos(budgetMicros) : defaultServiceBudgetNanos,
+                metricsRegistry.forService(serviceName).timer("scheduler:task"));
+        order.add(scheduler);
+        return scheduler;
+    }
+
+    /**
+     * Runs the remaining tasks of an unloaded service instance and drops
+     * its queue, so the scheduler doesn't keep classes of the old service alive.
+     *
+     * @param scheduler The queue returned by {@link TickScheduler#register(String)}
+     * */
+    public void unregister(final ServiceScheduler scheduler) {
+        if (order.remove(scheduler)) {
+            scheduler.drain();
+        }
+    }
+
+    // -- private methods
+
+    private void tick() {
+        // tasks may load or unload services, they take effect next tick
+        ServiceScheduler[] schedulers = order.toArray(new ServiceScheduler[0]);
+        int count = schedulers.length;
+
+        if (count == 0) {
+            return;
+        }
+
+        long tickStart = System.nanoTime();
+        int first = Math.floorMod(nextService++, count);
+
+        for (int i = 0; i < count; i++) {
+            schedulers[(first + i) % count].runTick(tickBudgetNanos - (System.nanoTime() - tickStart));
+        }
+
+        if (System.nanoTime() - tickStart >= tickBudgetNanos) {
+            exhaustedTicks.increment();
+        }
+    }
+
+    // -- getter and setter
+
+    /**
+     * @return Map of the task queues of all services, sorted by name, with the newest instance of a reloaded service
+     * */
+    public Map<String, ServiceScheduler> getServices() {
+        Map<String, ServiceScheduler> services = new TreeMap<>();
+        order.forEach(scheduler -> services.put(scheduler.getServiceName(), scheduler));
+        return Collections.unmodifiableMap(services);
+    }
+
+    /**
+     * @return long ticks in which the global budget was used up
+     * */
+    public long getExhaustedTickCount() {
+        return exhaustedTicks.sum();
+    }
+}
@@ -0,0 +1,92 @@
+package de.christianschliz.spigotms.plugin;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import de.christianschliz.spigotms.api.metrics.MetricsRegistry;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the metrics registry in the Prometheus text format
+ * on <code>http://host:port/metrics</code>.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public class MetricsEndpoint {
+
+    // -- instance fields
+
+    private final MetricsRegistry metricsRegistry;
+    private final InetSocketAddress address;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    // -- constructors
+
+    /**
+     * @param metricsRegistry The registry to serve
+     * @param host            The address to bind to, usually <code>127.0.0.1</code>
+     * @param port            The port to listen on
+     * */
+    public MetricsEndpoint(MetricsRegistry metricsRegistry, String host, int port) {
+        this.metricsRegistry = metricsRegistry;
+        this.address = new InetSocketAddress(host, port);
+    }
+
+    // -- public methods
+
+    /**
+     * Starts serving metrics on a background thread.
+     *
+     * @throws IOException if the port can't be bound
+     * */
+    public void start() throws IOException {
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "SpigotMS-Metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        server = HttpServer.create(address, 0);
+        server.createContext("/metrics", this::handle);
+        server.setExecutor(executor);
+        server.start();
+
+        System.out.println("[SpigotMS] Serving metrics on http://" + address.getHostString()
+                + ":" + address.getPort() + "/metrics");
+    }
+
+    /**
+     * Stops the server.
+     * */
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    // -- private methods
+
+    private void handle(HttpExchange exchange) throws IOException {
+        StringBuilder body = new StringBuilder();
+        metricsRegistry.writePrometheus(body);
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -1,9 +1,19 @@
 package de.christianschliz.spigotms.plugin;
 
+import de.christianschliz.spigotms.api.database.BinaryCodec;
+import de.christianschliz.spigotms.api.event.ServiceEventQueue;
+import de.christianschliz.spigotms.api.executor.ExecutorPool;
+import de.christianschliz.spigotms.api.metrics.LatencyHistogram;
+import de.christianschliz.spigotms.api.metrics.MetricsRegistry;
+import de.christianschliz.spigotms.api.metrics.ServiceMetrics;
+import de.christianschliz.spigotms.api.playerdata.PlayerDataCache;
+import de.christianschliz.spigotms.api.scheduler.ServiceScheduler;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 
+import java.util.Map;
+
 /**
  * @author Christian Schliz
  * @version 1.0
@@ -24,13 +34,41 @@ public class MicroserviceCommand implements CommandExecutor {
         if (args.length > 0 && args[0].equalsIgnoreCase("list")
                 && commandSender.hasPermission("spigotms.list")) {
             StringBuilder list = new StringBuilder();
-            this.pluginInstance.getServiceLoader().getServices().forEach(
-                (name, service) -> list.append("\n[SpigotMS] ")
+            ResourceAccountant resourceAccountant = this.pluginInstance.getResourceAccountant();
+            this.pluginInstance.getServiceLoader().getServices().forEach((name, service) -> {
+                list.append("\n[SpigotMS] ")
                     .append(name)
                     .append("; loaded: true; enabled: ")
-                    .append(service.isEnabled()));
+                    .append(service.isEnabled());
+
+                if (resourceAccountant != null && resourceAccountant.getUsage(name) != null) {
+                    appendUsage(list, resourceAccountant.getUsage(name));
+                }
+            });
+            this.pluginInstance.getServiceLoader().getLeakedServices().forEach(name ->
+                    list.append("\n[SpigotMS] ").append(name).append("; loaded: false; leaking classloader"));
             commandSender.sendMessage(list.toString());
 
+            return true;
+        } else if (args.length > 0 && args[0].equalsIgnoreCase("stats")
+                && commandSender.hasPermission("spigotms.list")) {
+            commandSender.sendMessage(formatStats(args.length > 1 ? args[1] : null));
+
+            return true;
+        } else if (args.length > 0 && args[0].equalsIgnoreCase("stalls")
+                && commandSender.hasPermission("spigotms.list")) {
+            StallDetector stallDetector = this.pluginInstance.getStallDetector();
+
+            if (stallDetector == null) {
+                commandSender.sendMessage("[SpigotMS] The stall detector is disabled");
+            } else if (args.length > 1 && args[1].equalsIgnoreCase("reset")
+                    && commandSender.hasPermission("spigotms.manage")) {
+                stallDetector.reset();
+                commandSender.sendMessage("[SpigotMS] Stalls reset!");
+            } else {
+                commandSender.sendMessage(stallDetector.formatReport());
+            }
+
             return true;
         } else if (args.length > 1 && args[0].equalsIgnoreCase("enable")
                 && commandSender.hasPermission("spigotms.manage")) {
@@ -54,8 +92,26 @@ public class MicroserviceCommand implements CommandExecutor {
             return true;
         } else if (args.length > 1 && args[0].equalsIgnoreCase("reload")
                 && commandSender.hasPermission("spigotms.manage")) {
-            commandSender.sendMessage("[SpigotMS] disabling loaded services");
-            this.pluginInstance.getServiceLoader().disableLoadedServices();
+            if (!this.pluginInstance.getServiceLoader().getServices().containsKey(args[1])) {
+                commandSender.sendMessage("[SpigotMS] No such service: " + args[1]);
+                return true;
+            }
+
+            commandSender.sendMessage("[SpigotMS] Reloading service " + args[1] + " in the background");
+            this.pluginInstance.getServiceLoader().reloadService(args[1]).whenComplete((reloaded, error) -> {
+                if (error == null && reloaded) {
+                    commandSender.sendMessage("[SpigotMS] Service " + args[1] + " reloaded!");
+                } else {
+                    commandSender.sendMessage("[SpigotMS] Failed to reload service " + args[1]
+                            + ", see the console");
+                }
+            });
+
+            return true;
+        } else if (args.length > 0 && args[0].equalsIgnoreCase("reload")
+                && commandSender.hasPermission("spigotms.manage")) {
+            commandSender.sendMessage("[SpigotMS] unloading loaded services");
+            this.pluginInstance.getServiceLoader().unloadServices();
             commandSender.sendMessage("[SpigotMS] loading services");
             this.pluginInstance.getServiceLoader().loadServices();
             commandSender.sendMessage("[SpigotMS] enabling loaded services");
@@ -64,4 +120,135 @@ public class MicroserviceCommand implements CommandExecutor {
             return true;
         } else return false;
     }
+
+    private String formatStats(String serviceName) {
+        MetricsRegistry metricsRegistry = this.pluginInstance.getMetricsRegistry();
+        StringBuilder stats = new StringBuilder();
+
+        Map<String, ServiceScheduler> schedulers = this.pluginInstance.getTickScheduler().getServices();
+        Map<String, ServiceEventQueue> eventQueues = this.pluginInstance.getEventDispatcher().getServices();
+
+        metricsRegistry.getServices().forEach((name, metrics) -> {
+            if (serviceName == null || serviceName.equals(name)) {
+                appendService(stats, metrics);
+
+                if (schedulers.containsKey(name)) {
+                    appendScheduler(stats, schedulers.get(name));
+                }
+
+                if (eventQueues.containsKey(name)) {
+                    appendEventQueue(stats, eventQueues.get(name));
+                }
+            }
+        });
+
+        if (serviceName == null) {
+            appendPlayerData(stats, this.pluginInstance.getPlayerDataCache());
+            this.pluginInstance.getExecutorRegistry().getPools().values().forEach(pool -> appendPool(stats, pool));
+
+            if (this.pluginInstance.getDatabaseControllers().redis() != null) {
+                this.pluginInstance.getDatabaseControllers().redis().codecs().getCodecs().values().stream()
+                        .filter(codec -> codec.getEncodedCount() > 0)
+                        .forEach(codec -> appendCodec(stats, codec));
+            }
+
+            metricsRegistry.getDatabaseTimers().forEach((backend, histogram) ->
+                    appendTimer(stats.append("\n[SpigotMS] database "), backend, histogram));
+        }
+
+        return stats.length() == 0 ? "[SpigotMS] No metrics recorded" : stats.toString();
+    }
+
+    private static void appendService(StringBuilder stats, ServiceMetrics metrics) {
+        stats.append("\n[SpigotMS] ").append(metrics.getServiceName())
+                .append("; load: ").append(LatencyHistogram.format(metrics.getLoadNanos()))
+                .append("; enableAsync: ").append(LatencyHistogram.format(metrics.getEnableAsyncNanos()))
+                .append("; enable: ").append(LatencyHistogram.format(metrics.getEnableNanos()));
+
+        metrics.getTimers().forEach((timer, histogram) -> appendTimer(stats.append("\n  "), timer, histogram));
+    }
+
+    private static void appendUsage(StringBuilder list, ResourceAccountant.Usage usage) {
+        list.append("; threads: ").append(usage.getThreads())
+                .append("; classes: ").append(usage.getClasses());
+
+        if (usage.getAllocatedBytes() >= 0) {
+            list.append("; allocated: ").append(formatBytes(usage.getAllocatedBytes()));
+
+            if (usage.getBytesPerSecond() >= 0) {
+                list.append(" (").append(formatBytes(usage.getBytesPerSecond())).append("/s)");
+            }
+        }
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        } else if (bytes < 1048576) {
+            return String.format("%.1f KB", bytes / 1024.0);
+        } else if (bytes < 1073741824) {
+            return String.format("%.1f MB", bytes / 1048576.0);
+        }
+
+        return String.format("%.1f GB", bytes / 1073741824.0);
+    }
+
+    private static void appendScheduler(StringBuilder stats, ServiceScheduler scheduler) {
+        stats.append("\n  scheduler; budget: ").append(LatencyHistogram.format(scheduler.getBudgetNanos()))
+                .append("; pending: ").append(scheduler.getPendingCount())
+                .append("; executed: ").append(scheduler.getExecutedCount())
+                .append("; deferred ticks: ").append(scheduler.getDeferredTickCount())
+                .append("; overruns: ").append(scheduler.getOverrunCount());
+    }
+
+    private static void appendEventQueue(StringBuilder stats, ServiceEventQueue queue) {
+        stats.append("\n  async events; pending: ").append(queue.getPendingCount())
+                .append('/').append(queue.getCapacity())
+                .append("; dispatched: ").append(queue.getDispatchedCount())
+                .append("; dropped: ").append(queue.getDroppedCount());
+    }
+
+    private static void appendPlayerData(StringBuilder stats, PlayerDataCache cache) {
+        stats.append("\n[SpigotMS] player data; cached: ").append(cache.getCachedCount())
+                .append(" (offline: ").append(cache.getOfflineCount())
+                .append("); dirty: ").append(cache.getDirtyCount())
+                .append("; hits: ").append(cache.getHitCount())
+                .append("; loads: ").append(cache.getLoadCount())
+                .append("; stored: ").append(cache.getStoredCount())
+                .append(" in ").append(cache.getBatchCount()).append(" batches")
+                .append("; evicted: ").append(cache.getEvictionCount());
+    }
+
+    private static void appendPool(StringBuilder stats, ExecutorPool pool) {
+        stats.append("\n[SpigotMS] executor ").append(pool.getName())
+                .append("; threads: ").append(pool.getThreadCount()).append('/').append(pool.getMaxThreads())
+                .append("; active: ").append(pool.getActiveCount())
+                .append("; queued: ").append(pool.getQueueDepth());
+
+        if (pool.getQueueCapacity() != Integer.MAX_VALUE) {
+            stats.append('/').append(pool.getQueueCapacity());
+        }
+
+        stats.append("; utilization: ").append(Math.round(pool.getUtilization() * 100)).append('%')
+                .append("; completed: ").append(pool.getCompletedCount())
+                .append("; rejected: ").append(pool.getRejectedCount());
+    }
+
+    private static void appendCodec(StringBuilder stats, BinaryCodec<?> codec) {
+        stats.append("\n[SpigotMS] codec ").append(codec.getType().getSimpleName())
+                .append("; values: ").append(codec.getEncodedCount())
+                .append(" (compressed: ").append(codec.getCompressedCount())
+                .append("); raw: ").append(formatBytes(codec.getRawBytes()))
+                .append("; stored: ").append(formatBytes(codec.getStoredBytes()))
+                .append("; saved: ").append(Math.round(codec.getSavedBytes() * 100.0 / codec.getRawBytes()))
+                .append('%');
+    }
+
+    private static void appendTimer(StringBuilder stats, String name, LatencyHistogram histogram) {
+        stats.append(name)
+                .append("; count: ").append(histogram.getCount())
+                .append("; mean: ").append(LatencyHistogram.format(histogram.getMean()))
+                .append("; p99: ").append(LatencyHistogram.format(histogram.getPercentile(99)))
+                .append("; max: ").append(LatencyHistogram.format(histogram.getMax()));
+    }
 }
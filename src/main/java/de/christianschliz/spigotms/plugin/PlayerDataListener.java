@@ -0,0 +1,58 @@
+package de.christianschliz.spigotms.plugin;
+
+import de.christianschliz.spigotms.api.playerdata.PlayerDataCache;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+/**
+ * Moves players through the player data cache: their data is loaded
+ * during the async pre-login, kept while they are online and written
+ * back once they quit.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public class PlayerDataListener implements Listener {
+
+    // -- instance fields
+
+    private final PlayerDataCache playerDataCache;
+
+    // -- constructors
+
+    /**
+     * @param playerDataCache The cache of the plugin
+     * */
+    public PlayerDataListener(PlayerDataCache playerDataCache) {
+        this.playerDataCache = playerDataCache;
+    }
+
+    // -- public methods
+
+    /**
+     * Loads the data early, so pre-login handlers of services can read it too.
+     * */
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onPreLogin(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() == AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            playerDataCache.preload(event.getUniqueId());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onJoin(PlayerJoinEvent event) {
+        playerDataCache.playerJoined(event.getPlayer().getUniqueId());
+    }
+
+    /**
+     * Runs last, so services can still change the data while handling the quit.
+     * */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        playerDataCache.playerQuit(event.getPlayer().getUniqueId());
+    }
+}
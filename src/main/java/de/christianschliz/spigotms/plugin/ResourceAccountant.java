@@ -0,0 +1,317 @@
+package de.christianschliz.spigotms.plugin;
+
+import de.christianschliz.spigotms.api.SpigotService;
+import de.christianschliz.spigotms.api.metrics.MetricsRegistry;
+import de.christianschliz.spigotms.api.metrics.ServiceMetrics;
+import de.christianschliz.spigotms.api.metrics.ServiceThreadFactory;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+/**
+ * Periodically accounts threads, allocations and classes to the services
+ * that own them. Threads are those created through a service's
+ * {@link ServiceThreadFactory}, their allocated bytes are read in one call
+ * per service from the {@link ThreadMXBean}, plus the bytes the service's
+ * tasks allocated on the shared pools. Classes are those defined by the
+ * service's classloader. A pass runs on the server thread, so it sees
+ * the same services as the commands, and reads nothing but a few counters.
+ *
+ * <p>A service over one of its soft limits is reported once when it crosses
+ * the limit, and unloaded if its limits say so, which stops its executors,
+ * event queue and scheduled tasks. Whether its threads ended is checked a
+ * few seconds later. It is reported again only after it was back under the
+ * limit for one pass.</p>
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public class ResourceAccountant {
+
+    // -- static fields
+
+    private static final long TICKS_PER_SECOND = 20;
+    private static final long THREAD_CHECK_SECONDS = 5;
+
+    // -- instance fields
+
+    private final Plugin plugin;
+    private final ServiceLoader serviceLoader;
+    private final MetricsRegistry metricsRegistry;
+    private final long intervalSeconds;
+    private final Limits defaultLimits;
+    private final Map<String, Limits> serviceLimits;
+    private final com.sun.management.ThreadMXBean allocations;
+
+    private final Map<String, Usage> usages;
+    private BukkitTask task;
+
+    // -- constructors
+
+    /**
+     * @param plugin          The plugin the accounting task is scheduled for
+     * @param serviceLoader   The service loader owning the services and their classloaders
+     * @param metricsRegistry The registry owning the thread factories of the services
+     * @param intervalSeconds Time between two passes
+     * @param defaultLimits   Limits of services without own limits
+     * @param serviceLimits   Limits of single services, by service name
+     * */
+    public ResourceAccountant(Plugin plugin, ServiceLoader serviceLoader, MetricsRegistry metricsRegistry,
+                              long intervalSeconds, Limits defaultLimits, Map<String, Limits> serviceLimits) {
+        this.plugin = plugin;
+        this.serviceLoader = serviceLoader;
+        this.metricsRegistry = metricsRegistry;
+        this.intervalSeconds = Math.max(1, intervalSeconds);
+        this.defaultLimits = defaultLimits;
+        this.serviceLimits = new HashMap<>(serviceLimits);
+        this.allocations = allocationBean();
+        this.usages = new HashMap<>();
+    }
+
+    // -- public methods
+
+    /**
+     * Starts the periodic passes.
+     * */
+    public void start() {
+        if (task == null) {
+            long intervalTicks = intervalSeconds * TICKS_PER_SECOND;
+            task = plugin.getServer().getScheduler().runTaskTimer(plugin, this::account, intervalTicks, intervalTicks);
+        }
+    }
+
+    /**
+     * Stops the periodic passes.
+     * */
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    /**
+     * Accounts all loaded services and enforces their limits.
+     * Must be called on the server thread.
+     * */
+    public void account() {
+        long now = System.nanoTime();
+        Map<String, SpigotService> services = serviceLoader.getServices();
+        usages.keySet().retainAll(services.keySet());
+
+        for (Map.Entry<String, SpigotService> entry : new HashMap<>(services).entrySet()) {
+            String name = entry.getKey();
+            Usage usage = usages.computeIfAbsent(name, key -> new Usage());
+            ServiceMetrics metrics = metricsRegistry.forService(name);
+            List<Thread> threads = metrics.getThreads();
+            ServiceClassLoader classLoader = serviceLoader.getClassLoader(name);
+
+            usage.threads = threads.size();
+            usage.classes = classLoader == null ? 0 : classLoader.getDefinedClassCount();
+
+            if (allocations != null) {
+                accountAllocations(usage, threads, metrics.counter(ServiceMetrics.POOLED_ALLOCATED_BYTES).sum(), now);
+            }
+
+            enforce(name, entry.getValue(), usage);
+        }
+    }
+
+    /**
+     * @param serviceName The name of the service
+     * @return Usage the usage of the service at the last pass or null before the first one
+     * */
+    public Usage getUsage(String serviceName) {
+        return usages.get(serviceName);
+    }
+
+    // -- private methods
+
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+
+            if (allocationBean.isThreadAllocatedMemorySupported()) {
+                if (!allocationBean.isThreadAllocatedMemoryEnabled()) {
+                    allocationBean.setThreadAllocatedMemoryEnabled(true);
+                }
+
+                return allocationBean;
+            }
+        }
+
+        System.err.println("[SpigotMS] This JVM can't measure allocations per thread, only threads "
+                + "and classes are accounted to services");
+        return null;
+    }
+
+    private void accountAllocations(Usage usage, List<Thread> threads, long pooledBytes, long now) {
+        long[] threadIds = new long[threads.size()];
+
+        for (int i = 0; i < threadIds.length; i++) {
+            threadIds[i] = threads.get(i).getId();
+        }
+
+        long[] allocatedBytes = allocations.getThreadAllocatedBytes(threadIds);
+        Map<Long, Long> live = new HashMap<>();
+        long liveBytes = 0;
+
+        for (int i = 0; i < threadIds.length; i++) {
+            // -1 if the thread died since it was listed, its last reading is kept below
+            if (allocatedBytes[i] >= 0) {
+                live.put(threadIds[i], allocatedBytes[i]);
+                liveBytes += allocatedBytes[i];
+            }
+        }
+
+        // the allocations of dead threads can't be read anymore, keep what they had last time
+        for (Map.Entry<Long, Long> thread : usage.threadBytes.entrySet()) {
+            if (!live.containsKey(thread.getKey())) {
+                usage.retiredBytes += thread.getValue();
+            }
+        }
+
+        long total = usage.retiredBytes + liveBytes + pooledBytes;
+
+        if (usage.accountedAt != 0) {
+            usage.bytesPerSecond = (long) ((total - usage.allocatedBytes)
+                    * (double) TimeUnit.SECONDS.toNanos(1) / (now - usage.accountedAt));
+        }
+
+        usage.threadBytes = live;
+        usage.allocatedBytes = total;
+        usage.accountedAt = now;
+    }
+
+    private void enforce(String name, SpigotService service, Usage usage) {
+        Limits limits = serviceLimits.getOrDefault(name, defaultLimits);
+
+        enforce(name, service, usage, limits, "threads", usage.threads, limits.threads);
+        enforce(name, service, usage, limits, "classes", usage.classes, limits.classes);
+        enforce(name, service, usage, limits, "allocated bytes per second",
+                usage.bytesPerSecond, limits.allocatedBytesPerSecond);
+    }
+
+    private void enforce(String name, SpigotService service, Usage usage, Limits limits,
+                         String resource, long value, long limit) {
+        if (limit <= 0 || value <= limit) {
+            usage.exceeded.remove(resource);
+            return;
+        }
+
+        if (!usage.exceeded.add(resource)) {
+            return;
+        }
+
+        System.err.println("[SpigotMS] Service " + name + " is over its soft limit of " + limit + " " + resource
+                + " with " + value);
+
+        if (limits.action == Action.DISABLE && serviceLoader.getServices().get(name) == service) {
+            System.err.println("[SpigotMS] Unloading service " + name + " with " + usage.threads + " threads");
+            serviceLoader.unloadService(name);
+            scheduleThreadCheck(name);
+        }
+    }
+
+    private void scheduleThreadCheck(String name) {
+        plugin.getServer().getScheduler().runTaskLater(plugin, () -> {
+            int threads = metricsRegistry.forService(name).getThreads().size();
+
+            if (threads > 0) {
+                System.err.println("[SpigotMS] Service " + name + " still has " + threads
+                        + " live threads " + THREAD_CHECK_SECONDS + " seconds after it was unloaded");
+            } else {
+                System.out.println("[SpigotMS] All threads of service " + name + " have ended");
+            }
+        }, THREAD_CHECK_SECONDS * TICKS_PER_SECOND);
+    }
+
+    // -- inner classes
+
+    /**
+     * What happens when a service is over one of its limits.
+     * */
+    public enum Action {
+        /** Logs a warning */
+        WARN,
+        /** Logs a warning and unloads the service */
+        DISABLE
+    }
+
+    /**
+     * Soft limits of a service. A limit of 0 or less is no limit.
+     * */
+    public static final class Limits {
+
+        private final int threads;
+        private final long allocatedBytesPerSecond;
+        private final int classes;
+        private final Action action;
+
+        /**
+         * @param threads                 Maximum number of live threads
+         * @param allocatedBytesPerSecond Maximum allocation rate of the service's threads
+         * @param classes                 Maximum number of loaded classes
+         * @param action                  What happens when a limit is exceeded
+         * */
+        public Limits(int threads, long allocatedBytesPerSecond, int classes, Action action) {
+            this.threads = threads;
+            this.allocatedBytesPerSecond = allocatedBytesPerSecond;
+            this.classes = classes;
+            this.action = action;
+        }
+    }
+
+    /**
+     * Resources used by a service at the last pass.
+     * */
+    public static final class Usage {
+
+        private final Set<String> exceeded = new HashSet<>();
+        private Map<Long, Long> threadBytes = new HashMap<>();
+        private long retiredBytes;
+        private long accountedAt;
+
+        private int threads;
+        private int classes;
+        private long allocatedBytes = -1;
+        private long bytesPerSecond = -1;
+
+        /**
+         * @return int live threads created through the service's thread factories
+         * */
+        public int getThreads() {
+            return threads;
+        }
+
+        /**
+         * @return int classes defined by the service's classloader
+         * */
+        public int getClasses() {
+            return classes;
+        }
+
+        /**
+         * @return long bytes allocated by the service's threads and its tasks on the shared pools, or -1 if unknown
+         * */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        /**
+         * @return long bytes allocated per second between the last two passes, or -1 if unknown
+         * */
+        public long getBytesPerSecond() {
+            return bytesPerSecond;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package de.christianschliz.spigotms.plugin;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps package names to the {@link ServiceClassLoader} of the jar
+ * that contains them, so cross-service class lookups are a single
+ * hash lookup instead of a walk over every loaded jar.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public final class ServiceClassIndex {
+
+    // -- instance fields
+
+    private final Map<String, ServiceClassLoader> packageOwners;
+    /** registered classloaders in registration order, to find the next owner of a package */
+    private final List<ServiceClassLoader> classLoaders;
+
+    // -- constructors
+
+    /**
+     * Creates an empty class index.
+     * */
+    public ServiceClassIndex() {
+        this.packageOwners = new ConcurrentHashMap<>();
+        this.classLoaders = new ArrayList<>();
+    }
+
+    // -- public methods
+
+    /**
+     * Registers all packages of a classloader. If a package is
+     * already owned by another jar, the first owner is kept.
+     *
+     * @param classLoader The service classloader
+     * */
+    public synchronized void register(final ServiceClassLoader classLoader) {
+        if (!classLoaders.contains(classLoader)) {
+            classLoaders.add(classLoader);
+        }
+
+        for (String packageName : classLoader.getPackageNames()) {
+            ServiceClassLoader owner = packageOwners.putIfAbsent(packageName, classLoader);
+
+            if (owner != null && owner != classLoader) {
+                System.out.printf("[SpigotMS] Package %s of %s is already provided by %s%n",
+                        packageName, classLoader.getServiceName(), owner.getServiceName());
+            }
+        }
+    }
+
+    /**
+     * Removes all packages owned by a classloader. A package that another
+     * registered jar provides as well is handed over to the one registered first.
+     *
+     * @param classLoader The service classloader
+     * */
+    public synchronized void unregister(final ServiceClassLoader classLoader) {
+        classLoaders.remove(classLoader);
+
+        for (String packageName : classLoader.getPackageNames()) {
+            if (!packageOwners.remove(packageName, classLoader)) {
+                continue;
+            }
+
+            for (ServiceClassLoader provider : classLoaders) {
+                if (provider.getPackageNames().contains(packageName)) {
+                    packageOwners.put(packageName, provider);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param packageName a package name, e.g. <code>com.example.service</code>
+     * @return ServiceClassLoader the owning classloader or null if no service provides the package
+     * */
+    public ServiceClassLoader lookup(final String packageName) {
+        return packageOwners.get(packageName);
+    }
+}
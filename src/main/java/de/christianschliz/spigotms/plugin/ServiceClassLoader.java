@@ -0,0 +1,215 @@
+package de.christianschliz.spigotms.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * A classloader for exactly one service (or library) jar. Classes
+ * of the SpigotMS API, Bukkit and the JDK are always taken from the
+ * parent, packages owned by other service jars are resolved through
+ * the shared {@link ServiceClassIndex} instead of searching every jar.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public class ServiceClassLoader extends URLClassLoader {
+
+    // -- static fields
+
+    private static final String[] PARENT_FIRST_PACKAGES = {
+        "java.",
+        "javax.",
+        "sun.",
+        "org.bukkit.",
+        "net.md_5.",
+        "de.christianschliz.spigotms.api.",
+        "de.christianschliz.spigotms.plugin."
+    };
+
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
+
+    // -- instance fields
+
+    private final String serviceName;
+    private final File jarFile;
+    private final ServiceClassIndex classIndex;
+    private final Set<String> packages;
+    private final AtomicInteger definedClasses;
+
+    // -- constructors
+
+    /**
+     * Creates the classloader. Its packages become visible to other services
+     * once it is registered in the class index via
+     * {@link ServiceClassIndex#register(ServiceClassLoader)}.
+     *
+     * @param serviceName The service name, or the jar name for library jars
+     * @param jarFile     The jar this classloader is responsible for
+     * @param parent      The SpigotMS plugin classloader
+     * @param classIndex  The package index shared by all service classloaders
+     * @throws MalformedURLException if the jar path can't be converted to an URL
+     * */
+    public ServiceClassLoader(final String serviceName, final File jarFile, final ClassLoader parent,
+                              final ServiceClassIndex classIndex) throws MalformedURLException {
+        super(new URL[]{jarFile.toURI().toURL()}, parent);
+        this.serviceName = serviceName;
+        this.jarFile = jarFile;
+        this.classIndex = classIndex;
+        this.packages = Collections.unmodifiableSet(readPackages(jarFile));
+        this.definedClasses = new AtomicInteger();
+    }
+
+    // -- public methods
+
+    @Override
+    protected Class<?> loadClass(final String className, final boolean resolve) throws ClassNotFoundException {
+        if (isParentFirst(className)) {
+            return getParent().loadClass(className);
+        }
+
+        String packageName = packageOf(className);
+
+        if (packages.contains(packageName)) {
+            try {
+                return loadOwnClass(className, resolve);
+            } catch (ClassNotFoundException ignored) {
+                // split package, keep looking
+            }
+        }
+
+        ServiceClassLoader owner = classIndex.lookup(packageName);
+
+        if (owner != null && owner != this) {
+            try {
+                return owner.loadOwnClass(className, resolve);
+            } catch (ClassNotFoundException ignored) {
+                // not in the owning jar, fall back to the parent
+            }
+        }
+
+        return getParent().loadClass(className);
+    }
+
+    @Override
+    protected Class<?> findClass(final String className) throws ClassNotFoundException {
+        Class<?> definedClass = super.findClass(className);
+        definedClasses.incrementAndGet();
+        return definedClass;
+    }
+
+    @Override
+    public void close() throws IOException {
+        classIndex.unregister(this);
+        super.close();
+    }
+
+    // -- package-private methods
+
+    /**
+     * Loads a class from this jar only, without any delegation.
+     *
+     * @param className binary class name
+     * @param resolve   whether to link the class
+     * @return Class the loaded class
+     * @throws ClassNotFoundException if the class is not part of this jar
+     * */
+    Class<?> loadOwnClass(final String className, final boolean resolve) throws ClassNotFoundException {
+        synchronized (getClassLoadingLock(className)) {
+            Class<?> loadedClass = findLoadedClass(className);
+
+            if (loadedClass == null) {
+                loadedClass = findClass(className);
+            }
+
+            if (resolve) {
+                resolveClass(loadedClass);
+            }
+
+            return loadedClass;
+        }
+    }
+
+    // -- private methods
+
+    private static boolean isParentFirst(final String className) {
+        for (String prefix : PARENT_FIRST_PACKAGES) {
+            if (className.startsWith(prefix)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static String packageOf(final String className) {
+        int index = className.lastIndexOf('.');
+        return index == -1 ? "" : className.substring(0, index);
+    }
+
+    private static Set<String> readPackages(final File jarFile) {
+        Set<String> packageNames = new HashSet<>();
+
+        try (ZipFile zipFile = new ZipFile(jarFile)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+
+            while (entries.hasMoreElements()) {
+                String entryName = entries.nextElement().getName();
+
+                if (entryName.endsWith(".class") && !entryName.startsWith("META-INF/")) {
+                    int index = entryName.lastIndexOf('/');
+                    packageNames.add(index == -1 ? "" : entryName.substring(0, index).replace('/', '.'));
+                }
+            }
+        } catch (IOException exception) {
+            System.err.println("[SpigotMS] Could not index packages of " + jarFile);
+            exception.printStackTrace();
+        }
+
+        return packageNames;
+    }
+
+    // -- getter and setter
+
+    /**
+     * @return String the service name, or the jar name for library jars
+     * */
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    /**
+     * @return File the jar this classloader is responsible for
+     * */
+    public File getJarFile() {
+        return jarFile;
+    }
+
+    /**
+     * @return Set of all packages contained in the jar
+     * */
+    public Set<String> getPackageNames() {
+        return packages;
+    }
+
+    /**
+     * Classes stay loaded as long as their classloader is reachable,
+     * so this is the number of classes the service retains.
+     *
+     * @return int number of classes defined by this classloader
+     * */
+    public int getDefinedClassCount() {
+        return definedClasses.get();
+    }
+}
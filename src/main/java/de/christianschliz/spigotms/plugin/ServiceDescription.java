@@ -0,0 +1,193 @@
+package de.christianschliz.spigotms.plugin;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+/**
+ * The resolved <code>service.yml</code> of a single service jar,
+ * as produced by the {@link ServiceDiscovery}. The fields needed to
+ * load a service are kept on their own, so a description restored
+ * from the {@link ServiceIndex} works without parsing the YAML. The
+ * full configuration is only parsed when it is asked for.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public final class ServiceDescription {
+
+    // -- instance fields
+
+    private final File jarFile;
+    private final String serviceYml;
+    private final boolean valid;
+    private final String name;
+    private final String mainClass;
+    private final boolean enabledByDefault;
+    private final boolean asyncEnable;
+    private final List<String> depends;
+    private final List<String> softDepends;
+
+    private FileConfiguration configuration;
+
+    // -- constructors
+
+    /**
+     * @param jarFile          The jar the <code>service.yml</code> was read from
+     * @param serviceYml       The raw <code>service.yml</code>
+     * @param valid            Whether name, main and enable are present
+     * @param name             The unique service name
+     * @param mainClass        The fully qualified name of the service main class
+     * @param enabledByDefault Whether the service should be enabled after loading
+     * @param asyncEnable      Whether the async enable phase runs on a worker thread
+     * @param depends          Services which must be enabled before this service
+     * @param softDepends      Services which are enabled before this service, if present
+     * */
+    public ServiceDescription(final File jarFile, final String serviceYml, final boolean valid,
+                              final String name, final String mainClass, final boolean enabledByDefault,
+                              final boolean asyncEnable, final List<String> depends,
+                              final List<String> softDepends) {
+        this.jarFile = jarFile;
+        this.serviceYml = serviceYml;
+        this.valid = valid;
+        this.name = name;
+        this.mainClass = mainClass;
+        this.enabledByDefault = enabledByDefault;
+        this.asyncEnable = asyncEnable;
+        this.depends = Collections.unmodifiableList(depends);
+        this.softDepends = Collections.unmodifiableList(softDepends);
+    }
+
+    // -- public methods
+
+    /**
+     * Parses a <code>service.yml</code>.
+     *
+     * @param jarFile    The jar the <code>service.yml</code> was read from
+     * @param serviceYml The raw <code>service.yml</code>
+     * @return ServiceDescription the description, which might not be valid
+     * @throws InvalidConfigurationException if the YAML can't be parsed
+     * */
+    public static ServiceDescription parse(final File jarFile, final String serviceYml)
+            throws InvalidConfigurationException {
+        YamlConfiguration configuration = new YamlConfiguration();
+        configuration.loadFromString(serviceYml);
+
+        ServiceDescription description = new ServiceDescription(jarFile, serviceYml,
+                configuration.contains("name") && configuration.contains("main") && configuration.contains("enable"),
+                configuration.getString("name"), configuration.getString("main"),
+                configuration.getBoolean("enable"), configuration.getBoolean("async-enable"),
+                configuration.getStringList("depends"), configuration.getStringList("softdepends"));
+        description.configuration = configuration;
+        return description;
+    }
+
+    /**
+     * Checks if the configuration file has all necessary fields.
+     *
+     * @return boolean whether name, main and enable are present
+     * */
+    public boolean isValid() {
+        return valid;
+    }
+
+    // -- package-private methods
+
+    /**
+     * @param jarFile The jar this service is loaded from now
+     * @return ServiceDescription this description, for the given jar path
+     * */
+    ServiceDescription withJarFile(final File jarFile) {
+        if (jarFile.equals(this.jarFile)) {
+            return this;
+        }
+
+        return new ServiceDescription(jarFile, serviceYml, valid, name, mainClass,
+                enabledByDefault, asyncEnable, depends, softDepends);
+    }
+
+    // -- getter and setter
+
+    /**
+     * @return File the service jar
+     * */
+    public File getJarFile() {
+        return jarFile;
+    }
+
+    /**
+     * @return String the raw service.yml
+     * */
+    public String getServiceYml() {
+        return serviceYml;
+    }
+
+    /**
+     * Parses the <code>service.yml</code> on first use, if
+     * the description was restored from the index.
+     *
+     * @return FileConfiguration the parsed service.yml
+     * */
+    public synchronized FileConfiguration getConfiguration() {
+        if (configuration == null) {
+            YamlConfiguration parsed = new YamlConfiguration();
+
+            try {
+                parsed.loadFromString(serviceYml);
+            } catch (InvalidConfigurationException exception) {
+                System.err.println("[SpigotMS] Could not parse the service.yml of " + jarFile);
+                exception.printStackTrace();
+            }
+
+            configuration = parsed;
+        }
+
+        return configuration;
+    }
+
+    /**
+     * @return String the unique service name
+     * */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return String the fully qualified name of the service main class
+     * */
+    public String getMainClass() {
+        return mainClass;
+    }
+
+    /**
+     * @return boolean whether the service should be enabled after loading
+     * */
+    public boolean isEnabledByDefault() {
+        return enabledByDefault;
+    }
+
+    /**
+     * @return List of services which must be enabled before this service
+     * */
+    public List<String> getDepends() {
+        return depends;
+    }
+
+    /**
+     * @return List of services which are enabled before this service, if present
+     * */
+    public List<String> getSoftDepends() {
+        return softDepends;
+    }
+
+    /**
+     * @return boolean whether {@link de.christianschliz.spigotms.api.SpigotService#doEnableAsync()}
+     *                 runs on a worker thread before the service is enabled
+     * */
+    public boolean isAsyncEnable() {
+        return asyncEnable;
+    }
+}
@@ -0,0 +1,215 @@
+package de.christianschliz.spigotms.plugin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.bukkit.configuration.InvalidConfigurationException;
+
+/**
+ * The discovery stage of the {@link ServiceLoader}. Reads the
+ * <code>service.yml</code> of every jar in parallel on a bounded
+ * thread pool, using a direct zip entry lookup instead of a
+ * classpath-wide resource search. Unchanged jars are served
+ * from the {@link ServiceIndex} without being opened or parsed at all.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public class ServiceDiscovery {
+
+    // -- static fields
+
+    private static final String SERVICE_CONFIG = "service.yml";
+
+    // -- instance fields
+
+    private final ServiceIndex index;
+    private final int parallelism;
+
+    // -- constructors
+
+    /**
+     * @param index       The index used to skip unchanged jars
+     * @param parallelism Maximum number of jars scanned at the same time
+     * */
+    public ServiceDiscovery(final ServiceIndex index, final int parallelism) {
+        this.index = index;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    // -- public methods
+
+    /**
+     * Scans all given jars and returns the descriptions of those
+     * containing a valid <code>service.yml</code>, in the order of
+     * the given list. Prints a timing report for every jar.
+     *
+     * @param jarFiles The jars to scan
+     * @return List of service descriptions
+     * */
+    public synchronized List<ServiceDescription> discover(final List<File> jarFiles) {
+        List<ServiceDescription> descriptions = new ArrayList<>();
+
+        if (jarFiles.isEmpty()) {
+            return descriptions;
+        }
+
+        long start = System.nanoTime();
+        index.load();
+
+        ExecutorService pool = Executors.newFixedThreadPool(
+                Math.min(parallelism, jarFiles.size()), new DiscoveryThreadFactory());
+        List<Future<ScanResult>> results = new ArrayList<>(jarFiles.size());
+
+        try {
+            for (File jarFile : jarFiles) {
+                results.add(pool.submit(() -> scan(jarFile)));
+            }
+
+            for (int i = 0; i < results.size(); i++) {
+                ScanResult result;
+
+                // a broken jar must not cost the descriptions of the others
+                try {
+                    result = results.get(i).get();
+                } catch (ExecutionException exception) {
+                    System.err.println("[SpigotMS] Could not scan " + jarFiles.get(i));
+                    exception.getCause().printStackTrace();
+                    continue;
+                }
+
+                System.out.printf("[SpigotMS] Scanned %s in %.2f ms (%s)%n",
+                        result.jarFile.getName(), result.nanos / 1e6, result.source);
+
+                if (result.description != null) {
+                    descriptions.add(result.description);
+                }
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdown();
+        }
+
+        index.save();
+
+        System.out.printf("[SpigotMS] Discovered %d services in %d jars in %.2f ms%n",
+                descriptions.size(), jarFiles.size(), (System.nanoTime() - start) / 1e6);
+        return descriptions;
+    }
+
+    // -- private methods
+
+    private ScanResult scan(final File jarFile) {
+        long start = System.nanoTime();
+        String source = "index";
+        ServiceDescription description;
+
+        ServiceIndex.Entry entry = index.lookup(jarFile);
+
+        if (entry != null) {
+            description = entry.getDescription() == null ? null : entry.getDescription().withJarFile(jarFile);
+        } else {
+            source = "scanned";
+
+            try {
+                description = describe(jarFile, readServiceConfig(jarFile));
+                index.update(jarFile, ServiceIndex.checksum(jarFile), description);
+            } catch (IOException exception) {
+                System.err.println("[SpigotMS] Could not read " + jarFile);
+                exception.printStackTrace();
+                return new ScanResult(jarFile, null, "failed", System.nanoTime() - start);
+            }
+        }
+
+        if (description == null) {
+            source += ", no service.yml";
+        } else if (!description.isValid()) {
+            System.out.printf("Invalid service.yml found at %s%n", jarFile);
+            description = null;
+        }
+
+        return new ScanResult(jarFile, description, source, System.nanoTime() - start);
+    }
+
+    private static ServiceDescription describe(final File jarFile, final String serviceYml) {
+        if (serviceYml == null) {
+            return null;
+        }
+
+        try {
+            return ServiceDescription.parse(jarFile, serviceYml);
+        } catch (InvalidConfigurationException exception) {
+            exception.printStackTrace();
+            // indexed as invalid, so the broken file isn't parsed again until the jar changes
+            return new ServiceDescription(jarFile, serviceYml, false, null, null, false, false,
+                    Collections.emptyList(), Collections.emptyList());
+        }
+    }
+
+    private static String readServiceConfig(final File jarFile) throws IOException {
+        try (ZipFile zipFile = new ZipFile(jarFile)) {
+            ZipEntry entry = zipFile.getEntry(SERVICE_CONFIG);
+
+            if (entry == null) {
+                return null;
+            }
+
+            try (InputStream in = zipFile.getInputStream(entry)) {
+                ByteArrayOutputStream content = new ByteArrayOutputStream(
+                        entry.getSize() > 0 ? (int) entry.getSize() : 512);
+                byte[] buffer = new byte[4096];
+                int read;
+
+                while ((read = in.read(buffer)) != -1) {
+                    content.write(buffer, 0, read);
+                }
+
+                return new String(content.toByteArray(), StandardCharsets.UTF_8);
+            }
+        }
+    }
+
+    // -- inner classes
+
+    private static final class ScanResult {
+
+        private final File jarFile;
+        private final ServiceDescription description;
+        private final String source;
+        private final long nanos;
+
+        private ScanResult(final File jarFile, final ServiceDescription description,
+                           final String source, final long nanos) {
+            this.jarFile = jarFile;
+            this.description = description;
+            this.source = source;
+            this.nanos = nanos;
+        }
+    }
+
+    private static final class DiscoveryThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(runnable, "SpigotMS-Discovery-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
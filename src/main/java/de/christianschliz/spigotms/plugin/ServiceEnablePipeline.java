@@ -0,0 +1,282 @@
+package de.christianschliz.spigotms.plugin;
+
+import de.christianschliz.spigotms.api.SpigotService;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Enables services in dependency order. The services form a DAG through the
+ * <code>depends</code> and <code>softdepends</code> lists of their
+ * <code>service.yml</code>. Services with <code>async-enable: true</code> run
+ * {@link SpigotService#doEnableAsync()} on a worker pool as soon as the async
+ * phases of their dependencies are done, so independent services warm up in
+ * parallel. The main-thread phase ({@link SpigotService#tryEnable()}) then
+ * runs in topological order on the calling thread.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public class ServiceEnablePipeline {
+
+    // -- instance fields
+
+    private final Map<String, SpigotService> services;
+    private final Map<String, ServiceDescription> descriptions;
+    private final int parallelism;
+
+    private final Map<String, Long> asyncNanos;
+    private final Map<String, Long> mainNanos;
+
+    // -- constructors
+
+    /**
+     * @param services     All loaded services by name
+     * @param descriptions The service.yml of every loaded service by name
+     * @param parallelism  Number of worker threads for the async phases
+     * */
+    public ServiceEnablePipeline(final Map<String, SpigotService> services,
+                                 final Map<String, ServiceDescription> descriptions,
+                                 final int parallelism) {
+        this.services = services;
+        this.descriptions = descriptions;
+        this.parallelism = Math.max(1, parallelism);
+        this.asyncNanos = new ConcurrentHashMap<>();
+        this.mainNanos = new HashMap<>();
+    }
+
+    // -- public methods
+
+    /**
+     * Enables all services which are enabled by default.
+     * Blocks until every service is enabled or has failed.
+     * */
+    public void run() {
+        long start = System.nanoTime();
+
+        Map<String, List<String>> dependencies = resolveDependencies();
+        List<String> order = sortTopologically(dependencies);
+
+        if (order.isEmpty()) {
+            return;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism, new EnableThreadFactory());
+        Map<String, CompletableFuture<Void>> asyncPhases = new HashMap<>();
+
+        try {
+            // Schedule every async phase right after the async phases of its dependencies
+            for (String name : order) {
+                CompletableFuture<?>[] dependencyPhases = dependencies.get(name).stream()
+                        .map(asyncPhases::get)
+                        .toArray(CompletableFuture<?>[]::new);
+                CompletableFuture<Void> ready = CompletableFuture.allOf(dependencyPhases);
+
+                if (descriptions.get(name).isAsyncEnable()) {
+                    asyncPhases.put(name, ready.thenRunAsync(() -> runAsyncPhase(name), pool));
+                } else {
+                    asyncPhases.put(name, ready);
+                }
+            }
+
+            // Finish the main-thread phases in dependency order
+            Set<String> failed = new HashSet<>();
+
+            for (String name : order) {
+                if (dependencies.get(name).stream().anyMatch(failed::contains)) {
+                    System.err.println("[SpigotMS] Not enabling service " + name + ", a dependency failed");
+                    failed.add(name);
+                    continue;
+                }
+
+                try {
+                    asyncPhases.get(name).join();
+                } catch (CompletionException exception) {
+                    System.err.println("[SpigotMS] Async enable of service " + name + " failed");
+                    exception.getCause().printStackTrace();
+                    failed.add(name);
+                    continue;
+                }
+
+                try {
+                    runMainPhase(name);
+                } catch (RuntimeException exception) {
+                    System.err.println("[SpigotMS] Enabling service " + name + " failed");
+                    exception.printStackTrace();
+                    failed.add(name);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        reportCriticalPath(order, dependencies, System.nanoTime() - start);
+    }
+
+    // -- private methods
+
+    /**
+     * @return the dependencies of every service that should be enabled, services with
+     *         missing hard dependencies (even transitively) are left out
+     * */
+    private Map<String, List<String>> resolveDependencies() {
+        Map<String, List<String>> dependencies = new TreeMap<>();
+
+        services.forEach((name, service) -> {
+            if (service.isEnabledByDefault() && descriptions.containsKey(name)) {
+                dependencies.put(name, new ArrayList<>());
+            }
+        });
+
+        boolean removed = true;
+
+        while (removed) {
+            removed = false;
+
+            for (String name : new ArrayList<>(dependencies.keySet())) {
+                for (String dependency : descriptions.get(name).getDepends()) {
+                    if (!dependencies.containsKey(dependency)) {
+                        System.err.printf("[SpigotMS] Not enabling service %s, missing dependency %s%n",
+                                name, dependency);
+                        dependencies.remove(name);
+                        removed = true;
+                        break;
+                    }
+                }
+            }
+        }
+
+        dependencies.forEach((name, list) -> {
+            list.addAll(descriptions.get(name).getDepends());
+
+            for (String softDependency : descriptions.get(name).getSoftDepends()) {
+                if (dependencies.containsKey(softDependency) && !list.contains(softDependency)) {
+                    list.add(softDependency);
+                }
+            }
+        });
+
+        return dependencies;
+    }
+
+    private static List<String> sortTopologically(final Map<String, List<String>> dependencies) {
+        Map<String, Integer> inDegree = new LinkedHashMap<>();
+        Map<String, List<String>> dependents = new HashMap<>();
+
+        dependencies.forEach((name, list) -> {
+            inDegree.put(name, list.size());
+            list.forEach(dependency -> dependents.computeIfAbsent(dependency, k -> new ArrayList<>()).add(name));
+        });
+
+        Deque<String> ready = new ArrayDeque<>();
+        inDegree.forEach((name, degree) -> {
+            if (degree == 0) {
+                ready.add(name);
+            }
+        });
+
+        List<String> order = new ArrayList<>();
+
+        while (!ready.isEmpty()) {
+            String name = ready.poll();
+            order.add(name);
+
+            for (String dependent : dependents.getOrDefault(name, Collections.emptyList())) {
+                if (inDegree.merge(dependent, -1, Integer::sum) == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+
+        if (order.size() < dependencies.size()) {
+            Set<String> cyclic = new HashSet<>(dependencies.keySet());
+            cyclic.removeAll(order);
+            System.err.println("[SpigotMS] Not enabling services with cyclic dependencies: " + cyclic);
+        }
+
+        return order;
+    }
+
+    private void runAsyncPhase(final String name) {
+        long start = System.nanoTime();
+        services.get(name).doEnableAsync();
+
+        asyncNanos.put(name, System.nanoTime() - start);
+    }
+
+    private void runMainPhase(final String name) {
+        SpigotService service = services.get(name);
+        System.out.println("[SpigotMS] Enabling service " + name + " at " + service.getClass().getCanonicalName());
+
+        long start = System.nanoTime();
+        service.tryEnable();
+        mainNanos.put(name, System.nanoTime() - start);
+    }
+
+    /**
+     * The critical path is the dependency chain with the highest summed
+     * enable time. It is the lower bound of the startup time, no matter
+     * how many services are enabled in parallel.
+     * */
+    private void reportCriticalPath(final List<String> order, final Map<String, List<String>> dependencies,
+                                    final long totalNanos) {
+        Map<String, Long> finish = new HashMap<>();
+        Map<String, String> predecessor = new HashMap<>();
+        String last = null;
+
+        for (String name : order) {
+            long startAt = 0;
+
+            for (String dependency : dependencies.get(name)) {
+                if (finish.getOrDefault(dependency, 0L) > startAt) {
+                    startAt = finish.get(dependency);
+                    predecessor.put(name, dependency);
+                }
+            }
+
+            finish.put(name, startAt + asyncNanos.getOrDefault(name, 0L) + mainNanos.getOrDefault(name, 0L));
+
+            if (last == null || finish.get(name) > finish.get(last)) {
+                last = name;
+            }
+        }
+
+        List<String> path = new ArrayList<>();
+
+        for (String name = last; name != null; name = predecessor.get(name)) {
+            path.add(0, name);
+        }
+
+        System.out.printf("[SpigotMS] Enabled %d services in %.2f ms, critical path %.2f ms: %s%n",
+                mainNanos.size(), totalNanos / 1e6, finish.get(last) / 1e6, String.join(" -> ", path));
+    }
+
+    // -- inner classes
+
+    private static final class EnableThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(runnable, "SpigotMS-Enable-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
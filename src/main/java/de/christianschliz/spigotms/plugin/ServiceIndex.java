@@ -0,0 +1,290 @@
+package de.christianschliz.spigotms.plugin;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * On-disk index of already scanned service jars. Entries are keyed by
+ * the absolute jar path and hold the resolved service metadata, so the
+ * {@link ServiceDiscovery} neither opens unchanged jars nor parses their
+ * <code>service.yml</code> on boot.
+ *
+ * <p>An entry is valid as long as the size and modification time of the
+ * jar are unchanged. If only the modification time changed, e.g. because
+ * the same jar was deployed again, the CRC32 checksum of the jar decides.
+ * With <code>verifyChecksums</code> the checksum is checked on every boot.</p>
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public final class ServiceIndex {
+
+    // -- static fields
+
+    private static final int FORMAT_VERSION = 2;
+
+    // -- instance fields
+
+    private final File indexFile;
+    private final boolean verifyChecksums;
+    private final Map<String, Entry> entries;
+
+    // -- constructors
+
+    /**
+     * @param indexFile The file the index is persisted to.
+     *                  Usually: <code>JavaPlugin.getDataFolder() + "/service-index.bin"</code>
+     * */
+    public ServiceIndex(final File indexFile) {
+        this(indexFile, false);
+    }
+
+    /**
+     * @param indexFile       The file the index is persisted to
+     * @param verifyChecksums Whether the checksum of every jar is checked,
+     *                        instead of trusting an unchanged size and modification time
+     * */
+    public ServiceIndex(final File indexFile, final boolean verifyChecksums) {
+        this.indexFile = indexFile;
+        this.verifyChecksums = verifyChecksums;
+        this.entries = new ConcurrentHashMap<>();
+    }
+
+    // -- public methods
+
+    /**
+     * Reads the index from disk. A missing, outdated or
+     * corrupted index file results in an empty index.
+     * */
+    public void load() {
+        entries.clear();
+
+        if (!indexFile.isFile()) {
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                return;
+            }
+
+            int count = in.readInt();
+
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                long checksum = in.readLong();
+                ServiceDescription description = in.readBoolean() ? readDescription(in, new File(path)) : null;
+
+                entries.put(path, new Entry(size, lastModified, checksum, description));
+            }
+        } catch (IOException exception) {
+            System.err.println("[SpigotMS] Could not read service index, rescanning all jars");
+            entries.clear();
+        }
+    }
+
+    /**
+     * Writes the index to disk. Entries of jars
+     * that no longer exist are dropped.
+     * */
+    public void save() {
+        entries.keySet().removeIf(path -> !new File(path).isFile());
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(entries.size());
+
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue().size);
+                out.writeLong(entry.getValue().lastModified);
+                out.writeLong(entry.getValue().checksum);
+                out.writeBoolean(entry.getValue().description != null);
+
+                if (entry.getValue().description != null) {
+                    writeDescription(out, entry.getValue().description);
+                }
+            }
+        } catch (IOException exception) {
+            System.err.println("[SpigotMS] Could not write service index to " + indexFile);
+            exception.printStackTrace();
+        }
+    }
+
+    /**
+     * Looks up the indexed service of a jar.
+     *
+     * @param jarFile The service jar
+     * @return Entry the index entry or null if the jar is unknown or has changed
+     * */
+    public Entry lookup(final File jarFile) {
+        String path = jarFile.getAbsolutePath();
+        Entry entry = entries.get(path);
+
+        if (entry == null || entry.size != jarFile.length()) {
+            return null;
+        }
+
+        if (entry.lastModified == jarFile.lastModified() && !verifyChecksums) {
+            return entry;
+        }
+
+        try {
+            if (checksum(jarFile) != entry.checksum) {
+                return null;
+            }
+        } catch (IOException exception) {
+            return null;
+        }
+
+        // same content, remember the new modification time to skip the checksum next boot
+        Entry touched = new Entry(entry.size, jarFile.lastModified(), entry.checksum, entry.description);
+        entries.put(path, touched);
+        return touched;
+    }
+
+    /**
+     * Stores the scan result of a jar.
+     *
+     * @param jarFile     The service jar
+     * @param checksum    The CRC32 checksum of the jar, see {@link ServiceIndex#checksum(File)}
+     * @param description The resolved service.yml or null if the jar has none
+     * */
+    public void update(final File jarFile, final long checksum, final ServiceDescription description) {
+        entries.put(jarFile.getAbsolutePath(),
+                new Entry(jarFile.length(), jarFile.lastModified(), checksum, description));
+    }
+
+    /**
+     * Computes the CRC32 checksum of a whole jar.
+     *
+     * @param jarFile The service jar
+     * @return long the checksum
+     * @throws IOException if the jar can't be read
+     * */
+    public static long checksum(final File jarFile) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[8192];
+
+        try (InputStream in = new FileInputStream(jarFile)) {
+            int read;
+
+            while ((read = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+            }
+        }
+
+        return crc.getValue();
+    }
+
+    // -- private methods
+
+    private static void writeDescription(final DataOutputStream out,
+                                         final ServiceDescription description) throws IOException {
+        out.writeBoolean(description.isValid());
+        writeNullable(out, description.getName());
+        writeNullable(out, description.getMainClass());
+        out.writeBoolean(description.isEnabledByDefault());
+        out.writeBoolean(description.isAsyncEnable());
+        writeList(out, description.getDepends());
+        writeList(out, description.getSoftDepends());
+
+        // kept for the services, which may still read their whole configuration
+        byte[] content = description.getServiceYml().getBytes(StandardCharsets.UTF_8);
+        out.writeInt(content.length);
+        out.write(content);
+    }
+
+    private static ServiceDescription readDescription(final DataInputStream in,
+                                                      final File jarFile) throws IOException {
+        boolean valid = in.readBoolean();
+        String name = readNullable(in);
+        String mainClass = readNullable(in);
+        boolean enabledByDefault = in.readBoolean();
+        boolean asyncEnable = in.readBoolean();
+        List<String> depends = readList(in);
+        List<String> softDepends = readList(in);
+
+        byte[] content = new byte[in.readInt()];
+        in.readFully(content);
+
+        return new ServiceDescription(jarFile, new String(content, StandardCharsets.UTF_8), valid,
+                name, mainClass, enabledByDefault, asyncEnable, depends, softDepends);
+    }
+
+    private static void writeNullable(final DataOutputStream out, final String value) throws IOException {
+        out.writeBoolean(value != null);
+
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(final DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeList(final DataOutputStream out, final List<String> values) throws IOException {
+        out.writeShort(values.size());
+
+        for (String value : values) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static List<String> readList(final DataInputStream in) throws IOException {
+        int size = in.readUnsignedShort();
+        List<String> values = new ArrayList<>(size);
+
+        for (int i = 0; i < size; i++) {
+            values.add(in.readUTF());
+        }
+
+        return values;
+    }
+
+    // -- inner classes
+
+    /**
+     * A single indexed jar.
+     * */
+    public static final class Entry {
+
+        private final long size;
+        private final long lastModified;
+        private final long checksum;
+        private final ServiceDescription description;
+
+        private Entry(final long size, final long lastModified, final long checksum,
+                      final ServiceDescription description) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.checksum = checksum;
+            this.description = description;
+        }
+
+        /**
+         * @return ServiceDescription the resolved service.yml or null if the jar has none
+         * */
+        public ServiceDescription getDescription() {
+            return description;
+        }
+    }
+}
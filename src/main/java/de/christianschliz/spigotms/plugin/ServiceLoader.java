@@ -3,15 +3,18 @@ package de.christianschliz.spigotms.plugin;
 import de.christianschliz.spigotms.api.SpigotService;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.WeakReference;
 import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLClassLoader;
+import java.nio.file.Path;
 import java.util.*;
-import org.bukkit.configuration.InvalidConfigurationException;
-import org.bukkit.configuration.file.FileConfiguration;
-import org.bukkit.configuration.file.YamlConfiguration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.bukkit.scheduler.BukkitTask;
 
 /**
  * @author Christian Schliz
@@ -19,6 +22,30 @@ import org.bukkit.configuration.file.YamlConfiguration;
  * */
 public class ServiceLoader {
 
+    // -- static fields
+
+    private static final int DEFAULT_DISCOVERY_THREADS = 4;
+    private static final int LEAK_CHECK_ATTEMPTS = 12;
+    private static final long LEAK_CHECK_INTERVAL_TICKS = 20L * 10;
+
+    /**
+     * No-argument constructors of service main classes, typed to return a
+     * SpigotService. Resolved once per class and dropped with the class, so a
+     * cached handle never keeps the classloader of an unloaded service alive.
+     * */
+    private static final ClassValue<MethodHandle> CONSTRUCTORS = new ClassValue<MethodHandle>() {
+        @Override
+        protected MethodHandle computeValue(final Class<?> type) {
+            try {
+                return MethodHandles.publicLookup().findConstructor(type, MethodType.methodType(void.class))
+                        .asType(MethodType.methodType(SpigotService.class));
+            } catch (NoSuchMethodException | IllegalAccessException exception) {
+                throw new IllegalArgumentException(type.getName()
+                        + " needs a public no-argument constructor", exception);
+            }
+        }
+    };
+
     // -- instance fields
 
     private final SpigotMS pluginInstance;
@@ -26,6 +53,13 @@ public class ServiceLoader {
     private final File localServiceDirectory;
     private final File[] remoteServiceDirectories;
     private final HashMap<String, SpigotService> services;
+    private final HashMap<String, ServiceDescription> descriptions;
+    private final int enableThreads;
+    private final ServiceDiscovery discovery;
+    private final ServiceClassIndex classIndex;
+    private final HashMap<String, ServiceClassLoader> classLoaders;
+    private final List<ServiceClassLoader> libraryClassLoaders;
+    private final Set<String> leakedServices;
 
     // -- constructors
 
@@ -50,6 +84,17 @@ public class ServiceLoader {
         this.remoteServiceDirectories = remoteServiceDirectories.toArray(new File[0]);
         this.pluginInstance = pluginInstance;
         services = new HashMap<>();
+        descriptions = new HashMap<>();
+        enableThreads = pluginInstance.getConfig().getInt("enable.threads",
+                Runtime.getRuntime().availableProcessors());
+        discovery = new ServiceDiscovery(
+                new ServiceIndex(new File(pluginInstance.getDataFolder(), "service-index.bin"),
+                        pluginInstance.getConfig().getBoolean("discovery.verifyChecksums")),
+                pluginInstance.getConfig().getInt("discovery.threads", DEFAULT_DISCOVERY_THREADS));
+        classIndex = new ServiceClassIndex();
+        classLoaders = new HashMap<>();
+        libraryClassLoaders = new ArrayList<>();
+        leakedServices = ConcurrentHashMap.newKeySet();
     }
 
     // -- public methods
@@ -60,17 +105,17 @@ public class ServiceLoader {
      * */
     @SuppressWarnings("unused")
     public void loadLocalServices() {
-        registerServicesFromDirectories(this.localServiceDirectory, true);
+        loadServicesFromDirectories(Collections.singletonList(this.localServiceDirectory));
     }
 
     /**
-     * Enables all services loaded into {@link ServiceLoader#services}.
+     * Enables all services loaded into {@link ServiceLoader#services}
+     * in the order of their dependencies.
+     *
+     * @see ServiceEnablePipeline
      * */
     public void enableLoadedServices() {
-        services.forEach((name, service) -> {
-            System.out.println("[SpigotMS] Enabling service " + name + " at " + service.getClass().getCanonicalName());
-            service.tryEnable();
-        });
+        new ServiceEnablePipeline(services, descriptions, this.enableThreads).run();
     }
 
     /**
@@ -89,17 +134,216 @@ public class ServiceLoader {
      * */
     @SuppressWarnings("unused")
     public void loadServices() {
+        List<File> directories = new ArrayList<>();
+
         if (Objects.nonNull(this.localServiceDirectory)) {
-            registerServicesFromDirectories(this.localServiceDirectory, true);
+            directories.add(this.localServiceDirectory);
         }
 
         if (Objects.nonNull(this.remoteServiceDirectories)) {
-            for (File directory : this.remoteServiceDirectories) {
-                registerServicesFromDirectories(directory, false);
+            directories.addAll(Arrays.asList(this.remoteServiceDirectories));
+        }
+
+        loadServicesFromDirectories(directories);
+    }
+
+    /**
+     * Disables and unloads every service and closes all classloaders.
+     * */
+    public void unloadServices() {
+        new ArrayList<>(services.keySet()).forEach(this::unloadService);
+
+        for (ServiceClassLoader libraryClassLoader : libraryClassLoaders) {
+            closeClassLoader(libraryClassLoader);
+        }
+
+        libraryClassLoaders.clear();
+    }
+
+    /**
+     * Disables a single service, unregisters its listeners and commands,
+     * closes its classloader and drops all references the loader holds.
+     *
+     * @param name The unique name of a service.
+     * @return boolean whether the service was loaded
+     * */
+    public boolean unloadService(String name) {
+        SpigotService service = services.remove(name);
+        ServiceClassLoader serviceClassLoader = classLoaders.remove(name);
+        descriptions.remove(name);
+
+        if (service == null) {
+            return false;
+        }
+
+        System.out.println("[SpigotMS] Unloading service " + name + " at " + service.getClass().getCanonicalName());
+        service.doDisable();
+        // only returns what this instance borrowed, a reloaded instance keeps its own
+        service.doUnregister();
+
+        if (serviceClassLoader != null) {
+            closeClassLoader(serviceClassLoader);
+            scheduleLeakCheck(name, new WeakReference<>(serviceClassLoader));
+        }
+
+        return true;
+    }
+
+    /**
+     * Unloads all services that were loaded from the given jar.
+     *
+     * @param jarFile A service jar
+     * @return boolean whether any service was unloaded
+     * */
+    public boolean unloadServicesFromJar(File jarFile) {
+        List<String> names = new ArrayList<>();
+
+        classLoaders.forEach((name, serviceClassLoader) -> {
+            if (serviceClassLoader.getJarFile().equals(jarFile)) {
+                names.add(name);
+            }
+        });
+
+        names.forEach(this::unloadService);
+        return !names.isEmpty();
+    }
+
+    /**
+     * Loads a single service again from its jar, without touching any
+     * other service. The new instance is prepared off the main thread and
+     * swapped in on a later tick, like an update found by the
+     * {@link ServiceWatcher}; the old instance keeps running until then.
+     * Must be called on the main thread.
+     *
+     * @param name The unique name of a service.
+     * @return CompletableFuture completed on the main thread with true once the service
+     *         has been reloaded, or false if it isn't loaded or its jar could not be loaded
+     * */
+    public CompletableFuture<Boolean> reloadService(String name) {
+        ServiceClassLoader serviceClassLoader = classLoaders.get(name);
+
+        if (serviceClassLoader == null || !services.containsKey(name)) {
+            return CompletableFuture.completedFuture(false);
+        }
+
+        File jarFile = serviceClassLoader.getJarFile();
+        CompletableFuture<Boolean> reloaded = new CompletableFuture<>();
+
+        pluginInstance.getServer().getScheduler().runTaskAsynchronously(pluginInstance, () -> {
+            PreparedService preparedService = prepareService(jarFile);
+
+            try {
+                pluginInstance.getServer().getScheduler().runTask(pluginInstance, () -> {
+                    if (preparedService == null) {
+                        reloaded.complete(false);
+                        return;
+                    }
+
+                    try {
+                        installService(preparedService);
+                        reloaded.complete(true);
+                    } catch (RuntimeException exception) {
+                        reloaded.completeExceptionally(exception);
+                        throw exception;
+                    }
+                });
+            } catch (RuntimeException exception) {
+                // the plugin was disabled meanwhile, nothing is swapped in anymore
+                if (preparedService != null) {
+                    preparedService.discard();
+                }
+
+                reloaded.complete(false);
+            }
+        });
+
+        return reloaded;
+    }
+
+    /**
+     * Reads the <code>service.yml</code> of a jar, creates its classloader,
+     * instantiates the service main class and runs its async enable phase.
+     * Does not touch any loaded service and can therefore run off the main thread.
+     * A service with an async enable phase is loaded here as well, since
+     * <code>onEnableAsync</code> must only run after <code>onLoad</code>.
+     *
+     * @param jarFile A service jar
+     * @return PreparedService the prepared service or null if the jar contains no valid service
+     * */
+    public PreparedService prepareService(File jarFile) {
+        List<ServiceDescription> descriptions = this.discovery.discover(Collections.singletonList(jarFile));
+
+        if (descriptions.isEmpty()) {
+            System.out.println("[SpigotMS] " + jarFile.getName() + " contains no service,"
+                    + " libraries are only picked up on a full reload");
+            return null;
+        }
+
+        ServiceDescription description = descriptions.get(0);
+
+        try {
+            ServiceClassLoader serviceClassLoader = new ServiceClassLoader(
+                    description.getName(), jarFile, SpigotMS.class.getClassLoader(), this.classIndex);
+            SpigotService serviceInstance = instantiateService(description, serviceClassLoader);
+
+            if (serviceInstance == null) {
+                closeClassLoader(serviceClassLoader);
+                return null;
             }
+
+            boolean loaded = description.isEnabledByDefault() && description.isAsyncEnable();
+
+            if (loaded) {
+                try {
+                    bindService(description, serviceInstance);
+                    serviceInstance.doLoad();
+                    serviceInstance.doEnableAsync();
+                } catch (RuntimeException exception) {
+                    System.err.println("[SpigotMS] Failed to load service " + description.getName());
+                    exception.printStackTrace();
+                    unregisterOnServerThread(serviceInstance);
+                    closeClassLoader(serviceClassLoader);
+                    return null;
+                }
+            }
+
+            return new PreparedService(description, serviceClassLoader, serviceInstance, loaded);
+        } catch (MalformedURLException exception) {
+            exception.printStackTrace();
+            return null;
         }
     }
 
+    /**
+     * Swaps a prepared service in. A loaded service with the same name or from
+     * the same jar is unloaded first, then the new service is loaded and enabled.
+     * Must be called on the main thread.
+     *
+     * @param preparedService A service returned by {@link ServiceLoader#prepareService(File)}
+     * */
+    public void installService(PreparedService preparedService) {
+        ServiceDescription description = preparedService.description;
+
+        unloadService(description.getName());
+        unloadServicesFromJar(description.getJarFile());
+
+        classIndex.register(preparedService.classLoader);
+        classLoaders.put(description.getName(), preparedService.classLoader);
+        registerService(description, preparedService.service, !preparedService.loaded);
+
+        for (String dependency : description.getDepends()) {
+            if (!services.containsKey(dependency) || !services.get(dependency).isEnabled()) {
+                System.err.printf("[SpigotMS] Not enabling service %s, missing dependency %s%n",
+                        description.getName(), dependency);
+                return;
+            }
+        }
+
+        System.out.println("[SpigotMS] Enabling service " + description.getName()
+                + " at " + preparedService.service.getClass().getCanonicalName());
+        preparedService.service.tryEnable();
+    }
+
     /**
      * Returns a SpigotService by its name. Used for
      * Interaction between services or via the SpigotMS
@@ -120,9 +364,91 @@ public class ServiceLoader {
 
     // -- private methods
 
+    private static void closeClassLoader(final ServiceClassLoader serviceClassLoader) {
+        try {
+            serviceClassLoader.close();
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        }
+    }
+
+    /**
+     * Unregisters a service that failed in its async phase. Tasks it queued
+     * for the server thread are drained while unregistering, so that runs
+     * there as well, unless the plugin is disabled already.
+     * */
+    private void unregisterOnServerThread(final SpigotService service) {
+        if (!pluginInstance.getServer().isPrimaryThread()) {
+            try {
+                pluginInstance.getServer().getScheduler().runTask(pluginInstance, service::doUnregister);
+                return;
+            } catch (RuntimeException exception) {
+                // the plugin is disabled, nothing runs on the server thread anymore
+            }
+        }
+
+        service.doUnregister();
+    }
+
+    /**
+     * Watches the classloader of an unloaded service until the garbage collector
+     * clears it. If it is still reachable after {@link #LEAK_CHECK_ATTEMPTS} checks
+     * and a final collection, something (a thread, a static cache, a listener)
+     * still references the service.
+     * */
+    private void scheduleLeakCheck(final String name, final WeakReference<ServiceClassLoader> reference) {
+        AtomicInteger attempts = new AtomicInteger();
+        AtomicReference<BukkitTask> task = new AtomicReference<>();
+
+        task.set(this.pluginInstance.getServer().getScheduler().runTaskTimerAsynchronously(this.pluginInstance, () -> {
+            if (attempts.incrementAndGet() >= LEAK_CHECK_ATTEMPTS && reference.get() != null) {
+                // a loader in the old generation may just not have been collected yet,
+                // so the verdict waits for one explicit collection
+                System.gc();
+            }
+
+            if (reference.get() == null) {
+                System.out.println("[SpigotMS] Classloader of unloaded service " + name + " was collected");
+                leakedServices.remove(name);
+                task.get().cancel();
+            } else if (attempts.get() >= LEAK_CHECK_ATTEMPTS) {
+                System.err.println("[SpigotMS] Classloader of unloaded service " + name
+                        + " is still reachable, the service is leaking references");
+                leakedServices.add(name);
+                task.get().cancel();
+            }
+        }, LEAK_CHECK_INTERVAL_TICKS, LEAK_CHECK_INTERVAL_TICKS));
+    }
+
+    private void loadServicesFromDirectories(final List<File> directories) {
+        Map<File, List<File>> jarsByDirectory = new LinkedHashMap<>();
+        List<File> jarFiles = new ArrayList<>();
+
+        for (File directory : directories) {
+            List<File> directoryJars = listServiceJars(directory);
+            jarsByDirectory.put(directory, directoryJars);
+            jarFiles.addAll(directoryJars);
+        }
+
+        // Read all service.yml files at once, so slow directories are scanned in parallel
+        List<ServiceDescription> descriptions = this.discovery.discover(jarFiles);
+
+        jarsByDirectory.forEach((directory, directoryJars) -> {
+            List<ServiceDescription> directoryServices = new ArrayList<>();
+
+            for (ServiceDescription description : descriptions) {
+                if (directoryJars.contains(description.getJarFile())) {
+                    directoryServices.add(description);
+                }
+            }
+
+            loadJARsFromURLIntoClasspath(directoryJars, directoryServices);
+        });
+    }
+
     @SuppressWarnings("checkstyle:IllegalCatch")
-    private void registerServicesFromDirectories(final File directory, final boolean isEnabledByDefault) {
-        URL[] urls = new URL[0];
+    private List<File> listServiceJars(final File directory) {
+        List<File> files = new ArrayList<>();
 
         if (Objects.isNull(directory)) {
             // No directory specified
@@ -132,85 +458,133 @@ public class ServiceLoader {
             System.out.println("Cannot load Services from a read protected path!");
         } else if (directory.isDirectory()) {
             // Load all files within the specified directory
-            ArrayList<File> files = new ArrayList<>(
-                    Arrays.asList(
-                            Objects.requireNonNull(directory.listFiles())
-                    )
-            );
+            files.addAll(Arrays.asList(Objects.requireNonNull(directory.listFiles())));
             files.removeIf(f -> !f.getName().endsWith(".jar"));
+        } else if (directory.isFile() && directory.getName().endsWith(".jar")) {
+            // Only load one jar file
+            files.add(directory);
+        } else {
+            System.out.println("Services must be in the .jar format");
+        }
 
-            urls = new URL[files.size()];
+        return files;
+    }
 
-            for (int i = 0; i < files.size(); i++) {
-                try {
-                    urls[i] = files.get(i).toURI().toURL();
-                } catch (MalformedURLException | NullPointerException e) {
-                    e.printStackTrace();
-                }
+    private void loadJARsFromURLIntoClasspath(final List<File> jarFiles,
+                                              final List<ServiceDescription> descriptions) {
+        if (descriptions.isEmpty()) {
+            return;
+        }
+
+        Map<File, ServiceDescription> descriptionsByJar = new HashMap<>();
+        descriptions.forEach(description -> descriptionsByJar.put(description.getJarFile(), description));
+
+        // Create one classloader per jar, so every service can be unloaded on its own.
+        // Jars without a service.yml are libraries and only provide classes to services.
+        for (File jarFile : jarFiles) {
+            ServiceDescription description = descriptionsByJar.get(jarFile);
+            String loaderName = description == null ? jarFile.getName() : description.getName();
+
+            // the first jar keeps the name, replacing its classloader would leak it
+            if (description != null && classLoaders.containsKey(loaderName)) {
+                System.err.printf("[SpigotMS] Not loading %s, service %s is already loaded from %s%n",
+                        jarFile.getName(), loaderName, classLoaders.get(loaderName).getJarFile().getName());
+                continue;
             }
-        } else if (directory.isFile() && directory.getName().endsWith(".jar")) {
-            // Only load one jar file
+
+            // overlapping local and remote directories list the same library more than once
+            if (description == null && isLibraryLoaded(jarFile)) {
+                continue;
+            }
+
             try {
-                urls = new URL[]{directory.toURI().toURL()};
+                ServiceClassLoader serviceClassLoader = new ServiceClassLoader(
+                        loaderName, jarFile, SpigotMS.class.getClassLoader(), this.classIndex);
+                classIndex.register(serviceClassLoader);
+
+                if (description == null) {
+                    libraryClassLoaders.add(serviceClassLoader);
+                } else {
+                    classLoaders.put(loaderName, serviceClassLoader);
+                }
             } catch (MalformedURLException exception) {
                 exception.printStackTrace();
             }
-        } else {
-            System.out.println("Services must be in the .jar format");
         }
 
-        loadJARsFromURLIntoClasspath(urls, isEnabledByDefault);
+        // Iterate over every service.yml found by the discovery
+        for (ServiceDescription description : descriptions) {
+            ServiceClassLoader serviceClassLoader = classLoaders.get(description.getName());
+
+            if (serviceClassLoader == null || !serviceClassLoader.getJarFile().equals(description.getJarFile())
+                    || services.containsKey(description.getName())) {
+                continue;
+            }
+
+            SpigotService serviceInstance = instantiateService(description, serviceClassLoader);
+
+            if (serviceInstance != null) {
+                registerService(description, serviceInstance, true);
+            }
+        }
     }
 
-    private void loadJARsFromURLIntoClasspath(final URL[] urls, final boolean isEnabledByDefault) {
-        try {
-            // Load all .jar files from the target directory into the SpigotMS classpath
-            URLClassLoader serviceClassLoader = new URLClassLoader(urls, SpigotMS.class.getClassLoader());
+    private boolean isLibraryLoaded(final File jarFile) {
+        Path path = jarFile.toPath().toAbsolutePath().normalize();
 
-            // A list of all service.yml config files found inside the directory
-            Enumeration<URL> configPaths = serviceClassLoader.findResources("service.yml");
+        for (ServiceClassLoader libraryClassLoader : libraryClassLoaders) {
+            if (libraryClassLoader.getJarFile().toPath().toAbsolutePath().normalize().equals(path)) {
+                return true;
+            }
+        }
 
-            // Iterate over every service.yml config file
-            while (configPaths.hasMoreElements()) {
-                // Read the file
-                InputStreamReader config = new InputStreamReader(configPaths.nextElement().openStream());
+        return false;
+    }
 
-                // load the YAML structure
-                FileConfiguration fileConfiguration = new YamlConfiguration();
-                fileConfiguration.load(config);
+    private SpigotService instantiateService(final ServiceDescription description,
+                                             final ServiceClassLoader serviceClassLoader) {
+        try {
+            // Load the target class
+            Class<?> serviceClass = Class.forName(description.getMainClass(), true, serviceClassLoader);
 
-                // check if the configuration file has all necessary fields
-                if (fileConfiguration.contains("name") && fileConfiguration.contains("main")
-                        && fileConfiguration.contains("enable")) {
-                    try {
-                        // Load the target class
-                        Class<?> testServiceClass = Class.forName(
-                                fileConfiguration.getString("main"), true, serviceClassLoader);
-
-                        // Create an instance of the targeted class
-                        SpigotService serviceInstance = (SpigotService)
-                                testServiceClass.getDeclaredConstructor().newInstance();
-
-                        serviceInstance.setEnabledByDefault(fileConfiguration.getBoolean("enable"));
-                        serviceInstance.setPluginInstance(this.pluginInstance);
-                        serviceInstance.setConfiguration(fileConfiguration);
-
-                        // Add the service to the list
-                        services.put(fileConfiguration.getString("name"), serviceInstance);
-                    } catch (InstantiationException | InvocationTargetException | NoSuchMethodException exception) {
-                        // Could either not cast to SpigotService or the jar is obfuscated
-                        exception.printStackTrace();
-                    } catch (IllegalAccessException | ClassNotFoundException exception) {
-                        // bad jar
-                        System.err.println("Please check your configuration files");
-                        exception.printStackTrace();
-                    }
-                } else {
-                    System.out.printf("Invalid service.yml found at %s%n", fileConfiguration.getCurrentPath());
-                }
+            if (!SpigotService.class.isAssignableFrom(serviceClass)) {
+                System.err.println("[SpigotMS] " + serviceClass.getName() + " does not extend SpigotService");
+                return null;
             }
-        } catch (IOException | InvalidConfigurationException exception) {
+
+            // Create an instance of the targeted class
+            return (SpigotService) CONSTRUCTORS.get(serviceClass).invokeExact();
+        } catch (ClassNotFoundException | IllegalArgumentException exception) {
+            // bad jar
+            System.err.println("Please check your configuration files");
             exception.printStackTrace();
+        } catch (Throwable throwable) {
+            // the constructor of the service failed
+            throwable.printStackTrace();
+        }
+
+        return null;
+    }
+
+    private void bindService(final ServiceDescription description, final SpigotService serviceInstance) {
+        serviceInstance.setName(description.getName());
+        serviceInstance.setEnabledByDefault(description.isEnabledByDefault());
+        serviceInstance.setPluginInstance(this.pluginInstance);
+        serviceInstance.setConfiguration(description::getConfiguration);
+    }
+
+    private void registerService(final ServiceDescription description, final SpigotService serviceInstance,
+                                 final boolean load) {
+        if (load) {
+            bindService(description, serviceInstance);
+        }
+
+        // Add the service to the list
+        services.put(description.getName(), serviceInstance);
+        descriptions.put(description.getName(), description);
+
+        if (load) {
+            serviceInstance.doLoad();
         }
     }
 
@@ -239,4 +613,70 @@ public class ServiceLoader {
     public HashMap<String, SpigotService> getServices() {
         return services;
     }
+
+    /**
+     * @param name The unique name of a service.
+     * @return ServiceClassLoader the classloader of the service or null if it isn't loaded
+     * */
+    @SuppressWarnings("unused")
+    public ServiceClassLoader getClassLoader(String name) {
+        return classLoaders.get(name);
+    }
+
+    /**
+     * @return Set of the names of unloaded services whose classloader is still reachable
+     * */
+    public Set<String> getLeakedServices() {
+        return Collections.unmodifiableSet(leakedServices);
+    }
+
+    /**
+     * @return ServiceClassIndex the package index shared by all service classloaders
+     * */
+    @SuppressWarnings("unused")
+    public ServiceClassIndex getClassIndex() {
+        return classIndex;
+    }
+
+    // -- inner classes
+
+    /**
+     * A service whose classes are loaded and whose main class is
+     * instantiated, but which is not yet registered or enabled.
+     * Services with an async enable phase are loaded already.
+     * */
+    public static final class PreparedService {
+
+        private final ServiceDescription description;
+        private final ServiceClassLoader classLoader;
+        private final SpigotService service;
+        private final boolean loaded;
+
+        private PreparedService(final ServiceDescription description, final ServiceClassLoader classLoader,
+                                final SpigotService service, final boolean loaded) {
+            this.description = description;
+            this.classLoader = classLoader;
+            this.service = service;
+            this.loaded = loaded;
+        }
+
+        /**
+         * @return ServiceDescription the parsed service.yml
+         * */
+        public ServiceDescription getDescription() {
+            return description;
+        }
+
+        /**
+         * Returns what a loaded service borrowed and closes
+         * the classloader of a service that won't be installed.
+         * */
+        void discard() {
+            if (loaded) {
+                service.doUnregister();
+            }
+
+            closeClassLoader(classLoader);
+        }
+    }
 }
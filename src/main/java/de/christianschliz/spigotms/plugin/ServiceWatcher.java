@@ -0,0 +1,282 @@
+package de.christianschliz.spigotms.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the service directories for new, updated and removed jars
+ * and swaps only the affected service. Local directories are watched
+ * through a {@link WatchService}, remote directories (which are often
+ * network mounts that don't deliver file system events) are polled.
+ * Changes are debounced, so a jar that is still being copied is only
+ * picked up once it stopped changing.
+ *
+ * <p>Reading the <code>service.yml</code> and loading the classes happen
+ * on the watcher thread, only the final swap and enable run on the
+ * server thread.</p>
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public class ServiceWatcher {
+
+    // -- instance fields
+
+    private final SpigotMS pluginInstance;
+    private final ServiceLoader serviceLoader;
+
+    private final long debounceMillis;
+    private final long pollIntervalMillis;
+    private final boolean pollRemoteDirectories;
+
+    private final ScheduledExecutorService executor;
+    private final Map<File, Long> pendingChanges; // jar -> time at which it is considered settled
+    private final Map<File, Map<File, String>> polledDirectories;
+    private final Set<ServiceLoader.PreparedService> preparedServices;
+
+    private WatchService watchService;
+
+    // -- constructors
+
+    /**
+     * @param pluginInstance        The plugin instance used to hop onto the server thread
+     * @param serviceLoader         The loader that owns the watched services
+     * @param debounceMillis        Time a jar must stay unchanged before it is (re)loaded
+     * @param pollIntervalMillis    Interval in which polled directories are listed
+     * @param pollRemoteDirectories If true, remote directories are polled instead of watched
+     * */
+    public ServiceWatcher(final SpigotMS pluginInstance, final ServiceLoader serviceLoader,
+                          final long debounceMillis, final long pollIntervalMillis,
+                          final boolean pollRemoteDirectories) {
+        this.pluginInstance = pluginInstance;
+        this.serviceLoader = serviceLoader;
+        this.debounceMillis = debounceMillis;
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.pollRemoteDirectories = pollRemoteDirectories;
+
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "SpigotMS-Watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.pendingChanges = new ConcurrentHashMap<>();
+        this.polledDirectories = new ConcurrentHashMap<>();
+        this.preparedServices = ConcurrentHashMap.newKeySet();
+    }
+
+    // -- public methods
+
+    /**
+     * Starts watching the local and remote service directories.
+     * */
+    public void start() {
+        if (Objects.nonNull(serviceLoader.getLocalServiceDirectory())) {
+            watch(serviceLoader.getLocalServiceDirectory(), false);
+        }
+
+        for (File directory : serviceLoader.getRemoteServiceDirectories()) {
+            watch(directory, pollRemoteDirectories);
+        }
+
+        if (!polledDirectories.isEmpty()) {
+            executor.scheduleWithFixedDelay(this::poll,
+                    pollIntervalMillis, pollIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+
+        long debounceCheckInterval = Math.max(100, debounceMillis / 4);
+        executor.scheduleWithFixedDelay(this::processPendingChanges,
+                debounceCheckInterval, debounceCheckInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops watching. Changes which are still pending are dropped, as are
+     * prepared services whose swap the disabled plugin won't run anymore.
+     * */
+    public void stop() {
+        executor.shutdownNow();
+
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException exception) {
+                exception.printStackTrace();
+            }
+        }
+
+        preparedServices.forEach(this::discard);
+    }
+
+    // -- private methods
+
+    private void watch(final File directory, final boolean poll) {
+        if (!directory.isDirectory()) {
+            return;
+        }
+
+        if (!poll) {
+            try {
+                if (watchService == null) {
+                    watchService = FileSystems.getDefault().newWatchService();
+                    Thread watchThread = new Thread(this::takeWatchEvents, "SpigotMS-WatchService");
+                    watchThread.setDaemon(true);
+                    watchThread.start();
+                }
+
+                directory.toPath().register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+                System.out.println("[SpigotMS] Watching " + directory + " for service changes");
+                return;
+            } catch (IOException | UnsupportedOperationException exception) {
+                System.out.println("[SpigotMS] Cannot watch " + directory + ", falling back to polling");
+            }
+        }
+
+        polledDirectories.put(directory, snapshot(directory));
+        System.out.println("[SpigotMS] Polling " + directory + " for service changes");
+    }
+
+    private void takeWatchEvents() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.take();
+                Path directory = (Path) key.watchable();
+
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        continue;
+                    }
+
+                    File file = directory.resolve((Path) event.context()).toFile();
+
+                    if (file.getName().endsWith(".jar")) {
+                        pendingChanges.put(file, System.currentTimeMillis() + debounceMillis);
+                    }
+                }
+
+                key.reset();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException exception) {
+            // watcher stopped
+        }
+    }
+
+    private void poll() {
+        // A polled jar might still be copied until the next poll
+        long deadline = System.currentTimeMillis() + pollIntervalMillis + debounceMillis;
+
+        polledDirectories.forEach((directory, previous) -> {
+            Map<File, String> current = snapshot(directory);
+
+            current.forEach((file, state) -> {
+                if (!state.equals(previous.get(file))) {
+                    pendingChanges.put(file, deadline);
+                }
+            });
+
+            for (File file : previous.keySet()) {
+                if (!current.containsKey(file)) {
+                    pendingChanges.put(file, deadline);
+                }
+            }
+
+            polledDirectories.put(directory, current);
+        });
+    }
+
+    private static Map<File, String> snapshot(final File directory) {
+        Map<File, String> states = new HashMap<>();
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".jar"));
+
+        if (files != null) {
+            for (File file : files) {
+                states.put(file, file.length() + ":" + file.lastModified());
+            }
+        }
+
+        return states;
+    }
+
+    private void processPendingChanges() {
+        long now = System.currentTimeMillis();
+
+        pendingChanges.forEach((file, deadline) -> {
+            if (now >= deadline && pendingChanges.remove(file, deadline)) {
+                try {
+                    handleChange(file);
+                } catch (RuntimeException exception) {
+                    System.err.println("[SpigotMS] Failed to deploy " + file);
+                    exception.printStackTrace();
+                }
+            }
+        });
+    }
+
+    private void handleChange(final File jarFile) {
+        if (!jarFile.isFile()) {
+            System.out.println("[SpigotMS] " + jarFile.getName() + " was removed, unloading its services");
+            runOnServerThread(() -> serviceLoader.unloadServicesFromJar(jarFile));
+            return;
+        }
+
+        System.out.println("[SpigotMS] " + jarFile.getName() + " changed, loading it in the background");
+        ServiceLoader.PreparedService preparedService = serviceLoader.prepareService(jarFile);
+
+        if (preparedService == null) {
+            return;
+        }
+
+        // whoever removes the service from the set installs or discards it
+        preparedServices.add(preparedService);
+        boolean scheduled = runOnServerThread(() -> {
+            if (preparedServices.remove(preparedService)) {
+                serviceLoader.installService(preparedService);
+            }
+        });
+
+        if (!scheduled) {
+            discard(preparedService);
+        }
+    }
+
+    private void discard(final ServiceLoader.PreparedService preparedService) {
+        if (preparedServices.remove(preparedService)) {
+            System.out.println("[SpigotMS] Dropping the update of " + preparedService.getDescription().getName()
+                    + ", the plugin is disabled");
+            preparedService.discard();
+        }
+    }
+
+    /**
+     * @return boolean whether the task was scheduled
+     * */
+    private boolean runOnServerThread(final Runnable runnable) {
+        if (!pluginInstance.isEnabled()) {
+            return false;
+        }
+
+        try {
+            pluginInstance.getServer().getScheduler().runTask(pluginInstance, runnable);
+            return true;
+        } catch (RuntimeException exception) {
+            // the plugin was disabled after the check, Bukkit refuses the task
+            return false;
+        }
+    }
+}
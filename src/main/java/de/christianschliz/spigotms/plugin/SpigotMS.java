@@ -1,11 +1,23 @@
 package de.christianschliz.spigotms.plugin;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.logging.Level;
 
 import de.christianschliz.spigotms.api.database.DatabaseControllers;
+import de.christianschliz.spigotms.api.database.MySQLController;
+import de.christianschliz.spigotms.api.event.AsyncEventDispatcher;
+import de.christianschliz.spigotms.api.event.OverflowPolicy;
+import de.christianschliz.spigotms.api.executor.ExecutorRegistry;
+import de.christianschliz.spigotms.api.metrics.MetricsRegistry;
+import de.christianschliz.spigotms.api.playerdata.PlayerDataCache;
+import de.christianschliz.spigotms.api.scheduler.TickScheduler;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.Bukkit;
 import org.bukkit.plugin.java.JavaPlugin;
 
@@ -17,17 +29,97 @@ import org.bukkit.plugin.java.JavaPlugin;
  */
 public final class SpigotMS extends JavaPlugin {
 
+    private static final long DEFAULT_WATCHER_DEBOUNCE_MILLIS = 2000;
+    private static final long DEFAULT_WATCHER_POLL_INTERVAL_MILLIS = 5000;
+    private static final int DEFAULT_DATASTAX_STATEMENT_CACHE_SIZE = 500;
+    private static final long DEFAULT_TICK_BUDGET_MICROS = 25000;
+    private static final long DEFAULT_SERVICE_BUDGET_MICROS = 5000;
+    private static final int DEFAULT_EVENT_QUEUE_CAPACITY = 4096;
+    private static final long DEFAULT_BUS_FLUSH_WINDOW_MICROS = 1000;
+    private static final int DEFAULT_BUS_MAX_BATCH_BYTES = 65536;
+    private static final long DEFAULT_BUS_REQUEST_TIMEOUT_MILLIS = 5000;
+    private static final int DEFAULT_PIPELINE_MAX_BATCH_SIZE = 256;
+    private static final int DEFAULT_CODEC_COMPRESSION_THRESHOLD = 512;
+    private static final int DEFAULT_PLAYER_DATA_LOADER_THREADS = 4;
+    private static final long DEFAULT_PLAYER_DATA_FLUSH_INTERVAL_MILLIS = 30000;
+    private static final int DEFAULT_PLAYER_DATA_MAX_BATCH_SIZE = 500;
+    private static final int DEFAULT_PLAYER_DATA_MAX_OFFLINE_ENTRIES = 1000;
+    private static final long DEFAULT_PLAYER_DATA_PRELOAD_TIMEOUT_MILLIS = 5000;
+    private static final long DEFAULT_STALL_THRESHOLD_MILLIS = 100;
+    private static final long DEFAULT_STALL_SAMPLE_INTERVAL_MILLIS = 10;
+    private static final long DEFAULT_STALL_LOG_MAX_BYTES = 1048576;
+    private static final int DEFAULT_STALL_LOG_FILES = 3;
+    private static final long DEFAULT_ACCOUNTING_INTERVAL_SECONDS = 30;
+    private static final long BYTES_PER_MB = 1048576;
+    private static final int DEFAULT_IO_THREADS = 16;
+    private static final int DEFAULT_SCHEDULED_THREADS = 2;
+    private static final int DEFAULT_EXECUTOR_QUEUE_CAPACITY = 10000;
+    private static final int DEFAULT_REDIS_THREADS = 4;
+    private static final int DEFAULT_MESSAGING_THREADS = 4;
+
     private ServiceLoader serviceLoader;
     private MicroserviceCommand microserviceCommand;
     private DatabaseControllers databaseControllers;
+    private ServiceWatcher serviceWatcher;
+    private MetricsRegistry metricsRegistry;
+    private ExecutorRegistry executorRegistry;
+    private MetricsEndpoint metricsEndpoint;
+    private TickScheduler tickScheduler;
+    private AsyncEventDispatcher eventDispatcher;
+    private PlayerDataCache playerDataCache;
+    private StallDetector stallDetector;
+    private ResourceAccountant resourceAccountant;
 
     // -- public methods
 
     @Override
     public void onEnable() {
+        tickScheduler.start();
+
+        if (getConfig().getBoolean("stalls.enabled", true)) {
+            stallDetector = new StallDetector(this, serviceLoader.getClassIndex(),
+                    getConfig().getLong("stalls.thresholdMillis", DEFAULT_STALL_THRESHOLD_MILLIS),
+                    getConfig().getLong("stalls.sampleIntervalMillis", DEFAULT_STALL_SAMPLE_INTERVAL_MILLIS),
+                    new File(getDataFolder(), getConfig().getString("stalls.logFile", "stalls.log")),
+                    getConfig().getLong("stalls.maxLogBytes", DEFAULT_STALL_LOG_MAX_BYTES),
+                    getConfig().getInt("stalls.logFiles", DEFAULT_STALL_LOG_FILES));
+            stallDetector.start();
+        }
+
+        if (getConfig().getBoolean("accounting.enabled", true)) {
+            resourceAccountant = createResourceAccountant();
+            resourceAccountant.start();
+        }
+
+        if (databaseControllers.redis() != null) {
+            // Bukkit runs tasks at the start of a tick, so this sends what the previous tick queued
+            getServer().getScheduler().runTaskTimer(this, databaseControllers.redis()::flushPipeline, 1L, 1L);
+        }
+
+        getServer().getPluginManager().registerEvents(new PlayerDataListener(playerDataCache), this);
         serviceLoader.enableLoadedServices();
         this.getServer().getPluginCommand("microservices").setExecutor(microserviceCommand);
-        enableDatabases();
+
+        if (getConfig().getBoolean("watcher.enabled")) {
+            serviceWatcher = new ServiceWatcher(this, serviceLoader,
+                    getConfig().getLong("watcher.debounceMillis", DEFAULT_WATCHER_DEBOUNCE_MILLIS),
+                    getConfig().getLong("watcher.pollIntervalMillis", DEFAULT_WATCHER_POLL_INTERVAL_MILLIS),
+                    getConfig().getBoolean("watcher.pollRemoteDirectories", true));
+            serviceWatcher.start();
+        }
+
+        if (getConfig().getInt("metrics.port") > 0) {
+            metricsEndpoint = new MetricsEndpoint(metricsRegistry,
+                    getConfig().getString("metrics.host", "127.0.0.1"), getConfig().getInt("metrics.port"));
+
+            try {
+                metricsEndpoint.start();
+            } catch (IOException exception) {
+                System.err.println("[SpigotMS] Could not start the metrics endpoint");
+                exception.printStackTrace();
+                metricsEndpoint = null;
+            }
+        }
     }
 
     @Override
@@ -35,6 +127,22 @@ public final class SpigotMS extends JavaPlugin {
         getConfig().options().copyDefaults(true);
         saveConfig();
 
+        this.metricsRegistry = new MetricsRegistry();
+        this.executorRegistry = createExecutorRegistry();
+        metricsRegistry.setExecutorRegistry(executorRegistry);
+        this.tickScheduler = createTickScheduler();
+        this.eventDispatcher = createEventDispatcher();
+        this.databaseControllers = new DatabaseControllers();
+        configureDatabases();
+        this.playerDataCache = new PlayerDataCache(executorRegistry.dedicatedPool("playerdata",
+                        getConfig().getInt("playerData.loaderThreads", DEFAULT_PLAYER_DATA_LOADER_THREADS)),
+                executorRegistry.dedicatedScheduledPool("playerdata-writer", 1),
+                getConfig().getLong("playerData.flushIntervalMillis", DEFAULT_PLAYER_DATA_FLUSH_INTERVAL_MILLIS),
+                getConfig().getInt("playerData.maxBatchSize", DEFAULT_PLAYER_DATA_MAX_BATCH_SIZE),
+                getConfig().getInt("playerData.maxOfflineEntries", DEFAULT_PLAYER_DATA_MAX_OFFLINE_ENTRIES),
+                getConfig().getLong("playerData.preloadTimeoutMillis", DEFAULT_PLAYER_DATA_PRELOAD_TIMEOUT_MILLIS),
+                metricsRegistry.databaseTimer("playerdata-load"), metricsRegistry.databaseTimer("playerdata-store"));
+
         this.serviceLoader = loadServiceManager();
         serviceLoader.loadLocalServices();
 
@@ -43,7 +151,29 @@ public final class SpigotMS extends JavaPlugin {
 
     @Override
     public void onDisable() {
+        if (serviceWatcher != null) {
+            serviceWatcher.stop();
+        }
+
+        if (metricsEndpoint != null) {
+            metricsEndpoint.stop();
+        }
+
+        if (stallDetector != null) {
+            stallDetector.stop();
+        }
+
+        if (resourceAccountant != null) {
+            resourceAccountant.stop();
+        }
+
         serviceLoader.disableLoadedServices();
+        tickScheduler.stop();
+        eventDispatcher.stop();
+        // writes what's left before the databases it's written to close
+        playerDataCache.close();
+        databaseControllers.close();
+        executorRegistry.close();
     }
 
     // -- private methods
@@ -74,9 +204,13 @@ public final class SpigotMS extends JavaPlugin {
         return new ServiceLoader(localServiceFolder, remoteServiceDirectories, this);
     }
 
-    private void enableDatabases() {
-        if (getConfig().contains("database.mysql.enabled") && getConfig().getBoolean("database.mysql.enabled")) {
-            if(configContains("database.mysql.", "server", "port", "database", "username", "password")) {
+    /**
+     * Configures every enabled database backend. Connections are made
+     * lazily on first use, or in the background if pre-warming is enabled.
+     * */
+    private void configureDatabases() {
+        if (getConfig().getBoolean("database.mysql.enabled")) {
+            if (configContains("database.mysql.", "server", "port", "database", "username", "password")) {
                 databaseControllers.configureMySQL(
                         getConfig().getString("database.mysql.server"),
                         getConfig().getInt("database.mysql.port"),
@@ -84,32 +218,188 @@ public final class SpigotMS extends JavaPlugin {
                         getConfig().getString("database.mysql.username"),
                         getConfig().getString("database.mysql.password")
                 );
+                databaseControllers.mysql().setQueueLimits(
+                        getConfig().getInt("database.mysql.queueCapacity", MySQLController.DEFAULT_QUEUE_CAPACITY),
+                        getConfig().getInt("database.mysql.serviceQueueLimit",
+                                MySQLController.DEFAULT_SERVICE_QUEUE_LIMIT));
+                databaseControllers.mysql().setMainThreadExecutor(
+                        runnable -> getServer().getScheduler().runTask(this, runnable));
+                databaseControllers.mysql().setMetricsRegistry(metricsRegistry);
+                databaseControllers.mysql().setExecutorRegistry(executorRegistry);
+                configureReplicas();
+
+                if (getConfig().getBoolean("database.mysql.prewarm")) {
+                    databaseControllers.prewarm(databaseControllers.mysql());
+                }
             } else {
                 Bukkit.getLogger().log(Level.CONFIG, "MySQL configuration invalid!");
             }
-        } else if (getConfig().contains("database.redis.enabled") && getConfig().getBoolean("database.redis.enabled")) {
-            if(configContains("database.redis.", "redisNodes", "password")) {
+        }
+
+        if (getConfig().getBoolean("database.redis.enabled")) {
+            if (configContains("database.redis.", "redisNodes", "password")) {
                 databaseControllers.configureRedis(
                         getConfig().getStringList("database.redis.redisNodes").toArray(new String[0]),
                         getConfig().getString("database.redis.password")
                 );
+                databaseControllers.redis().setMetricsRegistry(metricsRegistry);
+                databaseControllers.redis().setExecutors(executorRegistry.eventLoopGroup(), executorRegistry
+                        .dedicatedPool("redis", getConfig().getInt("executors.redisThreads", DEFAULT_REDIS_THREADS)));
+                databaseControllers.redis().setMessageBusExecutors(
+                        executorRegistry.dedicatedScheduledPool("messaging-timer", 1),
+                        executorRegistry.dedicatedPool("messaging",
+                                getConfig().getInt("executors.messagingThreads", DEFAULT_MESSAGING_THREADS)));
+                databaseControllers.redis().setMessageBusOptions(
+                        getConfig().getLong("database.redis.bus.flushWindowMicros", DEFAULT_BUS_FLUSH_WINDOW_MICROS),
+                        getConfig().getInt("database.redis.bus.maxBatchBytes", DEFAULT_BUS_MAX_BATCH_BYTES),
+                        getConfig().getLong("database.redis.bus.requestTimeoutMillis",
+                                DEFAULT_BUS_REQUEST_TIMEOUT_MILLIS));
+
+                databaseControllers.redis().setPipelineMaxBatchSize(
+                        getConfig().getInt("database.redis.pipeline.maxBatchSize", DEFAULT_PIPELINE_MAX_BATCH_SIZE));
+                databaseControllers.redis().setCodecCompressionThreshold(getConfig().getInt(
+                        "database.redis.codecs.compressionThreshold", DEFAULT_CODEC_COMPRESSION_THRESHOLD));
+
+                if (getConfig().getBoolean("database.redis.prewarm")) {
+                    databaseControllers.prewarm(databaseControllers.redis());
+                }
             } else {
                 Bukkit.getLogger().log(Level.CONFIG, "Redis configuration invalid!");
             }
-        } else if (getConfig().contains("database.datastax.enabled") && getConfig().getBoolean("database.datastax.enabled")) {
-            if(configContains("database.mysql.", "server", "port", "username", "password")) {
+        }
+
+        if (getConfig().getBoolean("database.datastax.enabled")) {
+            if (configContains("database.datastax.", "server", "port", "username", "password")) {
                 databaseControllers.configureDatastax(
-                        getConfig().getString("database.mysql.server"),
-                        getConfig().getInt("database.mysql.port"),
-                        getConfig().getString("database.mysql.username"),
-                        getConfig().getString("database.mysql.password")
+                        getConfig().getString("database.datastax.server"),
+                        getConfig().getInt("database.datastax.port"),
+                        getConfig().getString("database.datastax.username"),
+                        getConfig().getString("database.datastax.password")
                 );
+                databaseControllers.datastax().setStatementCacheSize(
+                        getConfig().getInt("database.datastax.statementCacheSize", DEFAULT_DATASTAX_STATEMENT_CACHE_SIZE));
+                databaseControllers.datastax().setMetricsRegistry(metricsRegistry);
+                databaseControllers.datastax().setEventLoopGroup(executorRegistry.eventLoopGroup());
+
+                if (getConfig().getBoolean("database.datastax.prewarm")) {
+                    databaseControllers.prewarm(databaseControllers.datastax());
+                }
             } else {
                 Bukkit.getLogger().log(Level.CONFIG, "Cassandra/Datastax configuration invalid!");
             }
         }
     }
 
+    /**
+     * Adds the read replicas of the MySQL database, given as
+     * <code>host:port</code>, which share database and credentials.
+     * */
+    private void configureReplicas() {
+        for (String replica : getConfig().getStringList("database.mysql.replicas")) {
+            int separator = replica.lastIndexOf(':');
+
+            try {
+                databaseControllers.mysql().addReplica(replica.substring(0, separator),
+                        Integer.parseInt(replica.substring(separator + 1)),
+                        getConfig().getString("database.mysql.database"));
+            } catch (IndexOutOfBoundsException | NumberFormatException exception) {
+                Bukkit.getLogger().log(Level.CONFIG, "MySQL replica " + replica + " is not host:port!");
+            }
+        }
+
+        databaseControllers.mysql().setReplicaOptions(
+                getConfig().getLong("database.mysql.maxReplicaLagMillis",
+                        MySQLController.DEFAULT_MAX_REPLICA_LAG_MILLIS),
+                getConfig().getLong("database.mysql.replicaLagCheckMillis",
+                        MySQLController.DEFAULT_LAG_CHECK_INTERVAL_MILLIS),
+                getConfig().getString("database.mysql.replicaLagQuery", MySQLController.DEFAULT_LAG_QUERY));
+    }
+
+    /**
+     * Creates the shared pools. Thread counts of 0 default to the number of CPU cores.
+     * */
+    private ExecutorRegistry createExecutorRegistry() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        int cpuThreads = getConfig().getInt("executors.cpuThreads");
+        int nettyThreads = getConfig().getInt("executors.nettyThreads");
+
+        return new ExecutorRegistry(cpuThreads > 0 ? cpuThreads : cores,
+                getConfig().getInt("executors.ioThreads", DEFAULT_IO_THREADS),
+                getConfig().getInt("executors.scheduledThreads", DEFAULT_SCHEDULED_THREADS),
+                getConfig().getInt("executors.queueCapacity", DEFAULT_EXECUTOR_QUEUE_CAPACITY),
+                nettyThreads > 0 ? nettyThreads : cores,
+                metricsRegistry);
+    }
+
+    private TickScheduler createTickScheduler() {
+        Map<String, Long> serviceBudgets = new HashMap<>();
+        ConfigurationSection section = getConfig().getConfigurationSection("scheduler.services");
+
+        if (section != null) {
+            for (String service : section.getKeys(false)) {
+                serviceBudgets.put(service, section.getLong(service));
+            }
+        }
+
+        return new TickScheduler(this, metricsRegistry,
+                getConfig().getLong("scheduler.tickBudgetMicros", DEFAULT_TICK_BUDGET_MICROS),
+                getConfig().getLong("scheduler.serviceBudgetMicros", DEFAULT_SERVICE_BUDGET_MICROS),
+                serviceBudgets);
+    }
+
+    private AsyncEventDispatcher createEventDispatcher() {
+        String policy = getConfig().getString("events.overflowPolicy", OverflowPolicy.DROP_NEWEST.name());
+        OverflowPolicy overflowPolicy;
+
+        try {
+            overflowPolicy = OverflowPolicy.valueOf(policy.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException exception) {
+            System.err.println("[SpigotMS] Unknown events.overflowPolicy " + policy + ", using DROP_NEWEST");
+            overflowPolicy = OverflowPolicy.DROP_NEWEST;
+        }
+
+        return new AsyncEventDispatcher(metricsRegistry,
+                getConfig().getInt("events.queueCapacity", DEFAULT_EVENT_QUEUE_CAPACITY), overflowPolicy);
+    }
+
+    private ResourceAccountant createResourceAccountant() {
+        Map<String, ResourceAccountant.Limits> serviceLimits = new HashMap<>();
+        ConfigurationSection section = getConfig().getConfigurationSection("accounting.services");
+
+        if (section != null) {
+            for (String service : section.getKeys(false)) {
+                serviceLimits.put(service, readLimits("accounting.services." + service + "."));
+            }
+        }
+
+        return new ResourceAccountant(this, serviceLoader, metricsRegistry,
+                getConfig().getLong("accounting.intervalSeconds", DEFAULT_ACCOUNTING_INTERVAL_SECONDS),
+                readLimits("accounting.limits."), serviceLimits);
+    }
+
+    /**
+     * Reads the soft limits under a path, each falling back to <code>accounting.limits</code>.
+     * */
+    private ResourceAccountant.Limits readLimits(String prefix) {
+        String action = getConfig().getString(prefix + "action",
+                getConfig().getString("accounting.limits.action", ResourceAccountant.Action.WARN.name()));
+        ResourceAccountant.Action limitAction;
+
+        try {
+            limitAction = ResourceAccountant.Action.valueOf(action.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException exception) {
+            System.err.println("[SpigotMS] Unknown " + prefix + "action " + action + ", using WARN");
+            limitAction = ResourceAccountant.Action.WARN;
+        }
+
+        return new ResourceAccountant.Limits(
+                getConfig().getInt(prefix + "threads", getConfig().getInt("accounting.limits.threads")),
+                (long) (getConfig().getDouble(prefix + "allocatedMBPerSecond",
+                        getConfig().getDouble("accounting.limits.allocatedMBPerSecond")) * BYTES_PER_MB),
+                getConfig().getInt(prefix + "classes", getConfig().getInt("accounting.limits.classes")),
+                limitAction);
+    }
+
     private boolean configContains(String prefix, String... keys) {
         for (String key : keys) {
             if (!getConfig().contains(prefix + key))
@@ -128,10 +418,58 @@ public final class SpigotMS extends JavaPlugin {
         return this.serviceLoader;
     }
 
+    /**
+     * @return MetricsRegistry timings of all services and database controllers
+     */
+    public MetricsRegistry getMetricsRegistry() {
+        return this.metricsRegistry;
+    }
+
+    /**
+     * @return ExecutorRegistry thread pools shared by all services
+     */
+    public ExecutorRegistry getExecutorRegistry() {
+        return this.executorRegistry;
+    }
+
+    /**
+     * @return TickScheduler tick-budgeted main-thread scheduler of all services
+     */
+    public TickScheduler getTickScheduler() {
+        return this.tickScheduler;
+    }
+
+    /**
+     * @return AsyncEventDispatcher async event queues of all services
+     */
+    public AsyncEventDispatcher getEventDispatcher() {
+        return this.eventDispatcher;
+    }
+
+    /**
+     * @return PlayerDataCache data of online players, shared by all services
+     */
+    public PlayerDataCache getPlayerDataCache() {
+        return this.playerDataCache;
+    }
+
+    /**
+     * @return StallDetector watchdog of the server thread or null if it is disabled
+     */
+    public StallDetector getStallDetector() {
+        return this.stallDetector;
+    }
+
+    /**
+     * @return ResourceAccountant threads, allocations and classes of all services or null if it is disabled
+     */
+    public ResourceAccountant getResourceAccountant() {
+        return this.resourceAccountant;
+    }
+
     /**
      * @return DatabaseControllers database controllers
      */
-    @SuppressWarnings("unused")
     public DatabaseControllers getDatabaseControllers() {
         return this.databaseControllers;
     }
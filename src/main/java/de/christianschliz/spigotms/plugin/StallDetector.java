@@ -0,0 +1,312 @@
+package de.christianschliz.spigotms.plugin;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+/**
+ * Watches the server thread for ticks that take longer than a threshold.
+ * A heartbeat task marks the start of every tick; a watchdog thread checks
+ * it every sample interval and, only while a tick is over the threshold,
+ * samples the stack of the server thread. Outside of stalls the watchdog
+ * does nothing but read a timestamp, so it can stay on in production.
+ *
+ * <p>Every sample is attributed to the service owning the innermost stack
+ * frame loaded by a service classloader, found through the
+ * {@link ServiceClassIndex}, and to that frame's method. Frames of the
+ * server and plugins count as <code>server</code>. Stall time is summed per
+ * service and method for <code>/ms stalls</code>, and every stall is
+ * appended to a rolling log file.</p>
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public class StallDetector {
+
+    // -- static fields
+
+    private static final String SERVER = "server";
+    private static final int TOP_METHODS = 3;
+
+    // -- instance fields
+
+    private final Plugin plugin;
+    private final ServiceClassIndex classIndex;
+    private final long thresholdNanos;
+    private final long sampleIntervalMillis;
+    private final File logFile;
+    private final long maxLogBytes;
+    private final int logFiles;
+
+    private final Map<String, ServiceStalls> services;
+    private final LongAdder stalls;
+    private final LongAccumulator longestStallNanos;
+
+    private volatile long tickStartedAt;
+    private volatile boolean running;
+    private Thread serverThread;
+    private Thread watchdog;
+    private BukkitTask heartbeat;
+
+    // -- constructors
+
+    /**
+     * @param plugin               The plugin the heartbeat task is scheduled for
+     * @param classIndex           The index mapping packages to service classloaders
+     * @param thresholdMillis      Tick time above which the server thread is sampled
+     * @param sampleIntervalMillis Time between two samples
+     * @param logFile              The file every stall is appended to
+     * @param maxLogBytes          Size at which the log file is rolled over
+     * @param logFiles             Number of log files kept, including the current one
+     * */
+    public StallDetector(Plugin plugin, ServiceClassIndex classIndex, long thresholdMillis,
+                         long sampleIntervalMillis, File logFile, long maxLogBytes, int logFiles) {
+        this.plugin = plugin;
+        this.classIndex = classIndex;
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.sampleIntervalMillis = sampleIntervalMillis;
+        this.logFile = logFile;
+        this.maxLogBytes = maxLogBytes;
+        this.logFiles = Math.max(1, logFiles);
+
+        this.services = new ConcurrentHashMap<>();
+        this.stalls = new LongAdder();
+        this.longestStallNanos = new LongAccumulator(Math::max, 0);
+    }
+
+    // -- public methods
+
+    /**
+     * Starts the heartbeat and the watchdog. Must be called on the server thread.
+     * */
+    public void start() {
+        if (running) {
+            return;
+        }
+
+        serverThread = Thread.currentThread();
+        tickStartedAt = System.nanoTime();
+        running = true;
+        heartbeat = plugin.getServer().getScheduler().runTaskTimer(plugin,
+                () -> tickStartedAt = System.nanoTime(), 1L, 1L);
+
+        watchdog = new Thread(this::watch, "SpigotMS-StallDetector");
+        watchdog.setDaemon(true);
+        watchdog.start();
+    }
+
+    /**
+     * Stops the heartbeat and the watchdog.
+     * */
+    public void stop() {
+        running = false;
+
+        if (heartbeat != null) {
+            heartbeat.cancel();
+            heartbeat = null;
+        }
+
+        if (watchdog != null) {
+            watchdog.interrupt();
+            watchdog = null;
+        }
+    }
+
+    /**
+     * Forgets all recorded stalls, e.g. after a fix was deployed.
+     * */
+    public void reset() {
+        services.clear();
+        stalls.reset();
+        longestStallNanos.reset();
+    }
+
+    /**
+     * Formats the stall time of every service, longest first, with its top methods.
+     *
+     * @return String the report for <code>/ms stalls</code>
+     * */
+    public String formatReport() {
+        StringBuilder report = new StringBuilder("[SpigotMS] stalls over ")
+                .append(TimeUnit.NANOSECONDS.toMillis(thresholdNanos)).append(" ms: ").append(stalls.sum())
+                .append("; longest: ").append(TimeUnit.NANOSECONDS.toMillis(longestStallNanos.get())).append(" ms");
+
+        List<Map.Entry<String, ServiceStalls>> entries = new ArrayList<>(services.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue().nanos.sum(), a.getValue().nanos.sum()));
+
+        for (Map.Entry<String, ServiceStalls> entry : entries) {
+            report.append("\n[SpigotMS] ").append(entry.getKey())
+                    .append("; stalled: ").append(TimeUnit.NANOSECONDS.toMillis(entry.getValue().nanos.sum()))
+                    .append(" ms in ").append(entry.getValue().samples.sum()).append(" samples");
+
+            List<Map.Entry<String, LongAdder>> methods = new ArrayList<>(entry.getValue().methods.entrySet());
+            methods.sort((a, b) -> Long.compare(b.getValue().sum(), a.getValue().sum()));
+
+            for (Map.Entry<String, LongAdder> method : methods.subList(0, Math.min(TOP_METHODS, methods.size()))) {
+                report.append("\n  ").append(method.getKey()).append(": ")
+                        .append(TimeUnit.NANOSECONDS.toMillis(method.getValue().sum())).append(" ms");
+            }
+        }
+
+        return report.toString();
+    }
+
+    // -- private methods
+
+    private void watch() {
+        long stallStartedAt = 0;
+        long lastSampleAt = 0;
+        Map<String, Long> stall = new HashMap<>();
+
+        while (running) {
+            try {
+                Thread.sleep(sampleIntervalMillis);
+            } catch (InterruptedException exception) {
+                return;
+            }
+
+            long tick = tickStartedAt;
+            long now = System.nanoTime();
+
+            if (stallStartedAt != 0 && tick != stallStartedAt) {
+                // the stalled tick is over
+                finishStall(stallStartedAt, tick, stall);
+                stallStartedAt = 0;
+                stall.clear();
+            }
+
+            if (now - tick < thresholdNanos) {
+                continue;
+            }
+
+            if (stallStartedAt == 0) {
+                stallStartedAt = tick;
+                // the time before the tick went over the threshold counts towards the first sample
+                lastSampleAt = tick;
+            }
+
+            StackTraceElement[] stack = serverThread.getStackTrace();
+
+            // the tick may have ended while the stack was taken
+            if (tickStartedAt != stallStartedAt) {
+                continue;
+            }
+
+            record(stack, now - lastSampleAt, stall);
+            lastSampleAt = now;
+        }
+    }
+
+    private void record(final StackTraceElement[] stack, final long nanos, final Map<String, Long> stall) {
+        String service = SERVER;
+        String method = stack.length > 0 ? format(stack[0]) : "unknown";
+
+        for (StackTraceElement frame : stack) {
+            String owner = owner(frame.getClassName());
+
+            if (owner != null) {
+                service = owner;
+                method = format(frame);
+                break;
+            }
+        }
+
+        ServiceStalls serviceStalls = services.computeIfAbsent(service, name -> new ServiceStalls());
+        serviceStalls.nanos.add(nanos);
+        serviceStalls.samples.increment();
+        serviceStalls.methods.computeIfAbsent(method, name -> new LongAdder()).add(nanos);
+        stall.merge(service + " " + method, nanos, Long::sum);
+    }
+
+    private String owner(final String className) {
+        int separator = className.lastIndexOf('.');
+
+        if (separator < 0) {
+            return null;
+        }
+
+        ServiceClassLoader classLoader = classIndex.lookup(className.substring(0, separator));
+        return classLoader == null ? null : classLoader.getServiceName();
+    }
+
+    private static String format(final StackTraceElement frame) {
+        return frame.getClassName() + "." + frame.getMethodName()
+                + (frame.getLineNumber() > 0 ? ":" + frame.getLineNumber() : "");
+    }
+
+    private void finishStall(final long startedAt, final long endedAt, final Map<String, Long> stall) {
+        long nanos = endedAt - startedAt;
+        stalls.increment();
+        longestStallNanos.accumulate(nanos);
+
+        StringBuilder line = new StringBuilder()
+                .append(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(new Date()))
+                .append(" stall of ").append(TimeUnit.NANOSECONDS.toMillis(nanos)).append(" ms");
+        stall.entrySet().stream()
+                .sorted((a, b) -> Long.compare(b.getValue(), a.getValue()))
+                .forEach(entry -> line.append("; ").append(entry.getKey()).append(' ')
+                        .append(TimeUnit.NANOSECONDS.toMillis(entry.getValue())).append(" ms"));
+        line.append(System.lineSeparator());
+
+        try {
+            append(line.toString());
+        } catch (IOException exception) {
+            System.err.println("[SpigotMS] Could not write to " + logFile);
+            exception.printStackTrace();
+        }
+    }
+
+    private void append(final String line) throws IOException {
+        if (logFile.length() >= maxLogBytes) {
+            // stalls.log -> stalls.log.1 -> ... the oldest file is dropped
+            for (int i = logFiles - 1; i > 0; i--) {
+                File older = new File(logFile.getPath() + "." + i);
+                File newer = i == 1 ? logFile : new File(logFile.getPath() + "." + (i - 1));
+
+                if (newer.exists() && (!older.exists() || older.delete())) {
+                    newer.renameTo(older);
+                }
+            }
+
+            if (logFiles == 1) {
+                logFile.delete();
+            }
+        }
+
+        try (OutputStream out = new FileOutputStream(logFile, true)) {
+            out.write(line.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    // -- getter and setter
+
+    /**
+     * @return long stalls over the threshold since the start or the last reset
+     * */
+    public long getStallCount() {
+        return stalls.sum();
+    }
+
+    // -- inner classes
+
+    private static final class ServiceStalls {
+
+        private final LongAdder nanos = new LongAdder();
+        private final LongAdder samples = new LongAdder();
+        private final Map<String, LongAdder> methods = new ConcurrentHashMap<>();
+    }
+}
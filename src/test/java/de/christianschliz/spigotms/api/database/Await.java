@@ -0,0 +1,49 @@
+package de.christianschliz.spigotms.api.database;
+
+import static org.junit.Assert.fail;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Waits for state that other servers or background checks change
+ * asynchronously, e.g. through a Redis topic, and fails the test if it
+ * doesn't arrive in time.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public final class Await {
+
+    // -- static fields
+
+    private static final long TIMEOUT_MILLIS = 5000;
+    private static final long POLL_MILLIS = 10;
+
+    // -- constructors
+
+    private Await() {
+    }
+
+    // -- public methods
+
+    /**
+     * @param condition The condition to wait for
+     * @param message   Describes the condition if it is never met
+     * */
+    public static void until(final BooleanSupplier condition, final String message) {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Timed out waiting until " + message);
+            }
+
+            try {
+                Thread.sleep(POLL_MILLIS);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                fail("Interrupted waiting until " + message);
+            }
+        }
+    }
+}
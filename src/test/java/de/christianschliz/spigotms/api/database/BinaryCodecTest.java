@@ -0,0 +1,129 @@
+package de.christianschliz.spigotms.api.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import de.christianschliz.spigotms.api.messaging.MessageCodec;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+/**
+ * Binary codecs of two servers, one writing values to Redis and the
+ * other reading them, with a compression threshold small values stay
+ * below.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public class BinaryCodecTest {
+
+    // -- static fields
+
+    @ClassRule
+    public static final RedisServerRule REDIS = new RedisServerRule();
+
+    private static final String KEY = "codec-test";
+    private static final int COMPRESSION_THRESHOLD = 64;
+
+    // -- instance fields
+
+    private RedisController first;
+    private RedisController second;
+    private BinaryCodec<Note> writer;
+    private BinaryCodec<Note> reader;
+
+    // -- public methods
+
+    @Before
+    public void setUp() {
+        REDIS.reset();
+        first = REDIS.newController();
+        second = REDIS.newController();
+        writer = first.codecs().register(Note.class, new NoteCodec(), COMPRESSION_THRESHOLD);
+        reader = second.codecs().register(Note.class, new NoteCodec(), COMPRESSION_THRESHOLD);
+    }
+
+    @Test
+    public void largeValuesAreStoredCompressed() {
+        Note value = new Note(repeat("player-stats;", 200));
+
+        first.get().<Note>getBucket(KEY, writer).set(value);
+
+        assertEquals(value.text, second.get().<Note>getBucket(KEY, reader).get().text);
+        assertEquals(1, writer.getCompressedCount());
+        assertTrue("saved " + writer.getSavedBytes() + " bytes", writer.getSavedBytes() > value.text.length() / 2);
+    }
+
+    @Test
+    public void smallValuesAreStoredRaw() {
+        first.get().<Note>getBucket(KEY, writer).set(new Note("alice"));
+
+        assertEquals("alice", second.get().<Note>getBucket(KEY, reader).get().text);
+        assertEquals(0, writer.getCompressedCount());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsALengthTheValueCantExpandTo() throws IOException {
+        ByteBuf buf = Unpooled.buffer();
+        buf.writeByte(1);
+        buf.writeInt(Integer.MAX_VALUE);
+        buf.writeBytes(new byte[16]);
+
+        reader.getValueDecoder().decode(buf, null);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsAValueShorterThanItsLength() throws IOException {
+        ByteBuf compressed = writer.getValueEncoder().encode(new Note(repeat("player-stats;", 200)));
+        // claims one byte more than the compressed data holds
+        compressed.setInt(1, compressed.getInt(1) + 1);
+
+        try {
+            reader.getValueDecoder().decode(compressed, null);
+        } finally {
+            compressed.release();
+        }
+    }
+
+    // -- private methods
+
+    private static String repeat(final String text, final int times) {
+        StringBuilder builder = new StringBuilder();
+
+        for (int i = 0; i < times; i++) {
+            builder.append(text);
+        }
+
+        return builder.toString();
+    }
+
+    // -- inner classes
+
+    private static final class Note {
+
+        private final String text;
+
+        private Note(final String text) {
+            this.text = text;
+        }
+    }
+
+    private static final class NoteCodec implements MessageCodec<Note> {
+
+        @Override
+        public void encode(final Note value, final DataOutput out) throws IOException {
+            out.writeUTF(value.text);
+        }
+
+        @Override
+        public Note decode(final DataInput in) throws IOException {
+            return new Note(in.readUTF());
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package de.christianschliz.spigotms.api.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+/**
+ * Locks of two servers with the same name, each lock shared by several
+ * threads of its server. Every critical section checks that no other
+ * thread, of this or the other server, is inside at the same time.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public class LeasedLockTest {
+
+    // -- static fields
+
+    @ClassRule
+    public static final RedisServerRule REDIS = new RedisServerRule();
+
+    private static final String NAME = "lock-test";
+    private static final long LEASE_MILLIS = 500;
+    private static final long WAIT_MILLIS = 10_000;
+
+    private static final int THREADS_PER_SERVER = 4;
+    private static final int SECTIONS_PER_THREAD = 100;
+
+    // -- instance fields
+
+    private RedisController first;
+    private RedisController second;
+
+    // -- public methods
+
+    @Before
+    public void setUp() {
+        REDIS.reset();
+        first = REDIS.newController();
+        second = REDIS.newController();
+    }
+
+    @Test
+    public void threadsOfOneServerExcludeEachOther() throws InterruptedException {
+        LeasedLock lock = first.lock(NAME, LEASE_MILLIS);
+        Sections sections = new Sections();
+
+        sections.run(lock);
+
+        sections.assertExclusive(THREADS_PER_SERVER);
+        assertTrue("most sections are locked without going to Redis",
+                lock.getLocalAcquireCount() > lock.getRemoteCallCount());
+    }
+
+    @Test
+    public void serversExcludeEachOther() throws InterruptedException {
+        Sections sections = new Sections();
+
+        sections.run(first.lock(NAME, LEASE_MILLIS), second.lock(NAME, LEASE_MILLIS));
+
+        sections.assertExclusive(2 * THREADS_PER_SERVER);
+    }
+
+    @Test
+    public void aLockHeldByAnotherServerIsNotTaken() throws InterruptedException {
+        LeasedLock held = first.lock(NAME, 60_000);
+        assertTrue(held.tryLock(WAIT_MILLIS));
+        held.unlock();
+
+        assertFalse(second.lock(NAME, 60_000).tryLock(50));
+
+        held.release();
+        assertTrue(second.lock(NAME, 60_000).tryLock(WAIT_MILLIS));
+    }
+
+    // -- inner classes
+
+    private static final class Sections {
+
+        private final AtomicInteger inside = new AtomicInteger();
+        private final AtomicInteger overlaps = new AtomicInteger();
+        private final AtomicInteger timeouts = new AtomicInteger();
+        private int completed;
+
+        void run(final LeasedLock... locks) throws InterruptedException {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Thread> threads = new ArrayList<>();
+
+            for (LeasedLock lock : locks) {
+                for (int i = 0; i < THREADS_PER_SERVER; i++) {
+                    Thread thread = new Thread(() -> {
+                        try {
+                            start.await();
+
+                            for (int section = 0; section < SECTIONS_PER_THREAD; section++) {
+                                if (!lock.tryLock(WAIT_MILLIS)) {
+                                    timeouts.incrementAndGet();
+                                    continue;
+                                }
+
+                                try {
+                                    enter();
+                                } finally {
+                                    lock.unlock();
+                                }
+                            }
+                        } catch (InterruptedException exception) {
+                            Thread.currentThread().interrupt();
+                        }
+                    });
+                    thread.start();
+                    threads.add(thread);
+                }
+            }
+
+            start.countDown();
+
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+
+        void assertExclusive(final int threads) {
+            assertEquals("threads inside a critical section at once", 0, overlaps.get());
+            assertEquals("threads that didn't get the lock", 0, timeouts.get());
+            assertEquals(threads * SECTIONS_PER_THREAD, completed);
+        }
+
+        private void enter() {
+            if (inside.incrementAndGet() > 1) {
+                overlaps.incrementAndGet();
+            }
+
+            // not atomic, so overlapping sections lose increments
+            int value = completed;
+            Thread.yield();
+            completed = value + 1;
+
+            inside.decrementAndGet();
+        }
+    }
+}
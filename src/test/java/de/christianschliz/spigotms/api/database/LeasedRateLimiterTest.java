@@ -0,0 +1,166 @@
+package de.christianschliz.spigotms.api.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+/**
+ * Rate limiters of two servers over the same bucket, each limiter
+ * shared by several threads of its server. The period is long enough
+ * that the bucket doesn't refill during a test.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public class LeasedRateLimiterTest {
+
+    // -- static fields
+
+    @ClassRule
+    public static final RedisServerRule REDIS = new RedisServerRule();
+
+    private static final String NAME = "limiter-test";
+    /** not a multiple of the lease size, so the last lease is a partial one */
+    private static final long PERMITS = 105;
+    private static final long PERIOD_MILLIS = 3_600_000;
+    private static final int LEASE_SIZE = 10;
+    private static final long LEASE_MILLIS = 60_000;
+
+    private static final int THREADS_PER_SERVER = 4;
+    private static final int ATTEMPTS_PER_THREAD = 200;
+
+    // -- instance fields
+
+    private RedisController first;
+    private RedisController second;
+
+    // -- public methods
+
+    @Before
+    public void setUp() {
+        REDIS.reset();
+        first = REDIS.newController();
+        second = REDIS.newController();
+    }
+
+    @Test
+    public void tokensOfALeaseAreHandedOutLocally() {
+        LeasedRateLimiter limiter = first.rateLimiter(NAME, PERMITS, PERIOD_MILLIS, LEASE_SIZE, LEASE_MILLIS);
+
+        for (int i = 0; i < LEASE_SIZE; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+
+        assertEquals(1, limiter.getRemoteCallCount());
+        assertEquals(LEASE_SIZE - 1, limiter.getLocalAcquireCount());
+    }
+
+    @Test
+    public void sharedLimitersNeverGrantMoreThanThePermits() throws InterruptedException {
+        List<LeasedRateLimiter> limiters = new ArrayList<>();
+        limiters.add(first.rateLimiter(NAME, PERMITS, PERIOD_MILLIS, LEASE_SIZE, LEASE_MILLIS));
+        limiters.add(second.rateLimiter(NAME, PERMITS, PERIOD_MILLIS, LEASE_SIZE, LEASE_MILLIS));
+
+        AtomicInteger granted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+
+        for (LeasedRateLimiter limiter : limiters) {
+            for (int i = 0; i < THREADS_PER_SERVER; i++) {
+                Thread thread = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException exception) {
+                        return;
+                    }
+
+                    for (int attempt = 0; attempt < ATTEMPTS_PER_THREAD; attempt++) {
+                        if (limiter.tryAcquire()) {
+                            granted.incrementAndGet();
+                        }
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+        }
+
+        start.countDown();
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue("granted " + granted.get() + " of " + PERMITS + " tokens", granted.get() <= PERMITS);
+        // at most the unused rest of a lease per server is lost
+        assertTrue("granted " + granted.get() + " of " + PERMITS + " tokens",
+                granted.get() >= PERMITS - limiters.size() * LEASE_SIZE);
+    }
+
+    @Test
+    public void anEmptyBucketIsDeniedLocally() {
+        LeasedRateLimiter limiter = first.rateLimiter(NAME, LEASE_SIZE, PERIOD_MILLIS, LEASE_SIZE, LEASE_MILLIS);
+
+        for (int i = 0; i < LEASE_SIZE; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+
+        assertFalse(limiter.tryAcquire());
+        long remoteCalls = limiter.getRemoteCallCount();
+        assertFalse(limiter.tryAcquire());
+        assertEquals(remoteCalls, limiter.getRemoteCallCount());
+    }
+
+    @Test
+    public void releasedTokensGoBackToTheBucket() {
+        LeasedRateLimiter limiter = first.rateLimiter(NAME, LEASE_SIZE, PERIOD_MILLIS, LEASE_SIZE, LEASE_MILLIS);
+        LeasedRateLimiter other = second.rateLimiter(NAME, LEASE_SIZE, PERIOD_MILLIS, LEASE_SIZE, LEASE_MILLIS);
+
+        assertTrue(limiter.tryAcquire());
+        limiter.release();
+
+        for (int i = 0; i < LEASE_SIZE - 1; i++) {
+            assertTrue(other.tryAcquire());
+        }
+
+        assertFalse(other.tryAcquire());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsALimiterWithoutPermits() {
+        first.rateLimiter(NAME, 0, PERIOD_MILLIS, 1, LEASE_MILLIS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsALeaseLargerThanTheBucket() {
+        first.rateLimiter(NAME, PERMITS, PERIOD_MILLIS, (int) PERMITS + 1, LEASE_MILLIS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAnEmptyLease() {
+        first.rateLimiter(NAME, PERMITS, PERIOD_MILLIS, 0, LEASE_MILLIS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAPeriodOfZero() {
+        first.rateLimiter(NAME, PERMITS, 0, LEASE_SIZE, LEASE_MILLIS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTakingNoTokens() {
+        first.rateLimiter(NAME, PERMITS, PERIOD_MILLIS, LEASE_SIZE, LEASE_MILLIS).tryAcquire(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTakingMoreTokensThanTheBucketHolds() {
+        first.rateLimiter(NAME, PERMITS, PERIOD_MILLIS, LEASE_SIZE, LEASE_MILLIS).tryAcquire((int) PERMITS + 1);
+    }
+}
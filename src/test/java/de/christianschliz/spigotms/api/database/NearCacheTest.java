@@ -0,0 +1,120 @@
+package de.christianschliz.spigotms.api.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+/**
+ * Near-caches of two servers over the same Redis map, each server with
+ * its own Redis connection.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public class NearCacheTest {
+
+    // -- static fields
+
+    @ClassRule
+    public static final RedisServerRule REDIS = new RedisServerRule();
+
+    private static final String MAP = "near-cache-test";
+
+    // -- instance fields
+
+    private NearCache<String, String> first;
+    private NearCache<String, String> second;
+
+    // -- public methods
+
+    @Before
+    public void setUp() {
+        REDIS.reset();
+        first = REDIS.newController().nearCache(MAP, 100, 0, NearCache.EvictionPolicy.LRU);
+        second = REDIS.newController().nearCache(MAP, 100, 0, NearCache.EvictionPolicy.LRU);
+    }
+
+    @Test
+    public void repeatedReadsAreServedFromMemory() {
+        putOnSecond(first, "player", "alice");
+
+        assertEquals("alice", first.get("player"));
+        assertEquals("alice", first.get("player"));
+        assertEquals("alice", first.get("player"));
+
+        assertEquals(1, first.getMissCount());
+        assertEquals(2, first.getHitCount());
+    }
+
+    @Test
+    public void putOnOneServerInvalidatesTheOther() {
+        putOnSecond(first, "player", "alice");
+        assertEquals("alice", first.get("player"));
+        assertEquals(1, first.getLocalSize());
+
+        second.put("player", "bob");
+
+        Await.until(() -> first.getLocalSize() == 0, "the first server dropped its copy");
+        assertEquals("bob", first.get("player"));
+    }
+
+    @Test
+    public void removeOnOneServerInvalidatesTheOther() {
+        putOnSecond(first, "player", "alice");
+        assertEquals("alice", first.get("player"));
+
+        second.remove("player");
+
+        Await.until(() -> first.getLocalSize() == 0, "the first server dropped its copy");
+        assertNull(first.get("player"));
+    }
+
+    @Test
+    public void ownWritesAreCachedWithoutARoundTrip() {
+        first.put("player", "alice");
+
+        assertEquals("alice", first.get("player"));
+        assertEquals(0, first.getMissCount());
+        assertEquals(1, first.getHitCount());
+    }
+
+    @Test
+    public void lfuEvictsTheLeastFrequentlyUsedKey() {
+        NearCache<String, String> lfu = REDIS.newController().nearCache(MAP, 2, 0, NearCache.EvictionPolicy.LFU);
+        putOnSecond(lfu, "a", "1");
+        putOnSecond(lfu, "b", "2");
+        putOnSecond(lfu, "c", "3");
+
+        lfu.get("a");
+        lfu.get("a");
+        lfu.get("b");
+        lfu.get("c");
+
+        assertEquals(1, lfu.getEvictionCount());
+        long misses = lfu.getMissCount();
+        lfu.get("a");
+        assertEquals("a was used most and must stay cached", misses, lfu.getMissCount());
+        lfu.get("b");
+        assertEquals("b was used least and must be evicted", misses + 1, lfu.getMissCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsACacheWithoutRoom() {
+        REDIS.newController().nearCache(MAP, 0, 0, NearCache.EvictionPolicy.LFU);
+    }
+
+    // -- private methods
+
+    /**
+     * Writes on the second server and waits until the reader got the
+     * invalidation, which would otherwise drop what the reader caches next.
+     * */
+    private void putOnSecond(final NearCache<String, String> reader, final String key, final String value) {
+        long invalidations = reader.getInvalidationCount();
+        second.put(key, value);
+        Await.until(() -> reader.getInvalidationCount() > invalidations, "the invalidation of " + key + " arrived");
+    }
+}
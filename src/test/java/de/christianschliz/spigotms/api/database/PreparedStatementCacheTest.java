@@ -0,0 +1,134 @@
+package de.christianschliz.spigotms.api.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The statement cache against a session that records its prepare
+ * calls and leaves them pending until a test completes them.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public class PreparedStatementCacheTest {
+
+    // -- static fields
+
+    private static final String SELECT = "SELECT balance FROM wallets WHERE player = ?";
+    private static final String UPDATE = "UPDATE wallets SET balance = ? WHERE player = ?";
+
+    // -- instance fields
+
+    private List<String> prepared;
+    private List<CompletableFuture<PreparedStatement>> pending;
+    private PreparedStatementCache cache;
+
+    // -- public methods
+
+    @Before
+    public void setUp() {
+        prepared = new ArrayList<>();
+        pending = new ArrayList<>();
+
+        CqlSession session = (CqlSession) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{CqlSession.class}, (proxy, method, args) -> {
+                    if (!method.getName().equals("prepareAsync")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+
+                    CompletableFuture<PreparedStatement> future = new CompletableFuture<>();
+                    prepared.add((String) args[0]);
+                    pending.add(future);
+                    return future;
+                });
+
+        cache = new PreparedStatementCache(session, 2);
+    }
+
+    @Test
+    public void repeatedPreparesAreServedFromTheCache() {
+        CompletableFuture<PreparedStatement> first = cache.prepare(SELECT);
+        CompletableFuture<PreparedStatement> second = cache.prepare(SELECT);
+        PreparedStatement statement = statement();
+        pending.get(0).complete(statement);
+
+        assertSame(statement, first.getNow(null));
+        assertSame(statement, second.getNow(null));
+        assertSame(statement, cache.prepare(SELECT).getNow(null));
+
+        assertEquals(1, prepared.size());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(2, cache.getHitCount());
+    }
+
+    @Test
+    public void differentStatementsArePreparedSeparately() {
+        cache.prepare(SELECT);
+        cache.prepare(UPDATE);
+
+        assertEquals(2, prepared.size());
+        assertEquals(2, cache.size());
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @Test
+    public void leastRecentlyUsedStatementIsDropped() {
+        cache.prepare(SELECT);
+        cache.prepare(UPDATE);
+        cache.prepare(SELECT);
+        cache.prepare("DELETE FROM wallets WHERE player = ?");
+
+        assertEquals(2, cache.size());
+        cache.prepare(SELECT);
+        assertEquals("SELECT was used last and must stay cached", 3, prepared.size());
+        cache.prepare(UPDATE);
+        assertEquals("UPDATE was used least and must be prepared again", 4, prepared.size());
+    }
+
+    @Test
+    public void callersCannotCompleteTheCachedStatement() {
+        CompletableFuture<PreparedStatement> first = cache.prepare(SELECT);
+        first.cancel(false);
+        first.complete(null);
+
+        CompletableFuture<PreparedStatement> second = cache.prepare(SELECT);
+        assertNotSame(first, second);
+        assertEquals("the cached statement must still be pending", 1, prepared.size());
+
+        PreparedStatement statement = statement();
+        pending.get(0).complete(statement);
+        assertSame(statement, second.getNow(null));
+        assertSame(statement, cache.prepare(SELECT).getNow(null));
+    }
+
+    @Test
+    public void failedPreparesAreNotCached() {
+        CompletableFuture<PreparedStatement> failed = cache.prepare(SELECT);
+        pending.get(0).completeExceptionally(new IllegalStateException("no connection"));
+
+        assertTrue(failed.isCompletedExceptionally());
+        assertEquals(0, cache.size());
+        cache.prepare(SELECT);
+        assertEquals(2, prepared.size());
+    }
+
+    // -- private methods
+
+    private static PreparedStatement statement() {
+        return (PreparedStatement) Proxy.newProxyInstance(PreparedStatementCacheTest.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
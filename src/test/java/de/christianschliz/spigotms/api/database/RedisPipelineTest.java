@@ -0,0 +1,118 @@
+package de.christianschliz.spigotms.api.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+/**
+ * The pipeline of one server, flushed by the tests instead of the
+ * tick timer of the plugin.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public class RedisPipelineTest {
+
+    // -- static fields
+
+    @ClassRule
+    public static final RedisServerRule REDIS = new RedisServerRule();
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    // -- instance fields
+
+    private RedisController controller;
+
+    // -- public methods
+
+    @Before
+    public void setUp() {
+        REDIS.reset();
+        controller = REDIS.newController();
+    }
+
+    @Test
+    public void everyCommandGetsItsOwnResult() throws Exception {
+        RedisPipeline pipeline = controller.pipeline();
+        List<CompletableFuture<Long>> results = new ArrayList<>();
+
+        for (int i = 0; i < 10; i++) {
+            String key = "counter-" + (i % 2);
+            results.add(pipeline.queue(batch -> batch.getAtomicLong(key).incrementAndGetAsync()));
+        }
+
+        assertEquals(10, pipeline.getPendingCount());
+        pipeline.flush().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(Long.valueOf(i / 2 + 1), results.get(i).get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+
+        assertEquals(1, pipeline.getBatchCount());
+        assertEquals(0, pipeline.getPendingCount());
+    }
+
+    @Test
+    public void aFullBatchIsSentWithoutAFlush() throws Exception {
+        controller.setPipelineMaxBatchSize(4);
+        RedisPipeline pipeline = controller.pipeline();
+        List<CompletableFuture<Long>> results = new ArrayList<>();
+
+        for (int i = 0; i < 4; i++) {
+            results.add(pipeline.queue(batch -> batch.getAtomicLong("counter").incrementAndGetAsync()));
+        }
+
+        assertEquals(Long.valueOf(4), results.get(3).get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(1, pipeline.getBatchCount());
+    }
+
+    @Test
+    public void aBatchThatCanNotBeSentFailsAllOfItsCommands() throws Exception {
+        RedisPipeline pipeline = controller.pipeline();
+        CompletableFuture<Object> read = pipeline.queue(batch -> batch.getBucket("player").getAsync());
+        CompletableFuture<Long> increment = pipeline.queue(
+                batch -> batch.getAtomicLong("counter").incrementAndGetAsync());
+
+        controller.get().shutdown();
+
+        assertFails(pipeline.flush());
+        assertFails(read);
+        assertFails(increment);
+        assertEquals(1, pipeline.getFailedBatchCount());
+    }
+
+    @Test
+    public void aRejectedCommandOnlyFailsItself() throws Exception {
+        controller.get().getBucket("text").set("not a number");
+        RedisPipeline pipeline = controller.pipeline();
+
+        CompletableFuture<Object> read = pipeline.queue(batch -> batch.getBucket("text").getAsync());
+        CompletableFuture<Long> increment = pipeline.queue(
+                batch -> batch.getAtomicLong("text").incrementAndGetAsync());
+
+        assertFails(pipeline.flush());
+        assertFails(increment);
+        assertEquals("not a number", read.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    // -- private methods
+
+    private static void assertFails(final CompletableFuture<?> future) throws Exception {
+        try {
+            future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            fail("the future completed normally");
+        } catch (ExecutionException exception) {
+            assertTrue(future.isCompletedExceptionally());
+        }
+    }
+}
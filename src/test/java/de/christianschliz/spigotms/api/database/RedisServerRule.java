@@ -0,0 +1,66 @@
+package de.christianschliz.spigotms.api.database;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.rules.ExternalResource;
+import redis.embedded.RedisServer;
+
+/**
+ * Runs an embedded Redis server on a free port for the tests of a class and
+ * closes the controllers the tests created, so every test starts with an
+ * empty database.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public final class RedisServerRule extends ExternalResource {
+
+    // -- instance fields
+
+    private final List<RedisController> controllers = new ArrayList<>();
+    private RedisServer server;
+    private int port;
+
+    // -- public methods
+
+    @Override
+    protected void before() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        server = new RedisServer(port);
+        server.start();
+    }
+
+    @Override
+    protected void after() {
+        controllers.forEach(RedisController::close);
+        controllers.clear();
+        server.stop();
+    }
+
+    /**
+     * Creates a controller that acts as another server of the network,
+     * with its own connection and node id.
+     *
+     * @return RedisController the connected controller
+     * */
+    public RedisController newController() {
+        RedisController controller = new RedisController(new String[]{"redis://127.0.0.1:" + port}, null);
+        controller.connect();
+        controllers.add(controller);
+        return controller;
+    }
+
+    /**
+     * Closes the controllers of the last test and empties the database.
+     * */
+    public void reset() {
+        controllers.forEach(RedisController::close);
+        controllers.clear();
+        newController().get().getKeys().flushall();
+    }
+}
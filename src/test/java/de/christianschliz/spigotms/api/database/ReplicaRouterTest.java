@@ -0,0 +1,217 @@
+package de.christianschliz.spigotms.api.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import de.christianschliz.spigotms.api.executor.ExecutorRegistry;
+import de.christianschliz.spigotms.api.metrics.LatencyHistogram;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The replica router over in-memory H2 databases, each of which knows
+ * its own name. The lag of a replica is a row the tests change, read
+ * by a lag query in place of <code>SHOW SLAVE STATUS</code>.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public class ReplicaRouterTest {
+
+    // -- static fields
+
+    private static final long MAX_LAG_MILLIS = 1000;
+    private static final long LAG_CHECK_INTERVAL_MILLIS = 20;
+    private static final String LAG_QUERY = "SELECT Seconds_Behind_Master FROM replication";
+    private static final String WHOAMI = "SELECT name FROM whoami";
+
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    // -- instance fields
+
+    private final Map<String, HikariDataSource> replicaPools = new HashMap<>();
+    private HikariDataSource primary;
+    private ReplicaRouter router;
+
+    // -- public methods
+
+    @Before
+    public void setUp() throws SQLException {
+        primary = database("primary");
+    }
+
+    @After
+    public void tearDown() {
+        if (router != null) {
+            router.close();
+        }
+
+        primary.close();
+    }
+
+    @Test
+    public void readsGoToAnUpToDateReplica() throws SQLException {
+        router = router(replica("replica-1", 0.0));
+        awaitUsable("replica-1");
+
+        assertEquals("replica-1", router.read(ReplicaRouterTest::whoami));
+        assertEquals(0, router.getPrimaryReadCount());
+        assertEquals(1, router.getReplicas().get(0).getReadCount());
+    }
+
+    @Test
+    public void readsFallBackToThePrimaryWithoutAUsableReplica() throws SQLException {
+        ReplicaRouter.Replica replica = replica("replica-1", 0.0);
+        router = router(replica);
+        awaitUsable("replica-1");
+
+        // a null lag means replication is stopped
+        setLag(replica, null);
+        Await.until(() -> !replica.isUsable(), "replica-1 is skipped");
+
+        assertEquals("primary", router.read(ReplicaRouterTest::whoami));
+        assertEquals(1, router.getPrimaryReadCount());
+        assertEquals(0, replica.getReadCount());
+    }
+
+    @Test
+    public void laggingReplicasAreSkippedUntilTheyCatchUp() throws SQLException {
+        ReplicaRouter.Replica lagging = replica("replica-1", 10.0);
+        router = router(lagging, replica("replica-2", 0.0));
+        awaitUsable("replica-1");
+        awaitUsable("replica-2");
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals("replica-2", router.read(ReplicaRouterTest::whoami));
+        }
+
+        setLag(lagging, 0.2);
+        Await.until(() -> lagging.getLagMillis() == 200, "replica-1 caught up");
+
+        List<String> readers = new ArrayList<>();
+
+        for (int i = 0; i < 10; i++) {
+            readers.add(router.read(ReplicaRouterTest::whoami));
+        }
+
+        assertTrue("replica-1 takes reads again: " + readers, readers.contains("replica-1"));
+        assertEquals(0, router.getPrimaryReadCount());
+    }
+
+    @Test
+    public void readsGoToTheLeastBusyReplica() throws Exception {
+        router = router(replica("replica-1", 0.0), replica("replica-2", 0.0));
+        awaitUsable("replica-1");
+        awaitUsable("replica-2");
+
+        CountDownLatch reading = new CountDownLatch(1);
+        CompletableFuture<Void> release = new CompletableFuture<>();
+        CompletableFuture<String> busy = CompletableFuture.supplyAsync(() -> {
+            try {
+                return router.read(connection -> {
+                    reading.countDown();
+                    release.join();
+                    return whoami(connection);
+                });
+            } catch (SQLException exception) {
+                throw new IllegalStateException(exception);
+            }
+        });
+
+        assertTrue(reading.await(5, TimeUnit.SECONDS));
+        String idle = router.getReplicas().get(0).getOutstanding() == 1 ? "replica-2" : "replica-1";
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(idle, router.read(ReplicaRouterTest::whoami));
+        }
+
+        release.complete(null);
+        busy.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void aReplicaRefusingConnectionsIsSkipped() throws SQLException {
+        ReplicaRouter.Replica replica = replica("replica-1", 0.0);
+        router = router(replica);
+        awaitUsable("replica-1");
+
+        replicaPools.get("replica-1").close();
+
+        assertEquals("primary", router.read(ReplicaRouterTest::whoami));
+        assertFalse(replica.isUsable());
+    }
+
+    // -- private methods
+
+    private ReplicaRouter router(final ReplicaRouter.Replica... replicas) {
+        return new ReplicaRouter(primary, new ArrayList<>(Arrays.asList(replicas)),
+                MAX_LAG_MILLIS, LAG_CHECK_INTERVAL_MILLIS, LAG_QUERY,
+                Executors.newSingleThreadScheduledExecutor(ExecutorRegistry.threadFactory("mysql-lagcheck")));
+    }
+
+    private ReplicaRouter.Replica replica(final String name, final Double lagSeconds) throws SQLException {
+        HikariDataSource dataSource = database(name);
+        replicaPools.put(name, dataSource);
+
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE replication (Seconds_Behind_Master DOUBLE)");
+            statement.execute("INSERT INTO replication VALUES (" + lagSeconds + ")");
+        }
+
+        return new ReplicaRouter.Replica(name, dataSource, new LatencyHistogram());
+    }
+
+    private void setLag(final ReplicaRouter.Replica replica, final Double lagSeconds) throws SQLException {
+        try (Connection connection = replicaPools.get(replica.getName()).getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("UPDATE replication SET Seconds_Behind_Master = " + lagSeconds);
+        }
+    }
+
+    private void awaitUsable(final String name) {
+        Await.until(() -> router.getReplicas().stream()
+                .anyMatch(replica -> replica.getName().equals(name) && replica.isUsable()), name + " is usable");
+    }
+
+    private static HikariDataSource database(final String name) throws SQLException {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl("jdbc:h2:mem:replicas-" + DATABASES.incrementAndGet());
+        config.setMaximumPoolSize(4);
+        HikariDataSource dataSource = new HikariDataSource(config);
+
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE whoami (name VARCHAR(32))");
+            statement.execute("INSERT INTO whoami VALUES ('" + name + "')");
+        }
+
+        return dataSource;
+    }
+
+    private static String whoami(final Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(WHOAMI)) {
+            resultSet.next();
+            return resultSet.getString(1);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package de.christianschliz.spigotms.api.messaging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import de.christianschliz.spigotms.api.database.Await;
+import de.christianschliz.spigotms.api.database.RedisController;
+import de.christianschliz.spigotms.api.database.RedisServerRule;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+/**
+ * The message buses of two servers sharing one Redis server. The flush
+ * window is short, so batched messages leave within the tests' waits.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public class MessageBusTest {
+
+    // -- static fields
+
+    @ClassRule
+    public static final RedisServerRule REDIS = new RedisServerRule();
+
+    private static final long FLUSH_WINDOW_MICROS = 1000;
+    private static final long REQUEST_TIMEOUT_MILLIS = 200;
+    private static final long WAIT_SECONDS = 5;
+
+    private static final Channel<Long> PING = Channel.of("test:ping", MessageCodec.LONG);
+    private static final RequestChannel<Long, Long> INCREMENT =
+            RequestChannel.of("test:increment", MessageCodec.LONG, MessageCodec.LONG);
+
+    // -- instance fields
+
+    private MessageBus first;
+    private MessageBus second;
+
+    // -- public methods
+
+    @Before
+    public void setUp() {
+        REDIS.reset();
+        first = newBus();
+        second = newBus();
+    }
+
+    @Test
+    public void publishedMessagesReachOtherServersInOrder() {
+        List<Long> received = new CopyOnWriteArrayList<>();
+        second.subscribe(PING, received::add);
+
+        for (long i = 1; i <= 3; i++) {
+            first.publish(PING, i);
+        }
+
+        Await.until(() -> received.size() == 3, "the second server got all messages");
+        assertEquals(Arrays.asList(1L, 2L, 3L), received);
+    }
+
+    @Test
+    public void localSubscribersGetAMessageOnlyOnce() throws InterruptedException {
+        List<Long> local = new CopyOnWriteArrayList<>();
+        List<Long> remote = new CopyOnWriteArrayList<>();
+        first.subscribe(PING, local::add);
+        second.subscribe(PING, remote::add);
+
+        first.publish(PING, 1L);
+
+        Await.until(() -> remote.size() == 1, "the second server got the message");
+        // the frame comes back to the first server as well, give it time to be dropped
+        Thread.sleep(100);
+        assertEquals(Arrays.asList(1L), local);
+    }
+
+    @Test
+    public void requestsAreAnsweredByOtherServers() throws Exception {
+        second.respond(INCREMENT, value -> value + 1);
+
+        assertEquals(Long.valueOf(2), first.request(INCREMENT, 1L).get(WAIT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(Long.valueOf(3), first.request(INCREMENT, second.getNodeId(), 2L)
+                .get(WAIT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(0, first.getPendingRequestCount());
+    }
+
+    @Test
+    public void localRequestsSkipRedis() throws Exception {
+        first.respond(INCREMENT, value -> value + 1);
+        List<Long> remote = new CopyOnWriteArrayList<>();
+        second.subscribe(PING, remote::add);
+
+        assertEquals(Long.valueOf(2), first.request(INCREMENT, 1L).get(WAIT_SECONDS, TimeUnit.SECONDS));
+
+        // frames of one server arrive in order, so the request would have come before the ping
+        first.publish(PING, 1L);
+        Await.until(() -> remote.size() == 1, "the second server got the ping");
+        assertEquals(1, second.getReceivedCount());
+    }
+
+    @Test
+    public void requestsWithoutAResponderTimeOut() throws Exception {
+        long start = System.nanoTime();
+        CompletableFuture<Long> reply = first.request(INCREMENT, 1L);
+
+        assertFailsWith(TimeoutException.class, reply);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(REQUEST_TIMEOUT_MILLIS));
+        assertEquals(0, first.getPendingRequestCount());
+    }
+
+    @Test
+    public void requestsToAServerWithoutTheResponderFailAtOnce() throws Exception {
+        CompletableFuture<Long> reply = first.request(INCREMENT, second.getNodeId(), 1L);
+
+        try {
+            reply.get(WAIT_SECONDS, TimeUnit.SECONDS);
+            fail("the request got a reply");
+        } catch (ExecutionException exception) {
+            assertTrue(String.valueOf(exception.getCause()), !(exception.getCause() instanceof TimeoutException));
+        }
+    }
+
+    // -- private methods
+
+    private static MessageBus newBus() {
+        RedisController controller = REDIS.newController();
+        controller.setMessageBusOptions(FLUSH_WINDOW_MICROS, 65536, REQUEST_TIMEOUT_MILLIS);
+        return controller.messageBus();
+    }
+
+    private static void assertFailsWith(final Class<? extends Throwable> type, final CompletableFuture<?> future)
+            throws Exception {
+        try {
+            future.get(WAIT_SECONDS, TimeUnit.SECONDS);
+            fail("the future completed normally");
+        } catch (ExecutionException exception) {
+            assertTrue(String.valueOf(exception.getCause()), type.isInstance(exception.getCause()));
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package de.christianschliz.spigotms.api.playerdata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import de.christianschliz.spigotms.api.executor.ExecutorRegistry;
+import de.christianschliz.spigotms.api.metrics.LatencyHistogram;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The player data cache with codecs that keep their data in memory.
+ * Players who leave are evicted as soon as their changes are written.
+ *
+ * @author Christian Schliz
+ * @version 1.0
+ * */
+public class PlayerDataCacheTest {
+
+    // -- static fields
+
+    private static final UUID PLAYER = UUID.randomUUID();
+
+    // -- instance fields
+
+    private PlayerDataCache cache;
+    private MemoryCodec balances;
+    private MemoryCodec kills;
+    private PlayerDataType<Integer> balance;
+    private PlayerDataType<Integer> kill;
+
+    // -- public methods
+
+    @Before
+    public void setUp() {
+        cache = new PlayerDataCache(Executors.newFixedThreadPool(2, ExecutorRegistry.threadFactory("playerdata")),
+                Executors.newSingleThreadScheduledExecutor(ExecutorRegistry.threadFactory("playerdata-writer")),
+                60_000, 100, 0, 1000, new LatencyHistogram(), new LatencyHistogram());
+        balances = new MemoryCodec();
+        kills = new MemoryCodec();
+        balance = PlayerDataType.of("test:balance", balances);
+        kill = PlayerDataType.of("test:kills", kills);
+        cache.register(balance);
+        cache.register(kill);
+    }
+
+    @After
+    public void tearDown() {
+        balances.loadGate.countDown();
+        cache.close();
+    }
+
+    @Test
+    public void concurrentUpdatesAreAtomic() throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+
+        for (int i = 0; i < 4; i++) {
+            Thread thread = new Thread(() -> {
+                for (int update = 0; update < 1000; update++) {
+                    cache.update(PLAYER, kill, value -> value + 1);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(Integer.valueOf(4000), cache.get(PLAYER, kill));
+    }
+
+    @Test
+    public void anUpdateWaitingForALoadDoesNotBlockThePlayer() throws Exception {
+        balances.loadGate = new CountDownLatch(1);
+        CompletableFuture<Integer> waiting = CompletableFuture.supplyAsync(
+                () -> cache.update(PLAYER, balance, value -> value + 10));
+
+        CompletableFuture<Void> put = CompletableFuture.runAsync(() -> cache.put(PLAYER, kill, 3));
+        put.get(5, TimeUnit.SECONDS);
+
+        balances.loadGate.countDown();
+        assertEquals(Integer.valueOf(10), waiting.get(5, TimeUnit.SECONDS));
+        assertEquals(Integer.valueOf(3), cache.get(PLAYER, kill));
+    }
+
+    @Test
+    public void failedWritesKeepThePlayerCached() {
+        cache.put(PLAYER, balance, 5);
+        balances.failing.set(true);
+
+        cache.flush();
+
+        assertEquals(1, cache.getCachedCount());
+        assertEquals(1, cache.getDirtyCount());
+        assertEquals(0, cache.getEvictionCount());
+
+        cache.put(PLAYER, balance, 7);
+        balances.failing.set(false);
+        cache.flush();
+
+        assertEquals("the latest value is written on retry", Integer.valueOf(7), balances.stored.get(PLAYER));
+        assertEquals(0, cache.getCachedCount());
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void changesThatFailedOnUnregisterAreWrittenByTheNextRegistration() {
+        cache.put(PLAYER, balance, 5);
+        balances.failing.set(true);
+
+        cache.unregister(balance);
+
+        assertEquals(1, cache.getDirtyCount());
+        assertEquals(1, cache.getCachedCount());
+
+        MemoryCodec reloaded = new MemoryCodec();
+        PlayerDataType<Integer> reloadedBalance = PlayerDataType.of("test:balance", reloaded);
+        cache.register(reloadedBalance);
+        cache.flush();
+
+        assertEquals(Integer.valueOf(5), reloaded.stored.get(PLAYER));
+        assertEquals(0, cache.getDirtyCount());
+    }
+
+    @Test
+    public void changesMadeDuringAWriteAreWrittenAgain() {
+        cache.put(PLAYER, balance, 5);
+        balances.beforeStore = () -> cache.put(PLAYER, balance, 6);
+
+        cache.flush();
+
+        assertEquals(Integer.valueOf(5), balances.stored.get(PLAYER));
+        assertEquals(1, cache.getDirtyCount());
+
+        balances.beforeStore = null;
+        cache.flush();
+
+        assertEquals(Integer.valueOf(6), balances.stored.get(PLAYER));
+        assertEquals(0, cache.getCachedCount());
+    }
+
+    // -- inner classes
+
+    private static final class MemoryCodec implements PlayerDataCodec<Integer> {
+
+        private final Map<UUID, Integer> stored = new ConcurrentHashMap<>();
+        private final AtomicBoolean failing = new AtomicBoolean();
+        private volatile CountDownLatch loadGate = new CountDownLatch(0);
+        private volatile Runnable beforeStore;
+
+        @Override
+        public Integer load(final UUID playerId) throws Exception {
+            loadGate.await();
+            return stored.getOrDefault(playerId, 0);
+        }
+
+        @Override
+        public void store(final Map<UUID, Integer> values) {
+            if (beforeStore != null) {
+                beforeStore.run();
+            }
+
+            if (failing.get()) {
+                throw new IllegalStateException("database is down");
+            }
+
+            stored.putAll(values);
+        }
+    }
+}